@@ -3,6 +3,7 @@ plugins {
     id("org.springframework.boot") version "3.5.0"
     id("io.spring.dependency-management") version "1.1.7"
     id("org.openjfx.javafxplugin") version "0.1.0"
+    id("me.champeau.jmh") version "0.7.3"
 }
 
 group = "com.kousenit"
@@ -36,6 +37,9 @@ dependencies {
 
     implementation("org.springframework.ai:spring-ai-starter-model-openai")
     implementation("org.springframework.ai:spring-ai-starter-mcp-client")
+
+    // Per-stage latency timers, kept in a local registry
+    implementation("io.micrometer:micrometer-core")
     
     // Audio playback for MP3 files
     implementation("javazoom:jlayer:1.0.1")
@@ -44,17 +48,123 @@ dependencies {
     testRuntimeOnly("org.junit.platform:junit-platform-launcher")
 }
 
+// SIMD audio kernels; PcmKernels falls back to scalar loops when a JVM starts without the module
+val vectorModule = listOf("--add-modules", "jdk.incubator.vector")
+
+// Only VectorPcmKernels uses the API; javac has no lint category for its "incubating module" warning
+tasks.named<JavaCompile>("compileJava") {
+    options.compilerArgs.addAll(vectorModule)
+}
+
 tasks.withType<Test> {
     useJUnitPlatform()
+    jvmArgs(vectorModule)
+}
+
+// Timed runs tagged "soak" take seconds each or check wall-clock bounds; they run with soakSmokeTest, not with the unit tests
+tasks.test {
+    useJUnitPlatform {
+        excludeTags("soak")
+    }
+}
+
+// Benchmarks in src/jmh/java: ./gradlew jmh (results in build/results/jmh)
+jmh {
+    jmhVersion.set("1.37")
+    // Allocation rate and bytes per operation next to each timing
+    profilers.set(listOf("gc"))
+    resultFormat.set("JSON")
+    jvmArgsAppend.set(vectorModule)
+    // Narrow a run with -PjmhInclude=CaptureBuffer
+    if (project.hasProperty("jmhInclude")) {
+        includes.set(listOf(project.property("jmhInclude").toString()))
+    }
 }
 
+val fxJvmArgs = listOf(
+    "--module-path", sourceSets["main"].runtimeClasspath.asPath,
+    "--add-modules", "javafx.controls,javafx.fxml,javafx.media"
+) + vectorModule
+
 tasks.register<JavaExec>("runFX") {
     group = "application"
     mainClass.set("com.kousenit.starfleetvoiceinterface.StarfleetVoiceInterfaceApplication")
     classpath = sourceSets["main"].runtimeClasspath
 
-    jvmArgs = listOf(
-        "--module-path", classpath.asPath,
-        "--add-modules", "javafx.controls,javafx.fxml,javafx.media"
-    )
+    jvmArgs = fxJvmArgs
+}
+
+// AppCDS: a training run starts the app until it is ready, then dumps the classes it loaded
+val cdsArchive = layout.buildDirectory.file("cds/starfleet.jsa")
+
+tasks.register<JavaExec>("cdsArchive") {
+    group = "application"
+    description = "Builds an AppCDS archive of the classes loaded during startup"
+    mainClass.set("com.kousenit.starfleetvoiceinterface.StarfleetVoiceInterfaceApplication")
+    classpath = sourceSets["main"].runtimeClasspath
+    args("--exit-when-ready")
+
+    jvmArgs = fxJvmArgs + "-XX:ArchiveClassesAtExit=${cdsArchive.get().asFile}"
+    inputs.files(sourceSets["main"].runtimeClasspath)
+    outputs.file(cdsArchive)
+    doFirst { cdsArchive.get().asFile.parentFile.mkdirs() }
+}
+
+tasks.register<JavaExec>("runFXCds") {
+    group = "application"
+    description = "Runs the app with the AppCDS archive"
+    dependsOn("cdsArchive")
+    mainClass.set("com.kousenit.starfleetvoiceinterface.StarfleetVoiceInterfaceApplication")
+    classpath = sourceSets["main"].runtimeClasspath
+
+    jvmArgs = fxJvmArgs + "-XX:SharedArchiveFile=${cdsArchive.get().asFile}"
+}
+
+// Time to window and to ready over several launches, without and with the archive
+tasks.register<JavaExec>("startupBenchmark") {
+    group = "verification"
+    dependsOn("cdsArchive")
+    mainClass.set("com.kousenit.starfleetvoiceinterface.StartupBenchmark")
+    classpath = sourceSets["jmh"].runtimeClasspath
+    args(project.findProperty("startupRuns")?.toString() ?: "5")
+
+    systemProperty("starfleet.startup.classpath", sourceSets["main"].runtimeClasspath.asPath)
+    systemProperty("starfleet.startup.archive", cdsArchive.get().asFile.path)
+}
+
+// FX thread frame times while a 10k-row result goes on screen, as text and as a table
+tasks.register<JavaExec>("frameBenchmark") {
+    group = "verification"
+    mainClass.set("com.kousenit.starfleetvoiceinterface.ResultTableFrameBenchmark")
+    classpath = sourceSets["jmh"].runtimeClasspath
+    args(project.findProperty("frameRows")?.toString() ?: "10000")
+
+    jvmArgs = fxJvmArgs
+}
+
+// Short soak harness runs that check the offline pipeline keeps its rate: ./gradlew soakSmokeTest
+tasks.register<Test>("soakSmokeTest") {
+    group = "verification"
+    description = "Runs the tests tagged soak: short timed runs of the load driver and other wall-clock checks"
+    testClassesDirs = sourceSets["test"].output.classesDirs
+    classpath = sourceSets["test"].runtimeClasspath
+    useJUnitPlatform {
+        includeTags("soak")
+    }
+}
+
+// Offline load and soak run against local OpenAI and osquery stand-ins, e.g.
+// ./gradlew soakTest -PloadRate=5 -PloadDuration=1h -PloadChatLatency=500ms..2s
+tasks.register<JavaExec>("soakTest") {
+    group = "verification"
+    description = "Replays recordings through the voice pipeline at a fixed rate and reports latency and heap"
+    mainClass.set("com.kousenit.starfleetvoiceinterface.LoadDriver")
+    classpath = sourceSets["test"].runtimeClasspath
+    jvmArgs(vectorModule)
+
+    // -PloadReportEvery=30s becomes -Dload.report-every=30s
+    project.properties.filterKeys { it.startsWith("load") && it.length > 4 }.forEach { (name, value) ->
+        val key = name.removePrefix("load").replace(Regex("([a-z])([A-Z])"), "\$1-\$2").lowercase()
+        systemProperty("load.$key", value.toString())
+    }
 }
@@ -0,0 +1,44 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.Random;
+
+/**
+ * Synthetic capture audio for the benchmarks, in the format the microphone
+ * records: a voiced tone with a syllable-rate envelope over low noise, so
+ * the encoders see something closer to speech than silence or a pure tone.
+ */
+final class BenchmarkAudio {
+
+    static final AudioFormat FORMAT = new AudioFormat(16000.0f, 16, 1, true, false);
+
+    /** Bytes per read in the recording loop. */
+    static final int CHUNK = 4096;
+
+    private BenchmarkAudio() {
+    }
+
+    static byte[] speech(double seconds) {
+        int samples = (int) (FORMAT.getSampleRate() * seconds);
+        byte[] pcm = new byte[samples * 2];
+        Random noise = new Random(1701);
+        for (int i = 0; i < samples; i++) {
+            double t = i / FORMAT.getSampleRate();
+            double envelope = 0.5 + 0.5 * Math.sin(2 * Math.PI * 4 * t);
+            double voice = Math.sin(2 * Math.PI * 180 * t) + 0.5 * Math.sin(2 * Math.PI * 360 * t);
+            int sample = (int) (6000 * envelope * voice + 200 * noise.nextGaussian());
+            pcm[2 * i] = (byte) sample;
+            pcm[2 * i + 1] = (byte) (sample >> 8);
+        }
+        return pcm;
+    }
+
+    /**
+     * Feeds {@code pcm} to {@code sink} in recording-loop sized chunks.
+     */
+    static void capture(byte[] pcm, PcmSink sink) {
+        for (int offset = 0; offset < pcm.length; offset += CHUNK) {
+            sink.write(pcm, offset, Math.min(CHUNK, pcm.length - offset));
+        }
+    }
+}
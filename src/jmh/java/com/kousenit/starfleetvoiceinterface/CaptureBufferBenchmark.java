@@ -0,0 +1,78 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.Resource;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * One recording from first chunk to upload-ready body, the way the recording
+ * loop feeds it: 4 KB reads at realistic utterance lengths. The growing
+ * {@link ByteArrayOutputStream} plus {@link WavEncoder#convertToWav} copy is
+ * the original capture path; {@link RecordingBuffer} and {@link FlacEncoder}
+ * are reused across recordings the way {@link TranscriptionService} pools them.
+ * Run with {@code -prof gc} (the default in the build) to see bytes per
+ * recording.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CaptureBufferBenchmark {
+
+    @Param({"2", "5", "15", "60"})
+    public double seconds;
+
+    private byte[] pcm;
+    private RecordingBuffer recordingBuffer;
+    private FlacEncoder flacEncoder;
+
+    @Setup
+    public void setUp() {
+        pcm = BenchmarkAudio.speech(seconds);
+        recordingBuffer = new RecordingBuffer(BenchmarkAudio.FORMAT, Duration.ofSeconds(60), Duration.ofMinutes(10));
+        flacEncoder = new FlacEncoder(BenchmarkAudio.FORMAT);
+    }
+
+    @TearDown
+    public void tearDown() {
+        recordingBuffer.reset();
+    }
+
+    @Benchmark
+    public byte[] growingByteArrayThenWav() throws IOException {
+        ByteArrayOutputStream capture = new ByteArrayOutputStream();
+        BenchmarkAudio.capture(pcm, capture::write);
+        return WavEncoder.convertToWav(capture.toByteArray(), BenchmarkAudio.FORMAT);
+    }
+
+    @Benchmark
+    public Resource reusedRecordingBuffer() {
+        recordingBuffer.reset();
+        BenchmarkAudio.capture(pcm, recordingBuffer);
+        return recordingBuffer.toWavResource("recording.wav");
+    }
+
+    @Benchmark
+    public Resource reusedFlacEncoder() {
+        flacEncoder.reset();
+        BenchmarkAudio.capture(pcm, flacEncoder);
+        return flacEncoder.finish("recording.flac");
+    }
+}
@@ -0,0 +1,59 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decoding the sound effects to the mixer format, which
+ * {@link AudioPlayerService} does once per effect at startup, against the
+ * {@link SoundCache} lookup every later play pays.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class Mp3DecodeBenchmark {
+
+    @Param({AudioPlayerService.WORKING_SOUND, "/sounds/working.mp3"})
+    public String sound;
+
+    private SoundCache soundCache;
+
+    @Setup
+    public void setUp() {
+        soundCache = new SoundCache(16L * 1024 * 1024, path -> {
+            try {
+                return Mp3Decoder.decode(path, AudioPlayerService.MIXER_FORMAT);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        soundCache.get(sound);
+    }
+
+    @Benchmark
+    public short[] decode() throws IOException {
+        return Mp3Decoder.decode(sound, AudioPlayerService.MIXER_FORMAT).samples();
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public short[] cachedLookup() {
+        return soundCache.get(sound).samples();
+    }
+}
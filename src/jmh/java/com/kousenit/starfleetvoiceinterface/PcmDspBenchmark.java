@@ -0,0 +1,75 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The DSP stage on one recording-loop read, scalar against vector kernels:
+ * the VAD's level metering of a capture-format chunk, and conversion of a
+ * read from a 48 kHz stereo and a 44.1 kHz mono device. The build starts
+ * the forks with the Vector API module; without it the vector runs fail.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PcmDspBenchmark {
+
+    private static final AudioFormat STEREO_48K = new AudioFormat(48000.0f, 16, 2, true, false);
+    private static final AudioFormat MONO_44K = new AudioFormat(44100.0f, 16, 1, true, false);
+
+    @Param({"scalar", "vector"})
+    public String kernels;
+
+    private PcmDsp dsp;
+    private byte[] chunk;
+    private short[] samples;
+    private PcmConverter stereo48k;
+    private PcmConverter mono44k;
+    private byte[] converted;
+
+    @Setup
+    public void setUp() {
+        dsp = new PcmDsp("vector".equals(kernels) ? new VectorPcmKernels() : new ScalarPcmKernels());
+        chunk = new byte[BenchmarkAudio.CHUNK];
+        System.arraycopy(BenchmarkAudio.speech(1), 0, chunk, 0, chunk.length);
+        samples = new short[chunk.length / 2];
+        stereo48k = new PcmConverter(STEREO_48K, BenchmarkAudio.FORMAT, dsp);
+        mono44k = new PcmConverter(MONO_44K, BenchmarkAudio.FORMAT, dsp);
+        converted = new byte[Math.max(stereo48k.maxOutputBytes(chunk.length), mono44k.maxOutputBytes(chunk.length))];
+    }
+
+    @Benchmark
+    public double meterChunk() {
+        int count = dsp.decode(chunk, 0, chunk.length, samples);
+        return dsp.rms(samples, count) + dsp.zeroCrossingRate(samples, count) + dsp.peak(samples, count);
+    }
+
+    /**
+     * The chunk read as interleaved stereo frames: what the bytes hold
+     * doesn't change the work.
+     */
+    @Benchmark
+    public int convertStereo48k() {
+        return stereo48k.convert(chunk, 0, chunk.length, converted);
+    }
+
+    @Benchmark
+    public int convertMono44k() {
+        return mono44k.convert(chunk, 0, chunk.length, converted);
+    }
+}
@@ -0,0 +1,197 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import com.kousenit.starfleetvoiceinterface.config.UIConstants;
+import javafx.animation.AnimationTimer;
+import javafx.application.Application;
+import javafx.application.Platform;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.scene.Node;
+import javafx.scene.Scene;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.control.TextArea;
+import javafx.scene.layout.StackPane;
+import javafx.stage.Stage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+
+/**
+ * FX thread frame times while a large query result goes on screen, which
+ * JMH can't measure: the work happens across pulses of a live stage. Each
+ * way of showing a 10,000-row fixture runs in turn, while an animation timer
+ * records the gap between pulses; a long gap is a frame the FX thread was
+ * too busy to draw.
+ * <ul>
+ *     <li>{@code text-area}: the whole result as a fixed-width text table in
+ *     a {@link TextArea}, as responses used to be shown</li>
+ *     <li>{@code table-at-once}: every row added to a {@link TableView} in
+ *     one go</li>
+ *     <li>{@code table-batched}: {@link ResultTableView}, a batch of rows per
+ *     frame</li>
+ * </ul>
+ * Run with {@code ./gradlew frameBenchmark} ({@code -PframeRows=500} for
+ * another size). Needs a display.
+ */
+public class ResultTableFrameBenchmark extends Application {
+
+    /** Pulses recorded after the result is on screen, to catch deferred layout */
+    private static final int SETTLE_FRAMES = 30;
+
+    private static int fixtureRows = 10_000;
+
+    private record Mode(String name, Function<ResultTable, Show> show) {
+    }
+
+    /**
+     * The node to put on screen, and the work that puts the result in it,
+     * completing when the result has been handed over entirely.
+     */
+    private record Show(Node node, Runnable work, CompletableFuture<Void> done) {
+    }
+
+    private StackPane root;
+
+    public static void main(String[] args) {
+        if (args.length > 0) {
+            fixtureRows = Integer.parseInt(args[0]);
+        }
+        launch(args);
+    }
+
+    @Override
+    public void start(Stage stage) {
+        root = new StackPane();
+        stage.setScene(new Scene(root, UIConstants.WINDOW_WIDTH, UIConstants.WINDOW_HEIGHT));
+        stage.show();
+
+        ResultTable fixture = fixture(fixtureRows);
+        List<Mode> modes = List.of(
+                new Mode("text-area", ResultTableFrameBenchmark::textArea),
+                new Mode("table-at-once", ResultTableFrameBenchmark::tableAtOnce),
+                new Mode("table-batched", ResultTableFrameBenchmark::tableBatched));
+
+        System.out.printf(Locale.ROOT, "%d rows x %d columns%n%-14s %9s %7s %9s %9s %9s %9s%n",
+                fixture.rows().size(), fixture.columns().size(),
+                "mode", "call ms", "frames", "p50 ms", "p95 ms", "max ms", "total ms");
+        CompletableFuture<Void> runs = CompletableFuture.completedFuture(null);
+        for (Mode mode : modes) {
+            runs = runs.thenCompose(ignored -> measure(mode, fixture));
+        }
+        runs.whenComplete((ignored, error) -> {
+            if (error != null) {
+                error.printStackTrace();
+            }
+            Platform.exit();
+        });
+    }
+
+    private CompletableFuture<Void> measure(Mode mode, ResultTable fixture) {
+        CompletableFuture<Void> measured = new CompletableFuture<>();
+        Platform.runLater(() -> {
+            Show show = mode.show().apply(fixture);
+            root.getChildren().setAll(show.node());
+
+            List<Long> pulses = new ArrayList<>();
+            long start = System.nanoTime();
+            show.work().run();
+            long call = System.nanoTime() - start;
+
+            new AnimationTimer() {
+                private int settle = -1;
+
+                @Override
+                public void handle(long now) {
+                    pulses.add(now);
+                    if (settle < 0 && show.done().isDone()) {
+                        settle = pulses.size() + SETTLE_FRAMES;
+                    }
+                    if (settle >= 0 && pulses.size() >= settle) {
+                        stop();
+                        report(mode.name(), call, start, pulses);
+                        measured.complete(null);
+                    }
+                }
+            }.start();
+        });
+        return measured;
+    }
+
+    private static void report(String mode, long call, long start, List<Long> pulses) {
+        long[] frames = new long[pulses.size()];
+        frames[0] = pulses.getFirst() - start;
+        for (int i = 1; i < frames.length; i++) {
+            frames[i] = pulses.get(i) - pulses.get(i - 1);
+        }
+        long total = pulses.getLast() - start;
+        Arrays.sort(frames);
+        System.out.printf(Locale.ROOT, "%-14s %9.1f %7d %9.1f %9.1f %9.1f %9.1f%n",
+                mode, call / 1e6, frames.length, percentile(frames, 0.5) / 1e6, percentile(frames, 0.95) / 1e6,
+                frames[frames.length - 1] / 1e6, total / 1e6);
+    }
+
+    private static long percentile(long[] sorted, double percentile) {
+        return sorted[Math.max(0, (int) Math.ceil(percentile * sorted.length) - 1)];
+    }
+
+    private static Show textArea(ResultTable result) {
+        TextArea area = new TextArea();
+        area.setWrapText(true);
+        area.setStyle(UIConstants.RESPONSE_AREA_STYLE);
+        String text = asText(result);
+        return new Show(area, () -> area.setText(text), CompletableFuture.completedFuture(null));
+    }
+
+    private static Show tableAtOnce(ResultTable result) {
+        TableView<List<String>> table = new TableView<>();
+        table.setStyle(UIConstants.RESULT_TABLE_STYLE);
+        table.setFixedCellSize(20);
+        for (int i = 0; i < result.columns().size(); i++) {
+            int index = i;
+            TableColumn<List<String>, String> column = new TableColumn<>(result.columns().get(i));
+            column.setCellValueFactory(cell -> new ReadOnlyStringWrapper(cell.getValue().get(index)));
+            table.getColumns().add(column);
+        }
+        return new Show(table, () -> table.getItems().setAll(result.rows()), CompletableFuture.completedFuture(null));
+    }
+
+    private static Show tableBatched(ResultTable result) {
+        ResultTableView view = new ResultTableView();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        return new Show(view.node(), () -> view.show(result).thenRun(() -> done.complete(null)), done);
+    }
+
+    /**
+     * The result as a model would lay it out in a monospaced answer.
+     */
+    private static String asText(ResultTable result) {
+        StringBuilder text = new StringBuilder(String.join(" | ", result.columns())).append('\n');
+        for (List<String> row : result.rows()) {
+            text.append(String.join(" | ", row)).append('\n');
+        }
+        return text.toString();
+    }
+
+    /**
+     * A process listing: osquery's {@code processes} table, a few wide
+     * columns included.
+     */
+    static ResultTable fixture(int rows) {
+        List<String> columns = List.of("pid", "name", "path", "cmdline", "state", "uid", "resident_size",
+                "total_size", "user_time", "system_time", "threads", "start_time");
+        List<List<String>> data = new ArrayList<>(rows);
+        for (int i = 0; i < rows; i++) {
+            String name = "process-" + (i % 97);
+            data.add(List.of(String.valueOf(100 + i), name, "/usr/local/bin/" + name,
+                    "/usr/local/bin/" + name + " --config /etc/" + name + ".conf --verbose --port " + (8000 + i % 1000),
+                    i % 5 == 0 ? "R" : "S", String.valueOf(500 + i % 3), String.valueOf(1_048_576L * (i % 400)),
+                    String.valueOf(4_194_304L * (i % 400)), String.valueOf(i * 13 % 10_000),
+                    String.valueOf(i * 7 % 5_000), String.valueOf(1 + i % 32), String.valueOf(1_700_000_000L + i)));
+        }
+        return new ResultTable("SELECT * FROM processes", columns, data);
+    }
+}
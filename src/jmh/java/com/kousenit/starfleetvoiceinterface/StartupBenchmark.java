@@ -0,0 +1,107 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Cold start of the whole application, which JMH can't measure from inside
+ * a running JVM: launches it several times with {@code --exit-when-ready}
+ * and reads back the time to the window and to ready from
+ * {@link StartupTimes}, without and then with the AppCDS archive.
+ * <p>
+ * Run with {@code ./gradlew startupBenchmark} (which builds the archive
+ * first); {@code -PstartupRuns=10} for more launches. Needs a display and
+ * the usual OpenAI and MCP configuration, since the app really starts.
+ */
+public class StartupBenchmark {
+
+    private static final Pattern STARTUP = Pattern.compile("Startup: window (\\d+) ms, ready (\\d+) ms");
+
+    private static final String MAIN_CLASS = "com.kousenit.starfleetvoiceinterface.StarfleetVoiceInterfaceApplication";
+
+    private record Launch(long window, long ready) {
+    }
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        int runs = args.length > 0 ? Integer.parseInt(args[0]) : 5;
+        String classpath = System.getProperty("starfleet.startup.classpath");
+        Path archive = Path.of(System.getProperty("starfleet.startup.archive", "build/cds/starfleet.jsa"));
+
+        report("default", launches(runs, classpath, List.of()));
+        if (Files.exists(archive)) {
+            report("AppCDS", launches(runs, classpath, List.of("-XX:SharedArchiveFile=" + archive)));
+        } else {
+            System.out.println("No AppCDS archive at " + archive + "; run ./gradlew cdsArchive first");
+        }
+    }
+
+    private static List<Launch> launches(int runs, String classpath, List<String> jvmArgs)
+            throws IOException, InterruptedException {
+        List<Launch> launches = new ArrayList<>();
+        for (int i = 0; i < runs; i++) {
+            List<String> command = new ArrayList<>(List.of(ProcessHandle.current().info().command().orElse("java"),
+                    "--module-path", classpath, "--add-modules", "javafx.controls,javafx.fxml,javafx.media",
+                    "--add-modules", "jdk.incubator.vector"));
+            command.addAll(jvmArgs);
+            command.addAll(List.of("-cp", classpath, MAIN_CLASS, "--exit-when-ready"));
+            launches.add(launch(command));
+        }
+        return launches;
+    }
+
+    private static Launch launch(List<String> command) throws IOException, InterruptedException {
+        Process process = new ProcessBuilder(command).redirectErrorStream(true).start();
+        // Read on its own thread, so a launch that never exits can't hold up the timeout
+        AtomicReference<Launch> launch = new AtomicReference<>();
+        Thread reader = Thread.ofVirtual().name("startup-output").start(() -> {
+            try (BufferedReader output = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+                String line;
+                while ((line = output.readLine()) != null) {
+                    Matcher startup = STARTUP.matcher(line);
+                    if (startup.find()) {
+                        launch.set(new Launch(Long.parseLong(startup.group(1)), Long.parseLong(startup.group(2))));
+                    }
+                }
+            } catch (IOException e) {
+                // The process is gone; whatever it printed before is all there is
+            }
+        });
+        boolean exited = process.waitFor(1, TimeUnit.MINUTES);
+        if (!exited) {
+            process.destroyForcibly();
+            process.waitFor();
+        }
+        reader.join();
+        if (launch.get() == null) {
+            throw new IllegalStateException(exited
+                    ? "The application exited without becoming ready (exit code " + process.exitValue() + ")"
+                    : "The application didn't become ready and exit within a minute");
+        }
+        return launch.get();
+    }
+
+    private static void report(String variant, List<Launch> launches) {
+        long[] window = launches.stream().mapToLong(Launch::window).sorted().toArray();
+        long[] ready = launches.stream().mapToLong(Launch::ready).sorted().toArray();
+        System.out.printf(Locale.ROOT, "%-8s %d launches  time-to-window median %5d ms (min %5d, max %5d)"
+                        + "  time-to-ready median %5d ms (min %5d, max %5d)%n",
+                variant, launches.size(), median(window), window[0], window[window.length - 1],
+                median(ready), ready[0], ready[ready.length - 1]);
+        System.out.println("         ready: " + Arrays.toString(ready));
+    }
+
+    private static long median(long[] sorted) {
+        return sorted[sorted.length / 2];
+    }
+}
@@ -0,0 +1,107 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import com.kousenit.starfleetvoiceinterface.config.ToolProperties;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.mcp.SyncMcpToolCallbackProvider;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The chain {@link VoiceController} runs after the button is released, with
+ * both models stubbed out so only our own overhead is left: WAV body from the
+ * capture buffer, the transcription stage reading the upload, then the
+ * command stage through {@link McpClientService} and the chat client, each on
+ * its {@link VoicePipeline} stage executor. The JavaFX updates are left out.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class VoiceChainBenchmark {
+
+    private static final String COMMAND = "Computer, is the warp core stable?";
+
+    @Param({"2", "5"})
+    public double seconds;
+
+    private byte[] pcm;
+    private RecordingBuffer recordingBuffer;
+    private TranscriptionBackend transcriptionBackend;
+    private McpClientService mcpService;
+    private VoicePipeline pipeline;
+
+    @Setup
+    public void setUp() {
+        pcm = BenchmarkAudio.speech(seconds);
+        recordingBuffer = new RecordingBuffer(BenchmarkAudio.FORMAT, Duration.ofSeconds(60), Duration.ofMinutes(10));
+        // Reads the whole upload, as the HTTP client would
+        transcriptionBackend = audio -> {
+            try (InputStream in = audio.getInputStream()) {
+                in.transferTo(OutputStream.nullOutputStream());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return COMMAND;
+        };
+        ChatModel chatModel = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                return new ChatResponse(List.of(new Generation(new AssistantMessage("The warp core is stable, Captain."))));
+            }
+        };
+        // No MCP servers and no fast path, so every command goes through the chat client
+        mcpService = new McpClientService(chatModel, new SyncMcpToolCallbackProvider(List.of()), List.of(),
+                new ToolProperties(
+                        new ToolProperties.Cache(true, 256, Duration.ZERO, Map.of()),
+                        new ToolProperties.FastPath(false, 0.6, 0.2),
+                        new ToolProperties.Parallel(true, 4),
+                        new ToolProperties.Compaction(true, 25, 160, 1024),
+                        new ToolProperties.Coalescing(true)));
+        VoicePipeline.Limits limits = new VoicePipeline.Limits(2, Duration.ofSeconds(10));
+        pipeline = new VoicePipeline(Map.of(
+                VoicePipeline.Stage.TRANSCRIPTION, limits,
+                VoicePipeline.Stage.COMMAND, limits));
+    }
+
+    @TearDown
+    public void tearDown() {
+        pipeline.shutdown();
+    }
+
+    @Benchmark
+    public String releaseToAnswer() {
+        recordingBuffer.reset();
+        BenchmarkAudio.capture(pcm, recordingBuffer);
+
+        VoicePipeline.Run run = pipeline.begin();
+        return run.submit(VoicePipeline.Stage.TRANSCRIPTION,
+                        () -> transcriptionBackend.transcribe(recordingBuffer.toWavResource("recording.wav")))
+                .thenCompose(command -> run.submit(VoicePipeline.Stage.COMMAND, () -> mcpService.processCommand(command)))
+                .join();
+    }
+}
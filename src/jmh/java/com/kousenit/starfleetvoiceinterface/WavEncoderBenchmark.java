@@ -0,0 +1,74 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link WavEncoder#convertToWav} at utterance lengths, and its little-endian
+ * field writers on their own.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WavEncoderBenchmark {
+
+    @State(Scope.Benchmark)
+    public static class Utterance {
+
+        @Param({"2", "5", "15"})
+        public double seconds;
+
+        byte[] pcm;
+
+        @Setup
+        public void setUp() {
+            pcm = BenchmarkAudio.speech(seconds);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Header {
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream(64);
+    }
+
+    @Benchmark
+    public byte[] convertToWav(Utterance utterance) throws IOException {
+        return WavEncoder.convertToWav(utterance.pcm, BenchmarkAudio.FORMAT);
+    }
+
+    /**
+     * The int and short fields of one WAV header.
+     */
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.NANOSECONDS)
+    public int writeLittleEndianFields(Header header) {
+        ByteArrayOutputStream out = header.out;
+        out.reset();
+        WavEncoder.writeLittleEndianInt(out, 320_036);
+        WavEncoder.writeLittleEndianInt(out, 16);
+        WavEncoder.writeLittleEndianShort(out, (short) 1);
+        WavEncoder.writeLittleEndianShort(out, (short) 1);
+        WavEncoder.writeLittleEndianInt(out, 16_000);
+        WavEncoder.writeLittleEndianInt(out, 32_000);
+        WavEncoder.writeLittleEndianShort(out, (short) 2);
+        WavEncoder.writeLittleEndianShort(out, (short) 16);
+        WavEncoder.writeLittleEndianInt(out, 320_000);
+        return out.size();
+    }
+}
@@ -1,40 +1,118 @@
 package com.kousenit.starfleetvoiceinterface;
 
-import javazoom.jl.decoder.JavaLayerException;
-import javazoom.jl.player.Player;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
-import java.io.InputStream;
-import java.util.concurrent.CompletableFuture;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.SourceDataLine;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.List;
 
 @Service
 public class AudioPlayerService {
 
     private static final Logger log = LoggerFactory.getLogger(AudioPlayerService.class);
 
-    public void playWorkingSound() {
-        playAudioFile("/sounds/tos_working.mp3");
+    static final AudioFormat MIXER_FORMAT = new AudioFormat(44100.0f, 16, 2, true, false);
+    static final String WORKING_SOUND = "/sounds/tos_working.mp3";
+    static final List<String> EFFECTS = List.of(WORKING_SOUND, "/sounds/working.mp3");
+
+    private static final long CACHE_BYTES = 16L * 1024 * 1024;
+    private static final float DUCKED_GAIN = 0.2f;
+
+    private final SoundCache soundCache = new SoundCache(CACHE_BYTES, AudioPlayerService::decode);
+    private final PipelineMetrics metrics;
+    private SourceDataLine line;
+    private PlaybackMixer mixer;
+
+    public AudioPlayerService(PipelineMetrics metrics) {
+        this.metrics = metrics;
     }
 
-    public void playAudioFile(String resourcePath) {
-        CompletableFuture.runAsync(() -> {
+    @PostConstruct
+    void openPlayback() {
+        for (String effect : EFFECTS) {
             try {
-                InputStream audioStream = getClass().getResourceAsStream(resourcePath);
-                if (audioStream == null) {
-                    log.warn("Audio file not found: {}", resourcePath);
-                    return;
-                }
-
-                Player player = new Player(audioStream);
-                player.play();
-                
-                log.info("Audio playback completed for: {}", resourcePath);
-            } catch (JavaLayerException e) {
-                log.warn("Audio playback error: {}", e.getMessage());
-                // Don't interrupt main workflow on audio failure
+                DecodedSound sound = soundCache.get(effect);
+                log.info("Decoded {}: {} frames, {} bytes", effect, sound.frames(), sound.sizeInBytes());
+            } catch (UncheckedIOException e) {
+                log.warn("Could not preload {}: {}", effect, e.getMessage());
             }
-        });
+        }
+
+        try {
+            line = AudioSystem.getSourceDataLine(MIXER_FORMAT);
+            line.open(MIXER_FORMAT);
+            line.start();
+            mixer = new PlaybackMixer(MIXER_FORMAT, line::write);
+            mixer.start();
+        } catch (LineUnavailableException | IllegalArgumentException e) {
+            // No output device: commands still work, just silently
+            log.warn("Audio output unavailable, sound effects disabled: {}", e.getMessage());
+        }
+    }
+
+    public void playWorkingSound() {
+        playAudioFile(WORKING_SOUND);
+    }
+
+    public void playAudioFile(String resourcePath) {
+        if (mixer == null) {
+            return;
+        }
+        try {
+            PipelineMetrics.Timing effect = metrics.start(PipelineMetrics.Stage.EFFECT, resourcePath);
+            PlaybackMixer.Playback playback = mixer.play(soundCache.get(resourcePath), 1.0f);
+            playback.started().thenRun(effect::stop);
+            playback.done().thenRun(() -> log.info("Audio playback completed for: {}", resourcePath));
+        } catch (UncheckedIOException e) {
+            log.warn("Audio playback error: {}", e.getMessage());
+            // Don't interrupt main workflow on audio failure
+        }
+    }
+
+    /**
+     * Lowers effect volume, e.g. while the microphone is recording.
+     */
+    public void duck() {
+        if (mixer != null) {
+            mixer.duck(DUCKED_GAIN);
+        }
+    }
+
+    public void restoreVolume() {
+        if (mixer != null) {
+            mixer.duck(1.0f);
+        }
+    }
+
+    public void stopAll() {
+        if (mixer != null) {
+            mixer.cancelAll();
+        }
+    }
+
+    @PreDestroy
+    void closePlayback() {
+        if (mixer != null) {
+            mixer.close();
+        }
+        if (line != null) {
+            line.close();
+        }
+    }
+
+    private static DecodedSound decode(String resourcePath) {
+        try {
+            return Mp3Decoder.decode(resourcePath, MIXER_FORMAT);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
     }
-}
\ No newline at end of file
+}
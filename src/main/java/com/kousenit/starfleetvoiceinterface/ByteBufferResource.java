@@ -0,0 +1,79 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import org.springframework.core.io.AbstractResource;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Read-only {@link org.springframework.core.io.Resource} view over a
+ * {@link ByteBuffer}, so recorded audio can be handed to Spring AI without
+ * first copying it onto the heap.
+ */
+final class ByteBufferResource extends AbstractResource {
+
+    private final ByteBuffer content;
+    private final String filename;
+
+    ByteBufferResource(ByteBuffer content, String filename) {
+        this.content = content.asReadOnlyBuffer();
+        this.filename = filename;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        ByteBuffer view = content.duplicate();
+        return new InputStream() {
+            @Override
+            public int read() {
+                return view.hasRemaining() ? view.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) {
+                if (!view.hasRemaining()) {
+                    return -1;
+                }
+                int n = Math.min(len, view.remaining());
+                view.get(b, off, n);
+                return n;
+            }
+
+            @Override
+            public int available() {
+                return view.remaining();
+            }
+        };
+    }
+
+    /**
+     * Single exact-size copy, for consumers such as the OpenAI audio API that
+     * need the clip as a byte array.
+     */
+    @Override
+    public byte[] getContentAsByteArray() {
+        byte[] bytes = new byte[content.remaining()];
+        content.duplicate().get(bytes);
+        return bytes;
+    }
+
+    @Override
+    public long contentLength() {
+        return content.remaining();
+    }
+
+    @Override
+    public boolean exists() {
+        return true;
+    }
+
+    @Override
+    public String getFilename() {
+        return filename;
+    }
+
+    @Override
+    public String getDescription() {
+        return "ByteBuffer resource [" + filename + "]";
+    }
+}
@@ -0,0 +1,328 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+/**
+ * An append-only, memory-mapped file of string key/value records with an
+ * in-memory index of where each key's latest value lives. Writing a key
+ * again appends a new record; the old one stays in the file as garbage until
+ * the next compaction.
+ * <p>
+ * Layout: an 8-byte header (magic, version), then records of
+ * {@code [key length][value length][CRC32C][key][value]}. The mapped region
+ * grows by doubling up to {@code maxBytes}; past the last record it is zero.
+ * Opening the file scans the records to rebuild the index and stops at the
+ * first one that is incomplete or fails its checksum, a tail torn by a crash,
+ * which is then cut off.
+ * <p>
+ * When an append would pass {@code maxBytes}, live records are copied to a
+ * new file that replaces the old one, dropping the oldest if they still take
+ * more than three quarters of the limit. All methods are synchronized.
+ */
+final class CacheFile implements Closeable {
+
+    private static final Logger log = LoggerFactory.getLogger(CacheFile.class);
+
+    private static final int MAGIC = 0x53465643; // "SFVC"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 8;
+    private static final int RECORD_HEADER_SIZE = 12;
+    private static final int MIN_CAPACITY = 64 * 1024;
+
+    private record Entry(int offset, int keyLength, int valueLength) {
+
+        int size() {
+            return RECORD_HEADER_SIZE + keyLength + valueLength;
+        }
+    }
+
+    private final Path file;
+    private final long maxBytes;
+    // Oldest first; writing a key again moves it to the end
+    private final LinkedHashMap<String, Entry> index = new LinkedHashMap<>();
+
+    private FileChannel channel;
+    private MappedByteBuffer map;
+    private int end;
+    private long liveBytes;
+    private int tornBytes;
+    private int compactions;
+
+    private CacheFile(Path file, long maxBytes) {
+        this.file = file;
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * Opens or creates the file and rebuilds the index from it.
+     */
+    static CacheFile open(Path file, long maxBytes) throws IOException {
+        if (maxBytes < MIN_CAPACITY || maxBytes > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Cache size must be between 64 KB and 2 GB, was " + maxBytes);
+        }
+        CacheFile cacheFile = new CacheFile(file, maxBytes);
+        cacheFile.load();
+        return cacheFile;
+    }
+
+    private void load() throws IOException {
+        Path parent = file.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        long size = channel.size();
+        if (size == 0) {
+            remap(MIN_CAPACITY);
+            map.putInt(0, MAGIC).putInt(4, VERSION);
+            end = HEADER_SIZE;
+            return;
+        }
+        if (size < HEADER_SIZE || size > Integer.MAX_VALUE) {
+            channel.close();
+            throw new IOException(file + " is not a cache file");
+        }
+        remap((int) size);
+        if (map.getInt(0) != MAGIC || map.getInt(4) != VERSION) {
+            channel.close();
+            throw new IOException(file + " is not a cache file (version " + VERSION + ")");
+        }
+
+        int position = HEADER_SIZE;
+        while (true) {
+            Entry entry = readEntry(position, (int) size);
+            if (entry == null) {
+                break;
+            }
+            String key = key(entry);
+            index.remove(key);
+            index.put(key, entry);
+            position += entry.size();
+        }
+        end = position;
+        liveBytes = index.values().stream().mapToLong(Entry::size).sum();
+
+        // Whatever follows the last good record is either the zero tail or a torn write
+        tornBytes = nonZeroTail(end, (int) size);
+        if (tornBytes > 0) {
+            log.warn("Dropping {} bytes of incomplete records at the end of {}", tornBytes, file);
+            map.put(end, new byte[tornBytes]);
+        }
+    }
+
+    /**
+     * The record at {@code position}, or null if there is none or it is
+     * incomplete or corrupt.
+     */
+    private Entry readEntry(int position, int limit) {
+        if (position + RECORD_HEADER_SIZE > limit) {
+            return null;
+        }
+        int keyLength = map.getInt(position);
+        int valueLength = map.getInt(position + 4);
+        if (keyLength <= 0 || valueLength < 0
+                || (long) position + RECORD_HEADER_SIZE + keyLength + valueLength > limit) {
+            return null;
+        }
+        Entry entry = new Entry(position, keyLength, valueLength);
+        return map.getInt(position + 8) == checksum(entry) ? entry : null;
+    }
+
+    synchronized String get(String key) {
+        Entry entry = index.get(key);
+        if (entry == null) {
+            return null;
+        }
+        byte[] value = new byte[entry.valueLength()];
+        map.get(entry.offset() + RECORD_HEADER_SIZE + entry.keyLength(), value);
+        return new String(value, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Appends the record, compacting first if the file would grow past its
+     * limit.
+     *
+     * @return false if the record alone is too large for the file
+     */
+    synchronized boolean put(String key, String value) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        byte[] valueBytes = value.getBytes(StandardCharsets.UTF_8);
+        int size = RECORD_HEADER_SIZE + keyBytes.length + valueBytes.length;
+        if (keyBytes.length == 0 || size > (maxBytes - HEADER_SIZE) / 4) {
+            return false;
+        }
+        if ((long) end + size > maxBytes) {
+            compact(maxBytes * 3 / 4 - size);
+        }
+        if (end + size > map.capacity()) {
+            remap((int) Math.min(maxBytes, Math.max(2L * map.capacity(), (long) end + size)));
+        }
+
+        Entry entry = new Entry(end, keyBytes.length, valueBytes.length);
+        map.put(end + RECORD_HEADER_SIZE, keyBytes);
+        map.put(end + RECORD_HEADER_SIZE + keyBytes.length, valueBytes);
+        map.putInt(end, keyBytes.length);
+        map.putInt(end + 4, valueBytes.length);
+        map.putInt(end + 8, checksum(entry));
+
+        Entry previous = index.remove(key);
+        if (previous != null) {
+            liveBytes -= previous.size();
+        }
+        index.put(key, entry);
+        liveBytes += size;
+        end += size;
+        return true;
+    }
+
+    /**
+     * Rewrites the file with only the latest record of each key.
+     */
+    synchronized void compact() throws IOException {
+        compact(maxBytes);
+    }
+
+    /**
+     * Copies the live records, oldest first, to a new file that atomically
+     * replaces this one, skipping the oldest while the rest take more than
+     * {@code targetBytes}. A crash before the final rename leaves the old
+     * file intact.
+     */
+    private void compact(long targetBytes) throws IOException {
+        long start = System.nanoTime();
+        long keep = HEADER_SIZE + liveBytes;
+        Iterator<Map.Entry<String, Entry>> oldest = index.entrySet().iterator();
+        int dropped = 0;
+        while (keep > targetBytes && oldest.hasNext()) {
+            keep -= oldest.next().getValue().size();
+            oldest.remove();
+            dropped++;
+        }
+
+        Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+        LinkedHashMap<String, Entry> moved = new LinkedHashMap<>();
+        try (FileChannel out = FileChannel.open(compacted, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            writeFully(out, ByteBuffer.allocate(HEADER_SIZE).putInt(MAGIC).putInt(VERSION).flip());
+            int position = HEADER_SIZE;
+            for (Map.Entry<String, Entry> live : index.entrySet()) {
+                Entry entry = live.getValue();
+                writeFully(out, map.slice(entry.offset(), entry.size()));
+                moved.put(live.getKey(), new Entry(position, entry.keyLength(), entry.valueLength()));
+                position += entry.size();
+            }
+            out.force(true);
+        }
+        channel.close();
+        try {
+            Files.move(compacted, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            // Either the compacted file or, if the move failed, the old one
+            channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        }
+
+        int before = end;
+        index.clear();
+        index.putAll(moved);
+        end = HEADER_SIZE + (int) index.values().stream().mapToLong(Entry::size).sum();
+        liveBytes = end - HEADER_SIZE;
+        remap(Math.max(MIN_CAPACITY, end));
+        compactions++;
+        log.info("Compacted {} from {} to {} bytes ({} oldest entries dropped) in {} ms",
+                file, before, end, dropped, (System.nanoTime() - start) / 1_000_000);
+    }
+
+    synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * Bytes of records, including ones overwritten since the last compaction.
+     */
+    synchronized int usedBytes() {
+        return end;
+    }
+
+    synchronized long liveBytes() {
+        return liveBytes;
+    }
+
+    /**
+     * Bytes cut off a torn tail when the file was opened.
+     */
+    int tornBytes() {
+        return tornBytes;
+    }
+
+    synchronized int compactions() {
+        return compactions;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel.isOpen()) {
+            map.force();
+            channel.close();
+        }
+    }
+
+    private static void writeFully(FileChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+
+    private void remap(int capacity) throws IOException {
+        // Mapping past the end of the file extends it with zeros
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    private String key(Entry entry) {
+        byte[] key = new byte[entry.keyLength()];
+        map.get(entry.offset() + RECORD_HEADER_SIZE, key);
+        return new String(key, StandardCharsets.UTF_8);
+    }
+
+    private int checksum(Entry entry) {
+        CRC32C crc = new CRC32C();
+        crc.update(map.slice(entry.offset(), 8));
+        crc.update(map.slice(entry.offset() + RECORD_HEADER_SIZE, entry.keyLength() + entry.valueLength()));
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Length of the stretch from {@code from} to the last non-zero byte
+     * before {@code to}, rounded up to whole longs.
+     */
+    private int nonZeroTail(int from, int to) {
+        int last = from;
+        int i = from;
+        for (; i + Long.BYTES <= to; i += Long.BYTES) {
+            if (map.getLong(i) != 0) {
+                last = i + Long.BYTES;
+            }
+        }
+        for (; i < to; i++) {
+            if (map.get(i) != 0) {
+                last = i + 1;
+            }
+        }
+        return last - from;
+    }
+}
@@ -0,0 +1,59 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+
+/**
+ * Serves repeated osquery calls from a {@link ToolResultCache}. Calls without
+ * a {@code sql} argument go straight to the wrapped callback.
+ */
+class CachingToolCallback implements ToolCallback {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private final ToolCallback delegate;
+    private final ToolResultCache cache;
+
+    CachingToolCallback(ToolCallback delegate, ToolResultCache cache) {
+        this.delegate = delegate;
+        this.cache = cache;
+    }
+
+    @Override
+    public ToolDefinition getToolDefinition() {
+        return delegate.getToolDefinition();
+    }
+
+    @Override
+    public ToolMetadata getToolMetadata() {
+        return delegate.getToolMetadata();
+    }
+
+    @Override
+    public String call(String toolInput) {
+        return call(toolInput, null);
+    }
+
+    @Override
+    public String call(String toolInput, ToolContext toolContext) {
+        String sql = sqlArgument(toolInput);
+        if (sql == null) {
+            return delegate.call(toolInput, toolContext);
+        }
+        return cache.get(getToolDefinition().name(), sql, () -> delegate.call(toolInput, toolContext));
+    }
+
+    static String sqlArgument(String toolInput) {
+        try {
+            JsonNode sql = objectMapper.readTree(toolInput).path("sql");
+            return sql.isTextual() ? sql.asText() : null;
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+
+/**
+ * Shares one osquery call among concurrent calls with the same normalized
+ * SQL, for example when two commands in flight ask for the same table.
+ * Calls without a {@code sql} argument go straight to the wrapped callback.
+ */
+class CoalescingToolCallback implements ToolCallback {
+
+    private final ToolCallback delegate;
+    private final SingleFlight<String, String> flights;
+
+    CoalescingToolCallback(ToolCallback delegate, SingleFlight<String, String> flights) {
+        this.delegate = delegate;
+        this.flights = flights;
+    }
+
+    @Override
+    public ToolDefinition getToolDefinition() {
+        return delegate.getToolDefinition();
+    }
+
+    @Override
+    public ToolMetadata getToolMetadata() {
+        return delegate.getToolMetadata();
+    }
+
+    @Override
+    public String call(String toolInput) {
+        return call(toolInput, null);
+    }
+
+    @Override
+    public String call(String toolInput, ToolContext toolContext) {
+        String sql = CachingToolCallback.sqlArgument(toolInput);
+        if (sql == null) {
+            return delegate.call(toolInput, toolContext);
+        }
+        String key = getToolDefinition().name() + '\n' + OsquerySql.normalize(sql);
+        return flights.run(key, () -> delegate.call(toolInput, toolContext));
+    }
+}
@@ -0,0 +1,194 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+/**
+ * Starts a command on a partial transcript while the user is still holding
+ * the COMM button. A partial that stays unchanged for {@code settle} is
+ * handed to the runner; on release the final transcript either confirms the
+ * guess, and the answer (possibly already finished) is used, or the guess is
+ * cancelled and the caller runs the command as usual. The query results a
+ * guess produces are held back until it is confirmed.
+ * <p>
+ * A guess is confirmed when both transcripts are equal after
+ * {@link IntentMatcher#normalize normalization}, or differ by at most
+ * {@code tolerance} of the longer one's length in character edits. Guessing
+ * wrong only costs the wasted call: the osquery tools are read-only.
+ */
+class CommandSpeculator {
+
+    private static final Logger log = LoggerFactory.getLogger(CommandSpeculator.class);
+
+    enum Kind {
+        /** The final transcript matched; the early answer stands. */
+        HIT,
+        /** The final transcript differed; the early run was cancelled. */
+        MISS,
+        /** No partial had settled before release. */
+        NONE
+    }
+
+    /**
+     * @param answer    the early answer on a {@link Kind#HIT}, otherwise null
+     * @param tables    the early run's query results on a {@link Kind#HIT},
+     *                  otherwise null
+     * @param headStart how long the early run had been going at release
+     */
+    record Outcome(Kind kind, CompletableFuture<String> answer, Tables tables, Duration headStart) {
+
+        boolean hit() {
+            return kind == Kind.HIT;
+        }
+    }
+
+    /**
+     * Query results of a guess, held until the guess is confirmed and passed
+     * straight on after that.
+     */
+    static final class Tables implements Consumer<ResultTable> {
+
+        private final List<ResultTable> held = new ArrayList<>();
+        private Consumer<ResultTable> target;
+
+        @Override
+        public synchronized void accept(ResultTable table) {
+            if (target != null) {
+                target.accept(table);
+            } else {
+                held.add(table);
+            }
+        }
+
+        /**
+         * Replays the results so far to {@code target} and sends it any that follow.
+         */
+        synchronized void forwardTo(Consumer<ResultTable> target) {
+            this.target = target;
+            held.forEach(target);
+            held.clear();
+        }
+    }
+
+    private final BiFunction<String, Consumer<ResultTable>, CompletableFuture<String>> runner;
+    private final Duration settle;
+    private final double tolerance;
+
+    private long generation;
+    private Guess guess;
+    private boolean resolved;
+
+    /**
+     * @param runner starts a command, handing its query results to the given consumer
+     */
+    CommandSpeculator(BiFunction<String, Consumer<ResultTable>, CompletableFuture<String>> runner,
+                      Duration settle, double tolerance) {
+        this.runner = runner;
+        this.settle = settle;
+        this.tolerance = tolerance;
+    }
+
+    /**
+     * Takes the latest partial transcript. It is run once nothing newer
+     * arrives within {@code settle}; a running guess it no longer matches is
+     * cancelled.
+     */
+    synchronized void partial(String transcript) {
+        if (resolved) {
+            return;
+        }
+        long scheduled = ++generation;
+        if (guess != null) {
+            if (matches(guess.transcript(), transcript)) {
+                return;
+            }
+            guess.answer().cancel(true);
+            guess = null;
+        }
+        CompletableFuture.delayedExecutor(settle.toMillis(), TimeUnit.MILLISECONDS)
+                .execute(() -> settled(scheduled, transcript));
+    }
+
+    private synchronized void settled(long scheduled, String transcript) {
+        if (resolved || scheduled != generation) {
+            return;
+        }
+        log.debug("Speculating on \"{}\"", transcript);
+        Tables tables = new Tables();
+        guess = new Guess(transcript, runner.apply(transcript, tables), tables, System.nanoTime());
+    }
+
+    /**
+     * Compares the final transcript with the running guess, if any. After
+     * this, further partials are ignored.
+     */
+    synchronized Outcome resolve(String finalTranscript) {
+        resolved = true;
+        Guess current = guess;
+        guess = null;
+        if (current == null) {
+            return new Outcome(Kind.NONE, null, null, Duration.ZERO);
+        }
+        Duration headStart = Duration.ofNanos(System.nanoTime() - current.startNanos());
+        if (!current.answer().isCompletedExceptionally() && matches(current.transcript(), finalTranscript)) {
+            return new Outcome(Kind.HIT, current.answer(), current.tables(), headStart);
+        }
+        current.answer().cancel(true);
+        log.debug("Speculated \"{}\" but heard \"{}\"", current.transcript(), finalTranscript);
+        return new Outcome(Kind.MISS, null, null, headStart);
+    }
+
+    /**
+     * Drops any pending or running guess, for when the command is abandoned.
+     */
+    synchronized void cancel() {
+        resolved = true;
+        if (guess != null) {
+            guess.answer().cancel(true);
+            guess = null;
+        }
+    }
+
+    boolean matches(String guessed, String heard) {
+        String a = IntentMatcher.normalize(guessed).trim();
+        String b = IntentMatcher.normalize(heard).trim();
+        if (a.equals(b)) {
+            return true;
+        }
+        int allowed = (int) (tolerance * Math.max(a.length(), b.length()));
+        return Math.abs(a.length() - b.length()) <= allowed && editDistance(a, b) <= allowed;
+    }
+
+    /**
+     * Levenshtein distance over characters, two rows at a time.
+     */
+    static int editDistance(String a, String b) {
+        int[] previous = new int[b.length() + 1];
+        int[] row = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = j;
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            row[0] = i;
+            for (int j = 1; j <= b.length(); j++) {
+                int substitution = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                row[j] = Math.min(substitution, Math.min(previous[j], row[j - 1]) + 1);
+            }
+            int[] swap = previous;
+            previous = row;
+            row = swap;
+        }
+        return previous[b.length()];
+    }
+
+    private record Guess(String transcript, CompletableFuture<String> answer, Tables tables, long startNanos) {
+    }
+}
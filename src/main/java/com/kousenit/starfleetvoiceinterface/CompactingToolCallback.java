@@ -0,0 +1,52 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+
+/**
+ * Runs tool results through a {@link ResultCompactor} before the model sees
+ * them, so a few hundred process rows don't turn into a few hundred kilobytes
+ * of prompt.
+ */
+class CompactingToolCallback implements ToolCallback {
+
+    private static final Logger log = LoggerFactory.getLogger(CompactingToolCallback.class);
+
+    private final ToolCallback delegate;
+    private final ResultCompactor compactor;
+
+    CompactingToolCallback(ToolCallback delegate, ResultCompactor compactor) {
+        this.delegate = delegate;
+        this.compactor = compactor;
+    }
+
+    @Override
+    public ToolDefinition getToolDefinition() {
+        return delegate.getToolDefinition();
+    }
+
+    @Override
+    public ToolMetadata getToolMetadata() {
+        return delegate.getToolMetadata();
+    }
+
+    @Override
+    public String call(String toolInput) {
+        return call(toolInput, null);
+    }
+
+    @Override
+    public String call(String toolInput, ToolContext toolContext) {
+        String result = delegate.call(toolInput, toolContext);
+        String compacted = compactor.compact(result);
+        if (compacted != result) {
+            log.debug("Compacted {} result from {} to {} characters",
+                    getToolDefinition().name(), result.length(), compacted.length());
+        }
+        return compacted;
+    }
+}
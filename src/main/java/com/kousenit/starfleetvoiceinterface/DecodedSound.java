@@ -0,0 +1,15 @@
+package com.kousenit.starfleetvoiceinterface;
+
+/**
+ * A sound effect decoded once to interleaved 16-bit PCM in the mixer's format.
+ */
+record DecodedSound(String name, short[] samples, int channels) {
+
+    int frames() {
+        return samples.length / channels;
+    }
+
+    long sizeInBytes() {
+        return 2L * samples.length;
+    }
+}
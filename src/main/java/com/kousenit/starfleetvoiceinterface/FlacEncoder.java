@@ -0,0 +1,458 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import org.springframework.core.io.Resource;
+
+import javax.sound.sampled.AudioFormat;
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Incremental lossless FLAC encoder for 16-bit little-endian mono PCM.
+ * <p>
+ * Samples are encoded one fixed-size block at a time as they arrive from the
+ * capture path, so at release only the final partial block is left to encode.
+ * Each frame picks the cheapest of a CONSTANT, VERBATIM or FIXED (order 0-4)
+ * subframe; FIXED residuals use partitioned Rice coding with the partition
+ * order and Rice parameters chosen by exact bit counts. The STREAMINFO block
+ * (frame sizes, total samples, MD5 of the PCM) is patched in place when the
+ * stream is finished.
+ * <p>
+ * Not thread-safe; written from the recording thread and finished after that
+ * thread is joined.
+ */
+final class FlacEncoder implements PcmSink {
+
+    static final int BLOCK_SIZE = 4096;
+
+    private static final int BITS_PER_SAMPLE = 16;
+    private static final int MAX_FIXED_ORDER = 4;
+    private static final int MAX_PARTITION_ORDER = 8;
+    private static final int MAX_RICE_PARAMETER = 14;
+    private static final int STREAMINFO_OFFSET = 8;
+
+    private static final int[] CRC8_TABLE = new int[256];
+    private static final int[] CRC16_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc8 = i;
+            int crc16 = i << 8;
+            for (int bit = 0; bit < 8; bit++) {
+                crc8 = (crc8 & 0x80) != 0 ? (crc8 << 1) ^ 0x07 : crc8 << 1;
+                crc16 = (crc16 & 0x8000) != 0 ? (crc16 << 1) ^ 0x8005 : crc16 << 1;
+            }
+            CRC8_TABLE[i] = crc8 & 0xFF;
+            CRC16_TABLE[i] = crc16 & 0xFFFF;
+        }
+    }
+
+    private final int sampleRate;
+    private final int[] block = new int[BLOCK_SIZE];
+    private final int[] residual = new int[BLOCK_SIZE];
+    private final int[] bestResidual = new int[BLOCK_SIZE];
+    private final int[] riceParameters = new int[1 << MAX_PARTITION_ORDER];
+    private final int[] bestRiceParameters = new int[1 << MAX_PARTITION_ORDER];
+    private final long[] partitionCosts = new long[(1 << MAX_PARTITION_ORDER) * (MAX_RICE_PARAMETER + 1)];
+    private final MessageDigest md5;
+    private final BitWriter out = new BitWriter();
+
+    private int blockFill;
+    private int pendingLowByte = -1;
+    private long totalSamples;
+    private int frameNumber;
+    private int minFrameSize = Integer.MAX_VALUE;
+    private int maxFrameSize;
+
+    // Bit count of the residual partitions for the last choosePartitioning() call
+    private long partitionBits;
+
+    FlacEncoder(AudioFormat audioFormat) {
+        if (audioFormat.getSampleSizeInBits() != BITS_PER_SAMPLE || audioFormat.getChannels() != 1
+                || audioFormat.isBigEndian() || audioFormat.getEncoding() != AudioFormat.Encoding.PCM_SIGNED) {
+            throw new IllegalArgumentException("FLAC encoder requires 16-bit signed little-endian mono PCM");
+        }
+        this.sampleRate = (int) audioFormat.getSampleRate();
+        try {
+            this.md5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        reset();
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) {
+        md5.update(data, offset, length);
+        int end = offset + length;
+        int i = offset;
+        if (pendingLowByte >= 0 && i < end) {
+            addSample((short) (pendingLowByte | (data[i++] << 8)));
+            pendingLowByte = -1;
+        }
+        for (; i + 1 < end; i += 2) {
+            addSample((short) ((data[i] & 0xFF) | (data[i + 1] << 8)));
+        }
+        if (i < end) {
+            pendingLowByte = data[i] & 0xFF;
+        }
+    }
+
+    /**
+     * Encodes the final partial block, patches STREAMINFO and returns a view of
+     * the finished stream. The view is valid until the next {@link #reset()}.
+     */
+    Resource finish(String filename) {
+        if (blockFill > 0) {
+            encodeFrame(blockFill);
+            blockFill = 0;
+        }
+        patchStreamInfo();
+        return new ByteBufferResource(ByteBuffer.wrap(out.buffer(), 0, out.size()), filename);
+    }
+
+    long totalSamples() {
+        return totalSamples;
+    }
+
+    int encodedSize() {
+        return out.size();
+    }
+
+    void reset() {
+        out.clear();
+        md5.reset();
+        blockFill = 0;
+        pendingLowByte = -1;
+        totalSamples = 0;
+        frameNumber = 0;
+        minFrameSize = Integer.MAX_VALUE;
+        maxFrameSize = 0;
+
+        out.writeBytes('f', 'L', 'a', 'C');
+        // Metadata block header: last block, type 0 (STREAMINFO), 34 bytes
+        out.writeBits(0x80, 8);
+        out.writeBits(34, 24);
+        for (int i = 0; i < 34; i++) {
+            out.writeBits(0, 8); // patched by finish()
+        }
+    }
+
+    private void addSample(int sample) {
+        block[blockFill++] = sample;
+        if (blockFill == BLOCK_SIZE) {
+            encodeFrame(BLOCK_SIZE);
+            blockFill = 0;
+        }
+    }
+
+    private void encodeFrame(int blockSize) {
+        int frameStart = out.size();
+
+        out.writeBits(0b11111111111110, 14); // sync code
+        out.writeBits(0, 1);                 // reserved
+        out.writeBits(0, 1);                 // fixed block size stream
+        int blockSizeCode = blockSize == BLOCK_SIZE ? 0b1100 : blockSize <= 256 ? 0b0110 : 0b0111;
+        out.writeBits(blockSizeCode, 4);
+        out.writeBits(0b0000, 4);            // sample rate from STREAMINFO
+        out.writeBits(0b0000, 4);            // one independent channel
+        out.writeBits(0b100, 3);             // 16 bits per sample
+        out.writeBits(0, 1);                 // reserved
+        writeUtf8(frameNumber++);
+        if (blockSizeCode == 0b0110) {
+            out.writeBits(blockSize - 1, 8);
+        } else if (blockSizeCode == 0b0111) {
+            out.writeBits(blockSize - 1, 16);
+        }
+        out.writeBits(crc8(out.buffer(), frameStart, out.size()), 8);
+
+        encodeSubframe(blockSize);
+
+        out.alignToByte();
+        out.writeBits(crc16(out.buffer(), frameStart, out.size()), 16);
+
+        int frameSize = out.size() - frameStart;
+        minFrameSize = Math.min(minFrameSize, frameSize);
+        maxFrameSize = Math.max(maxFrameSize, frameSize);
+        totalSamples += blockSize;
+    }
+
+    private void encodeSubframe(int blockSize) {
+        if (isConstant(blockSize)) {
+            out.writeBits(0b0_000000_0, 8);
+            out.writeBits(block[0], BITS_PER_SAMPLE);
+            return;
+        }
+
+        long verbatimBits = 8 + (long) blockSize * BITS_PER_SAMPLE;
+        long bestBits = Long.MAX_VALUE;
+        int bestOrder = 0;
+        int bestPartitionOrder = 0;
+
+        for (int order = 0; order <= Math.min(MAX_FIXED_ORDER, blockSize - 1); order++) {
+            computeFixedResidual(order, blockSize);
+            int partitionOrder = choosePartitioning(order, blockSize);
+            long bits = 8 + (long) order * BITS_PER_SAMPLE + 2 + 4 + partitionBits;
+            if (bits < bestBits) {
+                bestBits = bits;
+                bestOrder = order;
+                bestPartitionOrder = partitionOrder;
+                System.arraycopy(residual, order, bestResidual, order, blockSize - order);
+                System.arraycopy(riceParameters, 0, bestRiceParameters, 0, 1 << partitionOrder);
+            }
+        }
+
+        if (bestBits >= verbatimBits) {
+            out.writeBits(0b0_000001_0, 8);
+            for (int i = 0; i < blockSize; i++) {
+                out.writeBits(block[i], BITS_PER_SAMPLE);
+            }
+            return;
+        }
+
+        out.writeBits(0b001000 | bestOrder, 7); // zero pad bit + FIXED type with order
+        out.writeBits(0, 1);                    // no wasted bits
+        for (int i = 0; i < bestOrder; i++) {
+            out.writeBits(block[i], BITS_PER_SAMPLE);
+        }
+        writeResidual(bestOrder, bestPartitionOrder, blockSize);
+    }
+
+    private boolean isConstant(int blockSize) {
+        int first = block[0];
+        for (int i = 1; i < blockSize; i++) {
+            if (block[i] != first) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void computeFixedResidual(int order, int blockSize) {
+        int[] x = block;
+        switch (order) {
+            case 0 -> System.arraycopy(x, 0, residual, 0, blockSize);
+            case 1 -> {
+                for (int i = 1; i < blockSize; i++) {
+                    residual[i] = x[i] - x[i - 1];
+                }
+            }
+            case 2 -> {
+                for (int i = 2; i < blockSize; i++) {
+                    residual[i] = x[i] - 2 * x[i - 1] + x[i - 2];
+                }
+            }
+            case 3 -> {
+                for (int i = 3; i < blockSize; i++) {
+                    residual[i] = x[i] - 3 * x[i - 1] + 3 * x[i - 2] - x[i - 3];
+                }
+            }
+            case 4 -> {
+                for (int i = 4; i < blockSize; i++) {
+                    residual[i] = x[i] - 4 * x[i - 1] + 6 * x[i - 2] - 4 * x[i - 3] + x[i - 4];
+                }
+            }
+            default -> throw new IllegalArgumentException("Unsupported fixed order " + order);
+        }
+    }
+
+    /**
+     * Finds the partition order with the fewest residual bits for the current
+     * residual. Costs for every Rice parameter are computed once at the finest
+     * partitioning and merged pairwise for coarser ones.
+     *
+     * @return the chosen partition order
+     */
+    private int choosePartitioning(int order, int blockSize) {
+        int maxPartitionOrder = 0;
+        while (maxPartitionOrder < MAX_PARTITION_ORDER
+                && blockSize % (1 << (maxPartitionOrder + 1)) == 0
+                && (blockSize >> (maxPartitionOrder + 1)) > order) {
+            maxPartitionOrder++;
+        }
+        int parameterCount = MAX_RICE_PARAMETER + 1;
+        int partitions = 1 << maxPartitionOrder;
+        int partitionSize = blockSize >> maxPartitionOrder;
+        Arrays.fill(partitionCosts, 0, partitions * parameterCount, 0);
+        for (int p = 0; p < partitions; p++) {
+            int start = p == 0 ? order : p * partitionSize;
+            int end = (p + 1) * partitionSize;
+            int base = p * parameterCount;
+            for (int i = start; i < end; i++) {
+                int folded = (residual[i] << 1) ^ (residual[i] >> 31);
+                for (int k = 0; k < parameterCount; k++) {
+                    partitionCosts[base + k] += (folded >>> k) + 1 + k;
+                }
+            }
+        }
+
+        long bestTotal = Long.MAX_VALUE;
+        int bestOrder = -1;
+        for (int partitionOrder = maxPartitionOrder; partitionOrder >= 0; partitionOrder--) {
+            int count = 1 << partitionOrder;
+            if (partitionOrder < maxPartitionOrder) {
+                // Merge pairs of finer partitions in place
+                for (int p = 0; p < count; p++) {
+                    int target = p * parameterCount;
+                    int left = 2 * p * parameterCount;
+                    int right = (2 * p + 1) * parameterCount;
+                    for (int k = 0; k < parameterCount; k++) {
+                        partitionCosts[target + k] = partitionCosts[left + k] + partitionCosts[right + k];
+                    }
+                }
+            }
+            long total = 0;
+            int[] parameters = new int[count];
+            for (int p = 0; p < count; p++) {
+                int base = p * parameterCount;
+                int bestK = 0;
+                for (int k = 1; k < parameterCount; k++) {
+                    if (partitionCosts[base + k] < partitionCosts[base + bestK]) {
+                        bestK = k;
+                    }
+                }
+                parameters[p] = bestK;
+                total += 4 + partitionCosts[base + bestK];
+            }
+            if (total < bestTotal) {
+                bestTotal = total;
+                bestOrder = partitionOrder;
+                System.arraycopy(parameters, 0, riceParameters, 0, count);
+            }
+        }
+        partitionBits = bestTotal;
+        return bestOrder;
+    }
+
+    private void writeResidual(int order, int partitionOrder, int blockSize) {
+        out.writeBits(0b00, 2); // Rice coding, 4-bit parameters
+        out.writeBits(partitionOrder, 4);
+        int partitionSize = blockSize >> partitionOrder;
+        for (int p = 0; p < (1 << partitionOrder); p++) {
+            int k = bestRiceParameters[p];
+            out.writeBits(k, 4);
+            int start = p == 0 ? order : p * partitionSize;
+            int end = (p + 1) * partitionSize;
+            for (int i = start; i < end; i++) {
+                int folded = (bestResidual[i] << 1) ^ (bestResidual[i] >> 31);
+                out.writeUnary(folded >>> k);
+                if (k > 0) {
+                    out.writeBits(folded, k);
+                }
+            }
+        }
+    }
+
+    private void writeUtf8(int value) {
+        if (value < 0x80) {
+            out.writeBits(value, 8);
+            return;
+        }
+        int continuationBytes = value < 0x800 ? 1 : value < 0x10000 ? 2 : value < 0x200000 ? 3
+                : value < 0x4000000 ? 4 : 5;
+        int leadBits = 6 - continuationBytes;
+        int lead = (0xFF << (7 - continuationBytes)) & 0xFF;
+        out.writeBits(lead | (value >>> (6 * continuationBytes)) & ((1 << leadBits) - 1), 8);
+        for (int shift = 6 * (continuationBytes - 1); shift >= 0; shift -= 6) {
+            out.writeBits(0x80 | ((value >>> shift) & 0x3F), 8);
+        }
+    }
+
+    private void patchStreamInfo() {
+        byte[] buffer = out.buffer();
+        int i = STREAMINFO_OFFSET;
+        i = putBigEndian(buffer, i, BLOCK_SIZE, 2);
+        i = putBigEndian(buffer, i, BLOCK_SIZE, 2);
+        i = putBigEndian(buffer, i, frameNumber == 0 ? 0 : minFrameSize, 3);
+        i = putBigEndian(buffer, i, maxFrameSize, 3);
+        long packed = ((long) sampleRate << 44) | ((long) (BITS_PER_SAMPLE - 1) << 36) | totalSamples;
+        i = putBigEndian(buffer, i, packed, 8);
+        byte[] digest = md5.digest();
+        System.arraycopy(digest, 0, buffer, i, digest.length);
+    }
+
+    private static int putBigEndian(byte[] buffer, int offset, long value, int bytes) {
+        for (int b = bytes - 1; b >= 0; b--) {
+            buffer[offset++] = (byte) (value >>> (8 * b));
+        }
+        return offset;
+    }
+
+    private static int crc8(byte[] data, int from, int to) {
+        int crc = 0;
+        for (int i = from; i < to; i++) {
+            crc = CRC8_TABLE[(crc ^ data[i]) & 0xFF];
+        }
+        return crc;
+    }
+
+    private static int crc16(byte[] data, int from, int to) {
+        int crc = 0;
+        for (int i = from; i < to; i++) {
+            crc = ((crc << 8) ^ CRC16_TABLE[((crc >>> 8) ^ data[i]) & 0xFF]) & 0xFFFF;
+        }
+        return crc;
+    }
+
+    /**
+     * MSB-first bit writer over a growable byte array.
+     */
+    private static final class BitWriter {
+
+        private byte[] buffer = new byte[64 * 1024];
+        private int size;
+        private long accumulator;
+        private int pendingBits;
+
+        void writeBits(int value, int bits) {
+            accumulator = (accumulator << bits) | (value & ((1L << bits) - 1));
+            pendingBits += bits;
+            while (pendingBits >= 8) {
+                pendingBits -= 8;
+                put((byte) (accumulator >>> pendingBits));
+            }
+        }
+
+        void writeUnary(int zeros) {
+            while (zeros >= 32) {
+                writeBits(0, 32);
+                zeros -= 32;
+            }
+            writeBits(1, zeros + 1);
+        }
+
+        void writeBytes(char... ascii) {
+            for (char c : ascii) {
+                writeBits(c, 8);
+            }
+        }
+
+        void alignToByte() {
+            if (pendingBits > 0) {
+                writeBits(0, 8 - pendingBits);
+            }
+        }
+
+        byte[] buffer() {
+            return buffer;
+        }
+
+        int size() {
+            return size;
+        }
+
+        void clear() {
+            size = 0;
+            accumulator = 0;
+            pendingBits = 0;
+        }
+
+        private void put(byte b) {
+            if (size == buffer.length) {
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            buffer[size++] = b;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Batches streamed text into at most one UI update per frame. Tokens can be
+ * appended from any thread; the accumulated text is handed to {@code apply}
+ * on the UI executor ({@code Platform::runLater} in the app), no sooner than
+ * one frame after the previous update.
+ */
+final class FrameCoalescer {
+
+    private final Executor uiExecutor;
+    private final long frameNanos;
+    private final Consumer<String> apply;
+
+    private final StringBuilder pending = new StringBuilder();
+    private boolean scheduled;
+    private long lastFlush;
+    private long updates;
+
+    FrameCoalescer(Executor uiExecutor, Duration frame, Consumer<String> apply) {
+        this.uiExecutor = uiExecutor;
+        this.frameNanos = frame.toNanos();
+        this.apply = apply;
+        this.lastFlush = System.nanoTime() - frameNanos;
+    }
+
+    void append(String text) {
+        long delay;
+        synchronized (this) {
+            pending.append(text);
+            if (scheduled) {
+                return;
+            }
+            scheduled = true;
+            delay = lastFlush + frameNanos - System.nanoTime();
+        }
+        if (delay <= 0) {
+            uiExecutor.execute(this::flush);
+        } else {
+            CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS).execute(() -> uiExecutor.execute(this::flush));
+        }
+    }
+
+    /**
+     * Delivers anything still pending right away. An update already
+     * scheduled for later then finds nothing left to deliver.
+     */
+    void finish() {
+        uiExecutor.execute(this::flush);
+    }
+
+    /**
+     * Number of UI updates delivered so far.
+     */
+    synchronized long updates() {
+        return updates;
+    }
+
+    private void flush() {
+        String text;
+        synchronized (this) {
+            scheduled = false;
+            if (pending.isEmpty()) {
+                return;
+            }
+            text = pending.toString();
+            pending.setLength(0);
+            lastFlush = System.nanoTime();
+            updates++;
+        }
+        apply.accept(text);
+    }
+}
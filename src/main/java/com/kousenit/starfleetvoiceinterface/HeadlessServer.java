@@ -0,0 +1,487 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kousenit.starfleetvoiceinterface.config.HeadlessProperties;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Serves the voice pipeline to remote consoles over HTTP, for running
+ * without the JavaFX window ({@code --headless}).
+ * <p>
+ * A console opens a session, then posts each recording as raw PCM in the
+ * capture format (16 kHz, 16-bit, mono, little-endian), streamed while the
+ * user talks if it likes. The response is a server-sent event stream: the
+ * {@code transcript}, the answer as {@code token} events while the model
+ * produces it, then {@code done} or {@code error}.
+ * <pre>
+ * POST   /sessions                 201 {"id": "..."}
+ * POST   /sessions/{id}/commands   200 text/event-stream
+ * DELETE /sessions/{id}            204
+ * GET    /sessions                 200 {"sessions": n, "commands": n}
+ * </pre>
+ * Every exchange runs on its own virtual thread, and every command records
+ * into its own {@link TranscriptionService.Capture}, so sessions share no
+ * recording state. The exceptions are reading the audio and writing the
+ * answer: the JDK server reads request bodies and writes responses while
+ * holding a monitor, which on Java 21 pins a virtual thread to its carrier
+ * for as long as the console takes to talk or to read, so uploads are read
+ * and answers written on platform threads.
+ * <p>
+ * The server listens on loopback unless configured otherwise, and with a
+ * token configured answers 401 to any request without it.
+ * <p>
+ * Backpressure per session: one command at a time (409 otherwise), and the
+ * answer is batched into at most one write per flush interval, so a slow
+ * console gets fewer, larger writes rather than holding up the model.
+ * Across sessions, commands wait for one of a fixed number of command slots
+ * before any audio is read, and are turned away with 503 and
+ * {@code Retry-After} if none frees up in time, so only admitted commands
+ * hold a recording buffer. A console that stalls mid-upload is cut off after
+ * the upload timeout, and a command still unanswered at the command timeout
+ * is interrupted and gets an {@code error} event.
+ */
+@Component
+@ConditionalOnProperty(prefix = "starfleet.headless", name = "enabled", havingValue = "true")
+public class HeadlessServer {
+
+    private static final Logger log = LoggerFactory.getLogger(HeadlessServer.class);
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static final int CHUNK = 4096;
+
+    private final TranscriptionService transcriptionService;
+    private final McpClientService mcpService;
+    private final String bindAddress;
+    private final int port;
+    private final byte[] authorization;
+    private final int maxSessions;
+    private final Semaphore commandSlots;
+    private final Duration queueTimeout;
+    private final Duration uploadTimeout;
+    private final Duration commandTimeout;
+    private final Duration sessionIdleTimeout;
+    private final Duration flushInterval;
+
+    private final ConcurrentHashMap<String, Session> sessions = new ConcurrentHashMap<>();
+    private final AtomicInteger commandsRunning = new AtomicInteger();
+    private final ExecutorService exchanges =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("headless-", 0).factory());
+    private final ThreadFactory uploads = Thread.ofPlatform().name("headless-upload-", 0).daemon().factory();
+    private final ThreadFactory commands = Thread.ofVirtual().name("headless-command-", 0).factory();
+    private final ThreadFactory writers = Thread.ofPlatform().name("headless-writer-", 0).daemon().factory();
+    private final ScheduledExecutorService reaper = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("headless-reaper").daemon().factory());
+
+    private HttpServer server;
+
+    /**
+     * A port of zero in {@code properties} listens on any free port.
+     */
+    @Autowired
+    public HeadlessServer(TranscriptionService transcriptionService, McpClientService mcpService,
+                          HeadlessProperties properties) {
+        this.transcriptionService = transcriptionService;
+        this.mcpService = mcpService;
+        this.bindAddress = properties.bindAddress();
+        this.port = properties.port();
+        String token = properties.token();
+        this.authorization = token == null || token.isBlank() ? null
+                : ("Bearer " + token).getBytes(StandardCharsets.UTF_8);
+        this.maxSessions = properties.maxSessions();
+        this.commandSlots = new Semaphore(properties.maxConcurrentCommands());
+        this.queueTimeout = properties.queueTimeout();
+        this.uploadTimeout = properties.uploadTimeout();
+        this.commandTimeout = properties.commandTimeout();
+        this.sessionIdleTimeout = properties.sessionIdleTimeout();
+        this.flushInterval = properties.flushInterval();
+    }
+
+    @PostConstruct
+    public void start() throws IOException {
+        InetAddress address = InetAddress.getByName(bindAddress);
+        if (authorization == null && !address.isLoopbackAddress()) {
+            throw new IllegalStateException(
+                    "Set starfleet.headless.token to serve consoles on " + bindAddress + " rather than loopback");
+        }
+        server = HttpServer.create(new InetSocketAddress(address, port), 0);
+        server.setExecutor(exchanges);
+        server.createContext("/sessions", this::handle);
+        server.start();
+
+        long interval = Math.max(1000, sessionIdleTimeout.toMillis() / 4);
+        reaper.scheduleWithFixedDelay(this::closeIdleSessions, interval, interval, TimeUnit.MILLISECONDS);
+        log.info("Headless voice server listening on {}:{}{}", address.getHostAddress(), port(),
+                authorization == null ? "" : " (token required)");
+    }
+
+    int port() {
+        return server.getAddress().getPort();
+    }
+
+    int sessionCount() {
+        return sessions.size();
+    }
+
+    @PreDestroy
+    public void stop() {
+        reaper.shutdownNow();
+        if (server != null) {
+            server.stop(1);
+        }
+        exchanges.shutdownNow();
+        sessions.clear();
+    }
+
+    private void handle(HttpExchange exchange) {
+        try (exchange) {
+            String[] path = exchange.getRequestURI().getPath().split("/");
+            String method = exchange.getRequestMethod();
+            if (!authorized(exchange)) {
+                exchange.getResponseHeaders().set("WWW-Authenticate", "Bearer");
+                sendJson(exchange, 401, Map.of("error", "Missing or wrong token"));
+            } else if (path.length < 2 || !path[1].equals("sessions")) {
+                sendJson(exchange, 404, Map.of("error", "Not found"));
+            } else if (path.length == 2 && method.equals("POST")) {
+                openSession(exchange);
+            } else if (path.length == 2 && method.equals("GET")) {
+                sendJson(exchange, 200, Map.of("sessions", sessions.size(), "commands", commandsRunning.get()));
+            } else if (path.length == 3 && method.equals("DELETE")) {
+                closeSession(exchange, path[2]);
+            } else if (path.length == 4 && path[3].equals("commands") && method.equals("POST")) {
+                command(exchange, path[2]);
+            } else {
+                sendJson(exchange, 404, Map.of("error", "Not found"));
+            }
+        } catch (IOException e) {
+            log.debug("Console connection failed: {}", e.getMessage());
+        }
+    }
+
+    private boolean authorized(HttpExchange exchange) {
+        if (authorization == null) {
+            return true;
+        }
+        String header = exchange.getRequestHeaders().getFirst("Authorization");
+        // Constant time, so the comparison doesn't give the token away
+        return header != null && MessageDigest.isEqual(authorization, header.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private void openSession(HttpExchange exchange) throws IOException {
+        if (sessions.size() >= maxSessions) {
+            exchange.getResponseHeaders().set("Retry-After", "5");
+            sendJson(exchange, 503, Map.of("error", "Too many sessions"));
+            return;
+        }
+        Session session = new Session(UUID.randomUUID().toString());
+        sessions.put(session.id, session);
+        log.debug("Opened session {} ({} open)", session.id, sessions.size());
+        sendJson(exchange, 201, Map.of("id", session.id));
+    }
+
+    private void closeSession(HttpExchange exchange, String id) throws IOException {
+        if (sessions.remove(id) == null) {
+            sendJson(exchange, 404, Map.of("error", "No such session"));
+            return;
+        }
+        exchange.sendResponseHeaders(204, -1);
+    }
+
+    private void command(HttpExchange exchange, String id) throws IOException {
+        Session session = sessions.get(id);
+        if (session == null) {
+            sendJson(exchange, 404, Map.of("error", "No such session"));
+            return;
+        }
+        if (!session.busy.compareAndSet(false, true)) {
+            sendJson(exchange, 409, Map.of("error", "A command is already running in this session"));
+            return;
+        }
+        try {
+            session.touch();
+            if (!commandSlots.tryAcquire(queueTimeout.toMillis(), TimeUnit.MILLISECONDS)) {
+                exchange.getResponseHeaders().set("Retry-After", "1");
+                sendJson(exchange, 503, Map.of("error", "Too many commands in progress"));
+                return;
+            }
+            commandsRunning.incrementAndGet();
+            try {
+                record(exchange);
+            } finally {
+                commandsRunning.decrementAndGet();
+                commandSlots.release();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            session.touch();
+            session.busy.set(false);
+        }
+    }
+
+    private void record(HttpExchange exchange) throws IOException, InterruptedException {
+        TranscriptionService.Capture capture = transcriptionService.newCapture(partial -> {
+        });
+        boolean answering = false;
+        try {
+            if (!readAudio(exchange.getRequestBody(), capture)) {
+                log.debug("Console still sending audio after {} ms, cut off", uploadTimeout.toMillis());
+                return;
+            }
+            long released = System.nanoTime();
+            if (capture.audioBytes() == 0) {
+                sendJson(exchange, 400, Map.of("error", "No audio in the request"));
+                return;
+            }
+            answering = true;
+            answer(exchange, capture, released);
+        } finally {
+            if (!answering) {
+                capture.release();
+            }
+        }
+    }
+
+    /**
+     * Feeds the request body to the capture as it arrives, until it ends or
+     * voice activity detection has heard enough trailing silence.
+     *
+     * @return false if the console was still sending at the upload timeout
+     */
+    private boolean readAudio(InputStream body, TranscriptionService.Capture capture)
+            throws IOException, InterruptedException {
+        AtomicReference<Exception> failure = new AtomicReference<>();
+        Thread reader = uploads.newThread(() -> {
+            try {
+                byte[] chunk = new byte[CHUNK];
+                int read;
+                while ((read = body.read(chunk)) >= 0) {
+                    if (read > 0 && !capture.write(chunk, 0, read)) {
+                        break;
+                    }
+                }
+                capture.finish();
+            } catch (IOException | RuntimeException e) {
+                failure.set(e);
+            }
+        });
+        reader.start();
+        try {
+            if (!reader.join(uploadTimeout)) {
+                stopReading(reader);
+                return false;
+            }
+        } catch (InterruptedException e) {
+            stopReading(reader);
+            throw e;
+        }
+        Exception failed = failure.get();
+        if (failed != null) {
+            throw failed instanceof IOException io ? io : new IOException("Recording upload failed", failed);
+        }
+        return true;
+    }
+
+    /**
+     * Interrupts a reader blocked on the connection, which closes its channel,
+     * and waits for it so the capture is no longer written to.
+     */
+    private static void stopReading(Thread reader) {
+        reader.interrupt();
+        boolean interrupted = false;
+        while (reader.isAlive()) {
+            try {
+                reader.join();
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Transcribes and answers on a thread of its own, which releases the
+     * capture when it is done. A command still running at the command
+     * timeout is interrupted, abandoning its model and tool calls, and the
+     * console gets an error in place of the rest of the answer.
+     */
+    private void answer(HttpExchange exchange, TranscriptionService.Capture capture, long released)
+            throws InterruptedException {
+        EventStream events = new EventStream(exchange);
+        Thread worker = commands.newThread(() -> {
+            try {
+                respond(events, capture, released);
+            } finally {
+                capture.release();
+            }
+        });
+        worker.start();
+        try {
+            if (!worker.join(commandTimeout)) {
+                worker.interrupt();
+                log.warn("Command gave up after {} ms", commandTimeout.toMillis());
+                events.fail("No answer within " + commandTimeout.toMillis() + " ms");
+            }
+        } catch (InterruptedException e) {
+            worker.interrupt();
+            throw e;
+        }
+    }
+
+    private void respond(EventStream events, TranscriptionService.Capture capture, long released) {
+        // One writer per command keeps updates in order; late flushes after the last one have nothing to send
+        ThreadPoolExecutor writer = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), writers, new ThreadPoolExecutor.DiscardPolicy());
+        try {
+            String transcript = capture.transcribe();
+            writer.execute(() -> events.send("transcript", Map.of("text", transcript)));
+
+            FrameCoalescer coalescer = new FrameCoalescer(writer, flushInterval,
+                    text -> events.send("token", Map.of("text", text)));
+            mcpService.streamCommand(capture.commandId(), transcript, coalescer::append);
+            coalescer.finish();
+            writer.execute(() -> events.send("done", Map.of("ms", (System.nanoTime() - released) / 1_000_000)));
+            writer.shutdown();
+            writer.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            // Past the command timeout, which the console has already been told about
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            if (!SingleFlight.interrupted(e)) {
+                log.warn("Command failed: {}", e.getMessage());
+                writer.execute(() -> events.send("error", Map.of("message", String.valueOf(e.getMessage()))));
+            }
+        } finally {
+            // Whatever is queued still goes out, unless the stream has been closed since
+            writer.shutdown();
+        }
+    }
+
+    private void closeIdleSessions() {
+        long idleNanos = sessionIdleTimeout.toNanos();
+        long now = System.nanoTime();
+        sessions.values().removeIf(session -> !session.busy.get() && now - session.lastActive > idleNanos);
+    }
+
+    private static void sendJson(HttpExchange exchange, int status, Map<String, ?> body) throws IOException {
+        byte[] json = objectMapper.writeValueAsBytes(body);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, json.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(json);
+        }
+    }
+
+    private static final class Session {
+
+        private final String id;
+        private final AtomicBoolean busy = new AtomicBoolean();
+        private volatile long lastActive = System.nanoTime();
+
+        private Session(String id) {
+            this.id = id;
+        }
+
+        void touch() {
+            lastActive = System.nanoTime();
+        }
+    }
+
+    /**
+     * Server-sent events to one console, starting the response with the
+     * first event. A console that goes away stops getting events; the
+     * command itself runs to the end. Guarded by a lock rather than a
+     * monitor, so a virtual thread waiting on a slow console's write isn't
+     * pinned to its carrier.
+     */
+    private static final class EventStream {
+
+        private final HttpExchange exchange;
+        private final ReentrantLock lock = new ReentrantLock();
+        private OutputStream out;
+        private boolean closed;
+
+        EventStream(HttpExchange exchange) {
+            this.exchange = exchange;
+        }
+
+        void send(String event, Map<String, ?> data) {
+            lock.lock();
+            try {
+                write(event, data);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        /**
+         * Sends a last {@code error} event; anything sent after it is dropped.
+         */
+        void fail(String message) {
+            lock.lock();
+            try {
+                write("error", Map.of("message", message));
+                closed = true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        private void write(String event, Map<String, ?> data) {
+            if (closed) {
+                return;
+            }
+            try {
+                if (out == null) {
+                    exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+                    exchange.getResponseHeaders().set("Cache-Control", "no-cache");
+                    exchange.sendResponseHeaders(200, 0);
+                    out = exchange.getResponseBody();
+                }
+                out.write(("event: " + event + "\ndata: " + objectMapper.writeValueAsString(data) + "\n\n")
+                        .getBytes(StandardCharsets.UTF_8));
+                out.flush();
+            } catch (JsonProcessingException e) {
+                throw new IllegalStateException(e);
+            } catch (IOException e) {
+                closed = true;
+                log.debug("Console went away: {}", e.getMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.TargetDataLine;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Keeps one {@link TargetDataLine} open for the whole session and captures
+ * into a {@link PcmRingBuffer}. Pressing the COMM button then costs nothing
+ * but a {@link #markStart(Duration)}, and the returned cursor starts a little
+ * in the past so the first syllable is never clipped.
+ */
+class HotMicrophone implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(HotMicrophone.class);
+
+    private static final long POLL_NANOS = TimeUnit.MICROSECONDS.toNanos(500);
+
+    private final TargetDataLine line;
+    private final AudioFormat audioFormat;
+    private final PcmRingBuffer ring;
+    private final int chunkBytes;
+
+    private volatile boolean running;
+    private Thread captureThread;
+
+    HotMicrophone(TargetDataLine line, AudioFormat audioFormat, Duration ringLength) {
+        this.line = line;
+        this.audioFormat = audioFormat;
+        this.ring = new PcmRingBuffer(bytesFor(ringLength));
+        this.chunkBytes = bytesFor(Duration.ofMillis(20));
+    }
+
+    void start() throws LineUnavailableException {
+        line.open(audioFormat);
+        line.start();
+        running = true;
+
+        captureThread = new Thread(this::capture, "hot-mic");
+        captureThread.setDaemon(true);
+        captureThread.start();
+        log.info("Hot microphone open, ring buffer holds {} bytes", ring.capacity());
+    }
+
+    /**
+     * Starts a new reader {@code preRoll} before the current capture position,
+     * limited to what the ring still holds.
+     */
+    Cursor markStart(Duration preRoll) {
+        long now = ring.writePosition();
+        long start = Math.max(0, now - Math.min(bytesFor(preRoll), ring.capacity() - chunkBytes));
+        start -= start % audioFormat.getFrameSize();
+        return new Cursor(start);
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        line.stop();
+        line.close();
+        if (captureThread != null) {
+            try {
+                captureThread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void capture() {
+        byte[] buffer = new byte[chunkBytes];
+        while (running) {
+            int bytesRead = line.read(buffer, 0, buffer.length);
+            if (bytesRead > 0) {
+                ring.write(buffer, 0, bytesRead);
+            }
+        }
+    }
+
+    private int bytesFor(Duration duration) {
+        long frames = (long) (audioFormat.getSampleRate() * duration.toMillis() / 1000);
+        return Math.toIntExact(frames * audioFormat.getFrameSize());
+    }
+
+    /**
+     * Reading position of one recording. Used from a single thread.
+     */
+    final class Cursor {
+
+        private long position;
+
+        private Cursor(long position) {
+            this.position = position;
+        }
+
+        long position() {
+            return position;
+        }
+
+        /**
+         * Waits up to {@code maxWait} for audio and copies what is available.
+         *
+         * @return bytes copied, or 0 if nothing arrived in time
+         */
+        int read(byte[] dst, int offset, int length, Duration maxWait) {
+            long deadline = System.nanoTime() + maxWait.toNanos();
+            while (true) {
+                int n = readAvailable(dst, offset, length);
+                if (n > 0 || System.nanoTime() >= deadline || !running) {
+                    return n;
+                }
+                LockSupport.parkNanos(POLL_NANOS);
+            }
+        }
+
+        /**
+         * Copies whatever has been captured up to now, without waiting.
+         */
+        int readAvailable(byte[] dst, int offset, int length) {
+            int n = ring.read(position, dst, offset, length);
+            if (n == PcmRingBuffer.OVERRUN) {
+                // Reader fell a full lap behind: skip to the oldest audio still held
+                long oldest = ring.writePosition() - ring.capacity() + chunkBytes;
+                log.warn("Hot microphone reader overrun, skipping {} bytes", oldest - position);
+                position = oldest - oldest % audioFormat.getFrameSize();
+                return 0;
+            }
+            position += n;
+            return n;
+        }
+    }
+}
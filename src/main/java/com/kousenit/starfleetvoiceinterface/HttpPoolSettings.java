@@ -0,0 +1,36 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import com.kousenit.starfleetvoiceinterface.config.HttpProperties;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.context.properties.bind.Binder;
+import org.springframework.boot.env.EnvironmentPostProcessor;
+import org.springframework.core.env.ConfigurableEnvironment;
+
+/**
+ * Hands {@code starfleet.http.keep-alive} and {@code max-idle-connections} to
+ * the JDK HTTP client's connection pool. The pool reads its settings from
+ * system properties once, when the client classes load, so this runs as the
+ * environment is prepared, before any bean can build a client. A
+ * {@code -Djdk.httpclient.*} setting on the command line wins.
+ */
+public class HttpPoolSettings implements EnvironmentPostProcessor {
+
+    @Override
+    public void postProcessEnvironment(ConfigurableEnvironment environment, SpringApplication application) {
+        HttpProperties properties = Binder.get(environment).bindOrCreate("starfleet.http", HttpProperties.class);
+        apply(properties);
+    }
+
+    static void apply(HttpProperties properties) {
+        String keepAliveSeconds = String.valueOf(Math.max(1, properties.keepAlive().toSeconds()));
+        setIfAbsent("jdk.httpclient.keepalive.timeout", keepAliveSeconds);
+        setIfAbsent("jdk.httpclient.keepalive.timeout.h2", keepAliveSeconds);
+        setIfAbsent("jdk.httpclient.connectionPoolSize", String.valueOf(properties.maxIdleConnections()));
+    }
+
+    private static void setIfAbsent(String property, String value) {
+        if (System.getProperty(property) == null) {
+            System.setProperty(property, value);
+        }
+    }
+}
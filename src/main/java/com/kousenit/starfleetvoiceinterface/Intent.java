@@ -0,0 +1,59 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A command the computer can answer without the language model: the cue
+ * phrases that recognize it (each with the confidence it contributes), the
+ * osquery SQL that answers it, and the templates that turn rows into speech.
+ * <p>
+ * Placeholders are column names in braces. {@code {col|mb}} and
+ * {@code {col|gb}} format a byte count. When {@code rowAnswer} is set,
+ * {@code answer} is a heading followed by one {@code rowAnswer} line per row;
+ * otherwise {@code answer} is filled from the first row.
+ */
+record Intent(String name, String sql, Map<String, Double> cues, String answer, String rowAnswer) {
+
+    private static final Pattern PLACEHOLDER = Pattern.compile("\\{(\\w+)(?:\\|(\\w+))?}");
+
+    String format(List<Map<String, String>> rows) {
+        StringBuilder text = new StringBuilder(fill(answer, rows.getFirst()));
+        if (rowAnswer != null) {
+            for (Map<String, String> row : rows) {
+                text.append('\n').append(fill(rowAnswer, row));
+            }
+        }
+        return text.toString();
+    }
+
+    private static String fill(String template, Map<String, String> row) {
+        Matcher matcher = PLACEHOLDER.matcher(template);
+        StringBuilder text = new StringBuilder();
+        while (matcher.find()) {
+            String value = row.getOrDefault(matcher.group(1), "unknown");
+            if (matcher.group(2) != null) {
+                value = bytes(value, matcher.group(2));
+            }
+            matcher.appendReplacement(text, Matcher.quoteReplacement(value));
+        }
+        matcher.appendTail(text);
+        return text.toString();
+    }
+
+    private static String bytes(String value, String unit) {
+        try {
+            double bytes = Double.parseDouble(value);
+            return switch (unit) {
+                case "gb" -> String.format(Locale.ROOT, "%.1f", bytes / (1024 * 1024 * 1024));
+                case "mb" -> String.format(Locale.ROOT, "%.0f", bytes / (1024 * 1024));
+                default -> value;
+            };
+        } catch (NumberFormatException e) {
+            return value;
+        }
+    }
+}
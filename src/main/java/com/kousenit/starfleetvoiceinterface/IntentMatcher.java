@@ -0,0 +1,89 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * Scores a transcript against the local intents. An intent's confidence is
+ * the sum of its matched cue weights, capped at 1; a negative cue rules the
+ * intent out for phrasings it would answer wrongly. Words that ask for
+ * reasoning or action ("why", "kill", ...) cost 0.5, since a canned answer
+ * can't address them. A match is only returned when it clears the threshold
+ * and beats the runner-up by the margin; everything else goes to the model.
+ */
+final class IntentMatcher {
+
+    record Match(Intent intent, double confidence) {
+    }
+
+    private static final Set<String> NEEDS_MODEL = Set.of(
+            "why", "should", "explain", "compare", "recommend", "history", "yesterday", "trend",
+            "kill", "stop", "restart", "quit", "close", "fix");
+
+    private final List<Intent> intents;
+    private final double threshold;
+    private final double margin;
+
+    IntentMatcher(List<Intent> intents, double threshold, double margin) {
+        this.intents = intents;
+        this.threshold = threshold;
+        this.margin = margin;
+    }
+
+    Optional<Match> match(String transcript) {
+        List<Match> ranked = rank(transcript);
+        Match best = ranked.getFirst();
+        double runnerUp = ranked.size() > 1 ? ranked.get(1).confidence() : 0.0;
+        if (best.confidence() < threshold || best.confidence() - runnerUp < margin) {
+            return Optional.empty();
+        }
+        return Optional.of(best);
+    }
+
+    /**
+     * All intents, most confident first.
+     */
+    List<Match> rank(String transcript) {
+        String text = normalize(transcript);
+        double penalty = 0.0;
+        for (String word : NEEDS_MODEL) {
+            if (contains(text, word)) {
+                penalty = 0.5;
+                break;
+            }
+        }
+
+        double finalPenalty = penalty;
+        return intents.stream()
+                .map(intent -> new Match(intent, Math.max(0.0, score(intent, text) - finalPenalty)))
+                .sorted(Comparator.comparingDouble(Match::confidence).reversed())
+                .toList();
+    }
+
+    private static double score(Intent intent, String text) {
+        double score = 0.0;
+        for (Map.Entry<String, Double> cue : intent.cues().entrySet()) {
+            if (contains(text, cue.getKey())) {
+                score += cue.getValue();
+            }
+        }
+        return Math.min(1.0, score);
+    }
+
+    private static boolean contains(String text, String phrase) {
+        return text.contains(" " + phrase + " ");
+    }
+
+    /**
+     * Lower case, punctuation to spaces, padded so every word is bounded by
+     * spaces.
+     */
+    static String normalize(String transcript) {
+        String words = transcript.toLowerCase(Locale.ROOT).replaceAll("[^a-z0-9]+", " ").trim();
+        return " " + words + " ";
+    }
+}
@@ -0,0 +1,56 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Commands answered locally. To add one, append an {@link Intent} with cue
+ * phrases strong enough to reach the confidence threshold on their own only
+ * when they really identify the command, and negative cues for the nearby
+ * questions its canned answer would get wrong.
+ */
+final class LocalIntents {
+
+    static final List<Intent> DEFAULTS = List.of(
+            new Intent("uptime",
+                    "SELECT days, hours, minutes FROM uptime",
+                    Map.of("uptime", 0.9, "up time", 0.9, "been up", 0.8, "been running", 0.6,
+                            "boot", 0.6, "booted", 0.6, "rebooted", 0.6, "how long", 0.3),
+                    "The system has been up {days} days, {hours} hours and {minutes} minutes.",
+                    null),
+            new Intent("system_info",
+                    "SELECT hostname, cpu_brand, physical_memory FROM system_info",
+                    Map.ofEntries(
+                            Map.entry("system info", 0.9), Map.entry("system information", 0.9),
+                            Map.entry("hostname", 0.8), Map.entry("host name", 0.8),
+                            Map.entry("hardware", 0.7), Map.entry("specs", 0.8),
+                            Map.entry("cpu", 0.6), Map.entry("processor", 0.6),
+                            Map.entry("memory", 0.3), Map.entry("ram", 0.4),
+                            // Asks about processes, not the machine
+                            Map.entry("process", -1.0), Map.entry("processes", -1.0)),
+                    "This is {hostname}, a {cpu_brand} with {physical_memory|gb} GB of memory.",
+                    null),
+            new Intent("top_processes",
+                    "SELECT name, pid, resident_size FROM processes ORDER BY resident_size DESC LIMIT 10",
+                    Map.ofEntries(
+                            Map.entry("processes", 0.7), Map.entry("process", 0.6),
+                            Map.entry("apps", 0.5), Map.entry("applications", 0.5),
+                            Map.entry("the most", 0.3), Map.entry("top", 0.3),
+                            Map.entry("memory", 0.3), Map.entry("running", 0.2),
+                            // The list is sorted by memory, and it isn't a count
+                            Map.entry("cpu", -1.0), Map.entry("processor", -1.0),
+                            Map.entry("how many", -1.0), Map.entry("number of", -1.0),
+                            Map.entry("count", -1.0)),
+                    "Top processes by memory:",
+                    "{name} (pid {pid}): {resident_size|mb} MB"),
+            new Intent("listening_ports",
+                    "SELECT DISTINCT process.name, listening.port FROM listening_ports listening "
+                            + "JOIN processes process ON listening.pid = process.pid WHERE listening.port != 0",
+                    Map.of("ports", 0.8, "port", 0.7, "listening", 0.6, "network", 0.4,
+                            "connections", 0.5, "open", 0.2),
+                    "Processes listening on network ports:",
+                    "{name} on port {port}"));
+
+    private LocalIntents() {
+    }
+}
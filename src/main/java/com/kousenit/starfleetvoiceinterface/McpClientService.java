@@ -1,42 +1,509 @@
 package com.kousenit.starfleetvoiceinterface;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kousenit.starfleetvoiceinterface.config.ToolProperties;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.modelcontextprotocol.client.McpSyncClient;
+import io.modelcontextprotocol.spec.McpSchema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.ai.chat.client.ChatClient;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ToolContext;
 import org.springframework.ai.mcp.SyncMcpToolCallbackProvider;
-import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 
-import java.util.concurrent.CompletableFuture;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
 
+// Created after startup, off the UI's critical path (see StarfleetVoiceInterfaceApplication)
+@Lazy
 @Service
 public class McpClientService {
 
+    private static final Logger log = LoggerFactory.getLogger(McpClientService.class);
+
+    private static final String OSQUERY_TOOL = "executeOsquery";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
     private final ChatClient chatClient;
 
     private final SyncMcpToolCallbackProvider toolCallbackProvider;
 
-    public McpClientService(OpenAiChatModel chatModel, SyncMcpToolCallbackProvider toolCallbackProvider) {
+    private final List<McpSyncClient> mcpClients;
+
+    private final ToolResultCache toolResultCache;
+
+    private final ToolProperties.Cache tableTtls;
+
+    private final IntentMatcher intentMatcher;
+
+    private final ResultCompactor resultCompactor;
+
+    private final McpServerPool serverPool;
+
+    private final ToolCallbackCache toolCallbackCache;
+
+    private final SingleFlight<String, String> commandFlights;
+
+    private final SingleFlight<String, String> toolFlights;
+
+    private final PersistentCache persistentCache;
+
+    private final PipelineMetrics metrics;
+
+    private volatile McpSyncClient osqueryClient;
+
+    public McpClientService(ChatModel chatModel, SyncMcpToolCallbackProvider toolCallbackProvider,
+                            List<McpSyncClient> mcpClients, ToolProperties toolProperties) {
+        this(chatModel, toolCallbackProvider, mcpClients, toolProperties, null, null, null, PipelineMetrics.local());
+    }
+
+    /**
+     * @param serverPool      when present, all osquery calls go through the pool
+     *                        instead of the Spring AI clients
+     * @param toolListChanges when present, a tool list change announced by a
+     *                        server refreshes the tools offered to the model
+     * @param persistentCache when present, model answers are kept across restarts
+     */
+    @Autowired
+    public McpClientService(ChatModel chatModel, SyncMcpToolCallbackProvider toolCallbackProvider,
+                            List<McpSyncClient> mcpClients, ToolProperties toolProperties,
+                            @Nullable McpServerPool serverPool, @Nullable ToolListChanges toolListChanges,
+                            @Nullable PersistentCache persistentCache, PipelineMetrics metrics) {
         this.chatClient = ChatClient.create(chatModel);
         this.toolCallbackProvider = toolCallbackProvider;
+        this.mcpClients = mcpClients;
+        this.serverPool = serverPool;
+        this.persistentCache = persistentCache;
+        this.metrics = metrics;
+        this.toolCallbackCache = new ToolCallbackCache(this::loadToolCallbacks,
+                toolListChanges != null ? toolListChanges::version : () -> 0);
+
+        ToolProperties.Cache cache = toolProperties.cache();
+        this.tableTtls = cache;
+        this.toolResultCache = cache.enabled()
+                ? new ToolResultCache(cache.maxEntries(), cache.ttl(), cache.defaultTtl(), System::nanoTime)
+                : null;
+
+        ToolProperties.FastPath fastPath = toolProperties.fastPath();
+        this.intentMatcher = fastPath.enabled()
+                ? new IntentMatcher(LocalIntents.DEFAULTS, fastPath.threshold(), fastPath.margin())
+                : null;
+
+        ToolProperties.Compaction compaction = toolProperties.compaction();
+        this.resultCompactor = compaction.enabled()
+                ? new ResultCompactor(compaction.maxRows(), compaction.maxValueLength(), compaction.minSize())
+                : null;
+
+        boolean coalescing = toolProperties.coalescing().enabled();
+        this.commandFlights = coalescing ? new SingleFlight<>() : null;
+        this.toolFlights = coalescing ? new SingleFlight<>() : null;
+        if (coalescing) {
+            registerCoalescing("command", commandFlights);
+            registerCoalescing("tool-call", toolFlights);
+        }
+    }
+
+    /**
+     * Publishes a {@link SingleFlight}'s counts next to the stage timers, so
+     * how often concurrent sessions share work shows up with their latency.
+     */
+    private void registerCoalescing(String kind, SingleFlight<?, ?> flights) {
+        FunctionCounter.builder("starfleet.coalescing.calls", flights, f -> f.stats().calls())
+                .description("Calls actually run, each shared by any identical ones in flight")
+                .tag("kind", kind)
+                .register(metrics.registry());
+        FunctionCounter.builder("starfleet.coalescing.coalesced", flights, f -> f.stats().coalesced())
+                .description("Calls that shared one already in flight instead of running")
+                .tag("kind", kind)
+                .register(metrics.registry());
+    }
+
+    /**
+     * Answers a command, locally when possible, otherwise through the model
+     * and its tools. Blocks; the voice pipeline runs it on its command stage,
+     * and interrupting the thread abandons the request.
+     */
+    public String processCommand(String command) {
+        return processCommand(command, table -> {
+        });
+    }
+
+    /**
+     * Like {@link #processCommand(String)}, also handing the full rows of
+     * each query result to {@code onTable}, on whichever thread ran the query.
+     * A command that shares another's run in flight gets no tables.
+     */
+    public String processCommand(String command, Consumer<ResultTable> onTable) {
+        return processCommand(metrics.currentCommand(), command, onTable);
+    }
+
+    /**
+     * Like {@link #processCommand(String)}, for a command running alongside
+     * others: its stages are timed under {@code commandId} (see
+     * {@link PipelineMetrics#newCommand()}) rather than the current command.
+     */
+    public String processCommand(long commandId, String command) {
+        return processCommand(commandId, command, table -> {
+        });
+    }
+
+    private String processCommand(long commandId, String command, Consumer<ResultTable> onTable) {
+        try {
+            return coalesce(command, () -> answerLocally(command, onTable)
+                    .or(() -> cachedAnswer(commandId, command, onTable))
+                    .orElseGet(() -> askModel(commandId, command, onTable)));
+        } finally {
+            logCacheStats();
+        }
+    }
+
+    /**
+     * Like {@link #processCommand(String)}, but hands each piece of the answer
+     * to {@code onToken} as the model produces it. A local answer arrives as a
+     * single piece, and so does an answer shared with the same command
+     * already in flight. Returns the full text.
+     */
+    public String streamCommand(String command, Consumer<String> onToken) {
+        return streamCommand(command, onToken, table -> {
+        });
+    }
+
+    /**
+     * Like {@link #streamCommand(String, Consumer)}, also handing the full
+     * rows of each query result to {@code onTable}.
+     */
+    public String streamCommand(String command, Consumer<String> onToken, Consumer<ResultTable> onTable) {
+        return streamCommand(metrics.currentCommand(), command, onToken, onTable);
+    }
+
+    /**
+     * Like {@link #streamCommand(String, Consumer)}, for a command running
+     * alongside others: its stages are timed under {@code commandId} (see
+     * {@link PipelineMetrics#newCommand()}) rather than the current command.
+     */
+    public String streamCommand(long commandId, String command, Consumer<String> onToken) {
+        return streamCommand(commandId, command, onToken, table -> {
+        });
+    }
+
+    private String streamCommand(long commandId, String command, Consumer<String> onToken,
+                                 Consumer<ResultTable> onTable) {
+        try {
+            AtomicBoolean streamed = new AtomicBoolean();
+            String answer = coalesce(command, () -> {
+                streamed.set(true);
+                Optional<String> known = answerLocally(command, onTable)
+                        .or(() -> cachedAnswer(commandId, command, onTable));
+                if (known.isPresent()) {
+                    onToken.accept(known.get());
+                    return known.get();
+                }
+                ToolCallLog calls = new ToolCallLog();
+                String answer = metrics.time(PipelineMetrics.Stage.CHAT, commandId,
+                        () -> prompt(commandId, command, calls, onTable).stream()
+                        .content()
+                        .doOnNext(onToken)
+                        .collect(Collectors.joining())
+                        .block());
+                remember(command, calls, answer);
+                return answer;
+            });
+            if (!streamed.get()) {
+                onToken.accept(answer);
+            }
+            return answer;
+        } finally {
+            logCacheStats();
+        }
+    }
+
+    /**
+     * Runs {@code answer}, or waits for the same command if it is already in
+     * flight. Commands are the same if their words are.
+     */
+    private String coalesce(String command, Supplier<String> answer) {
+        if (commandFlights == null) {
+            return answer.get();
+        }
+        return commandFlights.run(IntentMatcher.normalize(command), answer);
     }
 
-    public CompletableFuture<String> processCommand(String command) {
-        return CompletableFuture.supplyAsync(
-                () -> chatClient.prompt()
-                        .system("""
-                                You are a system diagnostic assistant for macOS.
-                                Use the spring_ai_mcp_client_osquery_executeOsquery tool to answer questions.
-                                
-                                Common queries for macOS:
-                                - System uptime: SELECT days, hours, minutes FROM uptime
-                                - System info: SELECT hostname, cpu_brand, physical_memory FROM system_info
-                                - Running processes: SELECT name, pid, resident_size FROM processes ORDER BY resident_size DESC LIMIT 10
-                                - Network connections: SELECT DISTINCT process.name, listening.port FROM listening_ports listening JOIN processes process ON listening.pid = process.pid WHERE listening.port != 0
-                                
-                                Format responses in a clear, conversational manner.
-                                """)
-                        .user(command)
-                        .toolCallbacks(toolCallbackProvider.getToolCallbacks())
-                        .call()
-                        .content());
-    }
-}
\ No newline at end of file
+    /**
+     * Answers a recognized command with its canned query and template. Empty
+     * when nothing matches confidently, or when the query fails or returns
+     * something the template can't use; the model then handles the command.
+     */
+    Optional<String> answerLocally(String command) {
+        return answerLocally(command, table -> {
+        });
+    }
+
+    private Optional<String> answerLocally(String command, Consumer<ResultTable> onTable) {
+        if (intentMatcher == null) {
+            return Optional.empty();
+        }
+        Optional<IntentMatcher.Match> match = intentMatcher.match(command);
+        if (match.isEmpty()) {
+            return Optional.empty();
+        }
+
+        Intent intent = match.get().intent();
+        long start = System.nanoTime();
+        try {
+            List<Map<String, String>> rows = parseRows(runOsquery(intent.sql()));
+            if (rows.isEmpty()) {
+                return Optional.empty();
+            }
+            String answer = intent.format(rows);
+            onTable.accept(ResultTable.of(intent.sql(), rows));
+            log.info("Answered locally as {} (confidence {}) in {} ms", intent.name(),
+                    String.format("%.2f", match.get().confidence()), (System.nanoTime() - start) / 1_000_000);
+            return Optional.of(answer);
+        } catch (RuntimeException e) {
+            log.warn("Local answer for {} failed, asking the model: {}", intent.name(), e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * Lists the servers' tools again before the next command, for changes a
+     * server didn't announce.
+     */
+    public void refreshTools() {
+        if (serverPool != null) {
+            serverPool.refreshTools();
+        }
+        toolCallbackCache.invalidate();
+    }
+
+    String askModel(String command) {
+        return askModel(metrics.currentCommand(), command, table -> {
+        });
+    }
+
+    private String askModel(long commandId, String command, Consumer<ResultTable> onTable) {
+        ToolCallLog calls = new ToolCallLog();
+        String answer = metrics.time(PipelineMetrics.Stage.CHAT, commandId,
+                () -> prompt(commandId, command, calls, onTable).call().content());
+        remember(command, calls, answer);
+        return answer;
+    }
+
+    /**
+     * The answer the model gave to this command before, if the tool calls it
+     * made then return the same results now. Running the calls again is far
+     * cheaper than asking the model, but only worth it when their results can
+     * still match (see {@link #worthReplaying}); the tables of a replay are
+     * only passed on when its answer is used.
+     */
+    private Optional<String> cachedAnswer(long commandId, String command, Consumer<ResultTable> onTable) {
+        if (persistentCache == null) {
+            return Optional.empty();
+        }
+        Optional<List<ToolCallLog.Call>> recorded = persistentCache.toolCalls(command);
+        if (recorded.isEmpty() || !worthReplaying(recorded.get())) {
+            return Optional.empty();
+        }
+        long start = System.nanoTime();
+        try {
+            Map<String, ToolCallback> tools = toolCallbacks().stream()
+                    .collect(Collectors.toMap(tool -> tool.getToolDefinition().name(), tool -> tool, (a, b) -> a));
+            List<ResultTable> tables = new ArrayList<>();
+            Consumer<ResultTable> collect = tables::add;
+            ToolContext context = new ToolContext(
+                    Map.of(ResultTable.CONTEXT_KEY, collect, PipelineMetrics.CONTEXT_KEY, commandId));
+            List<ToolCallLog.Call> replayed = new ArrayList<>();
+            for (ToolCallLog.Call call : recorded.get()) {
+                ToolCallback tool = tools.get(call.name());
+                if (tool == null) {
+                    return Optional.empty();
+                }
+                replayed.add(new ToolCallLog.Call(call.name(), call.input(), tool.call(call.input(), context)));
+            }
+            Optional<String> answer = persistentCache.response(command, ToolCallLog.fingerprint(replayed));
+            log.info("Persistent cache {} after replaying {} tool calls in {} ms", answer.isPresent() ? "hit" : "miss",
+                    replayed.size(), (System.nanoTime() - start) / 1_000_000);
+            if (answer.isPresent()) {
+                tables.forEach(onTable);
+            }
+            return answer;
+        } catch (RuntimeException e) {
+            log.warn("Replaying cached tool calls failed, asking the model: {}", e.getMessage());
+            return Optional.empty();
+        }
+    }
+
+    /**
+     * False when a recorded call reads a table whose results change faster
+     * than the cache's replay threshold (uptime, processes, ...): its result
+     * would almost never match, and the replay would only put a round of
+     * tool calls in front of the model.
+     */
+    private boolean worthReplaying(List<ToolCallLog.Call> calls) {
+        Duration minTtl = persistentCache.replayMinTtl();
+        for (ToolCallLog.Call call : calls) {
+            String sql = CachingToolCallback.sqlArgument(call.input());
+            Duration ttl = sql != null
+                    ? ToolResultCache.ttlFor(OsquerySql.normalize(sql), tableTtls.ttl(), tableTtls.defaultTtl())
+                    : tableTtls.defaultTtl();
+            if (ttl.compareTo(minTtl) < 0) {
+                log.debug("Not replaying cached tool calls: {} changes within {}", call.input(), ttl);
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void remember(String command, ToolCallLog calls, String answer) {
+        if (persistentCache != null && answer != null && !answer.isBlank()) {
+            persistentCache.putResponse(command, calls.calls(), answer);
+        }
+    }
+
+    private ChatClient.ChatClientRequestSpec prompt(long commandId, String command, ToolCallLog calls,
+                                                    Consumer<ResultTable> onTable) {
+        ChatClient.ChatClientRequestSpec spec = chatClient.prompt()
+                .system("""
+                        You are a system diagnostic assistant for macOS.
+                        Use the spring_ai_mcp_client_osquery_executeOsquery tool to answer questions.
+
+                        Common queries for macOS:
+                        - System uptime: SELECT days, hours, minutes FROM uptime
+                        - System info: SELECT hostname, cpu_brand, physical_memory FROM system_info
+                        - Running processes: SELECT name, pid, resident_size FROM processes ORDER BY resident_size DESC LIMIT 10
+                        - Network connections: SELECT DISTINCT process.name, listening.port FROM listening_ports listening JOIN processes process ON listening.pid = process.pid WHERE listening.port != 0
+
+                        Format responses in a clear, conversational manner.
+                        """)
+                .user(command)
+                .toolCallbacks(toolCallbacks());
+        // Read by the recording, result table and timing callbacks, which keep it from the MCP callbacks
+        return persistentCache != null
+                ? spec.toolContext(Map.of(ToolCallLog.CONTEXT_KEY, calls, ResultTable.CONTEXT_KEY, onTable,
+                        PipelineMetrics.CONTEXT_KEY, commandId))
+                : spec.toolContext(Map.of(ResultTable.CONTEXT_KEY, onTable, PipelineMetrics.CONTEXT_KEY, commandId));
+    }
+
+    /**
+     * The tools offered to the model, built once and reused across commands.
+     */
+    List<ToolCallback> toolCallbacks() {
+        return toolCallbackCache.get();
+    }
+
+    SingleFlight.Stats commandCoalescing() {
+        return commandFlights != null ? commandFlights.stats() : new SingleFlight.Stats(0, 0);
+    }
+
+    SingleFlight.Stats toolCoalescing() {
+        return toolFlights != null ? toolFlights.stats() : new SingleFlight.Stats(0, 0);
+    }
+
+    private void logCacheStats() {
+        if (toolResultCache != null) {
+            log.debug("Tool result cache: {}", toolResultCache.stats());
+        }
+        if (commandFlights != null) {
+            log.debug("Coalesced: commands {}, tool calls {}", commandFlights.stats(), toolFlights.stats());
+        }
+    }
+
+    private ToolCallback[] loadToolCallbacks() {
+        ToolCallback[] callbacks = serverPool != null
+                ? serverPool.toolCallbacks()
+                : toolCallbackProvider.getToolCallbacks();
+        return Arrays.stream(callbacks)
+                .map(callback -> toolFlights != null ? new CoalescingToolCallback(callback, toolFlights) : callback)
+                .map(callback -> toolResultCache != null ? new CachingToolCallback(callback, toolResultCache) : callback)
+                // Below compaction, so the window gets every row
+                .map(ResultTableToolCallback::new)
+                // Compact after the cache, so it keeps the full results
+                .map(callback -> resultCompactor != null ? new CompactingToolCallback(callback, resultCompactor) : callback)
+                .map(callback -> new TimedToolCallback(callback, metrics))
+                // Outermost, so the log holds what the model saw
+                .map(callback -> persistentCache != null ? new RecordingToolCallback(callback) : callback)
+                .toArray(ToolCallback[]::new);
+    }
+
+    private String runOsquery(String sql) {
+        if (toolResultCache == null) {
+            return coalesceOsquery(sql);
+        }
+        return toolResultCache.get(OSQUERY_TOOL, sql, () -> coalesceOsquery(sql));
+    }
+
+    private String coalesceOsquery(String sql) {
+        if (toolFlights == null) {
+            return callOsquery(sql);
+        }
+        return toolFlights.run(OSQUERY_TOOL + '\n' + OsquerySql.normalize(sql), () -> callOsquery(sql));
+    }
+
+    private String callOsquery(String sql) {
+        McpSchema.CallToolRequest request = new McpSchema.CallToolRequest(OSQUERY_TOOL, Map.of("sql", sql));
+        McpSchema.CallToolResult result = serverPool != null
+                ? serverPool.call(client -> client.callTool(request))
+                : osqueryClient().callTool(request);
+        String text = result.content().stream()
+                .filter(McpSchema.TextContent.class::isInstance)
+                .map(content -> ((McpSchema.TextContent) content).text())
+                .collect(Collectors.joining());
+        if (Boolean.TRUE.equals(result.isError())) {
+            throw new IllegalStateException("osquery error: " + text);
+        }
+        return text;
+    }
+
+    private McpSyncClient osqueryClient() {
+        McpSyncClient client = osqueryClient;
+        if (client == null) {
+            client = mcpClients.stream()
+                    .filter(candidate -> candidate.listTools().tools().stream()
+                            .anyMatch(tool -> tool.name().equals(OSQUERY_TOOL)))
+                    .findFirst()
+                    .orElseThrow(() -> new IllegalStateException("No MCP server offers " + OSQUERY_TOOL));
+            osqueryClient = client;
+        }
+        return client;
+    }
+
+    /**
+     * Reads osquery's JSON output (an array of objects) into rows of strings.
+     */
+    private static List<Map<String, String>> parseRows(String json) {
+        JsonNode root;
+        try {
+            root = objectMapper.readTree(json);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Unexpected osquery output: " + e.getOriginalMessage());
+        }
+        if (!root.isArray()) {
+            throw new IllegalStateException("Unexpected osquery output: not a JSON array");
+        }
+        List<Map<String, String>> rows = new ArrayList<>();
+        for (JsonNode node : root) {
+            Map<String, String> row = new LinkedHashMap<>();
+            node.fields().forEachRemaining(field -> row.put(field.getKey(), field.getValue().asText()));
+            rows.add(row);
+        }
+        return rows;
+    }
+}
@@ -0,0 +1,427 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import com.kousenit.starfleetvoiceinterface.config.McpPoolProperties;
+import io.modelcontextprotocol.client.McpClient;
+import io.modelcontextprotocol.client.McpSyncClient;
+import io.modelcontextprotocol.client.transport.ServerParameters;
+import io.modelcontextprotocol.client.transport.StdioClientTransport;
+import io.modelcontextprotocol.spec.McpError;
+import io.modelcontextprotocol.spec.McpSchema;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.mcp.McpToolUtils;
+import org.springframework.ai.model.ModelOptionsUtils;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.lang.Nullable;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Several copies of an MCP server behind one front door, so a stalled or
+ * crashed process costs one slot instead of hanging every command.
+ * <p>
+ * All servers are started together, when the command service is first
+ * created (in the background, after the window is up). Each call goes to the server with the
+ * fewest calls in flight; a call that fails because its server broke is
+ * retried once on another. A background check pings every server and
+ * restarts the ones that have died or stopped answering. When a server
+ * announces a tool list change, the pool lists the tools again and passes
+ * the change on to {@link ToolListChanges}.
+ */
+@Lazy
+@Component
+@ConditionalOnProperty(prefix = "starfleet.mcp.pool", name = "command")
+public class McpServerPool implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(McpServerPool.class);
+
+    // Same client name Spring AI gives a stdio connection, so tool names don't change
+    private static final String CLIENT_NAME_PREFIX = "spring-ai-mcp-client - ";
+
+    private final String name;
+    private final Connector connector;
+    private final ToolListChanges toolListChanges;
+    private final Duration healthCheckInterval;
+    private final Duration healthCheckTimeout;
+    private final Duration acquireTimeout;
+    private final List<Member> members = new ArrayList<>();
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition available = lock.newCondition();
+    private final AtomicInteger cursor = new AtomicInteger();
+    private final AtomicInteger restarts = new AtomicInteger();
+
+    private final ExecutorService workers =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("mcp-pool-", 0).factory());
+    private final ScheduledExecutorService healthChecks = Executors.newSingleThreadScheduledExecutor(
+            Thread.ofPlatform().name("mcp-health").daemon().factory());
+
+    private volatile List<McpSchema.Tool> tools;
+
+    @Autowired
+    public McpServerPool(McpPoolProperties properties, ToolListChanges toolListChanges) {
+        this(properties.name(), properties.size(),
+                (index, onToolsChanged) -> connect(properties, index, onToolsChanged), toolListChanges,
+                properties.healthCheckInterval(), properties.healthCheckTimeout(), properties.requestTimeout());
+    }
+
+    /**
+     * @param toolListChanges when present, told about every tool list change a server announces
+     */
+    McpServerPool(String name, int size, Connector connector, @Nullable ToolListChanges toolListChanges,
+                  Duration healthCheckInterval, Duration healthCheckTimeout, Duration acquireTimeout) {
+        if (size < 1) {
+            throw new IllegalArgumentException("Pool size must be at least 1: " + size);
+        }
+        this.name = name;
+        this.connector = connector;
+        this.toolListChanges = toolListChanges;
+        this.healthCheckInterval = healthCheckInterval;
+        this.healthCheckTimeout = healthCheckTimeout;
+        this.acquireTimeout = acquireTimeout;
+        for (int i = 0; i < size; i++) {
+            members.add(new Member(i));
+        }
+    }
+
+    /**
+     * Starts every server in parallel and waits for them, then schedules the
+     * health checks. Servers that fail to start are retried by the checks.
+     */
+    @PostConstruct
+    public void start() {
+        long begin = System.nanoTime();
+        CompletableFuture.allOf(members.stream()
+                        .map(member -> CompletableFuture.runAsync(() -> connect(member), workers))
+                        .toArray(CompletableFuture[]::new))
+                .join();
+        log.info("Started {} of {} {} MCP servers in {} ms", healthy(), members.size(), name,
+                (System.nanoTime() - begin) / 1_000_000);
+
+        long interval = healthCheckInterval.toMillis();
+        healthChecks.scheduleWithFixedDelay(this::checkHealth, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Runs {@code request} against the least-loaded server. If the server
+     * fails underneath it (as opposed to answering with an MCP error), that
+     * server is restarted and the request is tried once more on another. A
+     * call interrupted because its command was cancelled is neither.
+     */
+    public <T> T call(Function<McpSyncClient, T> request) {
+        RuntimeException failure = null;
+        for (int attempt = 0; attempt < 2; attempt++) {
+            Lease lease = acquire();
+            try {
+                return request.apply(lease.client());
+            } catch (McpError e) {
+                throw e;
+            } catch (RuntimeException e) {
+                if (SingleFlight.interrupted(e)) {
+                    // The caller was cancelled; the server is fine
+                    throw e;
+                }
+                log.warn("{} MCP server {} failed a call, restarting it: {}",
+                        name, lease.member().index, e.getMessage());
+                restart(lease.member(), lease.client());
+                failure = e;
+            } finally {
+                release(lease.member());
+            }
+        }
+        throw failure;
+    }
+
+    /**
+     * The servers' tools as callbacks that go through the pool, named the way
+     * Spring AI names the tools of a single connection.
+     */
+    public ToolCallback[] toolCallbacks() {
+        String prefix = CLIENT_NAME_PREFIX + name;
+        return tools().stream()
+                .map(tool -> new PooledToolCallback(tool, McpToolUtils.prefixedToolName(prefix, tool.name())))
+                .toArray(ToolCallback[]::new);
+    }
+
+    /**
+     * Forgets the tool list, so the next {@link #toolCallbacks()} asks a server again.
+     */
+    public void refreshTools() {
+        tools = null;
+    }
+
+    /**
+     * Called by a server's client when the server announces that its tools changed.
+     */
+    private void toolsChanged(List<McpSchema.Tool> changed) {
+        tools = null;
+        if (toolListChanges != null) {
+            toolListChanges.toolsChanged(name, changed);
+        }
+    }
+
+    List<McpSchema.Tool> tools() {
+        List<McpSchema.Tool> listed = tools;
+        if (listed == null) {
+            listed = call(client -> client.listTools().tools());
+            tools = listed;
+        }
+        return listed;
+    }
+
+    /**
+     * Pings every running server and restarts the ones that don't answer in
+     * time; also retries servers that couldn't be started.
+     */
+    void checkHealth() {
+        for (Member member : members) {
+            McpSyncClient client = member.client;
+            if (client == null) {
+                if (!member.restarting.get()) {
+                    restart(member, null);
+                }
+                continue;
+            }
+            CompletableFuture<Object> ping = CompletableFuture.supplyAsync(client::ping, workers);
+            try {
+                ping.get(healthCheckTimeout.toMillis(), TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException | TimeoutException e) {
+                ping.cancel(true);
+                log.warn("{} MCP server {} failed its health check, restarting it", name, member.index);
+                restart(member, client);
+            }
+        }
+    }
+
+    int size() {
+        return members.size();
+    }
+
+    int healthy() {
+        return (int) members.stream().filter(member -> member.client != null).count();
+    }
+
+    int restarts() {
+        return restarts.get();
+    }
+
+    /**
+     * The current client for server {@code index}, or null while it restarts.
+     */
+    McpSyncClient client(int index) {
+        return members.get(index).client;
+    }
+
+    @PreDestroy
+    @Override
+    public void close() {
+        healthChecks.shutdownNow();
+        workers.shutdownNow();
+        for (Member member : members) {
+            McpSyncClient client = member.client;
+            member.client = null;
+            if (client != null) {
+                client.close();
+            }
+        }
+    }
+
+    private Lease acquire() {
+        long remaining = acquireTimeout.toNanos();
+        lock.lock();
+        try {
+            while (true) {
+                Member chosen = leastLoaded();
+                if (chosen != null) {
+                    chosen.inFlight++;
+                    return new Lease(chosen, chosen.client);
+                }
+                if (remaining <= 0) {
+                    throw new IllegalStateException("No " + name + " MCP server available after "
+                            + acquireTimeout.toMillis() + " ms");
+                }
+                remaining = available.awaitNanos(remaining);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for a " + name + " MCP server", e);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Fewest calls in flight wins; ties rotate so idle servers share the work.
+     * Called with the lock held.
+     */
+    private Member leastLoaded() {
+        int start = Math.floorMod(cursor.getAndIncrement(), members.size());
+        Member best = null;
+        for (int i = 0; i < members.size(); i++) {
+            Member member = members.get((start + i) % members.size());
+            if (member.client != null && (best == null || member.inFlight < best.inFlight)) {
+                best = member;
+            }
+        }
+        return best;
+    }
+
+    private void release(Member member) {
+        lock.lock();
+        try {
+            member.inFlight--;
+            available.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Takes the member out of rotation and starts a fresh server for it in
+     * the background, unless that is already happening or someone else has
+     * already replaced {@code broken}.
+     */
+    private void restart(Member member, McpSyncClient broken) {
+        lock.lock();
+        try {
+            if (member.client != broken || !member.restarting.compareAndSet(false, true)) {
+                return;
+            }
+            member.client = null;
+        } finally {
+            lock.unlock();
+        }
+        restarts.incrementAndGet();
+        workers.execute(() -> {
+            if (broken != null) {
+                try {
+                    broken.close();
+                } catch (RuntimeException e) {
+                    log.debug("Closing {} MCP server {} failed", name, member.index, e);
+                }
+            }
+            connect(member);
+        });
+    }
+
+    private void connect(Member member) {
+        try {
+            McpSyncClient client = connector.connect(member.index, this::toolsChanged);
+            lock.lock();
+            try {
+                member.client = client;
+                available.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            log.debug("{} MCP server {} is up", name, member.index);
+        } catch (RuntimeException e) {
+            log.warn("Could not start {} MCP server {}: {}", name, member.index, e.getMessage());
+        } finally {
+            member.restarting.set(false);
+        }
+    }
+
+    private static McpSyncClient connect(McpPoolProperties properties, int index,
+                                         Consumer<List<McpSchema.Tool>> onToolsChanged) {
+        ServerParameters parameters = ServerParameters.builder(properties.command())
+                .args(properties.args())
+                .env(properties.env())
+                .build();
+        McpSyncClient client = McpClient.sync(new StdioClientTransport(parameters))
+                .clientInfo(new McpSchema.Implementation(CLIENT_NAME_PREFIX + properties.name(), String.valueOf(index)))
+                .requestTimeout(properties.requestTimeout())
+                .toolsChangeConsumer(onToolsChanged)
+                .build();
+        client.initialize();
+        return client;
+    }
+
+    /**
+     * Starts server {@code index} and returns an initialized client for it
+     * that hands the tool lists the server announces to {@code onToolsChanged}.
+     */
+    @FunctionalInterface
+    interface Connector {
+
+        McpSyncClient connect(int index, Consumer<List<McpSchema.Tool>> onToolsChanged);
+    }
+
+    private record Lease(Member member, McpSyncClient client) {
+    }
+
+    private static final class Member {
+
+        final int index;
+        final AtomicBoolean restarting = new AtomicBoolean();
+        // Guarded by the pool's lock
+        int inFlight;
+        volatile McpSyncClient client;
+
+        Member(int index) {
+            this.index = index;
+        }
+    }
+
+    /**
+     * One of the servers' tools, called through the pool. Mirrors Spring AI's
+     * callback for a single client: arguments come in as JSON, the result
+     * content goes back as JSON, and a tool error becomes an exception.
+     */
+    private final class PooledToolCallback implements ToolCallback {
+
+        private final McpSchema.Tool tool;
+        private final ToolDefinition definition;
+
+        PooledToolCallback(McpSchema.Tool tool, String prefixedName) {
+            this.tool = tool;
+            this.definition = ToolDefinition.builder()
+                    .name(prefixedName)
+                    .description(tool.description())
+                    .inputSchema(ModelOptionsUtils.toJsonString(tool.inputSchema()))
+                    .build();
+        }
+
+        @Override
+        public ToolDefinition getToolDefinition() {
+            return definition;
+        }
+
+        @Override
+        public String call(String toolInput) {
+            Map<String, Object> arguments = ModelOptionsUtils.jsonToMap(toolInput);
+            McpSchema.CallToolResult result =
+                    McpServerPool.this.call(client -> client.callTool(new McpSchema.CallToolRequest(tool.name(), arguments)));
+            if (Boolean.TRUE.equals(result.isError())) {
+                throw new IllegalStateException("Error calling tool: " + result.content());
+            }
+            return ModelOptionsUtils.toJsonString(result.content());
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import com.kousenit.starfleetvoiceinterface.config.HttpProperties;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.web.client.RestClientCustomizer;
+import org.springframework.boot.web.reactive.function.client.WebClientCustomizer;
+import org.springframework.core.env.Environment;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.http.client.reactive.JdkClientHttpConnector;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import javax.net.ssl.SSLContext;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
+
+/**
+ * One JDK HTTP client for every call to the model endpoints: HTTP/2 where
+ * the server offers it, long keep-alive, a bounded idle pool (see
+ * {@link HttpPoolSettings}). As a RestClient and WebClient customizer it is
+ * applied to the builders Spring AI's OpenAI clients are made from, so
+ * transcription, chat and streamed chat all draw on the same connections.
+ * <p>
+ * Minutes can pass between commands, long enough for idle connections to
+ * be closed. {@link #prime()}, called when recording starts, opens them
+ * again while the user is still talking.
+ */
+@Component
+public class ModelConnections implements RestClientCustomizer, WebClientCustomizer {
+
+    private static final Logger log = LoggerFactory.getLogger(ModelConnections.class);
+
+    private static final String OPENAI_BASE_URL = "https://api.openai.com";
+
+    private final HttpClient httpClient;
+    private final List<URI> endpoints;
+    private final HttpProperties.Prime prime;
+    private final AtomicReference<CompletableFuture<Void>> priming = new AtomicReference<>();
+
+    @Autowired
+    public ModelConnections(HttpProperties properties, Environment environment) throws NoSuchAlgorithmException {
+        this(properties, endpoints(environment), SSLContext.getDefault());
+    }
+
+    ModelConnections(HttpProperties properties, List<URI> endpoints, SSLContext sslContext) {
+        this.httpClient = HttpClient.newBuilder()
+                .version(properties.http2() ? HttpClient.Version.HTTP_2 : HttpClient.Version.HTTP_1_1)
+                .connectTimeout(properties.connectTimeout())
+                .sslContext(sslContext)
+                .build();
+        this.endpoints = List.copyOf(endpoints);
+        this.prime = properties.prime();
+    }
+
+    @Override
+    public void customize(RestClient.Builder builder) {
+        builder.requestFactory(new JdkClientHttpRequestFactory(httpClient));
+    }
+
+    @Override
+    public void customize(WebClient.Builder builder) {
+        builder.clientConnector(new JdkClientHttpConnector(httpClient));
+    }
+
+    /**
+     * Sends a {@code HEAD} to each model endpoint in the background, opening
+     * a connection to it or keeping the open one alive. Any answer will do;
+     * only the connection matters. While a prime is under way, asking again
+     * returns the same one.
+     */
+    public CompletableFuture<Void> prime() {
+        if (!prime.enabled()) {
+            return CompletableFuture.completedFuture(null);
+        }
+        CompletableFuture<Void> current = priming.get();
+        if (current != null && !current.isDone()) {
+            return current;
+        }
+        CompletableFuture<Void> started = new CompletableFuture<>();
+        if (!priming.compareAndSet(current, started)) {
+            return priming.get();
+        }
+        CompletableFuture.allOf(endpoints.stream().map(this::prime).toArray(CompletableFuture[]::new))
+                .whenComplete((done, error) -> started.complete(null));
+        return started;
+    }
+
+    private CompletableFuture<?> prime(URI endpoint) {
+        long start = System.nanoTime();
+        HttpRequest request = HttpRequest.newBuilder(endpoint)
+                .method("HEAD", HttpRequest.BodyPublishers.noBody())
+                .timeout(prime.timeout())
+                .build();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.discarding())
+                .whenComplete((response, error) -> {
+                    long millis = Duration.ofNanos(System.nanoTime() - start).toMillis();
+                    if (error != null) {
+                        log.debug("Priming {} failed after {} ms: {}", endpoint, millis, error.toString());
+                    } else {
+                        log.debug("Primed {} in {} ms ({})", endpoint, millis, response.version());
+                    }
+                });
+    }
+
+    HttpClient httpClient() {
+        return httpClient;
+    }
+
+    /**
+     * Where the transcription and chat clients send their requests, each
+     * host once.
+     */
+    static List<URI> endpoints(Environment environment) {
+        String common = environment.getProperty("spring.ai.openai.base-url", OPENAI_BASE_URL);
+        return Stream.of("spring.ai.openai.audio.transcription.base-url", "spring.ai.openai.chat.base-url")
+                .map(property -> environment.getProperty(property, common))
+                .map(ModelConnections::origin)
+                .distinct()
+                .toList();
+    }
+
+    private static URI origin(String baseUrl) {
+        URI uri = URI.create(baseUrl);
+        return URI.create(uri.getScheme() + "://" + uri.getRawAuthority() + "/");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        httpClient.shutdownNow();
+    }
+}
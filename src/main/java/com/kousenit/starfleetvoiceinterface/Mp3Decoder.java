@@ -0,0 +1,100 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import javazoom.jl.decoder.Bitstream;
+import javazoom.jl.decoder.Decoder;
+import javazoom.jl.decoder.Header;
+import javazoom.jl.decoder.JavaLayerException;
+import javazoom.jl.decoder.SampleBuffer;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Decodes an MP3 resource to PCM with JLayer, then converts it to the mixer's
+ * sample rate and channel count so playback never has to do either.
+ */
+final class Mp3Decoder {
+
+    private Mp3Decoder() {
+    }
+
+    static DecodedSound decode(String resourcePath, AudioFormat target) throws IOException {
+        InputStream in = Mp3Decoder.class.getResourceAsStream(resourcePath);
+        if (in == null) {
+            throw new FileNotFoundException("Audio file not found: " + resourcePath);
+        }
+
+        Bitstream bitstream = new Bitstream(in);
+        Decoder decoder = new Decoder();
+        short[] pcm = new short[64 * 1024];
+        int length = 0;
+        try {
+            Header header;
+            while ((header = bitstream.readFrame()) != null) {
+                SampleBuffer frame = (SampleBuffer) decoder.decodeFrame(header, bitstream);
+                int frameLength = frame.getBufferLength();
+                if (length + frameLength > pcm.length) {
+                    pcm = Arrays.copyOf(pcm, Math.max(pcm.length * 2, length + frameLength));
+                }
+                System.arraycopy(frame.getBuffer(), 0, pcm, length, frameLength);
+                length += frameLength;
+                bitstream.closeFrame();
+            }
+            bitstream.close();
+        } catch (JavaLayerException e) {
+            throw new IOException("Cannot decode " + resourcePath + ": " + e.getMessage(), e);
+        } finally {
+            in.close();
+        }
+
+        if (length == 0) {
+            return new DecodedSound(resourcePath, new short[0], target.getChannels());
+        }
+        short[] converted = convert(pcm, length, decoder.getOutputFrequency(), decoder.getOutputChannels(),
+                (int) target.getSampleRate(), target.getChannels());
+        return new DecodedSound(resourcePath, converted, target.getChannels());
+    }
+
+    /**
+     * Linear-interpolation resampling plus channel mapping (mono is copied to
+     * every output channel, stereo is averaged down to mono).
+     */
+    static short[] convert(short[] source, int length, int sourceRate, int sourceChannels,
+                           int targetRate, int targetChannels) {
+        int sourceFrames = length / sourceChannels;
+        int targetFrames = (int) ((long) sourceFrames * targetRate / sourceRate);
+        short[] target = new short[targetFrames * targetChannels];
+        double step = (double) sourceRate / targetRate;
+
+        for (int frame = 0; frame < targetFrames; frame++) {
+            double position = frame * step;
+            int index = (int) position;
+            int next = Math.min(index + 1, sourceFrames - 1);
+            double fraction = position - index;
+            for (int channel = 0; channel < targetChannels; channel++) {
+                double a = sample(source, index, sourceChannels, channel, targetChannels);
+                double b = sample(source, next, sourceChannels, channel, targetChannels);
+                target[frame * targetChannels + channel] = (short) Math.round(a + (b - a) * fraction);
+            }
+        }
+        return target;
+    }
+
+    private static double sample(short[] source, int frame, int sourceChannels, int channel, int targetChannels) {
+        int base = frame * sourceChannels;
+        if (sourceChannels == targetChannels) {
+            return source[base + channel];
+        }
+        if (sourceChannels == 1) {
+            return source[base];
+        }
+        int sum = 0;
+        for (int c = 0; c < sourceChannels; c++) {
+            sum += source[base + c];
+        }
+        return (double) sum / sourceChannels;
+    }
+}
@@ -0,0 +1,34 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import org.springframework.ai.audio.transcription.AudioTranscriptionPrompt;
+import org.springframework.ai.audio.transcription.AudioTranscriptionResponse;
+import org.springframework.ai.openai.OpenAiAudioTranscriptionModel;
+import org.springframework.ai.openai.OpenAiAudioTranscriptionOptions;
+import org.springframework.ai.openai.api.OpenAiAudioApi;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+@Component
+public class OpenAiTranscriptionBackend implements TranscriptionBackend {
+
+    private final OpenAiAudioTranscriptionModel transcriptionModel;
+
+    public OpenAiTranscriptionBackend(OpenAiAudioTranscriptionModel transcriptionModel) {
+        this.transcriptionModel = transcriptionModel;
+    }
+
+    @Override
+    public String transcribe(Resource audio) {
+        var prompt = new AudioTranscriptionPrompt(
+                audio,
+                OpenAiAudioTranscriptionOptions.builder()
+                        .language("en")
+                        .temperature(0.0f)
+                        .responseFormat(OpenAiAudioApi.TranscriptResponseFormat.TEXT)
+                        .build()
+        );
+
+        AudioTranscriptionResponse response = transcriptionModel.call(prompt);
+        return response.getResult().getOutput().trim();
+    }
+}
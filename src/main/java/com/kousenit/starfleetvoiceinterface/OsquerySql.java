@@ -0,0 +1,124 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Just enough SQL handling to cache osquery results: a normalized form for
+ * cache keys and the set of tables a query reads.
+ */
+final class OsquerySql {
+
+    private static final Set<String> CLAUSE_KEYWORDS = Set.of(
+            "where", "join", "inner", "left", "right", "outer", "cross", "natural", "on", "using",
+            "group", "order", "limit", "having", "union", "except", "intersect", "window");
+
+    private OsquerySql() {
+    }
+
+    /**
+     * Collapses whitespace, lower-cases everything outside string literals and
+     * drops a trailing semicolon, so trivially different spellings of the same
+     * query share a cache entry.
+     */
+    static String normalize(String sql) {
+        StringBuilder normalized = new StringBuilder(sql.length());
+        char quote = 0;
+        boolean pendingSpace = false;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (quote != 0) {
+                normalized.append(c);
+                if (c == quote) {
+                    quote = 0;
+                }
+            } else if (Character.isWhitespace(c)) {
+                pendingSpace = !normalized.isEmpty();
+            } else {
+                if (pendingSpace) {
+                    normalized.append(' ');
+                    pendingSpace = false;
+                }
+                if (c == '\'' || c == '"') {
+                    quote = c;
+                }
+                normalized.append(Character.toLowerCase(c));
+            }
+        }
+        while (!normalized.isEmpty() && normalized.charAt(normalized.length() - 1) == ';') {
+            normalized.setLength(normalized.length() - 1);
+        }
+        return normalized.toString().trim();
+    }
+
+    /**
+     * True for plain reads; only those are safe to serve from a cache.
+     */
+    static boolean isSelect(String normalizedSql) {
+        return normalizedSql.startsWith("select ");
+    }
+
+    /**
+     * Tables named after {@code FROM} or {@code JOIN}, including comma joins.
+     */
+    static Set<String> tables(String normalizedSql) {
+        List<String> tokens = tokenize(normalizedSql);
+        Set<String> tables = new LinkedHashSet<>();
+        for (int i = 0; i < tokens.size(); i++) {
+            String token = tokens.get(i);
+            if (!token.equals("from") && !token.equals("join")) {
+                continue;
+            }
+            int j = i + 1;
+            while (j < tokens.size() && isIdentifier(tokens.get(j))) {
+                tables.add(tokens.get(j++));
+                // Skip an alias, with or without AS
+                if (j < tokens.size() && tokens.get(j).equals("as")) {
+                    j++;
+                }
+                if (j < tokens.size() && isIdentifier(tokens.get(j)) && !CLAUSE_KEYWORDS.contains(tokens.get(j))) {
+                    j++;
+                }
+                if (j < tokens.size() && tokens.get(j).equals(",")) {
+                    j++;
+                } else {
+                    break;
+                }
+            }
+        }
+        return tables;
+    }
+
+    private static List<String> tokenize(String sql) {
+        List<String> tokens = new ArrayList<>();
+        int i = 0;
+        while (i < sql.length()) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"') {
+                int end = sql.indexOf(c, i + 1);
+                i = end < 0 ? sql.length() : end + 1;
+                tokens.add("?");
+            } else if (Character.isLetter(c) || c == '_') {
+                int start = i;
+                while (i < sql.length() && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '_')) {
+                    i++;
+                }
+                tokens.add(sql.substring(start, i).toLowerCase(Locale.ROOT));
+            } else {
+                if (!Character.isWhitespace(c)) {
+                    tokens.add(String.valueOf(c));
+                }
+                i++;
+            }
+        }
+        return tokens;
+    }
+
+    private static boolean isIdentifier(String token) {
+        char first = token.charAt(0);
+        return (Character.isLetter(first) || first == '_') && !token.equals("select");
+    }
+}
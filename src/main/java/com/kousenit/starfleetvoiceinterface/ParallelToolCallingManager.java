@@ -0,0 +1,169 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import com.kousenit.starfleetvoiceinterface.config.ToolProperties;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.execution.ToolExecutionExceptionProcessor;
+import org.springframework.ai.tool.resolution.ToolCallbackResolver;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Runs the tool calls of one assistant turn side by side instead of one after
+ * another, so "what's using memory and which ports are open" costs about as
+ * long as its slowest query rather than the sum of them.
+ * <p>
+ * Each call still goes through Spring AI's default manager, so tool lookup,
+ * exception handling and return-direct behave as before; only the scheduling
+ * changes. Responses are put back in the order the model asked for them.
+ * Being a {@link ToolCallingManager} bean, this replaces the auto-configured
+ * one for the chat model.
+ */
+@Component
+public class ParallelToolCallingManager implements ToolCallingManager {
+
+    private static final Logger log = LoggerFactory.getLogger(ParallelToolCallingManager.class);
+
+    private final ToolCallingManager delegate;
+    private final Semaphore permits;
+    private final int maxConcurrency;
+    private final ExecutorService executor =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("tool-call-", 0).factory());
+
+    @Autowired
+    public ParallelToolCallingManager(ToolCallbackResolver toolCallbackResolver,
+                                      ToolExecutionExceptionProcessor toolExecutionExceptionProcessor,
+                                      ToolProperties toolProperties) {
+        this(ToolCallingManager.builder()
+                        .toolCallbackResolver(toolCallbackResolver)
+                        .toolExecutionExceptionProcessor(toolExecutionExceptionProcessor)
+                        .build(),
+                toolProperties.parallel().enabled() ? toolProperties.parallel().maxConcurrency() : 1);
+    }
+
+    ParallelToolCallingManager(ToolCallingManager delegate, int maxConcurrency) {
+        this.delegate = delegate;
+        this.maxConcurrency = maxConcurrency;
+        this.permits = new Semaphore(Math.max(1, maxConcurrency));
+    }
+
+    @Override
+    public List<ToolDefinition> resolveToolDefinitions(ToolCallingChatOptions chatOptions) {
+        return delegate.resolveToolDefinitions(chatOptions);
+    }
+
+    @Override
+    public ToolExecutionResult executeToolCalls(Prompt prompt, ChatResponse chatResponse) {
+        AssistantMessage assistantMessage = toolCallMessage(chatResponse);
+        if (assistantMessage == null || assistantMessage.getToolCalls().size() < 2 || maxConcurrency < 2) {
+            return delegate.executeToolCalls(prompt, chatResponse);
+        }
+
+        List<AssistantMessage.ToolCall> toolCalls = assistantMessage.getToolCalls();
+        List<Callable<ToolExecutionResult>> tasks = toolCalls.stream()
+                .map(toolCall -> (Callable<ToolExecutionResult>) () -> executeOne(prompt, assistantMessage, toolCall))
+                .toList();
+
+        long start = System.nanoTime();
+        List<ToolResponseMessage.ToolResponse> responses = new ArrayList<>();
+        boolean returnDirect = true;
+        for (ToolExecutionResult result : invokeAll(tasks)) {
+            responses.addAll(toolResponses(result));
+            returnDirect &= result.returnDirect();
+        }
+        log.debug("Ran {} tool calls in parallel in {} ms", toolCalls.size(), (System.nanoTime() - start) / 1_000_000);
+
+        List<Message> conversationHistory = new ArrayList<>(prompt.getInstructions());
+        conversationHistory.add(assistantMessage);
+        conversationHistory.add(new ToolResponseMessage(responses, Map.of()));
+        return ToolExecutionResult.builder()
+                .conversationHistory(conversationHistory)
+                .returnDirect(returnDirect)
+                .build();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Runs a single tool call through the default manager, as if the model had
+     * asked for nothing else this turn.
+     */
+    private ToolExecutionResult executeOne(Prompt prompt, AssistantMessage assistantMessage,
+                                           AssistantMessage.ToolCall toolCall) throws InterruptedException {
+        AssistantMessage single = new AssistantMessage(
+                assistantMessage.getText(), assistantMessage.getMetadata(), List.of(toolCall));
+        permits.acquire();
+        try {
+            return delegate.executeToolCalls(prompt, new ChatResponse(List.of(new Generation(single))));
+        } finally {
+            permits.release();
+        }
+    }
+
+    private List<ToolExecutionResult> invokeAll(List<Callable<ToolExecutionResult>> tasks) {
+        List<Future<ToolExecutionResult>> futures;
+        try {
+            // Interrupting the caller (a cancelled command) cancels every call still running
+            futures = executor.invokeAll(tasks);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while waiting for tool calls", e);
+        }
+
+        List<ToolExecutionResult> results = new ArrayList<>(futures.size());
+        for (Future<ToolExecutionResult> future : futures) {
+            try {
+                results.add(future.get());
+            } catch (ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException runtime) {
+                    throw runtime;
+                }
+                throw new IllegalStateException("Tool call failed", e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while waiting for tool calls", e);
+            }
+        }
+        return results;
+    }
+
+    private static AssistantMessage toolCallMessage(ChatResponse chatResponse) {
+        return chatResponse.getResults().stream()
+                .map(Generation::getOutput)
+                .filter(AssistantMessage::hasToolCalls)
+                .findFirst()
+                .orElse(null);
+    }
+
+    private static List<ToolResponseMessage.ToolResponse> toolResponses(ToolExecutionResult result) {
+        List<Message> history = result.conversationHistory();
+        if (history.getLast() instanceof ToolResponseMessage toolResponseMessage) {
+            return toolResponseMessage.getResponses();
+        }
+        throw new IllegalStateException("Tool execution produced no tool response");
+    }
+}
@@ -0,0 +1,157 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.function.Predicate;
+
+/**
+ * Turns what a microphone delivers at its own rate and channel count into
+ * the 16-bit mono PCM the rest of the capture path expects: decode, average
+ * the channels, {@link Resampler resample}, encode. Both formats are 16-bit
+ * signed little-endian. A chunk that ends mid-frame is completed by the next
+ * one. Not thread-safe; one per microphone line.
+ */
+final class PcmConverter {
+
+    // Native capture rates, the usual ones first
+    private static final float[] LINE_RATES = {48000f, 44100f, 96000f, 32000f, 24000f, 22050f, 16000f, 11025f, 8000f};
+
+    private final PcmDsp dsp;
+    private final int channels;
+    private final int frameSize;
+    private final Resampler resampler;
+
+    // Bytes of a frame the last read ended in the middle of, at the front
+    private byte[] staged;
+    private int pendingFill;
+    private short[] samples = new short[0];
+    private float[] interleaved = new float[0];
+    private float[] mono = new float[0];
+    private float[] resampled = new float[0];
+
+    PcmConverter(AudioFormat from, AudioFormat to) {
+        this(from, to, PcmDsp.get());
+    }
+
+    PcmConverter(AudioFormat from, AudioFormat to, PcmDsp dsp) {
+        requireLinear16(from);
+        requireLinear16(to);
+        if (to.getChannels() != 1) {
+            throw new IllegalArgumentException("Converts to mono only: " + to);
+        }
+        this.dsp = dsp;
+        this.channels = from.getChannels();
+        this.frameSize = from.getFrameSize();
+        this.resampler = (int) from.getSampleRate() == (int) to.getSampleRate()
+                ? null
+                : new Resampler((int) from.getSampleRate(), (int) to.getSampleRate(), dsp.kernels());
+        this.staged = new byte[frameSize];
+    }
+
+    /**
+     * The format to open the line in: {@code wanted} when the device offers
+     * it, else the first 16-bit little-endian mono or stereo format at a
+     * common rate that it does.
+     */
+    static Optional<AudioFormat> lineFormat(AudioFormat wanted, Predicate<AudioFormat> supported) {
+        List<AudioFormat> candidates = new ArrayList<>();
+        candidates.add(wanted);
+        for (float rate : LINE_RATES) {
+            for (int channels = 1; channels <= 2; channels++) {
+                candidates.add(new AudioFormat(rate, 16, channels, true, false));
+            }
+        }
+        return candidates.stream().filter(supported).findFirst();
+    }
+
+    /**
+     * Upper bound on the bytes {@link #convert} writes for {@code length}
+     * bytes of input.
+     */
+    int maxOutputBytes(int length) {
+        int frames = (length + frameSize - 1) / frameSize + 1;
+        return 2 * (resampler == null ? frames : resampler.maxOutput(frames));
+    }
+
+    /**
+     * Converts {@code length} bytes of line audio into {@code out}, which
+     * must hold {@link #maxOutputBytes(int) maxOutputBytes(length)}.
+     *
+     * @return bytes written, always a whole number of samples
+     */
+    int convert(byte[] data, int offset, int length, byte[] out) {
+        byte[] input = data;
+        int start = offset;
+        int available = length;
+        if (pendingFill > 0) {
+            // A frame split across reads: complete it in front of the new bytes
+            if (staged.length < pendingFill + length) {
+                staged = Arrays.copyOf(staged, pendingFill + length);
+            }
+            System.arraycopy(data, offset, staged, pendingFill, length);
+            input = staged;
+            start = 0;
+            available = pendingFill + length;
+        }
+        int frames = available / frameSize;
+        int whole = frames * frameSize;
+        ensureCapacity(frames);
+        int decoded = dsp.decode(input, start, whole, samples);
+        pendingFill = available - whole;
+        System.arraycopy(input, start + whole, staged, 0, pendingFill);
+
+        dsp.toFloat(samples, decoded, interleaved);
+        float[] monoSamples = downmix(frames);
+        if (resampler == null) {
+            return dsp.encode(monoSamples, frames, out, 0);
+        }
+        if (resampled.length < resampler.maxOutput(frames)) {
+            resampled = new float[resampler.maxOutput(frames)];
+        }
+        int produced = resampler.process(monoSamples, frames, resampled);
+        return dsp.encode(resampled, produced, out, 0);
+    }
+
+    /**
+     * Forgets partial frames and resampler history, as for a new recording.
+     */
+    void reset() {
+        pendingFill = 0;
+        if (resampler != null) {
+            resampler.reset();
+        }
+    }
+
+    private float[] downmix(int count) {
+        if (channels == 1) {
+            return interleaved;
+        }
+        for (int i = 0; i < count; i++) {
+            float sum = 0;
+            for (int c = 0; c < channels; c++) {
+                sum += interleaved[i * channels + c];
+            }
+            mono[i] = sum / channels;
+        }
+        return mono;
+    }
+
+    private void ensureCapacity(int frames) {
+        int sampleCount = frames * channels;
+        if (samples.length < sampleCount) {
+            samples = new short[sampleCount];
+            interleaved = new float[sampleCount];
+            mono = new float[frames];
+        }
+    }
+
+    private static void requireLinear16(AudioFormat format) {
+        if (!AudioFormat.Encoding.PCM_SIGNED.equals(format.getEncoding())
+                || format.getSampleSizeInBits() != 16 || format.isBigEndian()) {
+            throw new IllegalArgumentException("Expected 16-bit signed little-endian PCM: " + format);
+        }
+    }
+}
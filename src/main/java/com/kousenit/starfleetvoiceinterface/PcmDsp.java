@@ -0,0 +1,107 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Whole-frame operations on 16-bit little-endian PCM: decoding to shorts
+ * and floats and back, level metering, DC-offset removal and gain
+ * normalization. Stateless; the caller owns the sample arrays, so a frame
+ * loop allocates nothing.
+ */
+final class PcmDsp {
+
+    private static final Logger log = LoggerFactory.getLogger(PcmDsp.class);
+
+    private static final PcmDsp BEST = new PcmDsp(PcmKernels.best());
+
+    static {
+        log.info("PCM kernels: {}", BEST.kernels.name());
+    }
+
+    private final PcmKernels kernels;
+
+    PcmDsp(PcmKernels kernels) {
+        this.kernels = kernels;
+    }
+
+    /**
+     * Shared instance on the fastest kernels this JVM can run.
+     */
+    static PcmDsp get() {
+        return BEST;
+    }
+
+    PcmKernels kernels() {
+        return kernels;
+    }
+
+    /**
+     * Decodes {@code length} bytes into {@code samples}, which must hold
+     * {@code length / 2}; an odd last byte is ignored.
+     *
+     * @return samples decoded
+     */
+    int decode(byte[] pcm, int offset, int length, short[] samples) {
+        int count = length / 2;
+        kernels.decode(pcm, offset, samples, count);
+        return count;
+    }
+
+    void toFloat(short[] samples, int count, float[] out) {
+        kernels.toFloat(samples, out, count);
+    }
+
+    /**
+     * @return bytes written, {@code 2 * count}
+     */
+    int encode(float[] samples, int count, byte[] pcm, int offset) {
+        kernels.encode(samples, count, pcm, offset);
+        return 2 * count;
+    }
+
+    double rms(short[] samples, int count) {
+        return count == 0 ? 0 : Math.sqrt(kernels.sumOfSquares(samples, count) / count);
+    }
+
+    int peak(short[] samples, int count) {
+        return kernels.peak(samples, count);
+    }
+
+    /**
+     * Sign changes per adjacent pair of samples, 0 to 1.
+     */
+    double zeroCrossingRate(short[] samples, int count) {
+        return count > 1 ? (double) kernels.zeroCrossings(samples, count) / (count - 1) : 0.0;
+    }
+
+    /**
+     * Subtracts the mean of the range from it.
+     *
+     * @return the offset that was removed
+     */
+    float removeDcOffset(float[] samples, int offset, int count) {
+        if (count == 0) {
+            return 0;
+        }
+        float mean = kernels.sum(samples, offset, count) / count;
+        kernels.scaleAndShift(samples, offset, count, 1f, -mean);
+        return mean;
+    }
+
+    /**
+     * Scales the range so its peak reaches {@code targetPeak}, by at most
+     * {@code maxGain} so near-silence isn't blown up into noise.
+     *
+     * @return the gain applied
+     */
+    float normalize(float[] samples, int offset, int count, float targetPeak, float maxGain) {
+        float peak = kernels.peak(samples, offset, count);
+        if (peak == 0) {
+            return 1f;
+        }
+        float gain = Math.min(targetPeak / peak, maxGain);
+        kernels.scaleAndShift(samples, offset, count, gain, 0f);
+        return gain;
+    }
+}
@@ -0,0 +1,68 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import java.nio.ByteOrder;
+
+/**
+ * The inner loops of {@link PcmDsp} and {@link Resampler}, over whole frames
+ * of 16-bit little-endian PCM and of float samples in [-1, 1). There is a
+ * {@link VectorPcmKernels SIMD version} on the incubating Vector API and a
+ * {@link ScalarPcmKernels scalar one} that gives the same results up to
+ * float rounding.
+ */
+interface PcmKernels {
+
+    /**
+     * The vector kernels when the JVM was started with
+     * {@code --add-modules jdk.incubator.vector} (the Gradle tasks do this)
+     * on a little-endian machine, the scalar ones otherwise, e.g. under
+     * {@code java -jar}.
+     */
+    static PcmKernels best() {
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent()
+                && ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN) {
+            return new VectorPcmKernels();
+        }
+        return new ScalarPcmKernels();
+    }
+
+    String name();
+
+    /**
+     * Reads {@code count} samples starting at byte {@code offset}.
+     */
+    void decode(byte[] pcm, int offset, short[] samples, int count);
+
+    /**
+     * Scales samples to [-1, 1).
+     */
+    void toFloat(short[] samples, float[] out, int count);
+
+    /**
+     * Writes {@code count} samples as bytes starting at {@code offset},
+     * rounded and clipped to the 16-bit range.
+     */
+    void encode(float[] samples, int count, byte[] pcm, int offset);
+
+    double sumOfSquares(short[] samples, int count);
+
+    /**
+     * Adjacent pairs where one sample is negative and the other is not.
+     */
+    int zeroCrossings(short[] samples, int count);
+
+    /**
+     * Largest magnitude, 32768 for a full-scale negative sample.
+     */
+    int peak(short[] samples, int count);
+
+    float sum(float[] samples, int offset, int count);
+
+    float peak(float[] samples, int offset, int count);
+
+    /**
+     * {@code samples[i] = samples[i] * scale + shift} over the range.
+     */
+    void scaleAndShift(float[] samples, int offset, int count, float scale, float shift);
+
+    float dot(float[] a, int aOffset, float[] b, int bOffset, int length);
+}
@@ -0,0 +1,89 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import java.lang.invoke.VarHandle;
+
+/**
+ * Fixed-size, lock-free ring of PCM bytes with one writer and any number of
+ * readers. Positions are absolute byte counts since the ring was created, so
+ * a reader can start anywhere within the last {@code capacity} bytes (for
+ * example, a pre-roll before the COMM button was pressed).
+ * <p>
+ * The writer announces the region it is about to overwrite before touching
+ * it, and readers re-check that announcement after copying, so a reader that
+ * falls a full lap behind sees an overrun instead of torn data.
+ */
+final class PcmRingBuffer {
+
+    static final int OVERRUN = -1;
+
+    private final byte[] data;
+    private final int capacity;
+
+    // Everything below reservedPosition may be overwritten; everything below writePosition is readable
+    private volatile long reservedPosition;
+    private volatile long writePosition;
+
+    PcmRingBuffer(int capacity) {
+        this.data = new byte[capacity];
+        this.capacity = capacity;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    long writePosition() {
+        return writePosition;
+    }
+
+    /**
+     * Appends bytes. Must only be called from the single writer thread.
+     */
+    void write(byte[] src, int offset, int length) {
+        long position = writePosition;
+        if (length > capacity) {
+            offset += length - capacity;
+            position += length - capacity;
+            length = capacity;
+        }
+        reservedPosition = position + length;
+        // Publish the reservation before any byte of the region changes
+        VarHandle.storeStoreFence();
+
+        int index = (int) (position % capacity);
+        int first = Math.min(length, capacity - index);
+        System.arraycopy(src, offset, data, index, first);
+        System.arraycopy(src, offset + first, data, 0, length - first);
+
+        writePosition = position + length;
+    }
+
+    /**
+     * Copies up to {@code length} bytes starting at absolute {@code position}.
+     *
+     * @return bytes copied, 0 if nothing is available yet, or {@link #OVERRUN}
+     * if that position has already been overwritten
+     */
+    int read(long position, byte[] dst, int offset, int length) {
+        long end = writePosition;
+        if (position >= end) {
+            return 0;
+        }
+        if (position < end - capacity) {
+            return OVERRUN;
+        }
+
+        int n = (int) Math.min(length, end - position);
+        int index = (int) (position % capacity);
+        int first = Math.min(n, capacity - index);
+        System.arraycopy(data, index, dst, offset, first);
+        System.arraycopy(data, 0, dst, offset + first, n - first);
+
+        // Keep the copy above from being reordered after the re-check below
+        VarHandle.acquireFence();
+        if (position < reservedPosition - capacity) {
+            return OVERRUN;
+        }
+        return n;
+    }
+}
@@ -0,0 +1,10 @@
+package com.kousenit.starfleetvoiceinterface;
+
+/**
+ * Receives raw PCM bytes from a stage of the capture path.
+ */
+@FunctionalInterface
+interface PcmSink {
+
+    void write(byte[] data, int offset, int length);
+}
@@ -0,0 +1,184 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.kousenit.starfleetvoiceinterface.config.CacheProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Transcripts and model answers kept on disk, so a repeated question doesn't
+ * pay for transcription and the model again after a restart.
+ * <p>
+ * Transcripts are keyed by a hash of the recorded PCM. An answer is keyed by
+ * the normalized command plus a fingerprint of the tool calls the model made
+ * and their results: the calls are stored with the command, run again the
+ * next time it is asked, and the answer is reused only if they return the
+ * same thing. An answer about the system is stale once the system changes.
+ * <p>
+ * Backed by a {@link CacheFile}. If the file can't be opened or written, the
+ * cache logs it and behaves as if empty.
+ */
+@Component
+@ConditionalOnProperty(prefix = "starfleet.cache", name = "enabled", havingValue = "true")
+public class PersistentCache implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(PersistentCache.class);
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static final String TRANSCRIPT = "transcript:";
+    private static final String CALLS = "calls:";
+    private static final String RESPONSE = "response:";
+
+    private final Path file;
+    private final long maxBytes;
+    private final Duration replayMinTtl;
+
+    private volatile CacheFile cacheFile;
+
+    @Autowired
+    public PersistentCache(CacheProperties properties) {
+        this(properties.file(), properties.maxSize().toBytes(), properties.replayMinTtl());
+    }
+
+    PersistentCache(Path file, long maxBytes, Duration replayMinTtl) {
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.replayMinTtl = replayMinTtl;
+    }
+
+    @PostConstruct
+    public void open() {
+        long start = System.nanoTime();
+        try {
+            cacheFile = CacheFile.open(file, maxBytes);
+            log.info("Loaded {} cached entries from {} in {} ms", cacheFile.size(), file,
+                    (System.nanoTime() - start) / 1_000_000);
+        } catch (IOException | RuntimeException e) {
+            log.warn("Persistent cache unavailable, continuing without it: {}", e.getMessage());
+        }
+    }
+
+    Optional<String> transcript(String audioHash) {
+        return get(TRANSCRIPT + audioHash);
+    }
+
+    void putTranscript(String audioHash, String transcript) {
+        put(TRANSCRIPT + audioHash, transcript);
+    }
+
+    /**
+     * The tool calls, without results, the model made the last time this
+     * command was answered.
+     */
+    Optional<List<ToolCallLog.Call>> toolCalls(String command) {
+        return get(CALLS + IntentMatcher.normalize(command)).flatMap(PersistentCache::readCalls);
+    }
+
+    /**
+     * The shortest result cache TTL a table may have for the calls reading it
+     * to be worth replaying.
+     */
+    Duration replayMinTtl() {
+        return replayMinTtl;
+    }
+
+    Optional<String> response(String command, String fingerprint) {
+        return get(RESPONSE + IntentMatcher.normalize(command) + '\n' + fingerprint);
+    }
+
+    void putResponse(String command, List<ToolCallLog.Call> calls, String response) {
+        String normalized = IntentMatcher.normalize(command);
+        put(CALLS + normalized, writeCalls(calls));
+        put(RESPONSE + normalized + '\n' + ToolCallLog.fingerprint(calls), response);
+    }
+
+    /**
+     * Hash of a recording: its format and PCM samples.
+     */
+    static String audioHash(AudioFormat format, ByteBuffer pcm) {
+        MessageDigest digest = ToolCallLog.sha256();
+        digest.update(format.toString().getBytes(StandardCharsets.UTF_8));
+        digest.update(pcm.duplicate());
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    int size() {
+        CacheFile current = cacheFile;
+        return current != null ? current.size() : 0;
+    }
+
+    @PreDestroy
+    @Override
+    public void close() {
+        CacheFile current = cacheFile;
+        cacheFile = null;
+        if (current != null) {
+            try {
+                current.close();
+            } catch (IOException e) {
+                log.warn("Failed to close {}: {}", file, e.getMessage());
+            }
+        }
+    }
+
+    private Optional<String> get(String key) {
+        CacheFile current = cacheFile;
+        return current != null ? Optional.ofNullable(current.get(key)) : Optional.empty();
+    }
+
+    private void put(String key, String value) {
+        CacheFile current = cacheFile;
+        if (current == null) {
+            return;
+        }
+        try {
+            if (!current.put(key, value)) {
+                log.debug("Not caching {} bytes for {}: too large", value.length(), key);
+            }
+        } catch (IOException e) {
+            log.warn("Failed to write to {}: {}", file, e.getMessage());
+        }
+    }
+
+    private static String writeCalls(List<ToolCallLog.Call> calls) {
+        try {
+            return objectMapper.writeValueAsString(calls.stream()
+                    .map(call -> Map.of("name", call.name(), "input", call.input()))
+                    .toList());
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static Optional<List<ToolCallLog.Call>> readCalls(String json) {
+        try {
+            return Optional.of(objectMapper.readValue(json, new TypeReference<List<Map<String, String>>>() {
+                    }).stream()
+                    .map(call -> new ToolCallLog.Call(call.get("name"), call.get("input"), null))
+                    .toList());
+        } catch (JsonProcessingException e) {
+            log.debug("Ignoring unreadable cached tool calls: {}", e.getOriginalMessage());
+            return Optional.empty();
+        }
+    }
+}
@@ -0,0 +1,322 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import com.kousenit.starfleetvoiceinterface.config.MetricsProperties;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.HistogramSnapshot;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jdk.jfr.Category;
+import jdk.jfr.Configuration;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+import jdk.jfr.StackTrace;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.text.ParseException;
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Latency of each stage of a voice command, from opening the microphone to
+ * the answer on screen. Every stage is a Micrometer timer with p50/p95/p99
+ * over a sliding window, and emits a {@link StageEvent} to JFR carrying the
+ * id of the command it belongs to.
+ * <p>
+ * The window runs one command at a time (a new one cancels the last), so
+ * its stages pick up the current command id rather than having it passed
+ * down; a stage still finishing for a superseded command is tagged with the
+ * new one. The headless server runs many commands at once, so it takes an id
+ * per command from {@link #newCommand()} and passes it to every stage, down
+ * to the tool calls through the {@link #CONTEXT_KEY tool context}.
+ * <p>
+ * Uses the application's {@link MeterRegistry} if there is one, and
+ * otherwise a local {@link SimpleMeterRegistry}; nothing leaves the process.
+ * The percentile table goes to the log every few commands and at shutdown.
+ */
+@Component
+public class PipelineMetrics {
+
+    private static final Logger log = LoggerFactory.getLogger(PipelineMetrics.class);
+
+    /** Tool context key of the id of the command a tool call is for. */
+    static final String CONTEXT_KEY = "starfleet.commandId";
+
+    public enum Stage {
+        /** Opening the microphone line, or marking the start in the hot mic's ring. */
+        MIC_OPEN,
+        /** Finishing the upload's FLAC or WAV encoding after release. */
+        ENCODING,
+        /** The transcription call, or waiting for the last streamed segments. */
+        TRANSCRIPTION,
+        /** The chat completion, tool calls included. */
+        CHAT,
+        /** One tool call, as the model waited for it. */
+        TOOL_CALL,
+        /** From sending the command to the first streamed token. */
+        FIRST_TOKEN,
+        /** From the answer being ready to it being on screen. */
+        RENDER,
+        /** From asking for a sound effect to its first block being mixed. */
+        EFFECT,
+        /** From releasing the button to the answer being on screen. */
+        COMMAND;
+
+        String tag() {
+            return name().toLowerCase(Locale.ROOT).replace('_', '-');
+        }
+    }
+
+    /**
+     * A pipeline stage of one command, from begin to commit.
+     */
+    @Name("com.kousenit.starfleet.PipelineStage")
+    @Label("Pipeline Stage")
+    @Category({"Starfleet", "Voice Pipeline"})
+    @Description("One stage of a voice command")
+    @StackTrace(false)
+    static final class StageEvent extends Event {
+
+        @Label("Command Id")
+        long commandId;
+
+        @Label("Stage")
+        String stage;
+
+        @Label("Detail")
+        String detail;
+    }
+
+    private final MeterRegistry registry;
+    private final Map<Stage, Timer> timers = new EnumMap<>(Stage.class);
+    private final Duration window;
+    private final int summaryEvery;
+    private final MetricsProperties.Jfr jfr;
+    private final AtomicLong commands = new AtomicLong();
+
+    private volatile long currentCommand;
+    private Recording recording;
+
+    @Autowired
+    public PipelineMetrics(ObjectProvider<MeterRegistry> registry, MetricsProperties properties) {
+        this(registry.getIfAvailable(SimpleMeterRegistry::new), properties.window(), properties.summaryEvery(),
+                properties.jfr());
+    }
+
+    PipelineMetrics(MeterRegistry registry, Duration window, int summaryEvery, MetricsProperties.Jfr jfr) {
+        this.registry = registry;
+        this.window = window;
+        this.summaryEvery = summaryEvery;
+        this.jfr = jfr;
+        for (Stage stage : Stage.values()) {
+            timers.put(stage, Timer.builder("starfleet.pipeline.stage")
+                    .description("Latency of one stage of a voice command")
+                    .tag("stage", stage.tag())
+                    .publishPercentiles(0.5, 0.95, 0.99)
+                    .distributionStatisticExpiry(window)
+                    .register(registry));
+        }
+        // Registering the event class initializes JFR; pay for it now rather than on the first command
+        new StageEvent().shouldCommit();
+    }
+
+    /**
+     * Timers on a local registry, with no summaries or flight recording.
+     */
+    static PipelineMetrics local() {
+        return new PipelineMetrics(new SimpleMeterRegistry(), Duration.ofMinutes(10), 0, null);
+    }
+
+    @PostConstruct
+    public void startRecording() {
+        if (jfr == null || !jfr.enabled()) {
+            return;
+        }
+        try {
+            Recording candidate = new Recording(Configuration.getConfiguration("default"));
+            candidate.setName("starfleet-pipeline");
+            candidate.enable(StageEvent.class);
+            candidate.setMaxAge(jfr.maxAge());
+            candidate.setToDisk(true);
+            candidate.setDestination(jfr.file());
+            candidate.start();
+            recording = candidate;
+            log.info("Recording pipeline events to {}", jfr.file().toAbsolutePath());
+        } catch (IOException | ParseException | RuntimeException e) {
+            log.warn("Flight recording unavailable: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * Starts timing a new command; stages from now on carry its id.
+     */
+    public long beginCommand() {
+        long id = newCommand();
+        currentCommand = id;
+        return id;
+    }
+
+    /**
+     * An id for a command that runs alongside others, leaving the current
+     * command alone; its stages must be given the id explicitly.
+     */
+    public long newCommand() {
+        return commands.incrementAndGet();
+    }
+
+    /**
+     * The id of the command last begun with {@link #beginCommand()}.
+     */
+    public long currentCommand() {
+        return currentCommand;
+    }
+
+    public Timing start(Stage stage) {
+        return start(stage, null);
+    }
+
+    /**
+     * @param detail shown with the JFR event, e.g. the tool input
+     */
+    public Timing start(Stage stage, String detail) {
+        return start(stage, currentCommand, detail);
+    }
+
+    public Timing start(Stage stage, long commandId, String detail) {
+        return new Timing(stage, commandId, detail);
+    }
+
+    public <T> T time(Stage stage, Supplier<T> task) {
+        return time(stage, currentCommand, task);
+    }
+
+    public <T> T time(Stage stage, long commandId, Supplier<T> task) {
+        Timing timing = start(stage, commandId, null);
+        try {
+            return task.get();
+        } finally {
+            timing.stop();
+        }
+    }
+
+    public Timer timer(Stage stage) {
+        return timers.get(stage);
+    }
+
+    /**
+     * The registry the stage timers are on, for the pipeline's other meters.
+     */
+    MeterRegistry registry() {
+        return registry;
+    }
+
+    /**
+     * Count, p50, p95, p99 and max of every stage timed so far, in
+     * milliseconds.
+     */
+    public String summary() {
+        StringBuilder table = new StringBuilder(String.format(Locale.ROOT,
+                "Pipeline latency, last %d min (ms):%n%-14s %6s %9s %9s %9s %9s",
+                window.toMinutes(), "stage", "count", "p50", "p95", "p99", "max"));
+        timers.forEach((stage, timer) -> {
+            if (timer.count() == 0) {
+                return;
+            }
+            HistogramSnapshot snapshot = timer.takeSnapshot();
+            table.append(String.format(Locale.ROOT, "%n%-14s %6d", stage.tag(), timer.count()));
+            for (double percentile : new double[]{0.5, 0.95, 0.99}) {
+                table.append(String.format(Locale.ROOT, " %9.1f", percentile(snapshot, percentile)));
+            }
+            table.append(String.format(Locale.ROOT, " %9.1f", snapshot.max(TimeUnit.MILLISECONDS)));
+        });
+        return table.toString();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (timers.get(Stage.COMMAND).count() > 0) {
+            log.info(summary());
+        }
+        if (recording != null) {
+            // Writes the recording to its destination
+            recording.stop();
+            recording.close();
+            log.info("Wrote pipeline flight recording to {}", jfr.file().toAbsolutePath());
+        }
+    }
+
+    private static double percentile(HistogramSnapshot snapshot, double percentile) {
+        for (ValueAtPercentile value : snapshot.percentileValues()) {
+            if (value.percentile() == percentile) {
+                return value.value(TimeUnit.MILLISECONDS);
+            }
+        }
+        return Double.NaN;
+    }
+
+    /**
+     * One run of a stage. Stopping it records the duration once; it may be
+     * stopped on a different thread than the one that started it.
+     */
+    public final class Timing {
+
+        private final Stage stage;
+        private final long commandId;
+        private final String detail;
+        private final long start = System.nanoTime();
+        private final StageEvent event = new StageEvent();
+        private volatile Duration elapsed;
+
+        private Timing(Stage stage, long commandId, String detail) {
+            this.stage = stage;
+            this.commandId = commandId;
+            this.detail = detail;
+            event.begin();
+        }
+
+        public Duration stop() {
+            if (elapsed != null) {
+                return elapsed;
+            }
+            synchronized (this) {
+                if (elapsed == null) {
+                    Duration duration = Duration.ofNanos(System.nanoTime() - start);
+                    record(duration);
+                    elapsed = duration;
+                }
+                return elapsed;
+            }
+        }
+
+        private void record(Duration duration) {
+            event.end();
+            if (event.shouldCommit()) {
+                event.commandId = commandId;
+                event.stage = stage.tag();
+                event.detail = detail;
+                event.commit();
+            }
+            Timer timer = timers.get(stage);
+            timer.record(duration);
+            log.debug("Command {} {}: {} ms", commandId, stage.tag(), duration.toMillis());
+            if (stage == Stage.COMMAND && summaryEvery > 0 && timer.count() % summaryEvery == 0) {
+                log.info(summary());
+            }
+        }
+    }
+}
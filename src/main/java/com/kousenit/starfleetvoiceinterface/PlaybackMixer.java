@@ -0,0 +1,213 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sound.sampled.AudioFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Mixes any number of overlapping sounds on one thread into one output line.
+ * Blocks are 10 ms; gain changes (ducking, cancel fade-outs) ramp across a
+ * block so they don't click. Mixing reuses its buffers, so steady-state
+ * playback allocates nothing.
+ */
+final class PlaybackMixer implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(PlaybackMixer.class);
+
+    static final int MAX_VOICES = 4;
+
+    private final int channels;
+    private final PcmSink output;
+    private final LinkedBlockingQueue<Playback> pending = new LinkedBlockingQueue<>();
+    private final AtomicLong sequence = new AtomicLong();
+    // Owned by the mixer thread
+    private final List<Playback> voices = new ArrayList<>();
+    private final float[] mix;
+    private final byte[] block;
+
+    private volatile float targetGain = 1.0f;
+    private volatile long cancelledBelow;
+    private float masterGain = 1.0f;
+
+    private volatile boolean running;
+    private Thread mixerThread;
+
+    PlaybackMixer(AudioFormat format, PcmSink output) {
+        this.channels = format.getChannels();
+        this.output = output;
+        this.mix = new float[(int) (format.getSampleRate() / 100) * channels];
+        this.block = new byte[mix.length * 2];
+    }
+
+    void start() {
+        running = true;
+        mixerThread = new Thread(this::run, "audio-mixer");
+        mixerThread.setDaemon(true);
+        mixerThread.start();
+    }
+
+    Playback play(DecodedSound sound, float gain) {
+        Playback playback = new Playback(sound, gain, sequence.getAndIncrement());
+        pending.add(playback);
+        return playback;
+    }
+
+    /**
+     * Ramps every sound, current and future, to {@code gain} of its level.
+     */
+    void duck(float gain) {
+        targetGain = gain;
+    }
+
+    /**
+     * Fades out everything played so far; the mixer applies it on its next block.
+     */
+    void cancelAll() {
+        cancelledBelow = sequence.get();
+    }
+
+    /**
+     * Renders one block to the output.
+     *
+     * @return number of sounds still playing afterwards
+     */
+    int mixNext() {
+        Playback next;
+        while ((next = pending.poll()) != null) {
+            voices.add(next);
+        }
+        long cancelBelow = cancelledBelow;
+        for (int i = 0; i < voices.size(); i++) {
+            Playback voice = voices.get(i);
+            // Oldest sounds make way once too many overlap
+            if (voice.sequence < cancelBelow || i < voices.size() - MAX_VOICES) {
+                voice.cancel();
+            }
+        }
+
+        Arrays.fill(mix, 0.0f);
+        for (int i = voices.size() - 1; i >= 0; i--) {
+            Playback voice = voices.get(i);
+            voice.started.complete(null);
+            if (voice.mixInto(mix, channels)) {
+                voices.remove(i);
+                voice.done.complete(null);
+            }
+        }
+
+        float startGain = masterGain;
+        float endGain = targetGain;
+        float step = (endGain - startGain) / mix.length;
+        for (int i = 0; i < mix.length; i++) {
+            int value = Math.round(mix[i] * (startGain + step * i));
+            value = Math.clamp(value, Short.MIN_VALUE, Short.MAX_VALUE);
+            block[2 * i] = (byte) value;
+            block[2 * i + 1] = (byte) (value >> 8);
+        }
+        masterGain = endGain;
+
+        output.write(block, 0, block.length);
+        return voices.size();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        if (mixerThread != null) {
+            mixerThread.interrupt();
+            try {
+                mixerThread.join(1000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        pending.forEach(playback -> playback.done.complete(null));
+        voices.forEach(playback -> playback.done.complete(null));
+    }
+
+    private void run() {
+        try {
+            while (running) {
+                if (voices.isEmpty()) {
+                    // Idle: block until something is played instead of writing silence
+                    voices.add(pending.take());
+                }
+                mixNext();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (RuntimeException e) {
+            log.warn("Audio mixer stopped: {}", e.getMessage());
+        }
+    }
+
+    /**
+     * One sound being played. Cancelling fades it out over the next block.
+     */
+    static final class Playback {
+
+        private final DecodedSound sound;
+        private final float gain;
+        private final long sequence;
+        private final CompletableFuture<Void> started = new CompletableFuture<>();
+        private final CompletableFuture<Void> done = new CompletableFuture<>();
+        private volatile boolean cancelled;
+        private int position;
+
+        private Playback(DecodedSound sound, float gain, long sequence) {
+            this.sound = sound;
+            this.gain = gain;
+            this.sequence = sequence;
+        }
+
+        void cancel() {
+            cancelled = true;
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * Completes when the mixer first mixes the sound into a block.
+         */
+        CompletableFuture<Void> started() {
+            return started;
+        }
+
+        /**
+         * Completes when the sound has finished or been cancelled.
+         */
+        CompletableFuture<Void> done() {
+            return done;
+        }
+
+        /**
+         * @return true if this sound has nothing left to play
+         */
+        private boolean mixInto(float[] mix, int channels) {
+            short[] samples = sound.samples();
+            int count = Math.min(mix.length, samples.length - position);
+            if (cancelled) {
+                // Linear fade to silence across what is left of this block
+                float step = gain / Math.max(1, count / channels);
+                for (int i = 0; i < count; i++) {
+                    mix[i] += samples[position + i] * (gain - step * (i / channels));
+                }
+                return true;
+            }
+            for (int i = 0; i < count; i++) {
+                mix[i] += samples[position + i] * gain;
+            }
+            position += count;
+            return position >= samples.length;
+        }
+    }
+}
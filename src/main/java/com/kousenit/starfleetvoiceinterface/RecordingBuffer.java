@@ -0,0 +1,169 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.io.Resource;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+
+import static java.nio.charset.StandardCharsets.US_ASCII;
+import static java.nio.file.StandardOpenOption.*;
+
+/**
+ * PCM capture buffer laid out as a complete WAV file.
+ * <p>
+ * The 44-byte RIFF header is reserved up front and audio is appended behind
+ * it in a direct {@link ByteBuffer} that is allocated once and reused across
+ * recordings. When a recording outgrows the in-memory limit, the contents move
+ * to a memory-mapped temp file sized for the maximum duration, so heap and
+ * direct memory stay flat on long sessions. Audio past the maximum duration is
+ * dropped. At stop the RIFF and data sizes are patched in place and the
+ * transcription backend gets a zero-copy view of the finished file.
+ * <p>
+ * Written from the recording thread; read only after that thread is joined.
+ */
+final class RecordingBuffer implements PcmSink {
+
+    static final int HEADER_SIZE = 44;
+
+    private static final Logger log = LoggerFactory.getLogger(RecordingBuffer.class);
+
+    private static final byte[] RIFF = "RIFF".getBytes(US_ASCII);
+    private static final byte[] WAVE = "WAVE".getBytes(US_ASCII);
+    private static final byte[] FMT = "fmt ".getBytes(US_ASCII);
+    private static final byte[] DATA = "data".getBytes(US_ASCII);
+
+    private final AudioFormat audioFormat;
+    private final ByteBuffer memory;
+    private final int maxBytes;
+
+    private ByteBuffer current;
+    private FileChannel spillChannel;
+    private long droppedBytes;
+
+    RecordingBuffer(AudioFormat audioFormat, Duration maxInMemory, Duration maxDuration) {
+        this.audioFormat = audioFormat;
+        this.memory = ByteBuffer.allocateDirect(HEADER_SIZE + bytesFor(maxInMemory))
+                .order(ByteOrder.LITTLE_ENDIAN);
+        this.maxBytes = HEADER_SIZE + bytesFor(maxDuration.compareTo(maxInMemory) > 0 ? maxDuration : maxInMemory);
+        reset();
+    }
+
+    @Override
+    public void write(byte[] data, int offset, int length) {
+        if (current.remaining() < length && current == memory && maxBytes > memory.capacity()) {
+            spill();
+        }
+        int n = Math.min(length, current.remaining());
+        current.put(data, offset, n);
+        if (n < length) {
+            if (droppedBytes == 0) {
+                log.warn("Recording reached its maximum duration, dropping further audio");
+            }
+            droppedBytes += length - n;
+        }
+    }
+
+    int dataSize() {
+        return current.position() - HEADER_SIZE;
+    }
+
+    boolean isSpilled() {
+        return current != memory;
+    }
+
+    long droppedBytes() {
+        return droppedBytes;
+    }
+
+    /**
+     * Read-only view of the captured PCM, without the header.
+     */
+    ByteBuffer pcm() {
+        return current.duplicate().flip().position(HEADER_SIZE).slice().asReadOnlyBuffer();
+    }
+
+    /**
+     * Patches the header sizes and returns a zero-copy view of the WAV file.
+     * The view is valid until the next {@link #reset()}.
+     */
+    Resource toWavResource(String filename) {
+        int dataSize = dataSize();
+        current.putInt(4, dataSize + 36);
+        current.putInt(40, dataSize);
+        return new ByteBufferResource(current.duplicate().flip(), filename);
+    }
+
+    /**
+     * Rewinds for the next recording, releasing any spill file.
+     */
+    void reset() {
+        closeSpillFile();
+        current = memory;
+        current.clear();
+        writeHeader(current);
+        droppedBytes = 0;
+    }
+
+    private void spill() {
+        try {
+            Path file = Files.createTempFile("starfleet-recording-", ".wav");
+            spillChannel = FileChannel.open(file, READ, WRITE, DELETE_ON_CLOSE);
+            ByteBuffer mapped = spillChannel.map(FileChannel.MapMode.READ_WRITE, 0, maxBytes)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            mapped.put(memory.duplicate().flip());
+            current = mapped;
+            log.info("Recording exceeded {} bytes in memory, spilled to {}", memory.capacity(), file);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot spill recording to disk", e);
+        }
+    }
+
+    private void closeSpillFile() {
+        if (spillChannel == null) {
+            return;
+        }
+        try {
+            // The mapping itself is released when it is garbage collected
+            spillChannel.close();
+        } catch (IOException e) {
+            log.warn("Error closing recording spill file", e);
+        }
+        spillChannel = null;
+    }
+
+    private void writeHeader(ByteBuffer buffer) {
+        int sampleRate = (int) audioFormat.getSampleRate();
+        int channels = audioFormat.getChannels();
+        int bitsPerSample = audioFormat.getSampleSizeInBits();
+        int byteRate = sampleRate * channels * bitsPerSample / 8;
+        int blockAlign = channels * bitsPerSample / 8;
+
+        buffer.put(RIFF);
+        buffer.putInt(36); // patched at stop
+        buffer.put(WAVE);
+        buffer.put(FMT);
+        buffer.putInt(16); // Subchunk1Size
+        buffer.putShort((short) 1); // AudioFormat (1 = PCM)
+        buffer.putShort((short) channels);
+        buffer.putInt(sampleRate);
+        buffer.putInt(byteRate);
+        buffer.putShort((short) blockAlign);
+        buffer.putShort((short) bitsPerSample);
+        buffer.put(DATA);
+        buffer.putInt(0); // patched at stop
+    }
+
+    private int bytesFor(Duration duration) {
+        long frames = (long) (audioFormat.getSampleRate() * duration.toMillis() / 1000);
+        return Math.toIntExact(frames * audioFormat.getFrameSize());
+    }
+}
@@ -0,0 +1,44 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+
+/**
+ * Adds each call and the result the model got back to the
+ * {@link ToolCallLog} in the tool context, if there is one. The context is
+ * passed on, as far as {@link ResultTableToolCallback}.
+ */
+class RecordingToolCallback implements ToolCallback {
+
+    private final ToolCallback delegate;
+
+    RecordingToolCallback(ToolCallback delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public ToolDefinition getToolDefinition() {
+        return delegate.getToolDefinition();
+    }
+
+    @Override
+    public ToolMetadata getToolMetadata() {
+        return delegate.getToolMetadata();
+    }
+
+    @Override
+    public String call(String toolInput) {
+        return delegate.call(toolInput);
+    }
+
+    @Override
+    public String call(String toolInput, ToolContext toolContext) {
+        String result = delegate.call(toolInput, toolContext);
+        if (toolContext != null && toolContext.getContext().get(ToolCallLog.CONTEXT_KEY) instanceof ToolCallLog calls) {
+            calls.add(new ToolCallLog.Call(getToolDefinition().name(), toolInput, result));
+        }
+        return result;
+    }
+}
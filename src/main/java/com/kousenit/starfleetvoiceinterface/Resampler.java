@@ -0,0 +1,150 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import java.util.Arrays;
+
+/**
+ * Polyphase sample-rate conversion of a mono float stream by the rational
+ * ratio {@code up / down} (e.g. 1/3 for 48 kHz to 16 kHz, 160/441 for
+ * 44.1 kHz). The prototype is a Kaiser-windowed sinc low-pass at 95% of the
+ * lower Nyquist frequency, about 80 dB down in the stop band; it is split
+ * into {@code up} phases of {@link #taps()} coefficients each, stored
+ * reversed, so every output sample is one {@link PcmKernels#dot dot product}
+ * with the most recent input.
+ * <p>
+ * Streaming: input may arrive in chunks of any size, and the output is the
+ * same as for the whole signal at once. The output lags the input by half
+ * the taps. Not thread-safe.
+ */
+final class Resampler {
+
+    /** Taps per unit of decimation; the transition band stays the same width at any ratio */
+    private static final int TAPS_PER_RATIO = 32;
+
+    private static final double ROLLOFF = 0.95;
+    private static final double KAISER_BETA = 8.0;
+
+    private final PcmKernels kernels;
+    private final int up;
+    private final int down;
+    private final int taps;
+    private final float[] phases;
+
+    // Input not yet consumed, led by the taps - 1 samples the next output still needs
+    private float[] window = new float[4096];
+    private int fill;
+    // Position of the next output on the upsampled time axis, relative to window[0]
+    private long next;
+
+    Resampler(int fromRate, int toRate, PcmKernels kernels) {
+        if (fromRate <= 0 || toRate <= 0) {
+            throw new IllegalArgumentException("Sample rates must be positive: " + fromRate + " -> " + toRate);
+        }
+        int gcd = gcd(fromRate, toRate);
+        this.kernels = kernels;
+        this.up = toRate / gcd;
+        this.down = fromRate / gcd;
+        this.taps = TAPS_PER_RATIO * Math.max(2, Math.ceilDiv(down, up));
+        this.phases = design(up, down, taps);
+        reset();
+    }
+
+    /**
+     * Forgets the input so far, as for a new recording.
+     */
+    void reset() {
+        Arrays.fill(window, 0, taps - 1, 0f);
+        fill = taps - 1;
+        next = (long) (taps - 1) * up;
+    }
+
+    /**
+     * Coefficients per phase: the input samples each output sample is
+     * computed from.
+     */
+    int taps() {
+        return taps;
+    }
+
+    /**
+     * Upper bound on the samples {@link #process} writes for {@code count}
+     * samples of input.
+     */
+    int maxOutput(int count) {
+        return (int) (((long) count + 1) * up / down) + 1;
+    }
+
+    /**
+     * Resamples {@code count} samples of {@code in} into {@code out}, which
+     * must hold {@link #maxOutput(int) maxOutput(count)}.
+     *
+     * @return samples written
+     */
+    int process(float[] in, int count, float[] out) {
+        if (fill + count > window.length) {
+            window = Arrays.copyOf(window, Math.max(2 * window.length, fill + count));
+        }
+        System.arraycopy(in, 0, window, fill, count);
+        fill += count;
+
+        int written = 0;
+        long last = (long) fill * up;
+        while (next < last) {
+            int newest = (int) (next / up);
+            int phase = (int) (next % up);
+            out[written++] = kernels.dot(window, newest - (taps - 1), phases, phase * taps, taps);
+            next += down;
+        }
+
+        int consumed = (int) (next / up) - (taps - 1);
+        if (consumed > 0) {
+            System.arraycopy(window, consumed, window, 0, fill - consumed);
+            fill -= consumed;
+            next -= (long) consumed * up;
+        }
+        return written;
+    }
+
+    private static float[] design(int up, int down, int taps) {
+        int length = taps * up;
+        // Cutoff in cycles per sample of the upsampled signal
+        double cutoff = 0.5 * ROLLOFF * Math.min(1.0, (double) up / down) / up;
+        double center = (length - 1) / 2.0;
+        double[] prototype = new double[length];
+        for (int n = 0; n < length; n++) {
+            double x = n - center;
+            double sinc = x == 0 ? 2 * cutoff : Math.sin(2 * Math.PI * cutoff * x) / (Math.PI * x);
+            double ratio = 2.0 * n / (length - 1) - 1;
+            prototype[n] = sinc * besselI0(KAISER_BETA * Math.sqrt(1 - ratio * ratio)) / besselI0(KAISER_BETA);
+        }
+
+        float[] phases = new float[length];
+        for (int phase = 0; phase < up; phase++) {
+            double sum = 0;
+            for (int k = 0; k < taps; k++) {
+                sum += prototype[phase + k * up];
+            }
+            // Unity gain at DC in every phase; coefficient k meets the input k samples back
+            for (int k = 0; k < taps; k++) {
+                phases[phase * taps + (taps - 1 - k)] = (float) (prototype[phase + k * up] / sum);
+            }
+        }
+        return phases;
+    }
+
+    private static double besselI0(double x) {
+        double sum = 1;
+        double term = 1;
+        for (int k = 1; k < 50; k++) {
+            term *= (x / (2 * k)) * (x / (2 * k));
+            sum += term;
+            if (term < 1e-12 * sum) {
+                break;
+            }
+        }
+        return sum;
+    }
+
+    private static int gcd(int a, int b) {
+        return b == 0 ? a : gcd(b, a % b);
+    }
+}
@@ -0,0 +1,214 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Shrinks osquery results before they go back to the model. A JSON array of
+ * row objects becomes a pipe-separated table: column names once instead of
+ * in every row, columns that are empty, the same in every row, or a copy of
+ * another column pulled out, long values cut short, and at most {@code maxRows} rows followed by
+ * statistics over all of them (min, max and sum of numeric columns, most
+ * frequent values of the others).
+ * <p>
+ * Anything that isn't a row array, or is shorter than {@code minSize}
+ * characters, is returned unchanged.
+ */
+class ResultCompactor {
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    private static final Pattern NUMBER = Pattern.compile("-?\\d+(\\.\\d+)?");
+
+    private static final int TOP_VALUES = 3;
+
+    private final int maxRows;
+    private final int maxValueLength;
+    private final int minSize;
+
+    ResultCompactor(int maxRows, int maxValueLength, int minSize) {
+        this.maxRows = maxRows;
+        this.maxValueLength = maxValueLength;
+        this.minSize = minSize;
+    }
+
+    /**
+     * Compacts a tool result: either the rows themselves, or MCP content
+     * (a list of {@code {"type": "text", "text": ...}} items) whose texts
+     * are rows.
+     */
+    String compact(String toolOutput) {
+        if (toolOutput == null || toolOutput.length() < minSize) {
+            return toolOutput;
+        }
+        JsonNode root = parse(toolOutput);
+        if (root == null || !root.isArray() || root.isEmpty()) {
+            return toolOutput;
+        }
+        if (isTextContent(root)) {
+            List<String> texts = new ArrayList<>();
+            boolean changed = false;
+            for (JsonNode content : root) {
+                String text = content.get("text").asText();
+                String compacted = compact(text);
+                changed |= !compacted.equals(text);
+                texts.add(compacted);
+            }
+            return changed ? String.join("\n", texts) : toolOutput;
+        }
+        return isRows(root) ? compactRows(root) : toolOutput;
+    }
+
+    private String compactRows(JsonNode rows) {
+        Set<String> names = new LinkedHashSet<>();
+        rows.forEach(row -> row.fieldNames().forEachRemaining(names::add));
+        List<Column> columns = names.stream().map(name -> new Column(name, rows)).toList();
+
+        List<Column> constant = columns.stream().filter(Column::isConstant).toList();
+        List<Column> empty = columns.stream().filter(Column::isEmpty).toList();
+        List<Column> shown = new ArrayList<>();
+        Map<Column, Column> copies = new LinkedHashMap<>();
+        for (Column column : columns) {
+            if (column.isEmpty() || column.isConstant()) {
+                continue;
+            }
+            shown.stream()
+                    .filter(earlier -> earlier.values.equals(column.values))
+                    .findFirst()
+                    .ifPresentOrElse(earlier -> copies.put(column, earlier), () -> shown.add(column));
+        }
+
+        int total = rows.size();
+        int listed = Math.min(total, maxRows);
+        StringBuilder out = new StringBuilder();
+        out.append(total).append(total == 1 ? " row" : " rows");
+        if (listed < total) {
+            out.append(", first ").append(listed).append(" shown");
+        }
+        out.append('\n');
+        if (!constant.isEmpty()) {
+            out.append("same in every row: ").append(constant.stream()
+                    .map(column -> column.name + "=" + cell(column.values.getFirst()))
+                    .collect(Collectors.joining(", "))).append('\n');
+        }
+        if (!copies.isEmpty()) {
+            out.append("copies of another column: ").append(copies.entrySet().stream()
+                    .map(copy -> copy.getKey().name + "=" + copy.getValue().name)
+                    .collect(Collectors.joining(", "))).append('\n');
+        }
+        if (!empty.isEmpty()) {
+            out.append("empty: ").append(empty.stream()
+                    .map(column -> column.name)
+                    .collect(Collectors.joining(", "))).append('\n');
+        }
+        if (!shown.isEmpty()) {
+            out.append(shown.stream().map(column -> column.name).collect(Collectors.joining("|"))).append('\n');
+            for (int row = 0; row < listed; row++) {
+                int index = row;
+                out.append(shown.stream()
+                        .map(column -> cell(column.values.get(index)))
+                        .collect(Collectors.joining("|"))).append('\n');
+            }
+        }
+        if (listed < total) {
+            out.append("over all ").append(total).append(" rows:\n");
+            for (Column column : shown) {
+                out.append(column.name).append(": ").append(column.summary()).append('\n');
+            }
+        }
+        return out.toString().stripTrailing();
+    }
+
+    private String cell(String value) {
+        String flat = value.replace("|", "\\|").replace('\n', ' ').replace('\r', ' ');
+        return flat.length() > maxValueLength ? flat.substring(0, maxValueLength) + "…" : flat;
+    }
+
+    private static boolean isTextContent(JsonNode array) {
+        for (JsonNode item : array) {
+            if (!item.isObject() || !"text".equals(item.path("type").asText()) || !item.path("text").isTextual()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isRows(JsonNode array) {
+        for (JsonNode item : array) {
+            if (!item.isObject()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static JsonNode parse(String json) {
+        try {
+            return objectMapper.readTree(json);
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+
+    private final class Column {
+
+        final String name;
+        final List<String> values = new ArrayList<>();
+
+        Column(String name, JsonNode rows) {
+            this.name = name;
+            for (JsonNode row : rows) {
+                JsonNode value = row.get(name);
+                values.add(value == null || value.isNull() ? "" : value.isValueNode() ? value.asText() : value.toString());
+            }
+        }
+
+        boolean isEmpty() {
+            return values.stream().allMatch(String::isEmpty);
+        }
+
+        boolean isConstant() {
+            return values.size() > 1 && !isEmpty() && values.stream().distinct().count() == 1;
+        }
+
+        /**
+         * Min, max and sum when every value is a number; otherwise the number
+         * of distinct values and, if any repeat, the most frequent ones.
+         */
+        String summary() {
+            List<String> present = values.stream().filter(value -> !value.isEmpty()).toList();
+            if (!present.isEmpty() && present.stream().allMatch(value -> NUMBER.matcher(value).matches())) {
+                List<BigDecimal> numbers = present.stream().map(BigDecimal::new).toList();
+                return "min " + plain(numbers.stream().min(Comparator.naturalOrder()).orElseThrow())
+                        + ", max " + plain(numbers.stream().max(Comparator.naturalOrder()).orElseThrow())
+                        + ", sum " + plain(numbers.stream().reduce(BigDecimal.ZERO, BigDecimal::add));
+            }
+            Map<String, Long> counts = present.stream()
+                    .collect(Collectors.groupingBy(value -> value, LinkedHashMap::new, Collectors.counting()));
+            if (counts.size() == present.size()) {
+                return counts.size() + " distinct";
+            }
+            return counts.size() + " distinct, most common " + counts.entrySet().stream()
+                    .sorted(Map.Entry.<String, Long>comparingByValue().reversed())
+                    .limit(TOP_VALUES)
+                    .map(entry -> cell(entry.getKey()) + " (" + entry.getValue() + ")")
+                    .collect(Collectors.joining(", "));
+        }
+
+        private static String plain(BigDecimal number) {
+            return number.stripTrailingZeros().toPlainString();
+        }
+    }
+}
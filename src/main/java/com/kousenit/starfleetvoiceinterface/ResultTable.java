@@ -0,0 +1,100 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * The rows of one osquery result, in full, for showing as a table next to
+ * the model's answer. Columns are the row keys in order of first appearance;
+ * a row without one of them has an empty cell.
+ */
+public record ResultTable(String query, List<String> columns, List<List<String>> rows) {
+
+    /**
+     * Tool context key for the {@code Consumer<ResultTable>} that receives
+     * the tables of one command.
+     */
+    static final String CONTEXT_KEY = "starfleet.resultTables";
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * Reads a tool result that is a JSON array of row objects, either as is
+     * or as the text of MCP content items. Empty for anything else, and for
+     * no rows.
+     */
+    static Optional<ResultTable> parse(String query, String toolOutput) {
+        JsonNode root = readTree(toolOutput);
+        if (root == null || !root.isArray() || root.isEmpty()) {
+            return Optional.empty();
+        }
+        if (isTextContent(root)) {
+            for (JsonNode content : root) {
+                Optional<ResultTable> table = parse(query, content.get("text").asText());
+                if (table.isPresent()) {
+                    return table;
+                }
+            }
+            return Optional.empty();
+        }
+        for (JsonNode item : root) {
+            if (!item.isObject()) {
+                return Optional.empty();
+            }
+        }
+
+        Set<String> names = new LinkedHashSet<>();
+        root.forEach(row -> row.fieldNames().forEachRemaining(names::add));
+        List<String> columns = List.copyOf(names);
+        List<List<String>> rows = new ArrayList<>(root.size());
+        for (JsonNode row : root) {
+            List<String> cells = new ArrayList<>(columns.size());
+            for (String column : columns) {
+                JsonNode value = row.get(column);
+                cells.add(value == null || value.isNull() ? "" : value.isValueNode() ? value.asText() : value.toString());
+            }
+            rows.add(cells);
+        }
+        return Optional.of(new ResultTable(query, columns, rows));
+    }
+
+    /**
+     * A table of rows already read, such as a local answer's.
+     */
+    static ResultTable of(String query, List<Map<String, String>> rows) {
+        Set<String> names = new LinkedHashSet<>();
+        rows.forEach(row -> names.addAll(row.keySet()));
+        List<String> columns = List.copyOf(names);
+        return new ResultTable(query, columns, rows.stream()
+                .map(row -> columns.stream().map(column -> row.getOrDefault(column, "")).toList())
+                .toList());
+    }
+
+    private static boolean isTextContent(JsonNode array) {
+        for (JsonNode item : array) {
+            if (!item.isObject() || !"text".equals(item.path("type").asText()) || !item.path("text").isTextual()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static JsonNode readTree(String json) {
+        if (json == null || json.isBlank()) {
+            return null;
+        }
+        try {
+            return objectMapper.readTree(json);
+        } catch (JsonProcessingException e) {
+            return null;
+        }
+    }
+}
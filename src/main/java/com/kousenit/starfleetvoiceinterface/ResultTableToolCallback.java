@@ -0,0 +1,52 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+
+import java.util.function.Consumer;
+
+/**
+ * Hands each row result to the {@link ResultTable} consumer in the tool
+ * context, if there is one. It sits below compaction, so the window gets
+ * every row even when the model only sees a summary.
+ * <p>
+ * The tool context stops here: the cache and the MCP callbacks below don't
+ * accept one.
+ */
+class ResultTableToolCallback implements ToolCallback {
+
+    private final ToolCallback delegate;
+
+    ResultTableToolCallback(ToolCallback delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public ToolDefinition getToolDefinition() {
+        return delegate.getToolDefinition();
+    }
+
+    @Override
+    public ToolMetadata getToolMetadata() {
+        return delegate.getToolMetadata();
+    }
+
+    @Override
+    public String call(String toolInput) {
+        return delegate.call(toolInput);
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public String call(String toolInput, ToolContext toolContext) {
+        String result = delegate.call(toolInput);
+        if (toolContext != null && toolContext.getContext().get(ResultTable.CONTEXT_KEY) instanceof Consumer<?> tables) {
+            String sql = CachingToolCallback.sqlArgument(toolInput);
+            ResultTable.parse(sql != null ? sql : toolInput, result)
+                    .ifPresent(((Consumer<ResultTable>) tables)::accept);
+        }
+        return result;
+    }
+}
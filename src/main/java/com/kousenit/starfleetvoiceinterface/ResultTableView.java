@@ -0,0 +1,119 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import com.kousenit.starfleetvoiceinterface.config.UIConstants;
+import javafx.animation.AnimationTimer;
+import javafx.beans.property.ReadOnlyStringWrapper;
+import javafx.scene.Node;
+import javafx.scene.control.Label;
+import javafx.scene.control.Tab;
+import javafx.scene.control.TabPane;
+import javafx.scene.control.TableColumn;
+import javafx.scene.control.TableView;
+import javafx.scene.layout.Priority;
+import javafx.scene.layout.VBox;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * The query results of a command, one tab each, under the answer; hidden
+ * until there is one. A table view only lays out the rows on screen, and
+ * rows are added one batch per frame, so a ten-thousand-row listing never
+ * holds the FX thread for long. Use on the FX thread only.
+ */
+public class ResultTableView {
+
+    private final int batchRows;
+    private final TabPane tabs = new TabPane();
+    private final List<AnimationTimer> filling = new ArrayList<>();
+    private final List<CompletableFuture<Void>> filled = new ArrayList<>();
+
+    public ResultTableView() {
+        this(UIConstants.RESULT_TABLE_BATCH_ROWS);
+    }
+
+    ResultTableView(int batchRows) {
+        this.batchRows = batchRows;
+        tabs.setTabClosingPolicy(TabPane.TabClosingPolicy.UNAVAILABLE);
+        tabs.setPrefHeight(UIConstants.RESULT_TABLE_HEIGHT);
+        setShown(false);
+    }
+
+    public Node node() {
+        return tabs;
+    }
+
+    /**
+     * Adds {@code result} as a new tab, next to the command's earlier ones,
+     * and selects it. Completes once every row has been added, or never if
+     * the tables are cleared first.
+     */
+    public CompletableFuture<Void> show(ResultTable result) {
+        List<TableColumn<List<String>, String>> columns = new ArrayList<>();
+        for (int i = 0; i < result.columns().size(); i++) {
+            int index = i;
+            TableColumn<List<String>, String> column = new TableColumn<>(result.columns().get(i));
+            column.setCellValueFactory(cell -> new ReadOnlyStringWrapper(cell.getValue().get(index)));
+            column.setSortable(false);
+            columns.add(column);
+        }
+        TableView<List<String>> table = new TableView<>();
+        table.setStyle(UIConstants.RESULT_TABLE_STYLE);
+        // Every row is one line, so the view never measures cells to find row heights
+        table.setFixedCellSize(20);
+        table.getColumns().setAll(columns);
+        VBox.setVgrow(table, Priority.ALWAYS);
+
+        Label caption = new Label(result.query() + "  ·  " + result.rows().size() + " rows");
+        caption.setStyle(UIConstants.RESULT_CAPTION_STYLE);
+        Tab tab = new Tab("Query " + (tabs.getTabs().size() + 1), new VBox(4, caption, table));
+        tabs.getTabs().add(tab);
+        tabs.getSelectionModel().select(tab);
+        setShown(true);
+
+        List<List<String>> rows = result.rows();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        AnimationTimer timer = new AnimationTimer() {
+            private int next;
+
+            @Override
+            public void handle(long now) {
+                int end = Math.min(next + batchRows, rows.size());
+                table.getItems().addAll(rows.subList(next, end));
+                next = end;
+                if (next == rows.size()) {
+                    stop();
+                    filling.remove(this);
+                    filled.remove(done);
+                    done.complete(null);
+                }
+            }
+        };
+        filling.add(timer);
+        filled.add(done);
+        timer.start();
+        return done;
+    }
+
+    /**
+     * Removes every table, for the next command.
+     */
+    public void clear() {
+        filling.forEach(AnimationTimer::stop);
+        filling.clear();
+        filled.forEach(done -> done.cancel(false));
+        filled.clear();
+        tabs.getTabs().clear();
+        setShown(false);
+    }
+
+    public boolean isShown() {
+        return tabs.isVisible();
+    }
+
+    private void setShown(boolean shown) {
+        tabs.setVisible(shown);
+        tabs.setManaged(shown);
+    }
+}
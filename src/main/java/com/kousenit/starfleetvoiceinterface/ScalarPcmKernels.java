@@ -0,0 +1,111 @@
+package com.kousenit.starfleetvoiceinterface;
+
+/**
+ * Plain loops, for JVMs without the Vector API module and as the reference
+ * the vector kernels are tested against.
+ */
+final class ScalarPcmKernels implements PcmKernels {
+
+    @Override
+    public String name() {
+        return "scalar";
+    }
+
+    @Override
+    public void decode(byte[] pcm, int offset, short[] samples, int count) {
+        for (int i = 0; i < count; i++) {
+            samples[i] = decodeSample(pcm, offset + 2 * i);
+        }
+    }
+
+    @Override
+    public void toFloat(short[] samples, float[] out, int count) {
+        for (int i = 0; i < count; i++) {
+            out[i] = samples[i] * (1f / 32768);
+        }
+    }
+
+    @Override
+    public void encode(float[] samples, int count, byte[] pcm, int offset) {
+        for (int i = 0; i < count; i++) {
+            encodeSample(samples[i], pcm, offset + 2 * i);
+        }
+    }
+
+    @Override
+    public double sumOfSquares(short[] samples, int count) {
+        long sum = 0;
+        for (int i = 0; i < count; i++) {
+            sum += samples[i] * samples[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public int zeroCrossings(short[] samples, int count) {
+        int crossings = 0;
+        for (int i = 1; i < count; i++) {
+            if ((samples[i] < 0) != (samples[i - 1] < 0)) {
+                crossings++;
+            }
+        }
+        return crossings;
+    }
+
+    @Override
+    public int peak(short[] samples, int count) {
+        int peak = 0;
+        for (int i = 0; i < count; i++) {
+            peak = Math.max(peak, Math.abs(samples[i]));
+        }
+        return peak;
+    }
+
+    @Override
+    public float sum(float[] samples, int offset, int count) {
+        float sum = 0;
+        for (int i = offset; i < offset + count; i++) {
+            sum += samples[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public float peak(float[] samples, int offset, int count) {
+        float peak = 0;
+        for (int i = offset; i < offset + count; i++) {
+            peak = Math.max(peak, Math.abs(samples[i]));
+        }
+        return peak;
+    }
+
+    @Override
+    public void scaleAndShift(float[] samples, int offset, int count, float scale, float shift) {
+        for (int i = offset; i < offset + count; i++) {
+            samples[i] = samples[i] * scale + shift;
+        }
+    }
+
+    @Override
+    public float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        float sum = 0;
+        for (int i = 0; i < length; i++) {
+            sum += a[aOffset + i] * b[bOffset + i];
+        }
+        return sum;
+    }
+
+    static short decodeSample(byte[] pcm, int at) {
+        return (short) ((pcm[at] & 0xFF) | (pcm[at + 1] << 8));
+    }
+
+    /**
+     * Rounds half away from zero and clips to the 16-bit range.
+     */
+    static void encodeSample(float sample, byte[] pcm, int at) {
+        float scaled = Math.clamp(sample * 32768f, -32768f, 32767f);
+        int rounded = (int) (scaled + (scaled < 0 ? -0.5f : 0.5f));
+        pcm[at] = (byte) rounded;
+        pcm[at + 1] = (byte) (rounded >> 8);
+    }
+}
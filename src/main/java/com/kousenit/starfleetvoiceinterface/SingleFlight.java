@@ -0,0 +1,108 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import java.nio.channels.ClosedByInterruptException;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Lets concurrent callers with the same key share one call. The first caller
+ * runs it on its own thread; callers arriving while it is in flight wait for
+ * the same {@link CompletableFuture} and get its result or exception. Nothing
+ * is kept once the call completes: the next caller runs it again.
+ * <p>
+ * If the caller running the call is interrupted (its command was cancelled),
+ * the waiting callers don't inherit the cancellation; one of them runs the
+ * call instead.
+ */
+final class SingleFlight<K, V> {
+
+    /**
+     * @param calls     calls actually run
+     * @param coalesced callers that shared a call already in flight
+     */
+    record Stats(long calls, long coalesced) {
+    }
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    V run(K key, Supplier<V> call) {
+        while (true) {
+            CompletableFuture<V> flight = new CompletableFuture<>();
+            CompletableFuture<V> existing = inFlight.putIfAbsent(key, flight);
+            if (existing == null) {
+                return lead(key, flight, call);
+            }
+            coalesced.increment();
+            try {
+                return existing.get();
+            } catch (CancellationException e) {
+                // The caller running it was cancelled; take over
+            } catch (ExecutionException e) {
+                throw rethrow(e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new CancellationException("Interrupted while waiting for a call in flight");
+            }
+        }
+    }
+
+    private V lead(K key, CompletableFuture<V> flight, Supplier<V> call) {
+        calls.increment();
+        V value;
+        try {
+            value = call.get();
+        } catch (RuntimeException | Error e) {
+            // Remove first, so waiters that retry don't find the finished flight
+            inFlight.remove(key, flight);
+            if (interrupted(e)) {
+                flight.cancel(false);
+            } else {
+                flight.completeExceptionally(e);
+            }
+            throw e;
+        }
+        inFlight.remove(key, flight);
+        flight.complete(value);
+        return value;
+    }
+
+    Stats stats() {
+        return new Stats(calls.sum(), coalesced.sum());
+    }
+
+    int inFlight() {
+        return inFlight.size();
+    }
+
+    /**
+     * Whether {@code failure} is the calling thread being cancelled rather
+     * than the call itself going wrong.
+     */
+    static boolean interrupted(Throwable failure) {
+        if (Thread.currentThread().isInterrupted()) {
+            return true;
+        }
+        for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+            if (cause instanceof InterruptedException || cause instanceof ClosedByInterruptException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static RuntimeException rethrow(Throwable cause) {
+        if (cause instanceof RuntimeException runtime) {
+            return runtime;
+        }
+        if (cause instanceof Error error) {
+            throw error;
+        }
+        return new IllegalStateException(cause);
+    }
+}
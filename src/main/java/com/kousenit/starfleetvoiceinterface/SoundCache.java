@@ -0,0 +1,79 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Least-recently-used cache of decoded sounds, bounded by total PCM size.
+ * A sound bigger than the whole budget is still returned, just not kept.
+ */
+final class SoundCache {
+
+    private static final Logger log = LoggerFactory.getLogger(SoundCache.class);
+
+    private final long maxBytes;
+    private final Function<String, DecodedSound> loader;
+    private final LinkedHashMap<String, DecodedSound> sounds = new LinkedHashMap<>(16, 0.75f, true);
+
+    private long cachedBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    SoundCache(long maxBytes, Function<String, DecodedSound> loader) {
+        this.maxBytes = maxBytes;
+        this.loader = loader;
+    }
+
+    synchronized DecodedSound get(String path) {
+        DecodedSound sound = sounds.get(path);
+        if (sound != null) {
+            hits++;
+            return sound;
+        }
+        misses++;
+        sound = loader.apply(path);
+        if (sound.sizeInBytes() <= maxBytes) {
+            sounds.put(path, sound);
+            cachedBytes += sound.sizeInBytes();
+            evictOver(maxBytes);
+        }
+        return sound;
+    }
+
+    synchronized boolean contains(String path) {
+        return sounds.containsKey(path);
+    }
+
+    synchronized long cachedBytes() {
+        return cachedBytes;
+    }
+
+    synchronized long hits() {
+        return hits;
+    }
+
+    synchronized long misses() {
+        return misses;
+    }
+
+    synchronized long evictions() {
+        return evictions;
+    }
+
+    private void evictOver(long limit) {
+        Iterator<Map.Entry<String, DecodedSound>> eldest = sounds.entrySet().iterator();
+        while (cachedBytes > limit && eldest.hasNext()) {
+            DecodedSound evicted = eldest.next().getValue();
+            eldest.remove();
+            cachedBytes -= evicted.sizeInBytes();
+            evictions++;
+            log.debug("Evicted decoded sound {} ({} bytes)", evicted.name(), evicted.sizeInBytes());
+        }
+    }
+}
@@ -14,33 +14,62 @@ import javafx.scene.layout.VBox;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Circle;
 import javafx.stage.Stage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.boot.WebApplicationType;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.context.properties.ConfigurationPropertiesScan;
 import org.springframework.context.ConfigurableApplicationContext;
 
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+
 @SpringBootApplication
+@ConfigurationPropertiesScan
 public class StarfleetVoiceInterfaceApplication extends Application {
 
-    private static ConfigurableApplicationContext context;
+    private static final Logger log = LoggerFactory.getLogger(StarfleetVoiceInterfaceApplication.class);
+
+    private static CompletableFuture<ConfigurableApplicationContext> context;
+
+    private static boolean exitWhenReady;
+
+    private static volatile boolean failed;
 
     public static void main(String[] args) {
-        // Initialize Spring Boot context first, before JavaFX
+        if (Arrays.asList(args).contains("--headless")) {
+            // No window: serve the voice pipeline to remote consoles (see HeadlessServer)
+            new SpringApplicationBuilder(StarfleetVoiceInterfaceApplication.class)
+                    .web(WebApplicationType.NONE)
+                    .headless(true)
+                    .properties("starfleet.headless.enabled=true")
+                    .run(args);
+            return;
+        }
+
+        // For the startup benchmark and the AppCDS training run
+        exitWhenReady = Arrays.asList(args).contains("--exit-when-ready");
+
+        // Start Spring Boot in the background, so the window opens while the models and MCP servers come up
         SpringApplicationBuilder builder = new SpringApplicationBuilder(StarfleetVoiceInterfaceApplication.class);
         builder.web(WebApplicationType.NONE);
         builder.headless(false); // Important for JavaFX
-        context = builder.run();
-        
-        // Now launch JavaFX
+        context = CompletableFuture.supplyAsync(builder::run,
+                task -> Thread.ofPlatform().name("spring-startup").start(task));
+
+        // Meanwhile launch JavaFX
         launch(args);
+
+        if (exitWhenReady && failed) {
+            // The benchmark and the training run must not take a failed start for a finished one
+            System.exit(1);
+        }
     }
 
     @Override
     public void start(Stage primaryStage) {
         try {
-            // Get Spring beans
-            VoiceController voiceController = context.getBean(VoiceController.class);
-
             // Create UI components
             VBox root = new VBox(UIConstants.SPACING);
             root.setAlignment(Pos.CENTER);
@@ -52,7 +81,7 @@ public class StarfleetVoiceInterfaceApplication extends Application {
             titleLabel.setStyle(UIConstants.TITLE_STYLE);
 
             // Status label
-            Label statusLabel = new Label("Ready");
+            Label statusLabel = new Label("Systems initializing...");
             statusLabel.setStyle(UIConstants.STATUS_STYLE);
 
             // Record button (comm badge style)
@@ -78,17 +107,21 @@ public class StarfleetVoiceInterfaceApplication extends Application {
             transcriptLabel.setStyle(UIConstants.TRANSCRIPT_STYLE);
             transcriptLabel.setWrapText(true);
 
+            // Query results, shown under the answer when a command has some
+            ResultTableView resultTable = new ResultTableView();
+
             // Assemble UI
             root.getChildren().addAll(
                     titleLabel,
                     statusLabel,
                     buttonPane,
                     transcriptLabel,
-                    responseArea
+                    responseArea,
+                    resultTable.node()
             );
 
-            // Wire up the controller
-            voiceController.initialize(recordButton, statusLabel, transcriptLabel, responseArea);
+            // The button stays off until the controller is wired up
+            buttonPane.setDisable(true);
 
             // Create scene
             Scene scene = new Scene(root, UIConstants.WINDOW_WIDTH, UIConstants.WINDOW_HEIGHT);
@@ -99,16 +132,55 @@ public class StarfleetVoiceInterfaceApplication extends Application {
             primaryStage.setScene(scene);
             primaryStage.setResizable(false);
             primaryStage.show();
+            StartupTimes.windowShown();
+
+            context.whenComplete((ctx, error) -> Platform.runLater(() -> {
+                if (error != null) {
+                    statusLabel.setText("Initialization failed: " + error.getCause().getMessage());
+                    if (exitWhenReady) {
+                        log.error("Initialization failed", error.getCause());
+                        failed = true;
+                        Platform.exit();
+                    }
+                    return;
+                }
+                // Wire up the controller
+                ctx.getBean(VoiceController.class)
+                        .initialize(recordButton, statusLabel, transcriptLabel, responseArea, resultTable);
+                buttonPane.setDisable(false);
+                statusLabel.setText("Ready");
+                StartupTimes.ready();
+                if (exitWhenReady) {
+                    Platform.exit();
+                } else {
+                    warmUp(ctx);
+                }
+            }));
 
         } catch (Exception e) {
             System.out.println("Error starting JavaFX application: " + e.getMessage());
+            failed = true;
             Platform.exit();
         }
     }
 
+    /**
+     * Creates the command service and lists the MCP servers' tools, so the
+     * first command doesn't wait for them.
+     */
+    private static void warmUp(ConfigurableApplicationContext ctx) {
+        Thread.ofVirtual().name("mcp-warmup").start(() -> {
+            try {
+                ctx.getBean(McpClientService.class).toolCallbacks();
+            } catch (RuntimeException e) {
+                log.warn("MCP warm-up failed, retrying on the first command: {}", e.getMessage());
+            }
+        });
+    }
+
     @Override
     public void stop() {
-        context.close();
+        context.thenAccept(ConfigurableApplicationContext::close);
         Platform.exit();
     }
 }
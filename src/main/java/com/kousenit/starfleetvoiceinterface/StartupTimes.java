@@ -0,0 +1,39 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.management.ManagementFactory;
+
+/**
+ * Milliseconds from JVM start to the window showing and to the voice
+ * interface being ready to take a command. Both are logged once, as one
+ * line the startup benchmark reads:
+ * <pre>
+ * Startup: window 412 ms, ready 2873 ms
+ * </pre>
+ */
+final class StartupTimes {
+
+    private static final Logger log = LoggerFactory.getLogger(StartupTimes.class);
+
+    private static final long jvmStart = ManagementFactory.getRuntimeMXBean().getStartTime();
+
+    private static volatile long window = -1;
+
+    private StartupTimes() {
+    }
+
+    static void windowShown() {
+        window = sinceJvmStart();
+        log.info("Window shown {} ms after JVM start", window);
+    }
+
+    static void ready() {
+        log.info("Startup: window {} ms, ready {} ms", window, sinceJvmStart());
+    }
+
+    private static long sinceJvmStart() {
+        return System.currentTimeMillis() - jvmStart;
+    }
+}
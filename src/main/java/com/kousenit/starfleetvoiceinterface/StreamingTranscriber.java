@@ -0,0 +1,192 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * Cuts a live 16-bit PCM capture into segments and transcribes each one while
+ * recording continues. A segment is closed at a pause once it has reached the
+ * minimum length, or unconditionally when it fills the window. On release only
+ * the final segment is still outstanding; partial transcripts are stitched in
+ * capture order.
+ * <p>
+ * While recording, each time a segment comes back the transcript so far (the
+ * segments up to the first one still outstanding) goes to the partial
+ * listener, so work can start on it before release.
+ * <p>
+ * {@link #write} is called from the recording thread and {@link #finish} after
+ * that thread has been joined; only the segment list is shared with the
+ * threads completing segments, and access to it is synchronized.
+ */
+class StreamingTranscriber {
+
+    private static final Logger log = LoggerFactory.getLogger(StreamingTranscriber.class);
+
+    private final TranscriptionBackend backend;
+    private final AudioFormat audioFormat;
+    private final Executor executor;
+    private final int windowBytes;
+    private final int minSegmentBytes;
+    private final int pauseBytes;
+    private final int silenceThreshold;
+    private final Consumer<String> partialListener;
+    private final PcmDsp dsp = PcmDsp.get();
+
+    private final List<CompletableFuture<String>> segments = new ArrayList<>();
+    private ByteArrayOutputStream current = new ByteArrayOutputStream();
+    private int trailingQuietBytes;
+    private boolean currentHasSpeech;
+    private String lastPartial = "";
+    private short[] samples = new short[0];
+
+    StreamingTranscriber(TranscriptionBackend backend, AudioFormat audioFormat, Executor executor,
+                         Duration window, Duration minSegment, Duration pause, int silenceThreshold) {
+        this(backend, audioFormat, executor, window, minSegment, pause, silenceThreshold, partial -> {
+        });
+    }
+
+    StreamingTranscriber(TranscriptionBackend backend, AudioFormat audioFormat, Executor executor,
+                         Duration window, Duration minSegment, Duration pause, int silenceThreshold,
+                         Consumer<String> partialListener) {
+        this.backend = backend;
+        this.audioFormat = audioFormat;
+        this.executor = executor;
+        this.windowBytes = bytesFor(window);
+        this.minSegmentBytes = bytesFor(minSegment);
+        this.pauseBytes = bytesFor(pause);
+        this.silenceThreshold = silenceThreshold;
+        this.partialListener = partialListener;
+    }
+
+    void write(byte[] data, int offset, int length) {
+        current.write(data, offset, length);
+
+        if (rms(data, offset, length) < silenceThreshold) {
+            trailingQuietBytes += length;
+        } else {
+            trailingQuietBytes = 0;
+            currentHasSpeech = true;
+        }
+
+        int size = current.size();
+        if (size >= windowBytes || (size >= minSegmentBytes && trailingQuietBytes >= pauseBytes)) {
+            cutSegment();
+        }
+    }
+
+    /**
+     * Reports a pause that may never reach {@link #write}: voice activity
+     * detection in front of the transcriber drops silence past its hangover,
+     * so the pause is measured on the audio before it. Cuts the segment as a
+     * pause in the written audio would.
+     */
+    void silence(long quietBytes) {
+        if (quietBytes >= pauseBytes && current.size() >= minSegmentBytes) {
+            cutSegment();
+        }
+    }
+
+    String finish() {
+        if (current.size() > 0) {
+            cutSegment();
+        }
+        List<CompletableFuture<String>> all;
+        synchronized (segments) {
+            all = List.copyOf(segments);
+        }
+        return all.stream()
+                .map(CompletableFuture::join)
+                .filter(text -> !text.isBlank())
+                .collect(Collectors.joining(" "));
+    }
+
+    int segmentCount() {
+        synchronized (segments) {
+            return segments.size();
+        }
+    }
+
+    private void cutSegment() {
+        byte[] pcm = current.toByteArray();
+        boolean hasSpeech = currentHasSpeech;
+        current = new ByteArrayOutputStream();
+        trailingQuietBytes = 0;
+        currentHasSpeech = false;
+
+        // Whisper tends to hallucinate on pure silence, so skip those segments
+        if (!hasSpeech) {
+            log.debug("Dropping silent segment of {} bytes", pcm.length);
+            return;
+        }
+
+        synchronized (segments) {
+            int index = segments.size();
+            CompletableFuture<String> segment =
+                    CompletableFuture.supplyAsync(() -> transcribeSegment(index, pcm), executor);
+            segments.add(segment);
+            segment.whenComplete((text, error) -> publishPartial());
+        }
+    }
+
+    /**
+     * Stitches the segments finished so far, stopping at the first one still
+     * outstanding, and passes the result on if it grew.
+     */
+    private void publishPartial() {
+        // Held while notifying so partials arrive in the order they grew
+        synchronized (segments) {
+            StringBuilder stitched = new StringBuilder();
+            for (CompletableFuture<String> segment : segments) {
+                if (!segment.isDone() || segment.isCompletedExceptionally()) {
+                    break;
+                }
+                String text = segment.join();
+                if (!text.isBlank()) {
+                    stitched.append(stitched.isEmpty() ? "" : " ").append(text);
+                }
+            }
+            String partial = stitched.toString();
+            if (partial.isEmpty() || partial.equals(lastPartial)) {
+                return;
+            }
+            lastPartial = partial;
+            partialListener.accept(partial);
+        }
+    }
+
+    private String transcribeSegment(int index, byte[] pcm) {
+        try {
+            byte[] wav = WavEncoder.convertToWav(pcm, audioFormat);
+            String text = backend.transcribe(WavEncoder.toResource(wav, "segment-" + index + ".wav"));
+            log.debug("Segment {} ({} bytes) transcribed: {}", index, pcm.length, text);
+            return text.trim();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int bytesFor(Duration duration) {
+        int frameSize = audioFormat.getFrameSize();
+        long frames = (long) (audioFormat.getSampleRate() * duration.toMillis() / 1000);
+        return (int) (frames * frameSize);
+    }
+
+    private int rms(byte[] data, int offset, int length) {
+        if (samples.length < length / 2) {
+            samples = new short[length / 2];
+        }
+        return (int) dsp.rms(samples, dsp.decode(data, offset, length, samples));
+    }
+}
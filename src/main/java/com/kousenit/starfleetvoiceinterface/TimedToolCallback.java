@@ -0,0 +1,52 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+
+/**
+ * Times each tool call as a {@link PipelineMetrics.Stage#TOOL_CALL}, with the
+ * tool name and input as the event detail. The command id comes from the
+ * tool context when the caller put one there, and is otherwise the current
+ * command's.
+ */
+class TimedToolCallback implements ToolCallback {
+
+    private final ToolCallback delegate;
+    private final PipelineMetrics metrics;
+
+    TimedToolCallback(ToolCallback delegate, PipelineMetrics metrics) {
+        this.delegate = delegate;
+        this.metrics = metrics;
+    }
+
+    @Override
+    public ToolDefinition getToolDefinition() {
+        return delegate.getToolDefinition();
+    }
+
+    @Override
+    public ToolMetadata getToolMetadata() {
+        return delegate.getToolMetadata();
+    }
+
+    @Override
+    public String call(String toolInput) {
+        return call(toolInput, null);
+    }
+
+    @Override
+    public String call(String toolInput, ToolContext toolContext) {
+        String detail = getToolDefinition().name() + " " + toolInput;
+        PipelineMetrics.Timing timing =
+                toolContext != null && toolContext.getContext().get(PipelineMetrics.CONTEXT_KEY) instanceof Long id
+                        ? metrics.start(PipelineMetrics.Stage.TOOL_CALL, id, detail)
+                        : metrics.start(PipelineMetrics.Stage.TOOL_CALL, detail);
+        try {
+            return delegate.call(toolInput, toolContext);
+        } finally {
+            timing.stop();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * The tool calls made while answering one command, collected by
+ * {@link RecordingToolCallback} from the tool context.
+ */
+final class ToolCallLog {
+
+    static final String CONTEXT_KEY = "starfleet.toolCallLog";
+
+    record Call(String name, String input, String result) {
+    }
+
+    private final List<Call> calls = new CopyOnWriteArrayList<>();
+
+    void add(Call call) {
+        calls.add(call);
+    }
+
+    List<Call> calls() {
+        return List.copyOf(calls);
+    }
+
+    /**
+     * A hash of the calls and their results. Parallel calls finish in any
+     * order, so the calls are sorted first.
+     */
+    static String fingerprint(List<Call> calls) {
+        MessageDigest digest = sha256();
+        calls.stream()
+                .sorted(Comparator.comparing(Call::name).thenComparing(Call::input))
+                .forEach(call -> {
+                    digest.update(call.name().getBytes(StandardCharsets.UTF_8));
+                    digest.update((byte) 0);
+                    digest.update(call.input().getBytes(StandardCharsets.UTF_8));
+                    digest.update((byte) 0);
+                    digest.update(call.result().getBytes(StandardCharsets.UTF_8));
+                    digest.update((byte) 0);
+                });
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is required of every JVM", e);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Holds the tool callbacks offered to the model, so a command doesn't cost a
+ * {@code tools/list} round trip and a fresh JSON schema for every tool.
+ * <p>
+ * The callbacks are built once, each with its {@link ToolDefinition} computed
+ * up front, and reused until {@code version} moves (an MCP server announced a
+ * tool list change) or {@link #invalidate()} is called.
+ */
+class ToolCallbackCache {
+
+    private final Supplier<ToolCallback[]> source;
+    private final LongSupplier version;
+    private final AtomicInteger builds = new AtomicInteger();
+
+    private volatile Snapshot snapshot;
+
+    ToolCallbackCache(Supplier<ToolCallback[]> source, LongSupplier version) {
+        this.source = source;
+        this.version = version;
+    }
+
+    List<ToolCallback> get() {
+        long current = version.getAsLong();
+        Snapshot cached = snapshot;
+        if (cached != null && cached.version() == current) {
+            return cached.callbacks();
+        }
+        synchronized (this) {
+            cached = snapshot;
+            if (cached == null || cached.version() != current) {
+                // Read the version before listing, so a change during the build triggers another one
+                cached = new Snapshot(current, Arrays.stream(source.get())
+                        .<ToolCallback>map(PrecomputedToolCallback::new)
+                        .toList());
+                snapshot = cached;
+                builds.incrementAndGet();
+            }
+            return cached.callbacks();
+        }
+    }
+
+    /**
+     * Drops the cached callbacks; the next {@link #get()} lists the tools again.
+     */
+    void invalidate() {
+        snapshot = null;
+    }
+
+    int builds() {
+        return builds.get();
+    }
+
+    private record Snapshot(long version, List<ToolCallback> callbacks) {
+    }
+
+    /**
+     * A callback whose definition, including the JSON schema of its input,
+     * is computed once instead of on every request.
+     */
+    private static final class PrecomputedToolCallback implements ToolCallback {
+
+        private final ToolCallback delegate;
+        private final ToolDefinition definition;
+        private final ToolMetadata metadata;
+
+        PrecomputedToolCallback(ToolCallback delegate) {
+            this.delegate = delegate;
+            this.definition = delegate.getToolDefinition();
+            this.metadata = delegate.getToolMetadata();
+        }
+
+        @Override
+        public ToolDefinition getToolDefinition() {
+            return definition;
+        }
+
+        @Override
+        public ToolMetadata getToolMetadata() {
+            return metadata;
+        }
+
+        @Override
+        public String call(String toolInput) {
+            return delegate.call(toolInput);
+        }
+
+        @Override
+        public String call(String toolInput, ToolContext toolContext) {
+            return delegate.call(toolInput, toolContext);
+        }
+    }
+}
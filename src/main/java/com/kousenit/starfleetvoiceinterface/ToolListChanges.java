@@ -0,0 +1,38 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import io.modelcontextprotocol.client.McpClient;
+import io.modelcontextprotocol.spec.McpSchema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.mcp.customizer.McpSyncClientCustomizer;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts {@code notifications/tools/list_changed} from the MCP servers. The
+ * count works as a version number: anything derived from the tool lists is
+ * stale once it moves.
+ */
+@Component
+public class ToolListChanges implements McpSyncClientCustomizer {
+
+    private static final Logger log = LoggerFactory.getLogger(ToolListChanges.class);
+
+    private final AtomicLong version = new AtomicLong();
+
+    @Override
+    public void customize(String name, McpClient.SyncSpec spec) {
+        spec.toolsChangeConsumer(tools -> toolsChanged(name, tools));
+    }
+
+    void toolsChanged(String server, List<McpSchema.Tool> tools) {
+        version.incrementAndGet();
+        log.info("MCP server {} changed its tools, now {}", server, tools.size());
+    }
+
+    public long version() {
+        return version.get();
+    }
+}
@@ -0,0 +1,122 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+
+/**
+ * Size-bounded LRU cache of osquery results with a freshness policy per
+ * table. Keys are the tool name plus the normalized SQL. Tool calls run
+ * outside the lock, so a slow query never blocks hits on other keys.
+ */
+final class ToolResultCache {
+
+    private static final Logger log = LoggerFactory.getLogger(ToolResultCache.class);
+
+    record Stats(long hits, long misses, long uncacheable, long evictions, long expirations, int size) {
+    }
+
+    private record Entry(String result, long expiresAt) {
+    }
+
+    private final int maxEntries;
+    private final Map<String, Duration> tableTtls;
+    private final Duration defaultTtl;
+    private final LongSupplier nanoTime;
+    private final LinkedHashMap<String, Entry> entries;
+
+    private long hits;
+    private long misses;
+    private long uncacheable;
+    private long evictions;
+    private long expirations;
+
+    ToolResultCache(int maxEntries, Map<String, Duration> tableTtls, Duration defaultTtl, LongSupplier nanoTime) {
+        this.maxEntries = maxEntries;
+        this.tableTtls = tableTtls;
+        this.defaultTtl = defaultTtl;
+        this.nanoTime = nanoTime;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest) {
+                if (size() > ToolResultCache.this.maxEntries) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns a fresh cached result for this query, or runs {@code call} and
+     * caches what it returns. Exceptions from {@code call} are not cached.
+     */
+    String get(String toolName, String sql, Supplier<String> call) {
+        String normalized = OsquerySql.normalize(sql);
+        Duration ttl = ttlFor(normalized);
+        if (ttl.isZero() || ttl.isNegative()) {
+            synchronized (this) {
+                uncacheable++;
+            }
+            return call.get();
+        }
+
+        String key = toolName + '\n' + normalized;
+        synchronized (this) {
+            Entry entry = entries.get(key);
+            if (entry != null) {
+                if (nanoTime.getAsLong() - entry.expiresAt() < 0) {
+                    hits++;
+                    log.debug("Tool cache hit: {}", normalized);
+                    return entry.result();
+                }
+                entries.remove(key);
+                expirations++;
+            }
+            misses++;
+        }
+
+        String result = call.get();
+        synchronized (this) {
+            entries.put(key, new Entry(result, nanoTime.getAsLong() + ttl.toNanos()));
+        }
+        return result;
+    }
+
+    /**
+     * Shortest TTL among the tables the query reads, or zero if it should not
+     * be cached at all.
+     */
+    Duration ttlFor(String normalizedSql) {
+        return ttlFor(normalizedSql, tableTtls, defaultTtl);
+    }
+
+    static Duration ttlFor(String normalizedSql, Map<String, Duration> tableTtls, Duration defaultTtl) {
+        if (!OsquerySql.isSelect(normalizedSql)) {
+            return Duration.ZERO;
+        }
+        Set<String> tables = OsquerySql.tables(normalizedSql);
+        if (tables.isEmpty()) {
+            return Duration.ZERO;
+        }
+        Duration shortest = null;
+        for (String table : tables) {
+            Duration ttl = tableTtls.getOrDefault(table, defaultTtl);
+            if (shortest == null || ttl.compareTo(shortest) < 0) {
+                shortest = ttl;
+            }
+        }
+        return shortest;
+    }
+
+    synchronized Stats stats() {
+        return new Stats(hits, misses, uncacheable, evictions, expirations, entries.size());
+    }
+}
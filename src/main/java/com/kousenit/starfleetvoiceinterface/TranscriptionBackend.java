@@ -0,0 +1,13 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import org.springframework.core.io.Resource;
+
+/**
+ * Turns an encoded audio clip into text. The production implementation calls
+ * OpenAI Whisper; tests plug in local stubs with scripted latency.
+ */
+@FunctionalInterface
+public interface TranscriptionBackend {
+
+    String transcribe(Resource audio);
+}
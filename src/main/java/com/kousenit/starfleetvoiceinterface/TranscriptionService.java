@@ -1,32 +1,50 @@
 package com.kousenit.starfleetvoiceinterface;
 
+import com.kousenit.starfleetvoiceinterface.config.TranscriptionProperties;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.ai.audio.transcription.AudioTranscriptionPrompt;
-import org.springframework.ai.audio.transcription.AudioTranscriptionResponse;
-import org.springframework.ai.openai.OpenAiAudioTranscriptionModel;
-import org.springframework.ai.openai.OpenAiAudioTranscriptionOptions;
-import org.springframework.ai.openai.api.OpenAiAudioApi;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.core.io.ByteArrayResource;
 import org.springframework.core.io.Resource;
+import org.springframework.lang.Nullable;
 import org.springframework.stereotype.Service;
 
 import javax.sound.sampled.*;
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
+import java.time.Duration;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 @Service
 public class TranscriptionService {
 
     private static final Logger log = LoggerFactory.getLogger(TranscriptionService.class);
 
-    private TargetDataLine microphone;
-    private ByteArrayOutputStream audioBuffer;
-    private boolean isRecording = false;
-    private Thread recordingThread;
-    private final OpenAiAudioTranscriptionModel transcriptionModel;
-
+    private static final Duration HOT_MIC_POLL = Duration.ofMillis(20);
+
+    // What the microphone is opened in, converted when the device doesn't offer audioFormat
+    private AudioFormat lineFormat;
+    private HotMicrophone hotMicrophone;
+    // The press in progress; a recording thread only ever touches its own
+    private final AtomicReference<Recording> recording = new AtomicReference<>();
+    private volatile Runnable autoStopListener;
+    private volatile Consumer<String> partialTranscriptListener = partial -> {
+    };
+    private final TranscriptionBackend transcriptionBackend;
+    private final TranscriptionProperties properties;
+    private final PersistentCache persistentCache;
+    private final PipelineMetrics metrics;
+    private final ExecutorService segmentExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+    // Direct buffers are reused; a new one is only needed while a previous upload is still running
+    private final Queue<RecordingBuffer> idleBuffers;
+    private final Queue<FlacEncoder> idleEncoders;
 
     // Audio format: 16 kHz, 16-bit, mono (Whisper prefers this)
     private final AudioFormat audioFormat = new AudioFormat(
@@ -37,30 +55,127 @@ public class TranscriptionService {
             false      // Big endian
     );
 
-    public TranscriptionService(@Autowired OpenAiAudioTranscriptionModel transcriptionModel) {
+    /**
+     * Where microphone lines come from: the sound system, or a stand-in in tests.
+     */
+    interface Microphones {
+
+        boolean supports(AudioFormat format);
+
+        /**
+         * A line for {@code format}, not yet open.
+         */
+        TargetDataLine line(AudioFormat format) throws LineUnavailableException;
+    }
+
+    private static final Microphones SOUND_SYSTEM = new Microphones() {
+        @Override
+        public boolean supports(AudioFormat format) {
+            return AudioSystem.isLineSupported(new DataLine.Info(TargetDataLine.class, format));
+        }
+
+        @Override
+        public TargetDataLine line(AudioFormat format) throws LineUnavailableException {
+            return (TargetDataLine) AudioSystem.getLine(new DataLine.Info(TargetDataLine.class, format));
+        }
+    };
+
+    private final Microphones microphones;
+
+    @Autowired
+    public TranscriptionService(TranscriptionBackend transcriptionBackend,
+                                TranscriptionProperties properties,
+                                @Nullable PersistentCache persistentCache,
+                                PipelineMetrics metrics) {
+        this(transcriptionBackend, properties, persistentCache, metrics, SOUND_SYSTEM);
+    }
+
+    TranscriptionService(TranscriptionBackend transcriptionBackend, TranscriptionProperties properties,
+                         @Nullable PersistentCache persistentCache, PipelineMetrics metrics,
+                         Microphones microphones) {
         // Initialize the audio format
-        log.info("TranscriptionService initialized with audio format: {}", audioFormat);
-        this.transcriptionModel = transcriptionModel;
+        log.info("TranscriptionService initialized with audio format: {} (streaming={}, vad={})",
+                audioFormat, properties.streaming().enabled(), properties.vad().enabled());
+        this.transcriptionBackend = transcriptionBackend;
+        this.properties = properties;
+        this.persistentCache = persistentCache;
+        this.metrics = metrics;
+        this.microphones = microphones;
+        // Bounded, so a burst of concurrent recordings doesn't keep its direct memory forever
+        int maxIdle = Math.max(1, properties.buffer().maxIdle());
+        this.idleBuffers = new ArrayBlockingQueue<>(maxIdle);
+        this.idleEncoders = new ArrayBlockingQueue<>(maxIdle);
+    }
+
+    /**
+     * Called from the recording thread when voice activity detection stops
+     * capture after trailing silence. The caller should then invoke
+     * {@link #stopAndTranscribe()} as if the button had been released.
+     */
+    public void setAutoStopListener(Runnable autoStopListener) {
+        this.autoStopListener = autoStopListener;
+    }
+
+    /**
+     * With streaming transcription, receives the transcript so far each time
+     * a segment comes back, on the thread that finished the segment.
+     */
+    public void setPartialTranscriptListener(Consumer<String> partialTranscriptListener) {
+        this.partialTranscriptListener = partialTranscriptListener;
+    }
+
+    /**
+     * In hot-mic mode, opens the microphone once for the whole session.
+     * Falls back to opening it on every press if that fails.
+     */
+    @PostConstruct
+    public void openHotMicrophone() {
+        TranscriptionProperties.HotMic hotMic = properties.hotMic();
+        if (!hotMic.enabled()) {
+            return;
+        }
+        try {
+            AudioFormat format = selectLineFormat();
+            HotMicrophone candidate = new HotMicrophone(microphones.line(format), format, hotMic.ringLength());
+            candidate.start();
+            hotMicrophone = candidate;
+        } catch (LineUnavailableException | RuntimeException e) {
+            log.warn("Hot microphone unavailable, opening the line on each press instead: {}", e.getMessage());
+        }
     }
 
     public void startRecording() {
+        PipelineMetrics.Timing micOpen = metrics.start(PipelineMetrics.Stage.MIC_OPEN);
         try {
-            // Get microphone
-            DataLine.Info info = new DataLine.Info(TargetDataLine.class, audioFormat);
-            if (!AudioSystem.isLineSupported(info)) {
-                throw new RuntimeException("Microphone not supported");
-            }
+            beginRecording();
+        } finally {
+            micOpen.stop();
+        }
+    }
 
-            microphone = (TargetDataLine) AudioSystem.getLine(info);
-            microphone.open(audioFormat);
-            microphone.start();
+    private void beginRecording() {
+        // A press whose release never got as far as stopping it
+        Recording abandoned = recording.getAndSet(null);
+        if (abandoned != null) {
+            abandoned.stop();
+            abandoned.closeMicrophone();
+            abandoned.release();
+        }
+
+        if (hotMicrophone != null) {
+            beginCapture(null, hotMicrophone.markStart(properties.hotMic().preRoll()));
+            log.info("Recording started (hot mic, {} pre-roll)", properties.hotMic().preRoll());
+            return;
+        }
 
-            audioBuffer = new ByteArrayOutputStream();
-            isRecording = true;
+        try {
+            // Get microphone
+            AudioFormat format = selectLineFormat();
+            TargetDataLine microphone = microphones.line(format);
+            microphone.open(format);
+            microphone.start();
 
-            // Start recording in separate thread
-            recordingThread = new Thread(this::recordAudio);
-            recordingThread.start();
+            beginCapture(microphone, null);
 
             log.info("Recording started");
 
@@ -70,28 +185,195 @@ public class TranscriptionService {
         }
     }
 
-    private void recordAudio() {
-        byte[] buffer = new byte[4096];
+    /**
+     * The capture format if the device offers it, else the device's own rate
+     * and channel count, which the recording thread converts.
+     */
+    private AudioFormat selectLineFormat() {
+        AudioFormat format = PcmConverter.lineFormat(audioFormat, microphones::supports)
+                .orElseThrow(() -> new RuntimeException("Microphone not supported"));
+        if (!format.matches(audioFormat) && (lineFormat == null || !format.matches(lineFormat))) {
+            log.info("Microphone doesn't offer {}; capturing {} and converting", audioFormat, format);
+        }
+        lineFormat = format;
+        return format;
+    }
+
+    private void beginCapture(TargetDataLine microphone, HotMicrophone.Cursor hotCursor) {
+        // Its own converter: one from an earlier press may still be in use by that press's thread
+        PcmConverter converter = lineFormat.matches(audioFormat) ? null : new PcmConverter(lineFormat, audioFormat);
+        Capture capture = new Capture(metrics.currentCommand(), partial -> partialTranscriptListener.accept(partial));
+        Recording started = new Recording(capture, microphone, hotCursor, converter);
+        recording.set(started);
+        started.thread.start();
+    }
+
+    /**
+     * Starts the state for one recording that is fed from somewhere other
+     * than this machine's microphone, e.g. audio streamed by a remote
+     * console. Each capture has its own buffers, so any number can run at
+     * once, and its own command id (see {@link Capture#commandId()}).
+     *
+     * @param partialListener receives partial transcripts when streaming
+     *                        transcription is enabled
+     */
+    Capture newCapture(Consumer<String> partialListener) {
+        return new Capture(metrics.newCommand(), partialListener);
+    }
+
+    AudioFormat audioFormat() {
+        return audioFormat;
+    }
+
+    private StreamingTranscriber createStreamingTranscriber(Consumer<String> partialListener) {
+        TranscriptionProperties.Streaming streaming = properties.streaming();
+        if (!streaming.enabled()) {
+            return null;
+        }
+        return new StreamingTranscriber(transcriptionBackend, audioFormat, segmentExecutor,
+                streaming.window(), streaming.minSegment(), streaming.pause(), streaming.silenceThreshold(),
+                partialListener);
+    }
+
+    private VoiceActivityDetector createVoiceActivityDetector() {
+        TranscriptionProperties.Vad vad = properties.vad();
+        if (!vad.enabled()) {
+            return null;
+        }
+        return new VoiceActivityDetector(audioFormat, vad.frame(), vad.energyThreshold(), vad.zcrThreshold(),
+                vad.hangover(), vad.leadingPad(), vad.autoStopAfter());
+    }
+
+    private RecordingBuffer acquireBuffer() {
+        RecordingBuffer buffer = idleBuffers.poll();
+        if (buffer == null) {
+            TranscriptionProperties.Buffer limits = properties.buffer();
+            buffer = new RecordingBuffer(audioFormat, limits.maxInMemory(), limits.maxDuration());
+        }
+        return buffer;
+    }
+
+    private void releaseBuffer(RecordingBuffer buffer) {
+        buffer.reset();
+        idleBuffers.offer(buffer);
+    }
+
+    private FlacEncoder acquireEncoder() {
+        if (properties.uploadFormat() != TranscriptionProperties.UploadFormat.FLAC) {
+            return null;
+        }
+        FlacEncoder encoder = idleEncoders.poll();
+        if (encoder == null) {
+            try {
+                encoder = new FlacEncoder(audioFormat);
+            } catch (IllegalArgumentException e) {
+                log.warn("FLAC upload unavailable, falling back to WAV: {}", e.getMessage());
+            }
+        }
+        return encoder;
+    }
+
+    private void releaseEncoder(FlacEncoder encoder) {
+        if (encoder != null) {
+            encoder.reset();
+            idleEncoders.offer(encoder);
+        }
+    }
 
-        while (isRecording) {
-            int bytesRead = microphone.read(buffer, 0, buffer.length);
-            if (bytesRead > 0) {
-                audioBuffer.write(buffer, 0, bytesRead);
+    /**
+     * FLAC when enabled (already encoded during capture, so only the final
+     * partial block is left), otherwise the WAV view of the recording buffer.
+     */
+    private static Resource uploadResource(RecordingBuffer buffer, FlacEncoder encoder) {
+        if (encoder != null) {
+            try {
+                Resource flac = encoder.finish("recording.flac");
+                log.info("Uploading FLAC: {} bytes instead of {} bytes of WAV",
+                        encoder.encodedSize(), RecordingBuffer.HEADER_SIZE + buffer.dataSize());
+                return flac;
+            } catch (RuntimeException e) {
+                log.warn("FLAC encoding failed, uploading WAV instead", e);
             }
         }
+        return buffer.toWavResource("recording.wav");
     }
 
     public String stopAndTranscribe() {
-        if (!isRecording) {
+        // This press's state: the upload below can outlast the next button press
+        Recording current = recording.getAndSet(null);
+        if (current == null) {
             return "No recording in progress";
         }
 
+        long releasedAt = System.nanoTime();
         try {
             // Stop recording
-            isRecording = false;
-            recordingThread.join(1000); // Wait up to 1 second
+            current.stop();
+            try {
+                current.thread.join(1000); // Wait up to 1 second
+            } finally {
+                current.closeMicrophone();
+            }
+            if (current.thread.isAlive()) {
+                throw new IllegalStateException("Recording thread did not stop");
+            }
 
-            // Ensure microphone resources are properly closed
+            Capture capture = current.capture;
+            capture.finish();
+            if (capture.audioBytes() == 0) {
+                log.warn("No audio data recorded");
+                return "No audio data recorded. Please try again.";
+            }
+
+            String transcription = capture.transcribe();
+
+            log.info("Transcription: {}", transcription);
+            log.info("Transcript ready {} ms after release (streaming={})",
+                    Duration.ofNanos(System.nanoTime() - releasedAt).toMillis(), capture.isStreaming());
+            return transcription;
+
+        } catch (Exception e) {
+            log.error("Failed to transcribe audio", e);
+            return "Error: " + e.getMessage();
+        } finally {
+            current.release();
+        }
+    }
+
+    /**
+     * One press of the button: the capture, where its audio comes from (its
+     * own line, or a cursor into the hot mic), the converter, and the thread
+     * that moves audio from one to the other. The capture goes back to the
+     * pools only once both the thread and whoever stopped it are done with
+     * it, so a thread that outlives an interrupted stop never writes into a
+     * buffer another press has taken.
+     */
+    private final class Recording {
+
+        private final Capture capture;
+        private final TargetDataLine microphone;
+        private final HotMicrophone.Cursor hotCursor;
+        private final PcmConverter converter;
+        private final Thread thread = new Thread(this::record);
+        private final AtomicInteger holders = new AtomicInteger(2);
+        private volatile boolean running = true;
+
+        private Recording(Capture capture, TargetDataLine microphone, HotMicrophone.Cursor hotCursor,
+                          PcmConverter converter) {
+            this.capture = capture;
+            this.microphone = microphone;
+            this.hotCursor = hotCursor;
+            this.converter = converter;
+        }
+
+        void stop() {
+            running = false;
+        }
+
+        /**
+         * Closes this press's own line; a hot mic stays open.
+         */
+        void closeMicrophone() {
             try {
                 if (microphone != null) {
                     microphone.stop();
@@ -101,89 +383,189 @@ public class TranscriptionService {
                 log.warn("Error closing microphone resources", e);
                 // Continue processing with the data we have
             }
+        }
 
-            byte[] audioData = audioBuffer != null ? audioBuffer.toByteArray() : new byte[0];
+        /**
+         * Called once by the recording thread as it exits and once by
+         * whoever stops it; the last of the two returns the capture.
+         */
+        void release() {
+            if (holders.decrementAndGet() == 0) {
+                capture.release();
+            }
+        }
 
-            if (audioData.length == 0) {
-                log.warn("No audio data recorded");
-                return "No audio data recorded. Please try again.";
+        private void record() {
+            try {
+                recordAudio();
+            } finally {
+                release();
             }
+        }
 
-            log.info("Recorded {} bytes of audio", audioData.length);
+        private void recordAudio() {
+            byte[] buffer = new byte[4096];
+            byte[] converted = converter != null ? new byte[converter.maxOutputBytes(buffer.length)] : null;
 
-            // Convert to WAV format
-            byte[] wavData = convertToWav(audioData);
+            while (running) {
+                int bytesRead = hotCursor != null
+                        ? hotCursor.read(buffer, 0, buffer.length, HOT_MIC_POLL)
+                        : microphone.read(buffer, 0, buffer.length);
+                if (bytesRead > 0 && !process(buffer, bytesRead, converted)) {
+                    return;
+                }
+            }
 
-            // Create resource for Spring AI
-            Resource audioResource = new ByteArrayResource(wavData) {
-                @Override
-                public String getFilename() {
-                    return "recording.wav";
+            if (hotCursor != null) {
+                // The line keeps running after release; take what was captured up to now
+                int bytesRead;
+                while ((bytesRead = hotCursor.readAvailable(buffer, 0, buffer.length)) > 0) {
+                    if (!process(buffer, bytesRead, converted)) {
+                        return;
+                    }
                 }
-            };
+            }
+        }
 
-            // Transcribe
-            var prompt = new AudioTranscriptionPrompt(
-                    audioResource,
-                    OpenAiAudioTranscriptionOptions.builder()
-                            .language("en")
-                            .temperature(0.0f)
-                            .responseFormat(OpenAiAudioApi.TranscriptResponseFormat.TEXT)
-                            .build()
-            );
+        /**
+         * @return false once VAD has auto-stopped the recording
+         */
+        private boolean process(byte[] buffer, int bytesRead, byte[] converted) {
+            if (converter != null) {
+                bytesRead = converter.convert(buffer, 0, bytesRead, converted);
+                buffer = converted;
+            }
+            if (!capture.write(buffer, 0, bytesRead)) {
+                log.info("Trailing silence detected, stopping capture");
+                Runnable listener = autoStopListener;
+                if (listener != null) {
+                    listener.run();
+                }
+                return false;
+            }
+            return true;
+        }
+    }
 
-            AudioTranscriptionResponse response = transcriptionModel.call(prompt);
-            String transcription = response.getResult().getOutput().trim();
+    /**
+     * One recording: the buffer, the optional FLAC encoder and streaming
+     * transcriber it feeds, and voice activity detection in front of them.
+     * Written from one thread at a time; {@link #release()} returns the
+     * buffers to the service's pools once the transcript is back.
+     */
+    final class Capture {
+
+        private final RecordingBuffer buffer = acquireBuffer();
+        private final FlacEncoder encoder = acquireEncoder();
+        private final StreamingTranscriber streaming;
+        private final VoiceActivityDetector voiceActivityDetector = createVoiceActivityDetector();
+        private final long commandId;
+        private boolean released;
+
+        private Capture(long commandId, Consumer<String> partialListener) {
+            this.commandId = commandId;
+            this.streaming = createStreamingTranscriber(partialListener);
+        }
 
-            log.info("Transcription: {}", transcription);
+        /**
+         * The command this recording is for, which its stages are timed
+         * under; pass it on to the command's other stages.
+         */
+        long commandId() {
+            return commandId;
+        }
+
+        /**
+         * Runs one chunk through voice activity detection into the capture sinks.
+         *
+         * @return false once VAD has detected enough trailing silence to stop
+         */
+        boolean write(byte[] data, int offset, int length) {
+            if (voiceActivityDetector == null) {
+                capture(data, offset, length);
+                return true;
+            }
+            voiceActivityDetector.process(data, offset, length, this::capture);
+            if (streaming != null) {
+                streaming.silence(voiceActivityDetector.silentBytesSinceSpeech());
+            }
+            return !voiceActivityDetector.shouldAutoStop();
+        }
+
+        /**
+         * Ends the input, passing on whatever VAD still holds back.
+         */
+        void finish() {
+            if (voiceActivityDetector != null) {
+                voiceActivityDetector.flush(this::capture);
+                log.info("VAD kept {} of {} captured bytes", voiceActivityDetector.bytesKept(),
+                        voiceActivityDetector.bytesIn());
+            }
+        }
+
+        int audioBytes() {
+            return buffer.dataSize();
+        }
+
+        boolean isStreaming() {
+            return streaming != null;
+        }
+
+        /**
+         * Transcribes the finished recording, from the persistent cache if
+         * the same audio was transcribed before.
+         */
+        String transcribe() {
+            log.info("Recorded {} bytes of audio (spilled to disk: {})", buffer.dataSize(), buffer.isSpilled());
+
+            // The same recording played back, e.g. a test clip, was transcribed before
+            String audioHash = persistentCache != null ? PersistentCache.audioHash(audioFormat, buffer.pcm()) : null;
+            Optional<String> cached = audioHash != null ? persistentCache.transcript(audioHash) : Optional.empty();
+            if (cached.isPresent()) {
+                log.info("Transcript of this recording found in the persistent cache");
+                return cached.get();
+            }
+
+            String transcription;
+            if (streaming != null) {
+                transcription = metrics.time(PipelineMetrics.Stage.TRANSCRIPTION, commandId, streaming::finish);
+            } else {
+                Resource upload = metrics.time(PipelineMetrics.Stage.ENCODING, commandId,
+                        () -> uploadResource(buffer, encoder));
+                transcription = metrics.time(PipelineMetrics.Stage.TRANSCRIPTION, commandId,
+                        () -> transcriptionBackend.transcribe(upload));
+            }
+            if (audioHash != null) {
+                persistentCache.putTranscript(audioHash, transcription);
+            }
             return transcription;
+        }
 
-        } catch (Exception e) {
-            log.error("Failed to transcribe audio", e);
-            return "Error: " + e.getMessage();
+        void release() {
+            if (released) {
+                return;
+            }
+            released = true;
+            releaseBuffer(buffer);
+            releaseEncoder(encoder);
+        }
+
+        private void capture(byte[] data, int offset, int length) {
+            buffer.write(data, offset, length);
+            if (encoder != null) {
+                encoder.write(data, offset, length);
+            }
+            if (streaming != null) {
+                streaming.write(data, offset, length);
+            }
         }
     }
 
-    private byte[] convertToWav(byte[] audioData) throws IOException {
-        ByteArrayOutputStream wavOutput = new ByteArrayOutputStream();
-
-        // WAV header
-        int sampleRate = (int) audioFormat.getSampleRate();
-        int channels = audioFormat.getChannels();
-        int bitsPerSample = audioFormat.getSampleSizeInBits();
-        int byteRate = sampleRate * channels * bitsPerSample / 8;
-        int blockAlign = channels * bitsPerSample / 8;
-        int dataSize = audioData.length;
-        int fileSize = dataSize + 36; // 36 = header size - 8
-
-        // Write WAV header
-        wavOutput.write("RIFF".getBytes());
-        writeLittleEndianInt(wavOutput, fileSize);
-        wavOutput.write("WAVE".getBytes());
-        wavOutput.write("fmt ".getBytes());
-        writeLittleEndianInt(wavOutput, 16); // Subchunk1Size
-        writeLittleEndianShort(wavOutput, (short) 1); // AudioFormat (1 = PCM)
-        writeLittleEndianShort(wavOutput, (short) channels);
-        writeLittleEndianInt(wavOutput, sampleRate);
-        writeLittleEndianInt(wavOutput, byteRate);
-        writeLittleEndianShort(wavOutput, (short) blockAlign);
-        writeLittleEndianShort(wavOutput, (short) bitsPerSample);
-        wavOutput.write("data".getBytes());
-        writeLittleEndianInt(wavOutput, dataSize);
-        wavOutput.write(audioData);
-
-        return wavOutput.toByteArray();
-    }
-
-    private void writeLittleEndianInt(ByteArrayOutputStream out, int value) {
-        out.write(value & 0xFF);
-        out.write((value >> 8) & 0xFF);
-        out.write((value >> 16) & 0xFF);
-        out.write((value >> 24) & 0xFF);
-    }
-
-    private void writeLittleEndianShort(ByteArrayOutputStream out, short value) {
-        out.write(value & 0xFF);
-        out.write((value >> 8) & 0xFF);
+    @PreDestroy
+    public void shutdown() {
+        segmentExecutor.shutdownNow();
+        if (hotMicrophone != null) {
+            hotMicrophone.close();
+        }
     }
 }
@@ -0,0 +1,173 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.ShortVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorShape;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The kernels on the widest float vectors the CPU has. Samples are loaded
+ * as shorts at half that width, so one load widens to exactly one float
+ * vector; bytes are reinterpreted as shorts in place, which is why this is
+ * only used on little-endian machines. Tails shorter than a vector run the
+ * scalar loop.
+ * <p>
+ * Only loaded by {@link PcmKernels#best()} when the incubator module is
+ * present, so nothing else may refer to this class directly outside tests
+ * and benchmarks.
+ */
+final class VectorPcmKernels implements PcmKernels {
+
+    private static final VectorSpecies<Float> FLOATS = FloatVector.SPECIES_PREFERRED;
+    private static final VectorSpecies<Short> SHORTS =
+            VectorSpecies.of(short.class, VectorShape.forBitSize(FLOATS.vectorBitSize() / 2));
+    private static final VectorSpecies<Byte> BYTES =
+            VectorSpecies.of(byte.class, VectorShape.forBitSize(FLOATS.vectorBitSize() / 2));
+
+    /** Vectors summed in float lanes before the total moves to a double */
+    private static final int FLUSH_EVERY = 64;
+
+    private final ScalarPcmKernels tail = new ScalarPcmKernels();
+
+    @Override
+    public String name() {
+        return "vector (" + FLOATS.length() + " x float)";
+    }
+
+    @Override
+    public void decode(byte[] pcm, int offset, short[] samples, int count) {
+        int i = 0;
+        for (; i < SHORTS.loopBound(count); i += SHORTS.length()) {
+            ByteVector.fromArray(BYTES, pcm, offset + 2 * i).reinterpretAsShorts().intoArray(samples, i);
+        }
+        for (; i < count; i++) {
+            samples[i] = ScalarPcmKernels.decodeSample(pcm, offset + 2 * i);
+        }
+    }
+
+    @Override
+    public void toFloat(short[] samples, float[] out, int count) {
+        int i = 0;
+        for (; i < SHORTS.loopBound(count); i += SHORTS.length()) {
+            widen(samples, i).mul(1f / 32768).intoArray(out, i);
+        }
+        for (; i < count; i++) {
+            out[i] = samples[i] * (1f / 32768);
+        }
+    }
+
+    @Override
+    public void encode(float[] samples, int count, byte[] pcm, int offset) {
+        FloatVector up = FloatVector.broadcast(FLOATS, 0.5f);
+        FloatVector down = FloatVector.broadcast(FLOATS, -0.5f);
+        int i = 0;
+        for (; i < FLOATS.loopBound(count); i += FLOATS.length()) {
+            FloatVector scaled = FloatVector.fromArray(FLOATS, samples, i).mul(32768f).max(-32768f).min(32767f);
+            // Round half away from zero, then truncate
+            FloatVector rounded = scaled.add(up.blend(down, scaled.lt(0f)));
+            rounded.convertShape(VectorOperators.F2S, SHORTS, 0).reinterpretAsBytes().intoArray(pcm, offset + 2 * i);
+        }
+        for (; i < count; i++) {
+            ScalarPcmKernels.encodeSample(samples[i], pcm, offset + 2 * i);
+        }
+    }
+
+    @Override
+    public double sumOfSquares(short[] samples, int count) {
+        double sum = 0;
+        FloatVector lanes = FloatVector.zero(FLOATS);
+        int i = 0;
+        for (int n = 1; i < SHORTS.loopBound(count); i += SHORTS.length(), n++) {
+            FloatVector v = widen(samples, i);
+            lanes = v.fma(v, lanes);
+            if (n % FLUSH_EVERY == 0) {
+                // Squares of loud audio are ~1e9; keep float lanes from losing the small ones
+                sum += lanes.reduceLanes(VectorOperators.ADD);
+                lanes = FloatVector.zero(FLOATS);
+            }
+        }
+        sum += lanes.reduceLanes(VectorOperators.ADD);
+        for (; i < count; i++) {
+            sum += samples[i] * samples[i];
+        }
+        return sum;
+    }
+
+    @Override
+    public int zeroCrossings(short[] samples, int count) {
+        int crossings = 0;
+        int i = 1;
+        for (; i + SHORTS.length() <= count; i += SHORTS.length()) {
+            VectorMask<Short> previous = ShortVector.fromArray(SHORTS, samples, i - 1).lt((short) 0);
+            VectorMask<Short> current = ShortVector.fromArray(SHORTS, samples, i).lt((short) 0);
+            crossings += SHORTS.length() - previous.eq(current).trueCount();
+        }
+        for (; i < count; i++) {
+            if ((samples[i] < 0) != (samples[i - 1] < 0)) {
+                crossings++;
+            }
+        }
+        return crossings;
+    }
+
+    @Override
+    public int peak(short[] samples, int count) {
+        // In floats, since the magnitude of -32768 doesn't fit a short lane
+        FloatVector peak = FloatVector.zero(FLOATS);
+        int i = 0;
+        for (; i < SHORTS.loopBound(count); i += SHORTS.length()) {
+            peak = peak.max(widen(samples, i).abs());
+        }
+        int result = (int) peak.reduceLanes(VectorOperators.MAX);
+        for (; i < count; i++) {
+            result = Math.max(result, Math.abs(samples[i]));
+        }
+        return result;
+    }
+
+    @Override
+    public float sum(float[] samples, int offset, int count) {
+        FloatVector sum = FloatVector.zero(FLOATS);
+        int i = 0;
+        for (; i < FLOATS.loopBound(count); i += FLOATS.length()) {
+            sum = sum.add(FloatVector.fromArray(FLOATS, samples, offset + i));
+        }
+        return sum.reduceLanes(VectorOperators.ADD) + tail.sum(samples, offset + i, count - i);
+    }
+
+    @Override
+    public float peak(float[] samples, int offset, int count) {
+        FloatVector peak = FloatVector.zero(FLOATS);
+        int i = 0;
+        for (; i < FLOATS.loopBound(count); i += FLOATS.length()) {
+            peak = peak.max(FloatVector.fromArray(FLOATS, samples, offset + i).abs());
+        }
+        return Math.max(peak.reduceLanes(VectorOperators.MAX), tail.peak(samples, offset + i, count - i));
+    }
+
+    @Override
+    public void scaleAndShift(float[] samples, int offset, int count, float scale, float shift) {
+        int i = 0;
+        for (; i < FLOATS.loopBound(count); i += FLOATS.length()) {
+            FloatVector.fromArray(FLOATS, samples, offset + i).fma(scale, shift).intoArray(samples, offset + i);
+        }
+        tail.scaleAndShift(samples, offset + i, count - i, scale, shift);
+    }
+
+    @Override
+    public float dot(float[] a, int aOffset, float[] b, int bOffset, int length) {
+        FloatVector sum = FloatVector.zero(FLOATS);
+        int i = 0;
+        for (; i < FLOATS.loopBound(length); i += FLOATS.length()) {
+            sum = FloatVector.fromArray(FLOATS, a, aOffset + i).fma(FloatVector.fromArray(FLOATS, b, bOffset + i), sum);
+        }
+        return sum.reduceLanes(VectorOperators.ADD) + tail.dot(a, aOffset + i, b, bOffset + i, length - i);
+    }
+
+    private static FloatVector widen(short[] samples, int index) {
+        return (FloatVector) ShortVector.fromArray(SHORTS, samples, index).castShape(FLOATS, 0);
+    }
+}
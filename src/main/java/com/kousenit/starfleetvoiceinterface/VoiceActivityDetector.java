@@ -0,0 +1,167 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import javax.sound.sampled.AudioFormat;
+import java.time.Duration;
+
+/**
+ * Frame-by-frame voice activity detection for 16-bit little-endian mono PCM.
+ * <p>
+ * A frame counts as speech when its RMS energy clears the threshold, or when a
+ * quieter frame has a high zero-crossing rate (unvoiced fricatives such as "s"
+ * or "f"). After speech ends, a hangover keeps the next few frames so word
+ * endings aren't clipped, and a short leading pad of the most recent silent
+ * frames is emitted ahead of each onset. All other frames are dropped before
+ * they reach the sink.
+ * <p>
+ * Not thread-safe; one instance per recording, driven from the recording thread.
+ */
+class VoiceActivityDetector {
+
+    private static final int FRICATIVE_ENERGY_DIVISOR = 3;
+
+    private final int frameBytes;
+    private final int energyThreshold;
+    private final double zcrThreshold;
+    private final int hangoverFrames;
+    private final int autoStopFrames;
+
+    private final byte[] frame;
+    private final short[] samples;
+    private final PcmDsp dsp = PcmDsp.get();
+    private int frameFill;
+
+    // Ring of the most recent silent frames, replayed as a leading pad at onset
+    private final byte[][] leadingPad;
+    private int leadingStart;
+    private int leadingCount;
+
+    private int hangoverRemaining;
+    private int silentFramesSinceSpeech;
+    private boolean speechSeen;
+    private long bytesIn;
+    private long bytesKept;
+
+    VoiceActivityDetector(AudioFormat audioFormat, Duration frameLength, int energyThreshold,
+                          double zcrThreshold, Duration hangover, Duration leadingPadLength,
+                          Duration autoStopAfter) {
+        int frameMillis = (int) frameLength.toMillis();
+        this.frameBytes = (int) (audioFormat.getSampleRate() * frameMillis / 1000) * audioFormat.getFrameSize();
+        this.energyThreshold = energyThreshold;
+        this.zcrThreshold = zcrThreshold;
+        this.hangoverFrames = (int) (hangover.toMillis() / frameMillis);
+        this.autoStopFrames = (int) (autoStopAfter.toMillis() / frameMillis);
+        this.frame = new byte[frameBytes];
+        this.samples = new short[frameBytes / 2];
+        this.leadingPad = new byte[(int) (leadingPadLength.toMillis() / frameMillis)][frameBytes];
+    }
+
+    void process(byte[] data, int offset, int length, PcmSink sink) {
+        while (length > 0) {
+            int n = Math.min(length, frameBytes - frameFill);
+            System.arraycopy(data, offset, frame, frameFill, n);
+            frameFill += n;
+            offset += n;
+            length -= n;
+            if (frameFill == frameBytes) {
+                processFrame(sink);
+                frameFill = 0;
+            }
+        }
+    }
+
+    /**
+     * Emits a trailing partial frame if the detector is still inside speech.
+     */
+    void flush(PcmSink sink) {
+        if (frameFill > 0) {
+            bytesIn += frameFill;
+            if (hangoverRemaining > 0) {
+                emit(frame, frameFill, sink);
+            }
+            frameFill = 0;
+        }
+    }
+
+    /**
+     * True once speech has been heard and has been followed by the configured
+     * amount of silence. Always false when auto-stop is disabled.
+     */
+    boolean shouldAutoStop() {
+        return autoStopFrames > 0 && speechSeen && silentFramesSinceSpeech >= autoStopFrames;
+    }
+
+    /**
+     * Length in bytes of the silence since the last speech frame, including
+     * the frames that were dropped rather than passed to the sink. Zero before
+     * any speech and while speech goes on.
+     */
+    long silentBytesSinceSpeech() {
+        return (long) silentFramesSinceSpeech * frameBytes;
+    }
+
+    long bytesIn() {
+        return bytesIn;
+    }
+
+    long bytesKept() {
+        return bytesKept;
+    }
+
+    private void processFrame(PcmSink sink) {
+        bytesIn += frameBytes;
+
+        if (isSpeech(frame, frameBytes)) {
+            drainLeadingPad(sink);
+            emit(frame, frameBytes, sink);
+            speechSeen = true;
+            hangoverRemaining = hangoverFrames;
+            silentFramesSinceSpeech = 0;
+            return;
+        }
+
+        if (speechSeen) {
+            silentFramesSinceSpeech++;
+        }
+        if (hangoverRemaining > 0) {
+            hangoverRemaining--;
+            emit(frame, frameBytes, sink);
+        } else {
+            holdForLeadingPad();
+        }
+    }
+
+    private boolean isSpeech(byte[] pcm, int length) {
+        int count = dsp.decode(pcm, 0, length, samples);
+        double rms = dsp.rms(samples, count);
+        double zcr = dsp.zeroCrossingRate(samples, count);
+
+        return rms >= energyThreshold
+                || (rms >= (double) energyThreshold / FRICATIVE_ENERGY_DIVISOR && zcr >= zcrThreshold);
+    }
+
+    private void holdForLeadingPad() {
+        if (leadingPad.length == 0) {
+            return;
+        }
+        int slot = (leadingStart + leadingCount) % leadingPad.length;
+        System.arraycopy(frame, 0, leadingPad[slot], 0, frameBytes);
+        if (leadingCount < leadingPad.length) {
+            leadingCount++;
+        } else {
+            leadingStart = (leadingStart + 1) % leadingPad.length;
+        }
+    }
+
+    private void drainLeadingPad(PcmSink sink) {
+        for (int i = 0; i < leadingCount; i++) {
+            emit(leadingPad[(leadingStart + i) % leadingPad.length], frameBytes, sink);
+        }
+        leadingStart = 0;
+        leadingCount = 0;
+    }
+
+    private void emit(byte[] pcm, int length, PcmSink sink) {
+        bytesKept += length;
+        sink.write(pcm, 0, length);
+    }
+}
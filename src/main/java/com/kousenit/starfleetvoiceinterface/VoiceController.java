@@ -1,5 +1,7 @@
 package com.kousenit.starfleetvoiceinterface;
 
+import com.kousenit.starfleetvoiceinterface.config.ResponseProperties;
+import com.kousenit.starfleetvoiceinterface.config.TranscriptionProperties;
 import com.kousenit.starfleetvoiceinterface.config.UIConstants;
 import javafx.animation.KeyFrame;
 import javafx.animation.KeyValue;
@@ -10,39 +12,77 @@ import javafx.scene.control.TextArea;
 import javafx.scene.paint.Color;
 import javafx.scene.shape.Circle;
 import javafx.util.Duration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Component;
 
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Consumer;
 
 @Component
 public class VoiceController {
 
+    private static final Logger log = LoggerFactory.getLogger(VoiceController.class);
+
     private final TranscriptionService transcriptionService;
 
     private final McpClientService mcpService;
     private final AudioPlayerService audioPlayerService;
+    private final ResponseProperties responseProperties;
+    private final VoicePipeline pipeline;
+    private final PipelineMetrics metrics;
+    private final ModelConnections modelConnections;
+    private final TranscriptionProperties.Speculation speculation;
+    private final boolean speculate;
 
     private Circle recordButton;
     private Label statusLabel;
     private Label transcriptLabel;
     private TextArea responseArea;
+    private ResultTableView resultTable;
     private Timeline pulseAnimation;
+    private boolean recording;
+    private VoicePipeline.Run currentRun;
+    private volatile CommandSpeculator speculator;
+    private volatile long firstTokenMillis = -1;
 
-    public VoiceController(TranscriptionService transcriptionService, McpClientService mcpService, AudioPlayerService audioPlayerService) {
+    public VoiceController(TranscriptionService transcriptionService, @Lazy McpClientService mcpService,
+                           AudioPlayerService audioPlayerService, ResponseProperties responseProperties,
+                           VoicePipeline pipeline, TranscriptionProperties transcriptionProperties,
+                           PipelineMetrics metrics, ModelConnections modelConnections) {
         this.transcriptionService = transcriptionService;
         this.mcpService = mcpService;
         this.audioPlayerService = audioPlayerService;
+        this.responseProperties = responseProperties;
+        this.pipeline = pipeline;
+        this.metrics = metrics;
+        this.modelConnections = modelConnections;
+        this.speculation = transcriptionProperties.speculation();
+        // Partial transcripts only exist when segments are uploaded during capture
+        this.speculate = speculation.enabled() && transcriptionProperties.streaming().enabled();
     }
 
     public void initialize(Circle recordButton, Label statusLabel,
-                           Label transcriptLabel, TextArea responseArea) {
+                           Label transcriptLabel, TextArea responseArea, ResultTableView resultTable) {
         this.recordButton = recordButton;
         this.statusLabel = statusLabel;
         this.transcriptLabel = transcriptLabel;
         this.responseArea = responseArea;
+        this.resultTable = resultTable;
 
         setupAnimations();
         setupEventHandlers();
+
+        // Voice activity detection may end capture before the button is released
+        transcriptionService.setAutoStopListener(() -> Platform.runLater(this::stopRecording));
+        transcriptionService.setPartialTranscriptListener(partial -> {
+            CommandSpeculator guesses = speculator;
+            if (guesses != null) {
+                guesses.partial(partial);
+            }
+        });
     }
 
     private void setupAnimations() {
@@ -65,6 +105,19 @@ public class VoiceController {
     }
 
     private void startRecording() {
+        if (recording) {
+            return;
+        }
+        recording = true;
+        // Open the connections to the model endpoints while the user talks
+        modelConnections.prime();
+        // A new command supersedes whatever the last one is still doing
+        currentRun = pipeline.begin();
+        metrics.beginCommand();
+        speculator = newSpeculator(currentRun);
+        // Keep effects from the last command out of the new recording
+        audioPlayerService.duck();
+
         Platform.runLater(() -> {
             statusLabel.setText("RECORDING...");
             statusLabel.setTextFill(Color.web(UIConstants.STATUS_RECORDING_COLOR));
@@ -75,6 +128,12 @@ public class VoiceController {
     }
 
     private void stopRecording() {
+        if (!recording) {
+            return;
+        }
+        recording = false;
+        audioPlayerService.restoreVolume();
+
         Platform.runLater(() -> {
             statusLabel.setText("PROCESSING...");
             statusLabel.setTextFill(Color.web(UIConstants.STATUS_PROCESSING_COLOR));
@@ -82,27 +141,135 @@ public class VoiceController {
             recordButton.setFill(Color.web(UIConstants.BUTTON_BACKGROUND_COLOR));
         });
 
-        CompletableFuture
-                .supplyAsync(transcriptionService::stopAndTranscribe)
+        VoicePipeline.Run run = currentRun;
+        CommandSpeculator guesses = speculator;
+        PipelineMetrics.Timing command = metrics.start(PipelineMetrics.Stage.COMMAND);
+        run.submit(VoicePipeline.Stage.TRANSCRIPTION, transcriptionService::stopAndTranscribe)
                 .thenCompose(transcription -> {
                     Platform.runLater(() -> {
                         transcriptLabel.setText("Command: \"" + transcription + "\"");
+                        responseArea.clear();
+                        hideTable();
                         audioPlayerService.playWorkingSound();
                     });
-                    return mcpService.processCommand(transcription);
+                    return respond(run, guesses, transcription);
+                })
+                .thenAccept(response -> {
+                    PipelineMetrics.Timing render = metrics.start(PipelineMetrics.Stage.RENDER);
+                    Platform.runLater(() -> {
+                        responseArea.setText(response);
+                        statusLabel.setText(withFirstToken("READY"));
+                        statusLabel.setTextFill(Color.web(UIConstants.STATUS_READY_COLOR));
+                        render.stop();
+                        command.stop();
+                    });
                 })
-                .thenAccept(response -> Platform.runLater(() -> {
-                    responseArea.setText(response);
-                    statusLabel.setText("READY");
-                    statusLabel.setTextFill(Color.web(UIConstants.STATUS_READY_COLOR));
-                }))
                 .exceptionally(throwable -> {
+                    // Failed and cancelled commands count too, or the percentiles only cover successes
+                    if (run.isCancelled()) {
+                        // Superseded by a newer command, which owns the UI now
+                        command.stop();
+                        return null;
+                    }
                     Platform.runLater(() -> {
                         responseArea.setText("ERROR: " + throwable.getMessage());
                         statusLabel.setText("ERROR");
                         statusLabel.setTextFill(Color.web(UIConstants.STATUS_RECORDING_COLOR)); // Using recording color for errors
+                        command.stop();
                     });
                     return null;
                 });
     }
+
+    private CommandSpeculator newSpeculator(VoicePipeline.Run run) {
+        CommandSpeculator previous = speculator;
+        if (previous != null) {
+            previous.cancel();
+        }
+        if (!speculate) {
+            return null;
+        }
+        // Speculative runs are plain calls: nothing is shown until the final transcript confirms them
+        return new CommandSpeculator((command, onTable) -> run.submit(VoicePipeline.Stage.COMMAND,
+                () -> mcpService.processCommand(command, onTable)), speculation.settle(), speculation.tolerance());
+    }
+
+    /**
+     * Uses the answer already started on a partial transcript if the final
+     * one confirms it, and otherwise runs the command.
+     */
+    private CompletableFuture<String> respond(VoicePipeline.Run run, CommandSpeculator guesses, String command) {
+        if (guesses == null) {
+            return respond(run, command);
+        }
+        CommandSpeculator.Outcome outcome = guesses.resolve(command);
+        switch (outcome.kind()) {
+            case HIT -> {
+                log.info("Speculative command confirmed, started {} ms before the final transcript",
+                        outcome.headStart().toMillis());
+                firstTokenMillis = -1;
+                outcome.tables().forwardTo(tablesFor(run));
+                return outcome.answer();
+            }
+            case MISS -> log.info("Speculative command discarded after {} ms, final transcript differed",
+                    outcome.headStart().toMillis());
+            case NONE -> log.debug("No partial transcript settled before release");
+        }
+        return respond(run, command);
+    }
+
+    private CompletableFuture<String> respond(VoicePipeline.Run run, String command) {
+        firstTokenMillis = -1;
+        Consumer<ResultTable> onTable = tablesFor(run);
+        if (!responseProperties.streaming()) {
+            return run.submit(VoicePipeline.Stage.COMMAND, () -> mcpService.processCommand(command, onTable));
+        }
+
+        // Tokens arrive on reactor threads; the coalescer batches them into one update per frame
+        PipelineMetrics.Timing untilFirstToken = metrics.start(PipelineMetrics.Stage.FIRST_TOKEN);
+        AtomicBoolean firstToken = new AtomicBoolean();
+        FrameCoalescer coalescer = new FrameCoalescer(Platform::runLater, responseProperties.frame(), text -> {
+            if (run.isCancelled()) {
+                return;
+            }
+            if (responseArea.getText().isEmpty()) {
+                statusLabel.setText(withFirstToken("RESPONDING..."));
+            }
+            responseArea.appendText(text);
+        });
+        return run.submit(VoicePipeline.Stage.COMMAND, () -> mcpService.streamCommand(command, token -> {
+                    if (firstToken.compareAndSet(false, true)) {
+                        firstTokenMillis = untilFirstToken.stop().toMillis();
+                    }
+                    coalescer.append(token);
+                }, onTable))
+                .whenComplete((response, error) -> coalescer.finish());
+    }
+
+    /**
+     * Query results go to the table in full; the text pane keeps the model's summary.
+     */
+    private Consumer<ResultTable> tablesFor(VoicePipeline.Run run) {
+        return table -> Platform.runLater(() -> {
+            if (!run.isCancelled()) {
+                showTable(table);
+            }
+        });
+    }
+
+    private void showTable(ResultTable table) {
+        responseArea.setPrefRowCount(UIConstants.RESPONSE_AREA_ROWS_WITH_TABLE);
+        PipelineMetrics.Timing render = metrics.start(PipelineMetrics.Stage.RENDER, table.rows().size() + " rows");
+        resultTable.show(table).thenRun(render::stop);
+    }
+
+    private void hideTable() {
+        resultTable.clear();
+        responseArea.setPrefRowCount(UIConstants.RESPONSE_AREA_ROWS);
+    }
+
+    private String withFirstToken(String status) {
+        long millis = firstTokenMillis;
+        return millis < 0 ? status : status + " · FIRST TOKEN " + millis + " MS";
+    }
 }
@@ -0,0 +1,180 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import com.kousenit.starfleetvoiceinterface.config.PipelineProperties;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Runs the blocking stages of a voice command (transcription upload, model
+ * and tool calls) on virtual threads, each stage with its own concurrency
+ * limit and deadline, so a stalled stage can't starve the others the way
+ * the shared common pool could.
+ * <p>
+ * Each command gets a {@link Run}. Starting a new run cancels the previous
+ * one, which fails its futures and interrupts whatever they are blocked on.
+ */
+@Component
+public class VoicePipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(VoicePipeline.class);
+
+    public enum Stage {
+        TRANSCRIPTION, COMMAND
+    }
+
+    private final Map<Stage, StageExecutor> stages = new EnumMap<>(Stage.class);
+    private final AtomicReference<Run> current = new AtomicReference<>();
+
+    @Autowired
+    public VoicePipeline(PipelineProperties properties) {
+        this(Map.of(
+                Stage.TRANSCRIPTION, new Limits(properties.transcriptionConcurrency(), properties.transcriptionTimeout()),
+                Stage.COMMAND, new Limits(properties.commandConcurrency(), properties.commandTimeout())));
+    }
+
+    VoicePipeline(Map<Stage, Limits> limits) {
+        limits.forEach((stage, stageLimits) -> stages.put(stage, new StageExecutor(stage, stageLimits)));
+    }
+
+    record Limits(int concurrency, Duration timeout) {
+    }
+
+    /**
+     * Starts the run for a new command, cancelling the one before it.
+     */
+    public Run begin() {
+        Run run = new Run();
+        Run previous = current.getAndSet(run);
+        if (previous != null && previous.cancel()) {
+            log.info("Cancelled the previous command still in flight");
+        }
+        return run;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        Run run = current.get();
+        if (run != null) {
+            run.cancel();
+        }
+        stages.values().forEach(stage -> stage.executor.shutdownNow());
+    }
+
+    /**
+     * The stage futures belonging to one command.
+     */
+    public final class Run {
+
+        private final List<CompletableFuture<?>> futures = new CopyOnWriteArrayList<>();
+        private volatile boolean cancelled;
+
+        /**
+         * Runs {@code task} on the stage's executor. The future fails with a
+         * {@link TimeoutException} past the stage deadline and is cancelled
+         * along with the run; either way the task's thread is interrupted.
+         */
+        public <T> CompletableFuture<T> submit(Stage stage, Callable<T> task) {
+            CompletableFuture<T> future = stages.get(stage).submit(task);
+            futures.add(future);
+            if (cancelled) {
+                future.cancel(true);
+            }
+            return future;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * @return true if anything was still running
+         */
+        boolean cancel() {
+            cancelled = true;
+            boolean active = false;
+            for (CompletableFuture<?> future : futures) {
+                active |= future.cancel(true);
+            }
+            return active;
+        }
+    }
+
+    private static final class StageExecutor {
+
+        private final Stage stage;
+        private final Duration timeout;
+        private final Semaphore permits;
+        private final ExecutorService executor;
+
+        StageExecutor(Stage stage, Limits limits) {
+            this.stage = stage;
+            this.timeout = limits.timeout();
+            this.permits = new Semaphore(limits.concurrency());
+            this.executor = Executors.newThreadPerTaskExecutor(
+                    Thread.ofVirtual().name(stage.name().toLowerCase() + "-", 0).factory());
+        }
+
+        <T> CompletableFuture<T> submit(Callable<T> task) {
+            CompletableFuture<T> future = new CompletableFuture<>();
+            AtomicReference<Thread> worker = new AtomicReference<>();
+
+            executor.execute(() -> {
+                worker.set(Thread.currentThread());
+                try {
+                    // Waiting here parks a virtual thread, not a pool worker
+                    permits.acquire();
+                } catch (InterruptedException e) {
+                    worker.set(null);
+                    return;
+                }
+                try {
+                    if (!future.isDone()) {
+                        future.complete(task.call());
+                    }
+                } catch (Throwable e) {
+                    future.completeExceptionally(e);
+                } finally {
+                    worker.set(null);
+                    permits.release();
+                }
+            });
+
+            // orTimeout drops its timer once the deadline completes, so a finished task doesn't hold one
+            CompletableFuture<Void> deadline = new CompletableFuture<Void>()
+                    .orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS);
+            deadline.whenComplete((ignored, error) -> {
+                if (error instanceof TimeoutException) {
+                    future.completeExceptionally(new TimeoutException(
+                            stage.name().toLowerCase() + " stage timed out after " + timeout.toMillis() + " ms"));
+                }
+            });
+
+            // Cancelled or timed out: stop whatever the task is blocked on
+            future.whenComplete((result, error) -> {
+                deadline.cancel(false);
+                Thread thread = worker.get();
+                if (error != null && thread != null) {
+                    thread.interrupt();
+                }
+            });
+            return future;
+        }
+    }
+}
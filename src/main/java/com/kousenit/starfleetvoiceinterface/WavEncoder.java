@@ -0,0 +1,69 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import org.springframework.core.io.ByteArrayResource;
+import org.springframework.core.io.Resource;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+
+/**
+ * Wraps raw PCM capture data in a RIFF/WAV container for upload.
+ */
+final class WavEncoder {
+
+    private WavEncoder() {
+    }
+
+    static byte[] convertToWav(byte[] audioData, AudioFormat audioFormat) throws IOException {
+        ByteArrayOutputStream wavOutput = new ByteArrayOutputStream();
+
+        // WAV header
+        int sampleRate = (int) audioFormat.getSampleRate();
+        int channels = audioFormat.getChannels();
+        int bitsPerSample = audioFormat.getSampleSizeInBits();
+        int byteRate = sampleRate * channels * bitsPerSample / 8;
+        int blockAlign = channels * bitsPerSample / 8;
+        int dataSize = audioData.length;
+        int fileSize = dataSize + 36; // 36 = header size - 8
+
+        // Write WAV header
+        wavOutput.write("RIFF".getBytes());
+        writeLittleEndianInt(wavOutput, fileSize);
+        wavOutput.write("WAVE".getBytes());
+        wavOutput.write("fmt ".getBytes());
+        writeLittleEndianInt(wavOutput, 16); // Subchunk1Size
+        writeLittleEndianShort(wavOutput, (short) 1); // AudioFormat (1 = PCM)
+        writeLittleEndianShort(wavOutput, (short) channels);
+        writeLittleEndianInt(wavOutput, sampleRate);
+        writeLittleEndianInt(wavOutput, byteRate);
+        writeLittleEndianShort(wavOutput, (short) blockAlign);
+        writeLittleEndianShort(wavOutput, (short) bitsPerSample);
+        wavOutput.write("data".getBytes());
+        writeLittleEndianInt(wavOutput, dataSize);
+        wavOutput.write(audioData);
+
+        return wavOutput.toByteArray();
+    }
+
+    static Resource toResource(byte[] wavData, String filename) {
+        return new ByteArrayResource(wavData) {
+            @Override
+            public String getFilename() {
+                return filename;
+            }
+        };
+    }
+
+    static void writeLittleEndianInt(ByteArrayOutputStream out, int value) {
+        out.write(value & 0xFF);
+        out.write((value >> 8) & 0xFF);
+        out.write((value >> 16) & 0xFF);
+        out.write((value >> 24) & 0xFF);
+    }
+
+    static void writeLittleEndianShort(ByteArrayOutputStream out, short value) {
+        out.write(value & 0xFF);
+        out.write((value >> 8) & 0xFF);
+    }
+}
@@ -0,0 +1,30 @@
+package com.kousenit.starfleetvoiceinterface.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.util.unit.DataSize;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * The on-disk cache of transcripts and model answers that survives restarts,
+ * bound from {@code starfleet.cache.*}. The file is compacted, and the oldest
+ * entries dropped, when it reaches {@code maxSize}. A remembered answer is only
+ * checked by replaying its tool calls when every table they read has a result
+ * cache TTL of at least {@code replayMinTtl}; results that change faster than
+ * that would almost never match.
+ */
+@ConfigurationProperties(prefix = "starfleet.cache")
+public record CacheProperties(
+        @DefaultValue("false") boolean enabled,
+        Path file,
+        @DefaultValue("64MB") DataSize maxSize,
+        @DefaultValue("1m") Duration replayMinTtl) {
+
+    public CacheProperties {
+        if (file == null) {
+            file = Path.of(System.getProperty("user.home"), ".starfleet-voice-interface", "cache.dat");
+        }
+    }
+}
@@ -0,0 +1,39 @@
+package com.kousenit.starfleetvoiceinterface.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+import org.springframework.lang.Nullable;
+
+import java.time.Duration;
+
+/**
+ * Headless server mode, bound from {@code starfleet.headless.*}: no window,
+ * the voice pipeline served over HTTP to remote consoles instead.
+ * <p>
+ * The server listens on {@code bindAddress}, loopback unless set otherwise.
+ * With a {@code token}, every request must carry it as
+ * {@code Authorization: Bearer <token>}; listening anywhere but loopback
+ * requires one.
+ * <p>
+ * At most {@code maxSessions} sessions are open at once; one idle for
+ * {@code sessionIdleTimeout} is closed. At most {@code maxConcurrentCommands}
+ * commands are recorded, transcribed and answered at once; a command that
+ * can't start within {@code queueTimeout} is turned away with 503. A console
+ * gets {@code uploadTimeout} to send its recording and the server
+ * {@code commandTimeout} to answer it. Each session gets at most one
+ * streamed update per {@code flushInterval}.
+ */
+@ConfigurationProperties(prefix = "starfleet.headless")
+public record HeadlessProperties(
+        @DefaultValue("false") boolean enabled,
+        @DefaultValue("127.0.0.1") String bindAddress,
+        @DefaultValue("8088") int port,
+        @Nullable String token,
+        @DefaultValue("1000") int maxSessions,
+        @DefaultValue("64") int maxConcurrentCommands,
+        @DefaultValue("5s") Duration queueTimeout,
+        @DefaultValue("1m") Duration uploadTimeout,
+        @DefaultValue("60s") Duration commandTimeout,
+        @DefaultValue("10m") Duration sessionIdleTimeout,
+        @DefaultValue("50ms") Duration flushInterval) {
+}
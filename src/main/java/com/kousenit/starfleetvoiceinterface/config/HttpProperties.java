@@ -0,0 +1,33 @@
+package com.kousenit.starfleetvoiceinterface.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * The HTTP client shared by the OpenAI transcription and chat clients, bound
+ * from {@code starfleet.http.*}. Idle connections stay open for
+ * {@code keepAlive}, and at most {@code maxIdleConnections} of them are kept.
+ * With {@code http2}, requests to one endpoint share a single multiplexed
+ * connection when the server offers HTTP/2.
+ */
+@ConfigurationProperties(prefix = "starfleet.http")
+public record HttpProperties(
+        @DefaultValue("true") boolean http2,
+        @DefaultValue("5s") Duration connectTimeout,
+        @DefaultValue("5m") Duration keepAlive,
+        @DefaultValue("8") int maxIdleConnections,
+        @DefaultValue Prime prime) {
+
+    /**
+     * Open the connections to the model endpoints in the background when
+     * recording starts, so the requests after it don't wait for DNS, TCP and
+     * TLS. Each prime is a {@code HEAD} request that gives up after
+     * {@code timeout}.
+     */
+    public record Prime(
+            @DefaultValue("true") boolean enabled,
+            @DefaultValue("10s") Duration timeout) {
+    }
+}
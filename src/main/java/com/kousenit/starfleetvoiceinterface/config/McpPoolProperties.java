@@ -0,0 +1,32 @@
+package com.kousenit.starfleetvoiceinterface.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A pool of osquery MCP server processes, bound from {@code starfleet.mcp.pool.*}.
+ * The pool starts {@code size} copies of {@code command} at startup and is only
+ * created when a command is configured; otherwise the single Spring AI stdio
+ * connection is used. Every {@code healthCheckInterval} each server is pinged
+ * and restarted if it doesn't answer within {@code healthCheckTimeout}.
+ */
+@ConfigurationProperties(prefix = "starfleet.mcp.pool")
+public record McpPoolProperties(
+        @DefaultValue("osquery") String name,
+        String command,
+        List<String> args,
+        Map<String, String> env,
+        @DefaultValue("2") int size,
+        @DefaultValue("30s") Duration requestTimeout,
+        @DefaultValue("10s") Duration healthCheckInterval,
+        @DefaultValue("3s") Duration healthCheckTimeout) {
+
+    public McpPoolProperties {
+        args = args == null ? List.of() : List.copyOf(args);
+        env = env == null ? Map.of() : Map.copyOf(env);
+    }
+}
@@ -0,0 +1,31 @@
+package com.kousenit.starfleetvoiceinterface.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.nio.file.Path;
+import java.time.Duration;
+
+/**
+ * Per-stage latency timing, bound from {@code starfleet.metrics.*}.
+ * Percentiles cover the last {@code window}; a summary table is logged every
+ * {@code summaryEvery} commands (zero for only at shutdown).
+ */
+@ConfigurationProperties(prefix = "starfleet.metrics")
+public record MetricsProperties(
+        @DefaultValue("10m") Duration window,
+        @DefaultValue("20") int summaryEvery,
+        @DefaultValue Jfr jfr) {
+
+    /**
+     * A flight recording of the pipeline stage events (and the JDK's default
+     * events, for GC pauses and the like), written to {@code file} at
+     * shutdown. The events are emitted either way, so a recording started
+     * with {@code -XX:StartFlightRecording} picks them up too.
+     */
+    public record Jfr(
+            @DefaultValue("false") boolean enabled,
+            @DefaultValue("starfleet-pipeline.jfr") Path file,
+            @DefaultValue("30m") Duration maxAge) {
+    }
+}
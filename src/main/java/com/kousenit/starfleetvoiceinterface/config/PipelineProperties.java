@@ -0,0 +1,19 @@
+package com.kousenit.starfleetvoiceinterface.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Per-stage limits for the voice pipeline, bound from {@code starfleet.pipeline.*}.
+ * At most {@code concurrency} tasks of a stage run at once, and each one is
+ * interrupted and failed once it has run longer than its {@code timeout}.
+ */
+@ConfigurationProperties(prefix = "starfleet.pipeline")
+public record PipelineProperties(
+        @DefaultValue("2") int transcriptionConcurrency,
+        @DefaultValue("30s") Duration transcriptionTimeout,
+        @DefaultValue("2") int commandConcurrency,
+        @DefaultValue("60s") Duration commandTimeout) {
+}
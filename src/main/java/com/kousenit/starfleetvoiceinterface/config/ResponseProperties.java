@@ -0,0 +1,17 @@
+package com.kousenit.starfleetvoiceinterface.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * How answers reach the response area, bound from {@code starfleet.response.*}.
+ * When streaming, text is appended as the model produces it, with at most one
+ * UI update per {@code frame}.
+ */
+@ConfigurationProperties(prefix = "starfleet.response")
+public record ResponseProperties(
+        @DefaultValue("true") boolean streaming,
+        @DefaultValue("16ms") Duration frame) {
+}
@@ -0,0 +1,91 @@
+package com.kousenit.starfleetvoiceinterface.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Settings for the MCP tool calls made while answering a command, bound from
+ * {@code starfleet.tools.*}.
+ */
+@ConfigurationProperties(prefix = "starfleet.tools")
+public record ToolProperties(
+        @DefaultValue Cache cache,
+        @DefaultValue FastPath fastPath,
+        @DefaultValue Parallel parallel,
+        @DefaultValue Compaction compaction,
+        @DefaultValue Coalescing coalescing) {
+
+    /**
+     * Result cache for osquery tool calls. A query lives as long as the
+     * shortest TTL of the tables it reads; tables without an entry in
+     * {@code ttl} use {@code defaultTtl}, and a TTL of zero means "never cache".
+     */
+    public record Cache(
+            @DefaultValue("true") boolean enabled,
+            @DefaultValue("256") int maxEntries,
+            @DefaultValue("0s") Duration defaultTtl,
+            Map<String, Duration> ttl) {
+
+        private static final Map<String, Duration> DEFAULT_TTLS = Map.of(
+                "system_info", Duration.ofHours(6),
+                "os_version", Duration.ofHours(6),
+                "uptime", Duration.ofSeconds(5),
+                "processes", Duration.ofSeconds(1),
+                "listening_ports", Duration.ofSeconds(2));
+
+        public Cache {
+            // Configured entries override the defaults instead of replacing them all
+            Map<String, Duration> merged = new HashMap<>(DEFAULT_TTLS);
+            if (ttl != null) {
+                merged.putAll(ttl);
+            }
+            ttl = Map.copyOf(merged);
+        }
+    }
+
+    /**
+     * Answer recognized commands with a canned query and template instead of
+     * a chat completion. The best intent must reach {@code threshold} and beat
+     * the runner-up by {@code margin}, otherwise the model answers.
+     */
+    public record FastPath(
+            @DefaultValue("true") boolean enabled,
+            @DefaultValue("0.6") double threshold,
+            @DefaultValue("0.2") double margin) {
+    }
+
+    /**
+     * Run the tool calls the model asks for in one turn concurrently, at most
+     * {@code maxConcurrency} at a time. Responses keep the model's order.
+     */
+    public record Parallel(
+            @DefaultValue("true") boolean enabled,
+            @DefaultValue("4") int maxConcurrency) {
+    }
+
+    /**
+     * Shrink large tool results before they go back to the model: rows become
+     * a table of at most {@code maxRows} rows plus statistics over the rest,
+     * values are cut at {@code maxValueLength} characters, and results shorter
+     * than {@code minSize} characters are left alone.
+     */
+    public record Compaction(
+            @DefaultValue("true") boolean enabled,
+            @DefaultValue("25") int maxRows,
+            @DefaultValue("160") int maxValueLength,
+            @DefaultValue("1024") int minSize) {
+    }
+
+    /**
+     * Share one run among identical requests in flight at the same time:
+     * commands with the same normalized text, and tool calls with the same
+     * normalized SQL. Nothing is kept once the run completes.
+     */
+    public record Coalescing(
+            @DefaultValue("true") boolean enabled) {
+    }
+}
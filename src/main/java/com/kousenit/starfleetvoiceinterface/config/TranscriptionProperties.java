@@ -0,0 +1,86 @@
+package com.kousenit.starfleetvoiceinterface.config;
+
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.context.properties.bind.DefaultValue;
+
+import java.time.Duration;
+
+/**
+ * Capture and transcription settings, bound from {@code starfleet.transcription.*}.
+ */
+@ConfigurationProperties(prefix = "starfleet.transcription")
+public record TranscriptionProperties(
+        @DefaultValue("wav") UploadFormat uploadFormat,
+        @DefaultValue Streaming streaming,
+        @DefaultValue Vad vad,
+        @DefaultValue Buffer buffer,
+        @DefaultValue HotMic hotMic,
+        @DefaultValue Speculation speculation) {
+
+    /**
+     * Container used for the upload to the transcription endpoint. FLAC is
+     * lossless and roughly halves the upload; WAV is the fallback.
+     */
+    public enum UploadFormat {
+        WAV, FLAC
+    }
+
+    /**
+     * Upload segments while the COMM button is still held.
+     */
+    public record Streaming(
+            @DefaultValue("false") boolean enabled,
+            @DefaultValue("5s") Duration window,
+            @DefaultValue("1500ms") Duration minSegment,
+            @DefaultValue("400ms") Duration pause,
+            @DefaultValue("500") int silenceThreshold) {
+    }
+
+    /**
+     * Voice activity detection: drop silent frames before they are buffered.
+     * An {@code autoStopAfter} of zero disables auto-stop.
+     */
+    public record Vad(
+            @DefaultValue("true") boolean enabled,
+            @DefaultValue("20ms") Duration frame,
+            @DefaultValue("300") int energyThreshold,
+            @DefaultValue("0.3") double zcrThreshold,
+            @DefaultValue("300ms") Duration hangover,
+            @DefaultValue("100ms") Duration leadingPad,
+            @DefaultValue("0ms") Duration autoStopAfter) {
+    }
+
+    /**
+     * Recording buffer limits. Audio beyond {@code maxInMemory} spills to a
+     * memory-mapped temp file; audio beyond {@code maxDuration} is dropped.
+     * At most {@code maxIdle} finished buffers are kept for reuse; the rest
+     * are left to the garbage collector.
+     */
+    public record Buffer(
+            @DefaultValue("60s") Duration maxInMemory,
+            @DefaultValue("10m") Duration maxDuration,
+            @DefaultValue("8") int maxIdle) {
+    }
+
+    /**
+     * Keep the microphone open for the session and start each recording
+     * {@code preRoll} before the button press.
+     */
+    public record HotMic(
+            @DefaultValue("false") boolean enabled,
+            @DefaultValue("300ms") Duration preRoll,
+            @DefaultValue("10s") Duration ringLength) {
+    }
+
+    /**
+     * Start the command on a streaming partial transcript once it has held
+     * still for {@code settle}. The early answer is kept if the final
+     * transcript differs by at most {@code tolerance} of its length in
+     * character edits; otherwise the command runs again. Needs streaming.
+     */
+    public record Speculation(
+            @DefaultValue("false") boolean enabled,
+            @DefaultValue("300ms") Duration settle,
+            @DefaultValue("0.1") double tolerance) {
+    }
+}
@@ -32,6 +32,14 @@ public class UIConstants {
             -fx-font-family: 'Courier New';
             -fx-font-size: 14px;
             """;
+    public static final String RESULT_TABLE_STYLE = """
+            -fx-control-inner-background: #1a1a1a;
+            -fx-control-inner-background-alt: #222222;
+            -fx-base: #1a1a1a;
+            -fx-font-family: 'Courier New';
+            -fx-font-size: 12px;
+            """;
+    public static final String RESULT_CAPTION_STYLE = "-fx-font-size: 12px; -fx-text-fill: " + TRANSCRIPT_COLOR + ";";
     
     // Animation durations
     public static final double PULSE_ANIMATION_DURATION = 0.5; // seconds
@@ -42,4 +50,9 @@ public class UIConstants {
     
     // Text area properties
     public static final int RESPONSE_AREA_ROWS = 15;
+    public static final int RESPONSE_AREA_ROWS_WITH_TABLE = 5;
+
+    // Result table properties
+    public static final int RESULT_TABLE_HEIGHT = 260;
+    public static final int RESULT_TABLE_BATCH_ROWS = 500; // rows added per frame
 }
\ No newline at end of file
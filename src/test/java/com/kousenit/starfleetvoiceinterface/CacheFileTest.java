@@ -0,0 +1,147 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class CacheFileTest {
+
+    private static final long MAX_BYTES = 64L * 1024 * 1024;
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void valuesSurviveReopening() throws IOException {
+        Path file = directory.resolve("cache.dat");
+        try (CacheFile cache = CacheFile.open(file, MAX_BYTES)) {
+            cache.put("transcript:abc", "Computer, status report.");
+            cache.put("response:uptime", "Up 3 days ☄");
+            cache.put("response:uptime", "Up 4 days");
+        }
+
+        try (CacheFile cache = CacheFile.open(file, MAX_BYTES)) {
+            assertThat(cache.size()).isEqualTo(2);
+            assertThat(cache.get("transcript:abc")).isEqualTo("Computer, status report.");
+            assertThat(cache.get("response:uptime")).isEqualTo("Up 4 days");
+            assertThat(cache.get("response:missing")).isNull();
+            assertThat(cache.tornBytes()).isZero();
+        }
+    }
+
+    @Test
+    void recoversFromATornTail() throws IOException {
+        Path file = directory.resolve("cache.dat");
+        int intact;
+        try (CacheFile cache = CacheFile.open(file, MAX_BYTES)) {
+            cache.put("first", "one");
+            cache.put("second", "two");
+            intact = cache.usedBytes();
+            cache.put("third", "three");
+        }
+        // A crash halfway through the last record: its value never reached the disk
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.wrap(new byte[]{'x', 'x'}), intact + 12 + "third".length() + 1);
+            channel.write(ByteBuffer.allocate(1), intact + 12 + "third".length());
+        }
+
+        try (CacheFile cache = CacheFile.open(file, MAX_BYTES)) {
+            assertThat(cache.get("first")).isEqualTo("one");
+            assertThat(cache.get("second")).isEqualTo("two");
+            assertThat(cache.get("third")).isNull();
+            assertThat(cache.tornBytes()).isPositive();
+            assertThat(cache.usedBytes()).isEqualTo(intact);
+
+            cache.put("fourth", "four");
+        }
+
+        try (CacheFile cache = CacheFile.open(file, MAX_BYTES)) {
+            assertThat(cache.size()).isEqualTo(3);
+            assertThat(cache.get("fourth")).isEqualTo("four");
+            assertThat(cache.tornBytes()).isZero();
+        }
+    }
+
+    @Test
+    void compactionKeepsOnlyTheLatestValues() throws IOException {
+        Path file = directory.resolve("cache.dat");
+        try (CacheFile cache = CacheFile.open(file, MAX_BYTES)) {
+            for (int i = 0; i < 1000; i++) {
+                cache.put("key" + (i % 10), "value" + i);
+            }
+            int before = cache.usedBytes();
+
+            cache.compact();
+
+            assertThat(cache.usedBytes()).isLessThan(before / 50);
+            assertThat(cache.usedBytes()).isEqualTo(8 + cache.liveBytes());
+            assertThat(cache.get("key7")).isEqualTo("value997");
+        }
+        try (CacheFile cache = CacheFile.open(file, MAX_BYTES)) {
+            assertThat(cache.size()).isEqualTo(10);
+            assertThat(cache.get("key0")).isEqualTo("value990");
+        }
+    }
+
+    @Test
+    void staysUnderItsSizeLimitByDroppingTheOldest() throws IOException {
+        long maxBytes = 256 * 1024;
+        Path file = directory.resolve("cache.dat");
+        String value = "x".repeat(1000);
+        try (CacheFile cache = CacheFile.open(file, maxBytes)) {
+            for (int i = 0; i < 1000; i++) {
+                assertThat(cache.put("key" + i, value)).isTrue();
+                assertThat(Files.size(file)).isLessThanOrEqualTo(maxBytes);
+            }
+
+            assertThat(cache.compactions()).isPositive();
+            assertThat(cache.get("key999")).isEqualTo(value);
+            assertThat(cache.get("key0")).isNull();
+            assertThat(cache.put("huge", "y".repeat((int) maxBytes))).isFalse();
+        }
+    }
+
+    @Test
+    void rejectsFilesThatAreNotCaches() throws IOException {
+        Path file = Files.writeString(directory.resolve("notes.txt"), "Captain's log, stardate 41153.7");
+
+        assertThatThrownBy(() -> CacheFile.open(file, MAX_BYTES)).isInstanceOf(IOException.class);
+        assertThat(Files.readString(file)).startsWith("Captain's log");
+    }
+
+    @Test
+    void reportsIndexLoadTimeFor100kEntries() throws IOException {
+        Path file = directory.resolve("cache.dat");
+        int entries = 100_000;
+        try (CacheFile cache = CacheFile.open(file, MAX_BYTES)) {
+            for (int i = 0; i < entries; i++) {
+                cache.put("response:" + i + "\n" + Integer.toHexString(i * 31), "The answer to command " + i);
+            }
+        }
+
+        Duration load = Duration.ZERO;
+        for (int round = 0; round < 3; round++) {
+            long start = System.nanoTime();
+            try (CacheFile cache = CacheFile.open(file, MAX_BYTES)) {
+                load = Duration.ofNanos(System.nanoTime() - start);
+                assertThat(cache.size()).isEqualTo(entries);
+                assertThat(cache.get("response:4242\n" + Integer.toHexString(4242 * 31)))
+                        .isEqualTo("The answer to command 4242");
+            }
+        }
+
+        System.out.printf("Index load: %d entries, %d KB file, %d ms%n",
+                entries, Files.size(file) / 1024, load.toMillis());
+        assertThat(load).isLessThan(Duration.ofSeconds(2));
+    }
+}
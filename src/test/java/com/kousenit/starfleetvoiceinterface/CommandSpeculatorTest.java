@@ -0,0 +1,203 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class CommandSpeculatorTest {
+
+    private static final Duration SETTLE = Duration.ofMillis(50);
+    private static final Duration COMMAND_LATENCY = Duration.ofMillis(400);
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final List<String> started = new CopyOnWriteArrayList<>();
+    private final List<CompletableFuture<String>> runs = new CopyOnWriteArrayList<>();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    /**
+     * Scripted utterances: the partials streaming transcription produces
+     * while the button is held, the pause before release, and the final
+     * transcript. The model answers after a fixed latency.
+     */
+    @Test
+    void reportsHitRateAndLatencySaved() {
+        record Utterance(List<String> partials, Duration heldAfter, String heard) {
+        }
+        List<Utterance> script = List.of(
+                // Paused before release: the last segment was silence
+                new Utterance(List.of("Computer, list running processes."), Duration.ofMillis(300),
+                        "Computer, list running processes."),
+                // Final pass punctuates and capitalizes differently
+                new Utterance(List.of("computer what is", "computer what is my uptime"), Duration.ofMillis(250),
+                        "Computer, what is my uptime?"),
+                // Whisper fixes a word in the final pass
+                new Utterance(List.of("Show me the listening ports on this sistem"), Duration.ofMillis(200),
+                        "Show me the listening ports on this system."),
+                // Kept talking after the partial settled
+                new Utterance(List.of("Computer, how much memory"), Duration.ofMillis(200),
+                        "Computer, how much memory is Chrome using right now?"),
+                // Released before anything settled
+                new Utterance(List.of("Red alert"), Duration.ofMillis(10), "Red alert!"));
+
+        int hits = 0;
+        long savedMillis = 0;
+        for (Utterance utterance : script) {
+            CommandSpeculator speculator = new CommandSpeculator(runner(COMMAND_LATENCY), SETTLE, 0.1);
+            utterance.partials().forEach(partial -> {
+                speculator.partial(partial);
+                sleep(SETTLE.dividedBy(5));
+            });
+            sleep(utterance.heldAfter());
+
+            // Release: time until the answer, with the early run or without it
+            long release = System.nanoTime();
+            CommandSpeculator.Outcome outcome = speculator.resolve(utterance.heard());
+            String answer = outcome.hit()
+                    ? outcome.answer().join()
+                    : runner(COMMAND_LATENCY).apply(utterance.heard()).join();
+            long latencyMillis = (System.nanoTime() - release) / 1_000_000;
+
+            assertThat(answer).isNotBlank();
+            if (outcome.hit()) {
+                hits++;
+                savedMillis += COMMAND_LATENCY.toMillis() - latencyMillis;
+            }
+            System.out.printf("%-55s %-4s release-to-answer %3d ms%n",
+                    "\"" + utterance.heard() + "\"", outcome.kind(), latencyMillis);
+        }
+
+        System.out.printf("Speculation: %d of %d hits (%.0f%%), %d ms saved in total, %d ms per hit%n",
+                hits, script.size(), 100.0 * hits / script.size(), savedMillis, savedMillis / Math.max(hits, 1));
+        assertThat(hits).isEqualTo(3);
+        assertThat(savedMillis).isGreaterThan(hits * (COMMAND_LATENCY.toMillis() / 4));
+    }
+
+    @Test
+    void onlyTheSettledPartialIsRun() {
+        CommandSpeculator speculator = new CommandSpeculator(runner(Duration.ZERO), SETTLE, 0.1);
+
+        speculator.partial("show");
+        speculator.partial("show running");
+        speculator.partial("show running processes");
+        sleep(SETTLE.multipliedBy(4));
+
+        assertThat(started).containsExactly("show running processes");
+        assertThat(speculator.resolve("Show running processes.").hit()).isTrue();
+    }
+
+    @Test
+    void missCancelsTheEarlyRun() {
+        CommandSpeculator speculator = new CommandSpeculator(runner(Duration.ofSeconds(10)), SETTLE, 0.1);
+
+        speculator.partial("how much memory");
+        sleep(SETTLE.multipliedBy(4));
+        CommandSpeculator.Outcome outcome = speculator.resolve("how much memory does the browser use");
+
+        assertThat(outcome.kind()).isEqualTo(CommandSpeculator.Kind.MISS);
+        assertThat(outcome.answer()).isNull();
+        assertThat(runs).singleElement().satisfies(run -> assertThat(run).isCancelled());
+    }
+
+    @Test
+    void aPartialThatNoLongerMatchesReplacesTheGuess() {
+        CommandSpeculator speculator = new CommandSpeculator(runner(Duration.ofSeconds(10)), SETTLE, 0.1);
+
+        speculator.partial("list users");
+        sleep(SETTLE.multipliedBy(4));
+        speculator.partial("list users logged in over ssh");
+        sleep(SETTLE.multipliedBy(4));
+
+        assertThat(started).containsExactly("list users", "list users logged in over ssh");
+        assertThat(runs.getFirst()).isCancelled();
+        assertThat(speculator.resolve("List users logged in over SSH.").hit()).isTrue();
+    }
+
+    @Test
+    void nothingStartsAfterResolveOrCancel() {
+        CommandSpeculator resolved = new CommandSpeculator(runner(Duration.ZERO), SETTLE, 0.1);
+        resolved.partial("uptime");
+        assertThat(resolved.resolve("uptime").kind()).isEqualTo(CommandSpeculator.Kind.NONE);
+
+        CommandSpeculator cancelled = new CommandSpeculator(runner(Duration.ZERO), SETTLE, 0.1);
+        cancelled.partial("uptime");
+        cancelled.cancel();
+        sleep(SETTLE.multipliedBy(4));
+
+        assertThat(started).isEmpty();
+    }
+
+    @Test
+    void matchesWithinTheEditTolerance() {
+        CommandSpeculator speculator = new CommandSpeculator(runner(Duration.ZERO), SETTLE, 0.1);
+
+        assertThat(speculator.matches("Computer, status report!", "computer status report")).isTrue();
+        assertThat(speculator.matches("list the open ports", "list the opened ports")).isTrue();
+        assertThat(speculator.matches("list the open ports", "list the open ports for nginx")).isFalse();
+        assertThat(speculator.matches("kill process 42", "kill process 43")).isTrue();
+        assertThat(new CommandSpeculator(runner(Duration.ZERO), SETTLE, 0.0)
+                .matches("kill process 42", "kill process 43")).isFalse();
+    }
+
+    @Test
+    void aHitHandsOverTheTablesOfItsRun() {
+        CommandSpeculator speculator = new CommandSpeculator(runner(Duration.ofMillis(200)), SETTLE, 0.1);
+        List<ResultTable> shown = new CopyOnWriteArrayList<>();
+
+        speculator.partial("list running processes");
+        sleep(SETTLE.multipliedBy(4));
+        CommandSpeculator.Outcome outcome = speculator.resolve("List running processes.");
+        outcome.tables().forwardTo(shown::add);
+        outcome.answer().join();
+
+        // One table before the hit, replayed, and one after it, passed straight on
+        assertThat(shown).extracting(ResultTable::query)
+                .containsExactly("before list running processes", "after list running processes");
+    }
+
+    @Test
+    void editDistanceCountsCharacterEdits() {
+        assertThat(CommandSpeculator.editDistance("", "abc")).isEqualTo(3);
+        assertThat(CommandSpeculator.editDistance("kitten", "sitting")).isEqualTo(3);
+        assertThat(CommandSpeculator.editDistance("uptime", "uptime")).isZero();
+    }
+
+    /**
+     * A stand-in for the model and tool calls that answers after
+     * {@code latency}, with a query result at either end.
+     */
+    private BiFunction<String, Consumer<ResultTable>, CompletableFuture<String>> runner(Duration latency) {
+        return (command, onTable) -> {
+            started.add(command);
+            CompletableFuture<String> run = CompletableFuture.supplyAsync(() -> {
+                onTable.accept(new ResultTable("before " + command, List.of(), List.of()));
+                sleep(latency);
+                onTable.accept(new ResultTable("after " + command, List.of(), List.of()));
+                return "Answer to " + command;
+            }, executor);
+            runs.add(run);
+            return run;
+        };
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
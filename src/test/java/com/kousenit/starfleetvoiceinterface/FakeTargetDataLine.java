@@ -0,0 +1,190 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Control;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.Line;
+import javax.sound.sampled.LineListener;
+import javax.sound.sampled.TargetDataLine;
+import java.time.Duration;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Stand-in microphone for tests. Produces a 16-bit ramp (sample n has value
+ * {@code (short) n}, or {@code (short) (firstSample + n)}) paced at real
+ * time, and can simulate a slow device open.
+ */
+class FakeTargetDataLine implements TargetDataLine {
+
+    private final AudioFormat format;
+    private final Duration openDelay;
+    private final long firstByte;
+
+    private volatile boolean open;
+    private volatile boolean running;
+    private long startNanos;
+    private long bytesProduced;
+
+    FakeTargetDataLine(AudioFormat format, Duration openDelay) {
+        this(format, openDelay, 0);
+    }
+
+    /**
+     * A line whose ramp starts at {@code firstSample}, so recordings from
+     * different lines can be told apart.
+     */
+    FakeTargetDataLine(AudioFormat format, Duration openDelay, int firstSample) {
+        this.format = format;
+        this.openDelay = openDelay;
+        this.firstByte = 2L * firstSample;
+    }
+
+    /**
+     * Value of the sample at the given absolute byte position of the stream.
+     */
+    static short sampleAt(long bytePosition) {
+        return (short) (bytePosition / 2);
+    }
+
+    @Override
+    public void open(AudioFormat format, int bufferSize) {
+        open(format);
+    }
+
+    @Override
+    public void open(AudioFormat format) {
+        LockSupport.parkNanos(openDelay.toNanos());
+        open = true;
+    }
+
+    @Override
+    public void open() {
+        open(format);
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        if (!running) {
+            return 0;
+        }
+        len -= len % format.getFrameSize();
+        // Block until the device would have captured these bytes
+        long bytesPerSecond = (long) (format.getSampleRate() * format.getFrameSize());
+        long readyAt = startNanos + (bytesProduced + len) * 1_000_000_000L / bytesPerSecond;
+        long wait = readyAt - System.nanoTime();
+        if (wait > 0) {
+            LockSupport.parkNanos(wait);
+        }
+        for (int i = 0; i < len; i += 2) {
+            short sample = sampleAt(firstByte + bytesProduced + i);
+            b[off + i] = (byte) sample;
+            b[off + i + 1] = (byte) (sample >> 8);
+        }
+        bytesProduced += len;
+        return len;
+    }
+
+    @Override
+    public void start() {
+        startNanos = System.nanoTime();
+        running = true;
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        open = false;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    @Override
+    public boolean isActive() {
+        return running;
+    }
+
+    @Override
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    @Override
+    public int getBufferSize() {
+        return (int) format.getSampleRate() * format.getFrameSize();
+    }
+
+    @Override
+    public int available() {
+        return 0;
+    }
+
+    @Override
+    public void drain() {
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public int getFramePosition() {
+        return (int) getLongFramePosition();
+    }
+
+    @Override
+    public long getLongFramePosition() {
+        return bytesProduced / format.getFrameSize();
+    }
+
+    @Override
+    public long getMicrosecondPosition() {
+        return (long) (getLongFramePosition() * 1_000_000L / format.getSampleRate());
+    }
+
+    @Override
+    public float getLevel() {
+        return AudioSystem.NOT_SPECIFIED;
+    }
+
+    @Override
+    public Line.Info getLineInfo() {
+        return new DataLine.Info(TargetDataLine.class, format);
+    }
+
+    @Override
+    public Control[] getControls() {
+        return new Control[0];
+    }
+
+    @Override
+    public boolean isControlSupported(Control.Type control) {
+        return false;
+    }
+
+    @Override
+    public Control getControl(Control.Type control) {
+        throw new IllegalArgumentException("No controls on a fake line");
+    }
+
+    @Override
+    public void addLineListener(LineListener listener) {
+    }
+
+    @Override
+    public void removeLineListener(LineListener listener) {
+    }
+}
@@ -0,0 +1,264 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Minimal reference FLAC decoder for tests: mono, 16-bit, fixed block size,
+ * CONSTANT / VERBATIM / FIXED / LPC subframes with Rice-coded residuals.
+ * Verifies frame CRCs and returns the decoded PCM as 16-bit little-endian bytes.
+ * Written independently of {@link FlacEncoder} (bitwise CRCs, no shared code).
+ */
+final class FlacDecoder {
+
+    record Stream(int minBlockSize, int maxBlockSize, int minFrameSize, int maxFrameSize,
+                  int sampleRate, int channels, int bitsPerSample, long totalSamples,
+                  byte[] md5, byte[] pcm) {
+    }
+
+    private final byte[] data;
+    private int bytePos;
+    private int bitPos;
+
+    private FlacDecoder(byte[] data) {
+        this.data = data;
+    }
+
+    static Stream decode(byte[] flac) {
+        return new FlacDecoder(flac).decodeStream();
+    }
+
+    private Stream decodeStream() {
+        if (readBits(32) != 0x664C6143) { // "fLaC"
+            throw new IllegalStateException("Missing fLaC marker");
+        }
+
+        int minBlockSize = 0, maxBlockSize = 0, minFrameSize = 0, maxFrameSize = 0;
+        int sampleRate = 0, channels = 0, bitsPerSample = 0;
+        long totalSamples = 0;
+        byte[] md5 = null;
+
+        boolean last = false;
+        while (!last) {
+            last = readBits(1) == 1;
+            int type = (int) readBits(7);
+            int length = (int) readBits(24);
+            if (type == 0) {
+                minBlockSize = (int) readBits(16);
+                maxBlockSize = (int) readBits(16);
+                minFrameSize = (int) readBits(24);
+                maxFrameSize = (int) readBits(24);
+                sampleRate = (int) readBits(20);
+                channels = (int) readBits(3) + 1;
+                bitsPerSample = (int) readBits(5) + 1;
+                totalSamples = readBits(36);
+                md5 = Arrays.copyOfRange(data, bytePos, bytePos + 16);
+                bytePos += 16;
+            } else {
+                bytePos += length;
+            }
+        }
+        if (channels != 1 || bitsPerSample != 16) {
+            throw new IllegalStateException("Only 16-bit mono is supported");
+        }
+
+        ByteArrayOutputStream pcm = new ByteArrayOutputStream();
+        long decoded = 0;
+        while (bytePos < data.length) {
+            decoded += decodeFrame(maxBlockSize, pcm);
+        }
+        if (decoded != totalSamples) {
+            throw new IllegalStateException("Decoded " + decoded + " samples, STREAMINFO says " + totalSamples);
+        }
+        return new Stream(minBlockSize, maxBlockSize, minFrameSize, maxFrameSize,
+                sampleRate, channels, bitsPerSample, totalSamples, md5, pcm.toByteArray());
+    }
+
+    private int decodeFrame(int streamBlockSize, ByteArrayOutputStream pcm) {
+        int frameStart = bytePos;
+        if (readBits(14) != 0b11111111111110) {
+            throw new IllegalStateException("Lost frame sync at byte " + frameStart);
+        }
+        readBits(2); // reserved, blocking strategy
+        int blockSizeCode = (int) readBits(4);
+        readBits(4); // sample rate
+        if (readBits(4) != 0) {
+            throw new IllegalStateException("Expected one independent channel");
+        }
+        readBits(3); // sample size
+        readBits(1); // reserved
+        readUtf8();
+        int blockSize = switch (blockSizeCode) {
+            case 0b0001 -> 192;
+            case 0b0010, 0b0011, 0b0100, 0b0101 -> 576 << (blockSizeCode - 2);
+            case 0b0110 -> (int) readBits(8) + 1;
+            case 0b0111 -> (int) readBits(16) + 1;
+            default -> blockSizeCode >= 0b1000 ? 256 << (blockSizeCode - 8) : streamBlockSize;
+        };
+        int expectedCrc8 = crc8(frameStart, bytePos);
+        if (readBits(8) != expectedCrc8) {
+            throw new IllegalStateException("Frame header CRC-8 mismatch at byte " + frameStart);
+        }
+
+        int[] samples = decodeSubframe(blockSize);
+
+        alignToByte();
+        int expectedCrc16 = crc16(frameStart, bytePos);
+        if (readBits(16) != expectedCrc16) {
+            throw new IllegalStateException("Frame CRC-16 mismatch at byte " + frameStart);
+        }
+
+        for (int sample : samples) {
+            pcm.write(sample & 0xFF);
+            pcm.write((sample >> 8) & 0xFF);
+        }
+        return blockSize;
+    }
+
+    private int[] decodeSubframe(int blockSize) {
+        if (readBits(1) != 0) {
+            throw new IllegalStateException("Subframe padding bit set");
+        }
+        int type = (int) readBits(6);
+        if (readBits(1) != 0) {
+            throw new IllegalStateException("Wasted bits are not supported");
+        }
+
+        int[] samples = new int[blockSize];
+        if (type == 0) {
+            Arrays.fill(samples, readSigned(16));
+        } else if (type == 1) {
+            for (int i = 0; i < blockSize; i++) {
+                samples[i] = readSigned(16);
+            }
+        } else if ((type & 0b111000) == 0b001000) {
+            int order = type & 0b111;
+            for (int i = 0; i < order; i++) {
+                samples[i] = readSigned(16);
+            }
+            readResidual(samples, order, blockSize);
+            restoreFixed(samples, order);
+        } else if ((type & 0b100000) != 0) {
+            int order = (type & 0b11111) + 1;
+            for (int i = 0; i < order; i++) {
+                samples[i] = readSigned(16);
+            }
+            int precision = (int) readBits(4) + 1;
+            int shift = readSigned(5);
+            int[] coefficients = new int[order];
+            for (int i = 0; i < order; i++) {
+                coefficients[i] = readSigned(precision);
+            }
+            readResidual(samples, order, blockSize);
+            for (int i = order; i < blockSize; i++) {
+                long prediction = 0;
+                for (int j = 0; j < order; j++) {
+                    prediction += (long) coefficients[j] * samples[i - 1 - j];
+                }
+                samples[i] += (int) (prediction >> shift);
+            }
+        } else {
+            throw new IllegalStateException("Reserved subframe type " + type);
+        }
+        return samples;
+    }
+
+    private void readResidual(int[] samples, int order, int blockSize) {
+        int method = (int) readBits(2);
+        int parameterBits = method == 0 ? 4 : 5;
+        int partitionOrder = (int) readBits(4);
+        int partitionSize = blockSize >> partitionOrder;
+        int i = order;
+        for (int p = 0; p < (1 << partitionOrder); p++) {
+            int count = p == 0 ? partitionSize - order : partitionSize;
+            int k = (int) readBits(parameterBits);
+            boolean escaped = k == (1 << parameterBits) - 1;
+            int escapeBits = escaped ? (int) readBits(5) : 0;
+            for (int n = 0; n < count; n++) {
+                if (escaped) {
+                    samples[i++] = escapeBits == 0 ? 0 : readSigned(escapeBits);
+                    continue;
+                }
+                long quotient = 0;
+                while (readBits(1) == 0) {
+                    quotient++;
+                }
+                long folded = (quotient << k) | (k > 0 ? readBits(k) : 0);
+                samples[i++] = (int) ((folded >>> 1) ^ -(folded & 1));
+            }
+        }
+    }
+
+    private static void restoreFixed(int[] x, int order) {
+        for (int i = order; i < x.length; i++) {
+            x[i] += switch (order) {
+                case 0 -> 0;
+                case 1 -> x[i - 1];
+                case 2 -> 2 * x[i - 1] - x[i - 2];
+                case 3 -> 3 * x[i - 1] - 3 * x[i - 2] + x[i - 3];
+                case 4 -> 4 * x[i - 1] - 6 * x[i - 2] + 4 * x[i - 3] - x[i - 4];
+                default -> throw new IllegalStateException("Fixed order " + order);
+            };
+        }
+    }
+
+    private void readUtf8() {
+        int first = (int) readBits(8);
+        int continuation = 0;
+        for (int mask = 0x80; (first & mask) != 0; mask >>= 1) {
+            continuation++;
+        }
+        for (int i = 1; i < continuation; i++) {
+            if ((readBits(8) & 0xC0) != 0x80) {
+                throw new IllegalStateException("Bad UTF-8 frame number");
+            }
+        }
+    }
+
+    private long readBits(int count) {
+        long value = 0;
+        for (int i = 0; i < count; i++) {
+            int bit = (data[bytePos] >> (7 - bitPos)) & 1;
+            value = (value << 1) | bit;
+            if (++bitPos == 8) {
+                bitPos = 0;
+                bytePos++;
+            }
+        }
+        return value;
+    }
+
+    private int readSigned(int count) {
+        long value = readBits(count);
+        return (int) (value << (64 - count) >> (64 - count));
+    }
+
+    private void alignToByte() {
+        if (bitPos != 0) {
+            bitPos = 0;
+            bytePos++;
+        }
+    }
+
+    private int crc8(int from, int to) {
+        int crc = 0;
+        for (int i = from; i < to; i++) {
+            crc ^= data[i] & 0xFF;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x80) != 0 ? ((crc << 1) ^ 0x07) & 0xFF : (crc << 1) & 0xFF;
+            }
+        }
+        return crc;
+    }
+
+    private int crc16(int from, int to) {
+        int crc = 0;
+        for (int i = from; i < to; i++) {
+            crc ^= (data[i] & 0xFF) << 8;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x8000) != 0 ? ((crc << 1) ^ 0x8005) & 0xFFFF : (crc << 1) & 0xFFFF;
+            }
+        }
+        return crc;
+    }
+}
@@ -0,0 +1,150 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.time.Duration;
+import java.util.Random;
+
+import static com.kousenit.starfleetvoiceinterface.StreamingTranscriberTest.concat;
+import static com.kousenit.starfleetvoiceinterface.StreamingTranscriberTest.silence;
+import static com.kousenit.starfleetvoiceinterface.StreamingTranscriberTest.tone;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FlacEncoderTest {
+
+    private static final AudioFormat FORMAT = new AudioFormat(16000.0f, 16, 1, true, false);
+
+    @Test
+    void decodesBitExactly() throws Exception {
+        byte[] pcm = speechLike(3.7);
+
+        FlacDecoder.Stream stream = FlacDecoder.decode(encode(pcm, 4096));
+
+        assertThat(stream.sampleRate()).isEqualTo(16000);
+        assertThat(stream.channels()).isEqualTo(1);
+        assertThat(stream.bitsPerSample()).isEqualTo(16);
+        assertThat(stream.totalSamples()).isEqualTo(pcm.length / 2);
+        assertThat(stream.pcm()).isEqualTo(pcm);
+        assertThat(stream.md5()).isEqualTo(MessageDigest.getInstance("MD5").digest(pcm));
+    }
+
+    @ParameterizedTest
+    @ValueSource(ints = {1, 3, 100, 4095, 4096, 4097, 8192 + 255})
+    void handlesPartialFinalBlocks(int samples) {
+        byte[] pcm = new byte[samples * 2];
+        new Random(samples).nextBytes(pcm);
+
+        assertThat(FlacDecoder.decode(encode(pcm, 1000)).pcm()).isEqualTo(pcm);
+    }
+
+    @Test
+    void handlesWritesThatSplitSamples() {
+        byte[] pcm = speechLike(1.0);
+
+        // Odd chunk sizes leave half a sample pending between writes
+        assertThat(FlacDecoder.decode(encode(pcm, 777)).pcm()).isEqualTo(pcm);
+    }
+
+    @Test
+    void encodesSilenceAsConstantSubframes() {
+        byte[] pcm = silence(2.0);
+        byte[] flac = encode(pcm, 4096);
+
+        assertThat(FlacDecoder.decode(flac).pcm()).isEqualTo(pcm);
+        assertThat(flac.length).isLessThan(200);
+    }
+
+    @Test
+    void fallsBackToVerbatimForIncompressibleAudio() {
+        byte[] pcm = new byte[3 * FlacEncoder.BLOCK_SIZE * 2];
+        new Random(7).nextBytes(pcm);
+        byte[] flac = encode(pcm, 4096);
+
+        assertThat(FlacDecoder.decode(flac).pcm()).isEqualTo(pcm);
+        // Header overhead only: verbatim frames never expand the audio
+        assertThat(flac.length).isLessThan(pcm.length + 42 + 3 * 32);
+    }
+
+    @Test
+    void compressesMixedToneAndSilence() {
+        byte[] pcm = concat(silence(0.5), tone(1.0), silence(0.5));
+
+        byte[] flac = encode(pcm, 4096);
+
+        assertThat(FlacDecoder.decode(flac).pcm()).isEqualTo(pcm);
+        assertThat(flac.length).isLessThan(pcm.length / 2);
+    }
+
+    @Test
+    void reportsThroughputAndCompressionRatio() {
+        byte[] pcm = speechLike(60.0);
+        FlacEncoder encoder = new FlacEncoder(FORMAT);
+
+        // Warm up
+        for (int i = 0; i < 3; i++) {
+            write(encoder, pcm, 4096);
+            encoder.finish("recording.flac");
+            encoder.reset();
+        }
+
+        long start = System.nanoTime();
+        write(encoder, pcm, 4096);
+        long encodedBytes = encoder.finish("recording.flac").contentLength();
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        double seconds = elapsed.toNanos() / 1e9;
+        System.out.printf("FLAC: 60 s of audio in %d ms (%.0fx real time, %.1f MB/s), %,d -> %,d bytes (ratio %.2f)%n",
+                elapsed.toMillis(), 60.0 / seconds, pcm.length / seconds / 1e6,
+                pcm.length + 44, encodedBytes, (double) (pcm.length + 44) / encodedBytes);
+
+        assertThat(encodedBytes).isLessThan(pcm.length * 3L / 4);
+    }
+
+    private static byte[] encode(byte[] pcm, int chunkSize) {
+        FlacEncoder encoder = new FlacEncoder(FORMAT);
+        write(encoder, pcm, chunkSize);
+        try {
+            return encoder.finish("recording.flac").getContentAsByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void write(FlacEncoder encoder, byte[] pcm, int chunkSize) {
+        for (int offset = 0; offset < pcm.length; offset += chunkSize) {
+            encoder.write(pcm, offset, Math.min(chunkSize, pcm.length - offset));
+        }
+    }
+
+    /**
+     * Voiced harmonics with a slow amplitude envelope, light noise and pauses:
+     * compressible the way speech is, without being trivially periodic.
+     */
+    static byte[] speechLike(double seconds) {
+        Random random = new Random(1701);
+        int samples = (int) (seconds * 16000);
+        byte[] pcm = new byte[samples * 2];
+        double pitch = 120;
+        for (int i = 0; i < samples; i++) {
+            double t = i / 16000.0;
+            if (i % 1600 == 0) {
+                pitch = 100 + random.nextInt(80);
+            }
+            double envelope = Math.max(0, Math.sin(2 * Math.PI * 0.7 * t));
+            double voiced = 0;
+            for (int h = 1; h <= 6; h++) {
+                voiced += Math.sin(2 * Math.PI * pitch * h * t) / h;
+            }
+            short sample = (short) (envelope * 5000 * voiced + random.nextGaussian() * 30);
+            pcm[2 * i] = (byte) sample;
+            pcm[2 * i + 1] = (byte) (sample >> 8);
+        }
+        return pcm;
+    }
+}
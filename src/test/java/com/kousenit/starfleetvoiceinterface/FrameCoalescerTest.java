@@ -0,0 +1,77 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class FrameCoalescerTest {
+
+    private static final Duration FRAME = Duration.ofMillis(16);
+
+    // Stands in for the FX application thread
+    private final ExecutorService uiThread = Executors.newSingleThreadExecutor();
+    private final StringBuilder shown = new StringBuilder();
+    private final List<Long> updateTimes = new CopyOnWriteArrayList<>();
+    private final FrameCoalescer coalescer = new FrameCoalescer(uiThread, FRAME, text -> {
+        updateTimes.add(System.nanoTime());
+        shown.append(text);
+    });
+
+    @AfterEach
+    void stopUiThread() {
+        uiThread.shutdownNow();
+    }
+
+    @Test
+    void burstBecomesAtMostTwoUpdates() throws Exception {
+        for (int i = 0; i < 1000; i++) {
+            coalescer.append("t" + i + " ");
+        }
+        Thread.sleep(3 * FRAME.toMillis());
+
+        assertThat(coalescer.updates()).isBetween(1L, 2L);
+        assertThat(shownText()).startsWith("t0 t1 ").endsWith("t999 ");
+    }
+
+    @Test
+    void updatesAreAtLeastAFrameApart() throws Exception {
+        for (int i = 0; i < 300; i++) {
+            coalescer.append("x");
+            Thread.sleep(1);
+        }
+        coalescer.finish();
+        Thread.sleep(3 * FRAME.toMillis());
+
+        assertThat(shownText()).hasSize(300);
+        // The final flush from finish() may come early; every other gap is about a frame or more
+        long minimumGap = FRAME.minusMillis(1).toNanos();
+        for (int i = 1; i < updateTimes.size() - 1; i++) {
+            assertThat(updateTimes.get(i) - updateTimes.get(i - 1)).isGreaterThanOrEqualTo(minimumGap);
+        }
+        System.out.printf("300 tokens over ~%d ms: %d UI updates%n",
+                TimeUnit.NANOSECONDS.toMillis(updateTimes.getLast() - updateTimes.getFirst()), coalescer.updates());
+    }
+
+    @Test
+    void finishDeliversWhatIsPendingImmediately() throws Exception {
+        coalescer.append("first");
+        Thread.sleep(5);
+        coalescer.append(" second");
+        coalescer.finish();
+        uiThread.submit(() -> { }).get();
+
+        assertThat(shownText()).isEqualTo("first second");
+    }
+
+    private String shownText() throws Exception {
+        return uiThread.submit(shown::toString).get();
+    }
+}
@@ -0,0 +1,374 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import com.kousenit.starfleetvoiceinterface.config.HeadlessProperties;
+import com.kousenit.starfleetvoiceinterface.config.ToolProperties;
+import com.kousenit.starfleetvoiceinterface.config.TranscriptionProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.mcp.SyncMcpToolCallbackProvider;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class HeadlessServerTest {
+
+    private static final Pattern ID = Pattern.compile("\"id\":\"([^\"]+)\"");
+    private static final Pattern TOKEN = Pattern.compile("event: token\ndata: \\{\"text\":\"([^\"]*)\"}");
+
+    /** Half a second of a quiet tone in the capture format */
+    private static final byte[] SPEECH = speech();
+
+    private final AtomicInteger transcriptions = new AtomicInteger();
+    private final HttpClient http = HttpClient.newBuilder()
+            .executor(Executors.newVirtualThreadPerTaskExecutor())
+            .build();
+
+    private HeadlessServer server;
+
+    @AfterEach
+    void stopServer() {
+        if (server != null) {
+            server.stop();
+        }
+    }
+
+    @Test
+    void servesManyConcurrentSessions() throws Exception {
+        int sessions = 200;
+        int commandsPerSession = 3;
+        server = start(streamingModel(Duration.ofMillis(5)), 64, Duration.ofSeconds(30));
+
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        long start = System.nanoTime();
+        try (ExecutorService consoles = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int i = 0; i < sessions; i++) {
+                results.add(consoles.submit(() -> {
+                    String session = openSession();
+                    int answered = 0;
+                    for (int c = 0; c < commandsPerSession; c++) {
+                        long sent = System.nanoTime();
+                        HttpResponse<String> response = command(session, HttpRequest.BodyPublishers.ofByteArray(SPEECH));
+                        latencies.add(System.nanoTime() - sent);
+                        if (response.statusCode() == 200 && answerOf(response.body()).equals("Aye, captain. All systems nominal.")) {
+                            answered++;
+                        }
+                    }
+                    closeSession(session);
+                    return answered;
+                }));
+            }
+            int answered = 0;
+            for (Future<Integer> result : results) {
+                answered += result.get(60, TimeUnit.SECONDS);
+            }
+            assertThat(answered).isEqualTo(sessions * commandsPerSession);
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        long[] sorted = latencies.stream().mapToLong(Long::longValue).sorted().toArray();
+        System.out.printf("%d sessions x %d commands in %.2f s: %.0f sessions/s, %.0f commands/s%n",
+                sessions, commandsPerSession, seconds, sessions / seconds, sorted.length / seconds);
+        System.out.printf("command latency (ms): p50 %.1f, p95 %.1f, p99 %.1f, max %.1f%n",
+                percentile(sorted, 0.5), percentile(sorted, 0.95), percentile(sorted, 0.99),
+                sorted[sorted.length - 1] / 1e6);
+
+        assertThat(transcriptions).hasValue(sessions * commandsPerSession);
+        assertThat(server.sessionCount()).isZero();
+    }
+
+    @Test
+    void runsOneCommandAtATimePerSession() throws Exception {
+        server = start(streamingModel(Duration.ofMillis(1)), 64, Duration.ofSeconds(5));
+        String session = openSession();
+
+        // Still talking: the first command's audio hasn't finished arriving
+        SubmissionPublisher<ByteBuffer> talking = new SubmissionPublisher<>();
+        var first = http.sendAsync(commandRequest(session, HttpRequest.BodyPublishers.fromPublisher(talking)),
+                HttpResponse.BodyHandlers.ofString());
+        talking.submit(ByteBuffer.wrap(SPEECH));
+        awaitBusy(session);
+
+        HttpResponse<String> second = command(session, HttpRequest.BodyPublishers.ofByteArray(SPEECH));
+        talking.close();
+
+        assertThat(second.statusCode()).isEqualTo(409);
+        assertThat(first.get(10, TimeUnit.SECONDS).body()).contains("event: done");
+        assertThat(command(session, HttpRequest.BodyPublishers.ofByteArray(SPEECH)).statusCode()).isEqualTo(200);
+    }
+
+    @Test
+    void turnsCommandsAwayWhenNoSlotFreesUp() throws Exception {
+        server = start(streamingModel(Duration.ofMillis(100)), 1, Duration.ZERO);
+        String busy = openSession();
+        String turnedAway = openSession();
+
+        var first = http.sendAsync(commandRequest(busy, HttpRequest.BodyPublishers.ofByteArray(SPEECH)),
+                HttpResponse.BodyHandlers.ofString());
+        while (!get("/sessions").contains("\"commands\":1")) {
+            Thread.sleep(5);
+        }
+        HttpResponse<String> second = command(turnedAway, HttpRequest.BodyPublishers.ofByteArray(SPEECH));
+
+        assertThat(second.statusCode()).isEqualTo(503);
+        assertThat(second.headers().firstValue("Retry-After")).isPresent();
+        assertThat(first.get(10, TimeUnit.SECONDS).statusCode()).isEqualTo(200);
+    }
+
+    @Test
+    void rejectsEmptyRecordingsAndUnknownSessions() throws Exception {
+        server = start(streamingModel(Duration.ofMillis(1)), 64, Duration.ofSeconds(5));
+        String session = openSession();
+
+        assertThat(command(session, HttpRequest.BodyPublishers.noBody()).statusCode()).isEqualTo(400);
+        assertThat(command("no-such-session", HttpRequest.BodyPublishers.ofByteArray(SPEECH)).statusCode())
+                .isEqualTo(404);
+    }
+
+    @Test
+    void requiresTheTokenWhenOneIsSet() throws Exception {
+        server = start(streamingModel(Duration.ofMillis(1)),
+                properties("127.0.0.1", "engage", 64, Duration.ofSeconds(5), Duration.ofSeconds(10),
+                        Duration.ofSeconds(30)));
+        HttpRequest.Builder open = HttpRequest.newBuilder(uri("/sessions")).POST(HttpRequest.BodyPublishers.noBody());
+
+        HttpResponse<String> anonymous = http.send(open.build(), HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> wrong = http.send(open.header("Authorization", "Bearer disengage").build(),
+                HttpResponse.BodyHandlers.ofString());
+        HttpResponse<String> right = http.send(open.setHeader("Authorization", "Bearer engage").build(),
+                HttpResponse.BodyHandlers.ofString());
+
+        assertThat(anonymous.statusCode()).isEqualTo(401);
+        assertThat(anonymous.headers().firstValue("WWW-Authenticate")).hasValue("Bearer");
+        assertThat(wrong.statusCode()).isEqualTo(401);
+        assertThat(right.statusCode()).isEqualTo(201);
+    }
+
+    @Test
+    void wontListenBeyondLoopbackWithoutAToken() {
+        assertThatThrownBy(() -> start(streamingModel(Duration.ofMillis(1)),
+                properties("0.0.0.0", null, 64, Duration.ofSeconds(5), Duration.ofSeconds(10),
+                        Duration.ofSeconds(30))))
+                .isInstanceOf(IllegalStateException.class)
+                .hasMessageContaining("starfleet.headless.token");
+    }
+
+    @Test
+    void cutsOffAConsoleThatStopsSendingAudio() throws Exception {
+        server = start(streamingModel(Duration.ofMillis(1)),
+                properties("127.0.0.1", null, 1, Duration.ofSeconds(5), Duration.ofMillis(500),
+                        Duration.ofSeconds(30)));
+        String session = openSession();
+
+        // Half a second of audio, then the console hangs without ending the upload
+        SubmissionPublisher<ByteBuffer> stalled = new SubmissionPublisher<>();
+        var cutOff = http.sendAsync(commandRequest(session, HttpRequest.BodyPublishers.fromPublisher(stalled)),
+                HttpResponse.BodyHandlers.ofString());
+        stalled.submit(ByteBuffer.wrap(SPEECH));
+
+        assertThatThrownBy(() -> cutOff.get(10, TimeUnit.SECONDS)).isInstanceOf(ExecutionException.class);
+        awaitIdle(session);
+        // The one command slot is free again
+        assertThat(answerOf(command(session, HttpRequest.BodyPublishers.ofByteArray(SPEECH)).body()))
+                .isEqualTo("Aye, captain. All systems nominal.");
+    }
+
+    @Test
+    void givesUpOnACommandPastItsDeadline() throws Exception {
+        server = start(streamingModel(Duration.ofSeconds(30)),
+                properties("127.0.0.1", null, 1, Duration.ofSeconds(5), Duration.ofSeconds(10),
+                        Duration.ofMillis(300)));
+        String session = openSession();
+
+        long start = System.nanoTime();
+        HttpResponse<String> response = command(session, HttpRequest.BodyPublishers.ofByteArray(SPEECH));
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        assertThat(response.statusCode()).isEqualTo(200);
+        assertThat(response.body()).contains("event: transcript", "event: error").doesNotContain("event: done");
+        assertThat(elapsed).isLessThan(Duration.ofSeconds(5));
+        awaitIdle(session);
+        assertThat(get("/sessions")).contains("\"commands\":0");
+    }
+
+    private HeadlessServer start(ChatModel chatModel, int maxConcurrentCommands, Duration queueTimeout)
+            throws IOException {
+        return start(chatModel, properties("127.0.0.1", null, maxConcurrentCommands, queueTimeout,
+                Duration.ofSeconds(10), Duration.ofSeconds(30)));
+    }
+
+    private HeadlessServer start(ChatModel chatModel, HeadlessProperties properties) throws IOException {
+        TranscriptionBackend backend = audio -> {
+            pause(20);
+            return "Computer, command " + transcriptions.incrementAndGet();
+        };
+        TranscriptionService transcriptionService = new TranscriptionService(backend, transcriptionProperties(),
+                null, PipelineMetrics.local());
+        McpClientService mcpService = new McpClientService(chatModel, new SyncMcpToolCallbackProvider(List.of()),
+                List.of(), toolProperties());
+        HeadlessServer headless = new HeadlessServer(transcriptionService, mcpService, properties);
+        headless.start();
+        return headless;
+    }
+
+    private String openSession() throws IOException, InterruptedException {
+        HttpResponse<String> response = http.send(HttpRequest.newBuilder(uri("/sessions"))
+                .POST(HttpRequest.BodyPublishers.noBody()).build(), HttpResponse.BodyHandlers.ofString());
+        assertThat(response.statusCode()).isEqualTo(201);
+        Matcher id = ID.matcher(response.body());
+        assertThat(id.find()).isTrue();
+        return id.group(1);
+    }
+
+    private void closeSession(String session) throws IOException, InterruptedException {
+        HttpResponse<Void> response = http.send(HttpRequest.newBuilder(uri("/sessions/" + session))
+                .DELETE().build(), HttpResponse.BodyHandlers.discarding());
+        assertThat(response.statusCode()).isEqualTo(204);
+    }
+
+    private HttpResponse<String> command(String session, HttpRequest.BodyPublisher audio)
+            throws IOException, InterruptedException {
+        return http.send(commandRequest(session, audio), HttpResponse.BodyHandlers.ofString());
+    }
+
+    private HttpRequest commandRequest(String session, HttpRequest.BodyPublisher audio) {
+        return HttpRequest.newBuilder(uri("/sessions/" + session + "/commands"))
+                .header("Content-Type", "audio/L16; rate=16000; channels=1")
+                .POST(audio)
+                .build();
+    }
+
+    private String get(String path) throws IOException, InterruptedException {
+        return http.send(HttpRequest.newBuilder(uri(path)).build(), HttpResponse.BodyHandlers.ofString()).body();
+    }
+
+    private void awaitBusy(String session) throws IOException, InterruptedException {
+        // An empty probe is refused as empty (400) until the first command holds the session (409)
+        for (int attempt = 0; attempt < 200; attempt++) {
+            Thread.sleep(10);
+            if (command(session, HttpRequest.BodyPublishers.noBody()).statusCode() == 409) {
+                return;
+            }
+        }
+        throw new AssertionError("Session never became busy");
+    }
+
+    private void awaitIdle(String session) throws IOException, InterruptedException {
+        // The reverse: busy (409) until the command has let go of the session, then empty (400)
+        for (int attempt = 0; attempt < 200; attempt++) {
+            if (command(session, HttpRequest.BodyPublishers.noBody()).statusCode() == 400) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        throw new AssertionError("Session never became idle");
+    }
+
+    private URI uri(String path) {
+        return URI.create("http://127.0.0.1:" + server.port() + path);
+    }
+
+    private static String answerOf(String events) {
+        StringBuilder answer = new StringBuilder();
+        Matcher token = TOKEN.matcher(events);
+        while (token.find()) {
+            answer.append(token.group(1));
+        }
+        return events.contains("event: done") ? answer.toString() : "";
+    }
+
+    private static ChatModel streamingModel(Duration interval) {
+        List<String> tokens = List.of("Aye", ", ", "captain", ". ", "All ", "systems ", "nominal", ".");
+        return new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                return new ChatResponse(List.of(new Generation(new AssistantMessage(String.join("", tokens)))));
+            }
+
+            @Override
+            public Flux<ChatResponse> stream(Prompt prompt) {
+                return Flux.fromIterable(tokens)
+                        .delayElements(interval)
+                        .map(token -> new ChatResponse(List.of(new Generation(new AssistantMessage(token)))));
+            }
+        };
+    }
+
+    private static HeadlessProperties properties(String bindAddress, String token, int maxConcurrentCommands,
+                                                 Duration queueTimeout, Duration uploadTimeout,
+                                                 Duration commandTimeout) {
+        return new HeadlessProperties(true, bindAddress, 0, token, 1000, maxConcurrentCommands, queueTimeout,
+                uploadTimeout, commandTimeout, Duration.ofMinutes(10), Duration.ofMillis(20));
+    }
+
+    private static TranscriptionProperties transcriptionProperties() {
+        return new TranscriptionProperties(
+                TranscriptionProperties.UploadFormat.WAV,
+                new TranscriptionProperties.Streaming(false, Duration.ofSeconds(5), Duration.ofMillis(1500),
+                        Duration.ofMillis(400), 500),
+                new TranscriptionProperties.Vad(false, Duration.ofMillis(20), 300, 0.3, Duration.ofMillis(300),
+                        Duration.ofMillis(100), Duration.ZERO),
+                new TranscriptionProperties.Buffer(Duration.ofSeconds(60), Duration.ofMinutes(10), 8),
+                new TranscriptionProperties.HotMic(false, Duration.ofMillis(300), Duration.ofSeconds(10)),
+                new TranscriptionProperties.Speculation(false, Duration.ofMillis(300), 0.1));
+    }
+
+    private static ToolProperties toolProperties() {
+        return new ToolProperties(
+                new ToolProperties.Cache(true, 256, Duration.ZERO, Map.of()),
+                new ToolProperties.FastPath(false, 0.6, 0.2),
+                new ToolProperties.Parallel(true, 4),
+                new ToolProperties.Compaction(true, 25, 160, 1024),
+                new ToolProperties.Coalescing(true));
+    }
+
+    private static byte[] speech() {
+        byte[] pcm = new byte[16000];
+        for (int i = 0; i < pcm.length / 2; i++) {
+            short sample = (short) (2000 * Math.sin(2 * Math.PI * 440 * i / 16000.0));
+            pcm[2 * i] = (byte) sample;
+            pcm[2 * i + 1] = (byte) (sample >> 8);
+        }
+        return pcm;
+    }
+
+    private static double percentile(long[] sorted, double percentile) {
+        int index = (int) Math.ceil(percentile * sorted.length) - 1;
+        return sorted[Math.max(0, index)] / 1e6;
+    }
+
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+import java.time.Duration;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class HotMicrophoneTest {
+
+    private static final AudioFormat FORMAT = new AudioFormat(16000.0f, 16, 1, true, false);
+    private static final Duration DEVICE_OPEN_DELAY = Duration.ofMillis(80);
+    private static final Duration PRE_ROLL = Duration.ofMillis(300);
+
+    @Test
+    void aPressHasAudioWithoutWaitingOnTheDevice() throws Exception {
+        byte[] buffer = new byte[4096];
+
+        // Cold: what startRecording() does on every press today
+        long pressed = System.nanoTime();
+        FakeTargetDataLine line = new FakeTargetDataLine(FORMAT, DEVICE_OPEN_DELAY);
+        line.open(FORMAT);
+        line.start();
+        line.read(buffer, 0, 640);
+        Duration cold = Duration.ofNanos(System.nanoTime() - pressed);
+        line.close();
+        assertThat(cold).isGreaterThanOrEqualTo(DEVICE_OPEN_DELAY);
+
+        // Hot: the line has been open since startup
+        try (HotMicrophone microphone = new HotMicrophone(
+                new FakeTargetDataLine(FORMAT, DEVICE_OPEN_DELAY), FORMAT, Duration.ofSeconds(10))) {
+            microphone.start();
+            Thread.sleep(500);
+
+            HotMicrophone.Cursor cursor = microphone.markStart(PRE_ROLL);
+            long start = cursor.position();
+            int bytesRead = cursor.readAvailable(buffer, 0, buffer.length);
+
+            // The pre-roll is already in the ring, so a full buffer is there without any wait
+            assertThat(bytesRead).isEqualTo(buffer.length);
+            for (int i = 0; i + 1 < bytesRead; i += 2) {
+                short sample = (short) ((buffer[i] & 0xFF) | (buffer[i + 1] << 8));
+                assertThat(sample).isEqualTo(FakeTargetDataLine.sampleAt(start + i));
+            }
+        }
+    }
+
+    @Test
+    void cursorStartsPreRollBeforeThePressAndReadsContinuously() throws Exception {
+        try (HotMicrophone microphone = new HotMicrophone(
+                new FakeTargetDataLine(FORMAT, Duration.ZERO), FORMAT, Duration.ofSeconds(10))) {
+            microphone.start();
+            Thread.sleep(1000);
+
+            HotMicrophone.Cursor cursor = microphone.markStart(PRE_ROLL);
+            long start = cursor.position();
+
+            // Read a second of audio in odd-sized pieces and check the ramp has no gaps
+            byte[] buffer = new byte[1000];
+            long expected = start;
+            while (expected < start + 32000) {
+                int n = cursor.read(buffer, 0, buffer.length, Duration.ofSeconds(1));
+                for (int i = 0; i + 1 < n; i += 2) {
+                    short sample = (short) ((buffer[i] & 0xFF) | (buffer[i + 1] << 8));
+                    assertThat(sample).isEqualTo(FakeTargetDataLine.sampleAt(expected + i));
+                }
+                expected += n;
+            }
+
+            // The pre-roll was already captured when the button went down
+            assertThat(start % 2).isZero();
+            assertThat(cursor.position()).isGreaterThanOrEqualTo(start + 32000);
+        }
+    }
+
+    @Test
+    void preRollIsLimitedToWhatHasBeenCaptured() throws Exception {
+        try (HotMicrophone microphone = new HotMicrophone(
+                new FakeTargetDataLine(FORMAT, Duration.ZERO), FORMAT, Duration.ofSeconds(10))) {
+            microphone.start();
+
+            assertThat(microphone.markStart(Duration.ofSeconds(5)).position()).isGreaterThanOrEqualTo(0);
+        }
+    }
+
+    @Test
+    void ringReportsOverrunWhenReaderFallsALapBehind() {
+        PcmRingBuffer ring = new PcmRingBuffer(1000);
+        byte[] chunk = new byte[400];
+        byte[] dst = new byte[400];
+
+        ring.write(chunk, 0, chunk.length);
+        assertThat(ring.read(0, dst, 0, dst.length)).isEqualTo(400);
+
+        ring.write(chunk, 0, chunk.length);
+        ring.write(chunk, 0, chunk.length);
+        assertThat(ring.read(0, dst, 0, dst.length)).isEqualTo(PcmRingBuffer.OVERRUN);
+        assertThat(ring.read(200, dst, 0, dst.length)).isEqualTo(400);
+        assertThat(ring.read(1200, dst, 0, dst.length)).isZero();
+    }
+}
@@ -0,0 +1,94 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.CsvSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class IntentMatcherTest {
+
+    private final IntentMatcher matcher = new IntentMatcher(LocalIntents.DEFAULTS, 0.6, 0.2);
+
+    @ParameterizedTest
+    @CsvSource(delimiter = '|', value = {
+            "Computer, what's the uptime?                          | uptime",
+            "How long has the system been up                       | uptime",
+            "when was this machine last booted                     | uptime",
+            "Computer, show me the system info                     | system_info",
+            "What's the hostname and CPU of this machine           | system_info",
+            "how much memory does this hardware have               | system_info",
+            "Which processes are using the most memory?            | top_processes",
+            "list the top running apps                             | top_processes",
+            "What ports are open?                                  | listening_ports",
+            "which processes are listening on network ports        | listening_ports"
+    })
+    void recognizesCommonCommands(String transcript, String intent) {
+        assertThat(matcher.match(transcript))
+                .hasValueSatisfying(match -> assertThat(match.intent().name()).isEqualTo(intent));
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "Computer, is the warp core stable?",
+            "Why is the uptime so long?",
+            "Kill the process using the most memory",
+            "What's the uptime and which processes use the most memory?",
+            "which process is using the most CPU",
+            "Which processes use the most processor time?",
+            "how many processes are running",
+            "Count the running applications",
+            "Tell me a joke",
+            ""
+    })
+    void leavesEverythingElseToTheModel(String transcript) {
+        assertThat(matcher.match(transcript)).isEmpty();
+    }
+
+    @Test
+    void ranksEveryIntent() {
+        List<IntentMatcher.Match> ranked = matcher.rank("what's the uptime");
+
+        assertThat(ranked).hasSize(LocalIntents.DEFAULTS.size());
+        assertThat(ranked.getFirst().intent().name()).isEqualTo("uptime");
+        assertThat(ranked.getFirst().confidence()).isEqualTo(0.9);
+    }
+
+    @Test
+    void formatsSingleRowAnswers() {
+        Intent systemInfo = intent("system_info");
+
+        String answer = systemInfo.format(List.of(Map.of(
+                "hostname", "enterprise", "cpu_brand", "Duotronic", "physical_memory", "68719476736")));
+
+        assertThat(answer).isEqualTo("This is enterprise, a Duotronic with 64.0 GB of memory.");
+    }
+
+    @Test
+    void formatsOneLinePerRow() {
+        Intent processes = intent("top_processes");
+
+        String answer = processes.format(List.of(
+                Map.of("name", "warp_core", "pid", "1701", "resident_size", "2147483648"),
+                Map.of("name", "sensors", "pid", "74656", "resident_size", "536870912")));
+
+        assertThat(answer).isEqualTo("""
+                Top processes by memory:
+                warp_core (pid 1701): 2048 MB
+                sensors (pid 74656): 512 MB""");
+    }
+
+    @Test
+    void missingColumnsDoNotBreakTheTemplate() {
+        assertThat(intent("uptime").format(List.of(Map.of("days", "3"))))
+                .isEqualTo("The system has been up 3 days, unknown hours and unknown minutes.");
+    }
+
+    private static Intent intent(String name) {
+        return LocalIntents.DEFAULTS.stream().filter(intent -> intent.name().equals(name)).findFirst().orElseThrow();
+    }
+}
@@ -0,0 +1,524 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import com.kousenit.starfleetvoiceinterface.OpenAiStandIn.Latency;
+import com.kousenit.starfleetvoiceinterface.config.HttpProperties;
+import com.kousenit.starfleetvoiceinterface.config.ToolProperties;
+import com.kousenit.starfleetvoiceinterface.config.TranscriptionProperties;
+import io.modelcontextprotocol.client.McpSyncClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.ai.mcp.SyncMcpToolCallbackProvider;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.openai.OpenAiAudioTranscriptionModel;
+import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.ai.openai.api.OpenAiAudioApi;
+import org.springframework.boot.convert.DurationStyle;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import javax.net.ssl.SSLContext;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.UnsupportedAudioFileException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.net.URI;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/**
+ * Offline load and soak driver for the whole voice pipeline. Recordings are
+ * replayed through {@link TranscriptionService} into {@link McpClientService}
+ * at a fixed rate, with the real Spring AI OpenAI clients talking to an
+ * {@link OpenAiStandIn} and the MCP client to a {@link StubOsqueryMcpServer},
+ * so it runs without a key or network: in CI, or on an air-gapped box.
+ * <p>
+ * Commands start on schedule whether or not earlier ones have finished, and
+ * latency is measured from the scheduled start, so a stall shows up in the
+ * percentiles instead of quietly lowering the rate. Every report interval
+ * prints throughput, latency percentiles, commands in flight and the heap
+ * after a forced GC; the summary adds the heap's growth over the run. Run it
+ * with {@code ./gradlew soakTest}; {@link Options#fromSystemProperties()}
+ * lists the settings.
+ */
+class LoadDriver {
+
+    private static final Logger log = LoggerFactory.getLogger(LoadDriver.class);
+
+    static final AudioFormat CAPTURE_FORMAT = new AudioFormat(16000.0f, 16, 1, true, false);
+
+    // What the recording loop hands the capture per read
+    private static final int CHUNK = 4096;
+
+    private static final HttpProperties HTTP = new HttpProperties(true, Duration.ofSeconds(5),
+            Duration.ofMinutes(5), 8, new HttpProperties.Prime(true, Duration.ofSeconds(10)));
+
+    private final TranscriptionService transcriptionService;
+    private final McpClientService mcpService;
+    private final PipelineMetrics metrics;
+    private final List<Fixture> fixtures;
+    private final Options options;
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final LatencyHistogram overall = new LatencyHistogram();
+    private final LatencyHistogram transcription = new LatencyHistogram();
+    private final LatencyHistogram command = new LatencyHistogram();
+    private final AtomicReference<LatencyHistogram> interval = new AtomicReference<>(new LatencyHistogram());
+    private final AtomicLong sequence = new AtomicLong();
+    private final AtomicLong completed = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+    private final AtomicLong intervalErrors = new AtomicLong();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final List<long[]> heapSamples = new ArrayList<>();
+    private volatile long measureFrom;
+    private volatile long lastReport;
+
+    LoadDriver(TranscriptionService transcriptionService, McpClientService mcpService, PipelineMetrics metrics,
+               List<Fixture> fixtures, Options options) {
+        this.transcriptionService = transcriptionService;
+        this.mcpService = mcpService;
+        this.metrics = metrics;
+        this.fixtures = List.copyOf(fixtures);
+        this.options = options;
+    }
+
+    public static void main(String[] args) throws Exception {
+        Report report = run(Options.fromSystemProperties());
+        System.exit(report.errors() == 0 ? 0 : 1);
+    }
+
+    /**
+     * Starts the stand-ins, wires the pipeline to them, drives it for the
+     * configured duration and shuts everything down again.
+     */
+    static Report run(Options options) throws IOException, InterruptedException, NoSuchAlgorithmException {
+        List<Fixture> fixtures = options.fixtures() != null ? Fixture.load(options.fixtures()) : Fixture.synthesized();
+        try (OpenAiStandIn openAi = new OpenAiStandIn(options.transcriptionLatency(), options.chatLatency(),
+                OpenAiStandIn.ChatScript.OSQUERY)) {
+            fixtures.forEach(fixture -> openAi.transcript(fixture.pcm(), fixture.transcript()));
+            McpSyncClient osquery = StubOsqueryMcpServer.start(options.osqueryLatency());
+            PipelineMetrics metrics = PipelineMetrics.local();
+            // The app's shared, pooled HTTP client, as the Spring AI auto-configuration would get it
+            HttpPoolSettings.apply(HTTP);
+            ModelConnections connections = new ModelConnections(HTTP, List.of(URI.create(openAi.baseUrl())),
+                    SSLContext.getDefault());
+            try {
+                TranscriptionService transcriptionService = new TranscriptionService(
+                        new OpenAiTranscriptionBackend(new OpenAiAudioTranscriptionModel(OpenAiAudioApi.builder()
+                                .baseUrl(openAi.baseUrl())
+                                .apiKey("load-test")
+                                .restClientBuilder(customized(RestClient.builder(), connections::customize))
+                                .build())),
+                        transcriptionProperties(), null, metrics);
+                OpenAiChatModel chatModel = OpenAiChatModel.builder()
+                        .openAiApi(OpenAiApi.builder()
+                                .baseUrl(openAi.baseUrl())
+                                .apiKey("load-test")
+                                .restClientBuilder(customized(RestClient.builder(), connections::customize))
+                                .webClientBuilder(customized(WebClient.builder(), connections::customize))
+                                .build())
+                        .toolCallingManager(new ParallelToolCallingManager(ToolCallingManager.builder().build(), 4))
+                        .build();
+                McpClientService mcpService = new McpClientService(chatModel,
+                        new SyncMcpToolCallbackProvider(osquery), List.of(osquery), options.toolProperties(),
+                        null, null, null, metrics);
+
+                Report report = new LoadDriver(transcriptionService, mcpService, metrics, fixtures, options).drive();
+                System.out.printf(Locale.ROOT, "stand-in requests: %d transcriptions, %d chat completions%n",
+                        openAi.transcriptionCount(), openAi.chatCount());
+                transcriptionService.shutdown();
+                return report;
+            } finally {
+                osquery.closeGracefully();
+                connections.shutdown();
+            }
+        }
+    }
+
+    private static <B> B customized(B builder, Consumer<B> customizer) {
+        customizer.accept(builder);
+        return builder;
+    }
+
+    /**
+     * Issues commands at the target rate until the duration is up, waits for
+     * the ones in flight, and reports.
+     */
+    Report drive() throws InterruptedException {
+        System.out.printf(Locale.ROOT, "Driving %.1f commands/s for %s (warm-up %s) over %d recordings%n",
+                options.rate(), options.duration(), options.warmup(), fixtures.size());
+        long period = Math.max(1, (long) (1e9 / options.rate()));
+        long start = System.nanoTime();
+        measureFrom = start + options.warmup().toNanos();
+        lastReport = start;
+
+        ExecutorService commands = Executors.newVirtualThreadPerTaskExecutor();
+        ScheduledExecutorService clock = Executors.newSingleThreadScheduledExecutor(
+                Thread.ofPlatform().name("load-clock").daemon().factory());
+        ScheduledFuture<?> issuing = clock.scheduleAtFixedRate(() -> {
+            long n = sequence.getAndIncrement();
+            long scheduled = start + n * period;
+            Fixture fixture = fixtures.get((int) (n % fixtures.size()));
+            commands.execute(() -> runCommand(fixture, scheduled));
+        }, 0, period, TimeUnit.NANOSECONDS);
+        ScheduledFuture<?> reporting = clock.scheduleAtFixedRate(() -> report(start),
+                options.reportEvery().toNanos(), options.reportEvery().toNanos(), TimeUnit.NANOSECONDS);
+
+        TimeUnit.NANOSECONDS.sleep(options.duration().toNanos());
+        issuing.cancel(false);
+        reporting.cancel(false);
+        clock.shutdown();
+        clock.awaitTermination(10, TimeUnit.SECONDS);
+        commands.shutdown();
+        if (!commands.awaitTermination(60, TimeUnit.SECONDS)) {
+            log.warn("{} commands still running after the drain timeout", inFlight.get());
+            commands.shutdownNow();
+        }
+        report(start);
+        return summarize((System.nanoTime() - measureFrom) / 1e9);
+    }
+
+    private void runCommand(Fixture fixture, long scheduled) {
+        inFlight.incrementAndGet();
+        try {
+            long began = System.nanoTime();
+            String transcript;
+            TranscriptionService.Capture capture = transcriptionService.newCapture(partial -> {
+            });
+            try {
+                for (int offset = 0; offset < fixture.pcm().length; offset += CHUNK) {
+                    capture.write(fixture.pcm(), offset, Math.min(CHUNK, fixture.pcm().length - offset));
+                }
+                capture.finish();
+                transcript = capture.transcribe();
+            } finally {
+                capture.release();
+            }
+            if (!transcript.equals(fixture.transcript())) {
+                throw new IllegalStateException("Heard \"" + transcript + "\" for " + fixture.name());
+            }
+            long transcribed = System.nanoTime();
+
+            String answer = options.streaming()
+                    ? mcpService.streamCommand(capture.commandId(), transcript, token -> {
+                    })
+                    : mcpService.processCommand(capture.commandId(), transcript);
+            if (answer == null || answer.isBlank()) {
+                throw new IllegalStateException("No answer to \"" + transcript + "\"");
+            }
+            long done = System.nanoTime();
+
+            interval.get().record(done - scheduled);
+            if (scheduled >= measureFrom) {
+                overall.record(done - scheduled);
+                transcription.record(transcribed - began);
+                command.record(done - transcribed);
+                completed.incrementAndGet();
+            }
+        } catch (RuntimeException e) {
+            intervalErrors.incrementAndGet();
+            if (scheduled >= measureFrom && errors.incrementAndGet() <= 10) {
+                log.warn("Command on {} failed", fixture.name(), e);
+            }
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+
+    /**
+     * One line for the interval just ended. The GC before reading the heap
+     * makes the figure live data rather than garbage not yet collected; its
+     * pause lands in the next interval's latencies.
+     */
+    private void report(long start) {
+        LatencyHistogram done = interval.getAndSet(new LatencyHistogram());
+        long now = System.nanoTime();
+        double seconds = (now - lastReport) / 1e9;
+        lastReport = now;
+        memory.gc();
+        long heap = memory.getHeapMemoryUsage().getUsed();
+        if (now >= measureFrom) {
+            synchronized (heapSamples) {
+                heapSamples.add(new long[]{now, heap});
+            }
+        }
+        System.out.printf(Locale.ROOT,
+                "%6.0fs  %6.1f/s  errors %3d  in flight %3d  p50 %7.1f ms  p99 %7.1f ms  max %7.1f ms  heap %6.1f MB%n",
+                (now - start) / 1e9, done.count() / seconds,
+                intervalErrors.getAndSet(0), inFlight.get(),
+                done.percentile(0.5), done.percentile(0.99), done.max(), heap / 1e6);
+    }
+
+    private Report summarize(double seconds) {
+        long heapGrowth = 0;
+        double heapSlope = 0;
+        synchronized (heapSamples) {
+            if (heapSamples.size() >= 2) {
+                heapGrowth = heapSamples.getLast()[1] - heapSamples.getFirst()[1];
+                heapSlope = slope(heapSamples);
+            }
+        }
+        Report report = new Report(completed.get(), errors.get(), completed.get() / seconds,
+                overall.percentile(0.5), overall.percentile(0.99), overall.max(), heapGrowth);
+
+        System.out.printf(Locale.ROOT, "%d commands answered, %d errors in %.0f s: %.2f/s (target %.2f/s)%n",
+                report.commands(), report.errors(), seconds, report.throughput(), options.rate());
+        System.out.printf(Locale.ROOT, "end to end (ms):   p50 %.1f, p99 %.1f, p99.9 %.1f, max %.1f%n",
+                report.p50Millis(), report.p99Millis(), overall.percentile(0.999), report.maxMillis());
+        System.out.printf(Locale.ROOT, "transcription (ms): p50 %.1f, p99 %.1f; command (ms): p50 %.1f, p99 %.1f%n",
+                transcription.percentile(0.5), transcription.percentile(0.99),
+                command.percentile(0.5), command.percentile(0.99));
+        System.out.printf(Locale.ROOT, "heap after GC: %+.1f MB over the run, trend %+.1f MB/hour%n",
+                heapGrowth / 1e6, heapSlope * 3600e9 / 1e6);
+        System.out.println(metrics.summary());
+        return report;
+    }
+
+    /**
+     * Least-squares slope of heap bytes over nanoseconds.
+     */
+    private static double slope(List<long[]> samples) {
+        double meanTime = samples.stream().mapToDouble(sample -> sample[0]).average().orElse(0);
+        double meanHeap = samples.stream().mapToDouble(sample -> sample[1]).average().orElse(0);
+        double covariance = 0;
+        double variance = 0;
+        for (long[] sample : samples) {
+            covariance += (sample[0] - meanTime) * (sample[1] - meanHeap);
+            variance += (sample[0] - meanTime) * (sample[0] - meanTime);
+        }
+        return variance == 0 ? 0 : covariance / variance;
+    }
+
+    /**
+     * Whole recordings go to the stand-in unchanged: no VAD trimming, no
+     * streaming segments, WAV rather than FLAC, so each upload matches the
+     * transcript registered for its recording.
+     */
+    static TranscriptionProperties transcriptionProperties() {
+        return new TranscriptionProperties(
+                TranscriptionProperties.UploadFormat.WAV,
+                new TranscriptionProperties.Streaming(false, Duration.ofSeconds(5), Duration.ofMillis(1500),
+                        Duration.ofMillis(400), 500),
+                new TranscriptionProperties.Vad(false, Duration.ofMillis(20), 300, 0.3, Duration.ofMillis(300),
+                        Duration.ofMillis(100), Duration.ZERO),
+                new TranscriptionProperties.Buffer(Duration.ofSeconds(60), Duration.ofMinutes(10), 8),
+                new TranscriptionProperties.HotMic(false, Duration.ofMillis(300), Duration.ofSeconds(10)),
+                new TranscriptionProperties.Speculation(false, Duration.ofMillis(300), 0.1));
+    }
+
+    /**
+     * @param rate                 commands started per second
+     * @param duration             length of the run, warm-up included
+     * @param warmup               commands scheduled in this first stretch are
+     *                             left out of the summary
+     * @param fixtures             directory of WAV recordings, or null for
+     *                             synthesized ones
+     * @param toolCache            cache osquery results between commands
+     * @param fastPath             answer recognized commands without the model
+     * @param streaming            stream answers, as the desktop app does
+     */
+    record Options(double rate, Duration duration, Duration warmup, Duration reportEvery, Path fixtures,
+                   Latency transcriptionLatency, Latency chatLatency, Duration osqueryLatency,
+                   boolean toolCache, boolean fastPath, boolean streaming) {
+
+        /**
+         * Reads {@code load.*} system properties, which the {@code soakTest}
+         * task passes on from {@code -Pload...} project properties:
+         * {@code rate} (2), {@code duration} (1m), {@code warmup} (10s),
+         * {@code report-every} (10s), {@code fixtures} (a directory of WAV
+         * files, each with a {@code .txt} transcript beside it),
+         * {@code transcription-latency} (300ms..1200ms),
+         * {@code chat-latency} (500ms..2s), {@code osquery-latency} (20ms),
+         * {@code tool-cache}, {@code fast-path} and {@code streaming} (all false).
+         */
+        static Options fromSystemProperties() {
+            String fixtures = System.getProperty("load.fixtures", "");
+            return new Options(
+                    Double.parseDouble(System.getProperty("load.rate", "2")),
+                    duration("load.duration", "1m"),
+                    duration("load.warmup", "10s"),
+                    duration("load.report-every", "10s"),
+                    fixtures.isBlank() ? null : Path.of(fixtures),
+                    Latency.parse(System.getProperty("load.transcription-latency", "300ms..1200ms")),
+                    Latency.parse(System.getProperty("load.chat-latency", "500ms..2s")),
+                    duration("load.osquery-latency", "20ms"),
+                    Boolean.getBoolean("load.tool-cache"),
+                    Boolean.getBoolean("load.fast-path"),
+                    Boolean.getBoolean("load.streaming"));
+        }
+
+        ToolProperties toolProperties() {
+            return new ToolProperties(
+                    new ToolProperties.Cache(toolCache, 256, Duration.ZERO, Map.of()),
+                    new ToolProperties.FastPath(fastPath, 0.6, 0.2),
+                    new ToolProperties.Parallel(true, 4),
+                    new ToolProperties.Compaction(true, 25, 160, 1024),
+                    new ToolProperties.Coalescing(true));
+        }
+
+        private static Duration duration(String property, String defaultValue) {
+            return DurationStyle.detectAndParse(System.getProperty(property, defaultValue));
+        }
+    }
+
+    /**
+     * Figures for the measured part of the run, after warm-up.
+     */
+    record Report(long commands, long errors, double throughput,
+                  double p50Millis, double p99Millis, double maxMillis, long heapGrowthBytes) {
+    }
+
+    /**
+     * A recording in the capture format and what was said in it.
+     */
+    record Fixture(String name, byte[] pcm, String transcript) {
+
+        private static final List<String> COMMANDS = List.of(
+                "Computer, what is the system uptime?",
+                "Computer, which ports are open?",
+                "Computer, which processes use the most memory?",
+                "Computer, show me the system info.",
+                "Computer, status report.");
+
+        /**
+         * The {@code .wav} files in {@code directory}, converted to the
+         * capture format. Each one's transcript is the {@code .txt} file of
+         * the same name, or else the file name with dashes as spaces.
+         */
+        static List<Fixture> load(Path directory) throws IOException {
+            List<Fixture> fixtures = new ArrayList<>();
+            try (Stream<Path> files = Files.list(directory)) {
+                for (Path wav : files.filter(file -> file.toString().endsWith(".wav")).sorted().toList()) {
+                    String name = wav.getFileName().toString().replaceFirst("\\.wav$", "");
+                    Path text = wav.resolveSibling(name + ".txt");
+                    String transcript = Files.exists(text)
+                            ? Files.readString(text).trim()
+                            : name.replace('-', ' ').replace('_', ' ');
+                    fixtures.add(new Fixture(name, capturePcm(wav), transcript));
+                }
+            }
+            if (fixtures.isEmpty()) {
+                throw new IllegalArgumentException("No .wav recordings in " + directory);
+            }
+            return fixtures;
+        }
+
+        /**
+         * One voice-like recording per command: a few "syllables" of a
+         * harmonic-rich tone at its own pitch, with a little noise, so each
+         * is distinct audio of a realistic length.
+         */
+        static List<Fixture> synthesized() {
+            List<Fixture> fixtures = new ArrayList<>();
+            for (int i = 0; i < COMMANDS.size(); i++) {
+                Random random = new Random(1701 + i);
+                int samples = (int) (16000 * (1.2 + 0.3 * i));
+                double pitch = 110 + 15 * i;
+                byte[] pcm = new byte[2 * samples];
+                for (int n = 0; n < samples; n++) {
+                    double t = n / 16000.0;
+                    double envelope = Math.max(0, Math.sin(Math.PI * 4 * t));
+                    double voice = 0;
+                    for (int harmonic = 1; harmonic <= 8; harmonic++) {
+                        voice += Math.sin(2 * Math.PI * pitch * harmonic * t) / harmonic;
+                    }
+                    int sample = (int) Math.round(3000 * envelope * voice + 60 * random.nextGaussian());
+                    pcm[2 * n] = (byte) sample;
+                    pcm[2 * n + 1] = (byte) (sample >> 8);
+                }
+                fixtures.add(new Fixture("synthesized-" + (i + 1), pcm, COMMANDS.get(i)));
+            }
+            return fixtures;
+        }
+
+        private static byte[] capturePcm(Path wav) throws IOException {
+            try (AudioInputStream file = AudioSystem.getAudioInputStream(wav.toFile())) {
+                AudioFormat source = file.getFormat();
+                AudioFormat linear = new AudioFormat(source.getSampleRate(), 16, source.getChannels(), true, false);
+                try (AudioInputStream decoded = AudioSystem.getAudioInputStream(linear, file)) {
+                    byte[] pcm = decoded.readAllBytes();
+                    if (linear.matches(CAPTURE_FORMAT)) {
+                        return pcm;
+                    }
+                    PcmConverter converter = new PcmConverter(linear, CAPTURE_FORMAT);
+                    byte[] out = new byte[converter.maxOutputBytes(pcm.length)];
+                    int length = converter.convert(pcm, 0, pcm.length, out);
+                    return Arrays.copyOf(out, length);
+                }
+            } catch (UnsupportedAudioFileException e) {
+                throw new UncheckedIOException(new IOException("Not a readable WAV file: " + wav, e));
+            }
+        }
+    }
+
+    /**
+     * Latencies in buckets 2% wide from a microsecond to about an hour, so
+     * percentiles of a long soak come from constant memory. Thread-safe.
+     */
+    static final class LatencyHistogram {
+
+        private static final double RATIO = Math.log(1.02);
+        private static final int BUCKETS = 1120;
+
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final AtomicLong total = new AtomicLong();
+        private final AtomicLong maxNanos = new AtomicLong();
+
+        void record(long nanos) {
+            int bucket = nanos < 1000 ? 0 : Math.min(BUCKETS - 1, (int) (Math.log(nanos / 1000.0) / RATIO) + 1);
+            counts.incrementAndGet(bucket);
+            total.incrementAndGet();
+            maxNanos.accumulateAndGet(nanos, Math::max);
+        }
+
+        long count() {
+            return total.get();
+        }
+
+        /**
+         * The upper edge of the bucket holding the percentile, in milliseconds.
+         */
+        double percentile(double percentile) {
+            long count = total.get();
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(percentile * count);
+            long seen = 0;
+            for (int bucket = 0; bucket < BUCKETS; bucket++) {
+                seen += counts.get(bucket);
+                if (seen >= rank) {
+                    return Math.min(Math.exp(bucket * RATIO) / 1000.0, max());
+                }
+            }
+            return max();
+        }
+
+        double max() {
+            return maxNanos.get() / 1e6;
+        }
+    }
+}
@@ -0,0 +1,53 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import com.kousenit.starfleetvoiceinterface.OpenAiStandIn.Latency;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.time.Duration;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class LoadDriverTest {
+
+    /**
+     * A short run of the soak harness: every command goes through the real
+     * OpenAI clients and MCP client to the stand-ins, and is answered. Six
+     * seconds per run, so it runs with {@code soakSmokeTest}.
+     */
+    @Tag("soak")
+    @ParameterizedTest
+    @ValueSource(booleans = {false, true})
+    void drivesThePipelineOfflineAtTheTargetRate(boolean streaming) throws Exception {
+        LoadDriver.Options options = new LoadDriver.Options(5, Duration.ofSeconds(6), Duration.ofSeconds(2),
+                Duration.ofSeconds(2), null,
+                new Latency(Duration.ofMillis(20), Duration.ofMillis(60)), Latency.fixed(Duration.ofMillis(30)),
+                Duration.ofMillis(5), false, false, streaming);
+
+        LoadDriver.Report report = LoadDriver.run(options);
+
+        assertThat(report.errors()).isZero();
+        // Four measured seconds at five a second
+        assertThat(report.commands()).isBetween(18L, 22L);
+        assertThat(report.p99Millis()).isLessThan(2000.0);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"250ms", "100ms..400ms"})
+    void latencyIsFixedOrHasTheConfiguredMedian(String text) {
+        Latency latency = Latency.parse(text);
+        long[] samples = new long[10001];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = latency.sample().toNanos();
+        }
+        Arrays.sort(samples);
+
+        double median = latency.median().toNanos();
+        double p99 = latency.p99().toNanos();
+        assertThat((double) samples[5000]).isCloseTo(median, within(median * 0.05));
+        assertThat((double) samples[9900]).isCloseTo(p99, within(p99 * 0.2));
+    }
+}
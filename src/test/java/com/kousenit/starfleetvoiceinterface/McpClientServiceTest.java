@@ -0,0 +1,364 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import com.kousenit.starfleetvoiceinterface.config.ToolProperties;
+import io.modelcontextprotocol.client.McpSyncClient;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.EnabledIfEnvironmentVariable;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.mcp.SyncMcpToolCallbackProvider;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.openai.OpenAiChatModel;
+import org.springframework.ai.openai.api.OpenAiApi;
+import org.springframework.ai.tool.ToolCallback;
+import reactor.core.publisher.Flux;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class McpClientServiceTest {
+
+    private static McpSyncClient client;
+
+    private final AtomicInteger modelCalls = new AtomicInteger();
+
+    @BeforeAll
+    static void startServer() {
+        client = StubOsqueryMcpServer.start();
+    }
+
+    @AfterAll
+    static void stopServer() {
+        client.closeGracefully();
+    }
+
+    @Test
+    void answersRecognizedCommandsWithoutTheModel() {
+        McpClientService service = service(countingModel(), properties(true));
+
+        String answer = service.processCommand("Computer, what's the uptime?");
+
+        assertThat(answer).startsWith("The system has been up 3 days, 4 hours and");
+        assertThat(modelCalls).hasValue(0);
+    }
+
+    @Test
+    void fallsBackToTheModelBelowThreshold() {
+        McpClientService service = service(countingModel(), properties(true));
+
+        String answer = service.processCommand("Computer, is the warp core stable?");
+
+        assertThat(answer).isEqualTo("model answer");
+        assertThat(modelCalls).hasValue(1);
+    }
+
+    @Test
+    void fastPathCanBeDisabled() {
+        McpClientService service = service(countingModel(), properties(false));
+
+        assertThat(service.processCommand("Computer, what's the uptime?")).isEqualTo("model answer");
+        assertThat(modelCalls).hasValue(1);
+    }
+
+    @Test
+    void streamsModelTokensIntoCoalescedUpdates() throws Exception {
+        List<String> tokens = IntStream.range(0, 200).mapToObj(i -> "word" + i + " ").toList();
+        McpClientService service = service(streamingModel(tokens, Duration.ofMillis(50), Duration.ofMillis(1)),
+                properties(true));
+        ExecutorService uiThread = Executors.newSingleThreadExecutor();
+        StringBuilder shown = new StringBuilder();
+        FrameCoalescer coalescer = new FrameCoalescer(uiThread, Duration.ofMillis(16), shown::append);
+        AtomicLong firstToken = new AtomicLong();
+
+        long start = System.nanoTime();
+        String response = service.streamCommand("Computer, is the warp core stable?", token -> {
+            firstToken.compareAndSet(0, System.nanoTime());
+            coalescer.append(token);
+        });
+        long elapsed = System.nanoTime() - start;
+        coalescer.finish();
+        uiThread.submit(() -> { }).get();
+        uiThread.shutdown();
+
+        Duration timeToFirstToken = Duration.ofNanos(firstToken.get() - start);
+        System.out.printf("Streamed %d tokens in %d ms: first token after %d ms, %d UI updates%n",
+                tokens.size(), elapsed / 1_000_000, timeToFirstToken.toMillis(), coalescer.updates());
+
+        assertThat(response).isEqualTo(String.join("", tokens));
+        assertThat(shown.toString()).isEqualTo(response);
+        assertThat(timeToFirstToken).isGreaterThanOrEqualTo(Duration.ofMillis(50)).isLessThan(Duration.ofNanos(elapsed));
+        assertThat(coalescer.updates()).isLessThanOrEqualTo(elapsed / Duration.ofMillis(16).toNanos() + 2);
+    }
+
+    @Test
+    void streamsLocalAnswersInOnePiece() {
+        McpClientService service = service(countingModel(), properties(true));
+        List<String> pieces = new ArrayList<>();
+
+        String response = service.streamCommand("what's the uptime", pieces::add);
+
+        assertThat(pieces).containsExactly(response);
+        assertThat(modelCalls).hasValue(0);
+    }
+
+    @Test
+    void handsTheModelsQueryResultsToTheTable() {
+        McpClientService service = service(toolCallingModel("SELECT name, port FROM listening_ports"), properties(false));
+        List<ResultTable> tables = new ArrayList<>();
+
+        service.processCommand("Computer, which ports are open?", tables::add);
+
+        assertThat(tables).singleElement().satisfies(table -> {
+            assertThat(table.query()).isEqualTo("SELECT name, port FROM listening_ports");
+            assertThat(table.columns()).containsExactly("name", "port");
+            assertThat(table.rows()).containsExactly(List.of("sshd", "22"), List.of("postgres", "5432"));
+        });
+    }
+
+    @Test
+    void handsLocalAnswersRowsToTheTable() {
+        McpClientService service = service(countingModel(), properties(true));
+        List<ResultTable> tables = new ArrayList<>();
+
+        service.processCommand("which processes use the most memory", tables::add);
+
+        assertThat(tables).singleElement().satisfies(table -> assertThat(table.rows()).hasSize(2));
+        assertThat(modelCalls).hasValue(0);
+    }
+
+    @Test
+    void identicalCommandsInFlightShareOneModelCall() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        PipelineMetrics metrics = PipelineMetrics.local();
+        McpClientService service = new McpClientService(new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                modelCalls.incrementAndGet();
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return new ChatResponse(List.of(new Generation(new AssistantMessage("model answer"))));
+            }
+        }, new SyncMcpToolCallbackProvider(client), List.of(client), properties(true), null, null, null, metrics);
+        List<String> spellings = List.of("Computer, is the warp core stable?", "computer... is the WARP core stable");
+
+        try (ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<String>> answers = IntStream.range(0, 8)
+                    .mapToObj(i -> callers.submit(() -> service.processCommand(spellings.get(i % 2))))
+                    .toList();
+            long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+            while (service.commandCoalescing().coalesced() < 7 && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+            release.countDown();
+
+            for (Future<String> answer : answers) {
+                assertThat(answer.get(5, TimeUnit.SECONDS)).isEqualTo("model answer");
+            }
+        }
+        assertThat(modelCalls).hasValue(1);
+        assertThat(service.commandCoalescing()).isEqualTo(new SingleFlight.Stats(1, 7));
+        assertThat(metrics.registry().get("starfleet.coalescing.coalesced").tag("kind", "command")
+                .functionCounter().count()).isEqualTo(7);
+        assertThat(metrics.registry().get("starfleet.coalescing.calls").tag("kind", "command")
+                .functionCounter().count()).isEqualTo(1);
+    }
+
+    @Test
+    void reusesAnAnswerAfterARestartWhenTheToolResultsAreUnchanged(@TempDir Path directory) {
+        Path file = directory.resolve("cache.dat");
+        String command = "Computer, which ports are open?";
+
+        PersistentCache cache = new PersistentCache(file, 1024 * 1024, Duration.ZERO);
+        cache.open();
+        assertThat(persistentService(toolCallingModel("SELECT name, port FROM listening_ports"), cache)
+                .processCommand(command)).startsWith("model answer: [{");
+        cache.close();
+
+        // A new process: only the file is left
+        PersistentCache reopened = new PersistentCache(file, 1024 * 1024, Duration.ZERO);
+        reopened.open();
+        McpClientService restarted = persistentService(toolCallingModel("SELECT name, port FROM listening_ports"), reopened);
+
+        assertThat(restarted.processCommand("computer which ports are open")).startsWith("model answer: [{");
+        assertThat(modelCalls).hasValue(1);
+        reopened.close();
+    }
+
+    @Test
+    void asksTheModelAgainWhenTheToolResultsChanged(@TempDir Path directory) {
+        // Replay whatever the tables' TTLs
+        PersistentCache cache = new PersistentCache(directory.resolve("cache.dat"), 1024 * 1024, Duration.ZERO);
+        cache.open();
+        // The stub's uptime rows change with every query
+        McpClientService service = persistentService(toolCallingModel("SELECT days, hours FROM uptime"), cache);
+
+        String first = service.processCommand("Computer, how long have we been up?");
+        List<ResultTable> tables = new ArrayList<>();
+        String second = service.processCommand("Computer, how long have we been up?", tables::add);
+
+        assertThat(second).isNotEqualTo(first);
+        assertThat(modelCalls).hasValue(2);
+        // Only the model's query: the replay that missed passes nothing on
+        assertThat(tables).hasSize(1);
+        cache.close();
+    }
+
+    @Test
+    void skipsTheReplayWhenATableChangesFasterThanTheThreshold(@TempDir Path directory) {
+        // uptime has a 5 s TTL
+        PersistentCache cache = new PersistentCache(directory.resolve("cache.dat"), 1024 * 1024, Duration.ofMinutes(1));
+        cache.open();
+        McpClientService service = persistentService(toolCallingModel("SELECT days, hours FROM uptime"), cache);
+        service.processCommand("Computer, how long have we been up?");
+
+        int before = StubOsqueryMcpServer.invocationCount(client);
+        service.processCommand("Computer, how long have we been up?");
+
+        // The model's query, with no replay in front of it
+        assertThat(StubOsqueryMcpServer.invocationCount(client) - before).isEqualTo(1);
+        assertThat(modelCalls).hasValue(2);
+        cache.close();
+    }
+
+    @Test
+    void reportsFastPathLatency() {
+        McpClientService service = service(countingModel(), properties(true));
+        List<String> commands = List.of("what's the uptime", "show me the system info",
+                "which processes use the most memory", "what ports are open");
+        commands.forEach(service::answerLocally);
+
+        for (String command : commands) {
+            long start = System.nanoTime();
+            assertThat(service.answerLocally(command)).isPresent();
+            System.out.printf("Fast path \"%s\": %.2f ms%n", command, (System.nanoTime() - start) / 1e6);
+        }
+    }
+
+    @Test
+    @EnabledIfEnvironmentVariable(named = "OPENAI_API_KEY", matches = ".+")
+    void comparesFastPathWithModelRoundTrip() {
+        OpenAiChatModel openAi = OpenAiChatModel.builder()
+                .openAiApi(OpenAiApi.builder().apiKey(System.getenv("OPENAI_API_KEY")).build())
+                .build();
+        // Cache off so both paths really query the server
+        McpClientService service = service(openAi, new ToolProperties(
+                new ToolProperties.Cache(false, 256, Duration.ZERO, Map.of()),
+                new ToolProperties.FastPath(true, 0.6, 0.2),
+                new ToolProperties.Parallel(true, 4),
+                new ToolProperties.Compaction(true, 25, 160, 1024),
+                new ToolProperties.Coalescing(true)));
+        String command = "Computer, what's the system uptime?";
+
+        long start = System.nanoTime();
+        String local = service.answerLocally(command).orElseThrow();
+        Duration fast = Duration.ofNanos(System.nanoTime() - start);
+
+        start = System.nanoTime();
+        String model = service.askModel(command);
+        Duration slow = Duration.ofNanos(System.nanoTime() - start);
+
+        System.out.printf("Fast path %d ms: %s%nModel path %d ms: %s%n", fast.toMillis(), local, slow.toMillis(), model);
+        assertThat(fast).isLessThan(slow);
+    }
+
+    private McpClientService service(ChatModel chatModel, ToolProperties properties) {
+        return new McpClientService(chatModel, new SyncMcpToolCallbackProvider(client), List.of(client), properties);
+    }
+
+    /**
+     * Without the tool result cache, so every query and replay reaches the server.
+     */
+    private McpClientService persistentService(ChatModel chatModel, PersistentCache cache) {
+        ToolProperties properties = new ToolProperties(
+                new ToolProperties.Cache(false, 256, Duration.ZERO, Map.of()),
+                new ToolProperties.FastPath(false, 0.6, 0.2),
+                new ToolProperties.Parallel(true, 4),
+                new ToolProperties.Compaction(true, 25, 160, 1024),
+                new ToolProperties.Coalescing(true));
+        return new McpClientService(chatModel, new SyncMcpToolCallbackProvider(client), List.of(client),
+                properties, null, null, cache, PipelineMetrics.local());
+    }
+
+    private ChatModel countingModel() {
+        return new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                modelCalls.incrementAndGet();
+                return new ChatResponse(List.of(new Generation(new AssistantMessage("model answer"))));
+            }
+        };
+    }
+
+    /**
+     * Runs {@code sql} through the osquery tool the way the model would, with
+     * the prompt's tool context, and answers with the result.
+     */
+    private ChatModel toolCallingModel(String sql) {
+        return new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                modelCalls.incrementAndGet();
+                ToolCallingChatOptions options = (ToolCallingChatOptions) prompt.getOptions();
+                ToolCallback osquery = options.getToolCallbacks().stream()
+                        .filter(tool -> tool.getToolDefinition().name().endsWith("executeOsquery"))
+                        .findFirst()
+                        .orElseThrow();
+                String result = osquery.call("{\"sql\": \"" + sql + "\"}", new ToolContext(options.getToolContext()));
+                return new ChatResponse(List.of(new Generation(new AssistantMessage("model answer: " + result))));
+            }
+        };
+    }
+
+    /**
+     * Emits each token as its own chunk: the first after {@code firstDelay},
+     * then one every {@code interval}.
+     */
+    private static ChatModel streamingModel(List<String> tokens, Duration firstDelay, Duration interval) {
+        return new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                return new ChatResponse(List.of(new Generation(new AssistantMessage(String.join("", tokens)))));
+            }
+
+            @Override
+            public Flux<ChatResponse> stream(Prompt prompt) {
+                return Flux.fromIterable(tokens)
+                        .delayElements(interval)
+                        .delaySubscription(firstDelay.minus(interval))
+                        .map(token -> new ChatResponse(List.of(new Generation(new AssistantMessage(token)))));
+            }
+        };
+    }
+
+    private static ToolProperties properties(boolean fastPath) {
+        return new ToolProperties(
+                new ToolProperties.Cache(true, 256, Duration.ZERO, Map.of()),
+                new ToolProperties.FastPath(fastPath, 0.6, 0.2),
+                new ToolProperties.Parallel(true, 4),
+                new ToolProperties.Compaction(true, 25, 160, 1024),
+                new ToolProperties.Coalescing(true));
+    }
+}
@@ -2,6 +2,7 @@ package com.kousenit.starfleetvoiceinterface;
 
 import io.modelcontextprotocol.client.McpSyncClient;
 import io.modelcontextprotocol.spec.McpSchema;
+import org.junit.jupiter.api.AfterAll;
 import org.junit.jupiter.api.Test;
 import org.springframework.ai.chat.client.ChatClient;
 import org.springframework.ai.mcp.SyncMcpToolCallbackProvider;
@@ -9,8 +10,13 @@ import org.springframework.ai.openai.OpenAiChatModel;
 import org.springframework.ai.tool.ToolCallback;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.DynamicPropertyRegistry;
+import org.springframework.test.context.DynamicPropertySource;
 import org.springframework.test.context.TestPropertySource;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 
@@ -24,6 +30,26 @@ import static org.assertj.core.api.Assertions.assertThat;
 })
 class McpConnectionTest {
 
+    // The app's OpenAI and osquery connections, pointed at local stand-ins: no key or jar needed
+    private static final OpenAiStandIn openAi = startOpenAi();
+
+    @DynamicPropertySource
+    static void offline(DynamicPropertyRegistry registry) {
+        String connection = "spring.ai.mcp.client.stdio.connections.osquery.";
+        registry.add("spring.ai.openai.api-key", () -> "offline");
+        registry.add("spring.ai.openai.base-url", openAi::baseUrl);
+        registry.add(connection + "command",
+                () -> Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        registry.add(connection + "args[0]", () -> "-cp");
+        registry.add(connection + "args[1]", () -> System.getProperty("java.class.path"));
+        registry.add(connection + "args[2]", StubOsqueryMcpServer.class::getName);
+    }
+
+    @AfterAll
+    static void stopOpenAi() {
+        openAi.close();
+    }
+
     @Autowired(required = false)
     private List<McpSyncClient> mcpClients;
 
@@ -125,4 +151,12 @@ class McpConnectionTest {
 
         System.out.println("Chat response: " + response);
     }
-}
\ No newline at end of file
+
+    private static OpenAiStandIn startOpenAi() {
+        try {
+            return OpenAiStandIn.start();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
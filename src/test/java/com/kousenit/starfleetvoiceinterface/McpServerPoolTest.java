@@ -0,0 +1,209 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import io.modelcontextprotocol.client.McpSyncClient;
+import io.modelcontextprotocol.spec.McpSchema;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.tool.ToolCallback;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.BooleanSupplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class McpServerPoolTest {
+
+    private static final Duration HEALTH_CHECK_TIMEOUT = Duration.ofMillis(500);
+
+    private McpServerPool pool;
+
+    @AfterEach
+    void closePool() {
+        if (pool != null) {
+            pool.close();
+        }
+    }
+
+    @Test
+    void startsEveryServerUpFront() {
+        pool = pool(3, Duration.ZERO);
+        pool.start();
+
+        assertThat(pool.healthy()).isEqualTo(3);
+        Set<Long> pids = new HashSet<>();
+        for (int i = 0; i < pool.size(); i++) {
+            pids.add(StubOsqueryMcpServer.pid(pool.client(i)));
+        }
+        assertThat(pids).hasSize(3);
+    }
+
+    @Test
+    void spreadsConcurrentCallsAcrossServers() throws Exception {
+        Duration latency = Duration.ofMillis(300);
+        pool = pool(3, latency);
+        pool.start();
+
+        Set<Long> pids = new HashSet<>();
+        long start = System.nanoTime();
+        try (ExecutorService callers = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<Long>> calls = new ArrayList<>();
+            for (int i = 0; i < 3; i++) {
+                calls.add(callers.submit(() -> pool.call(client -> {
+                    client.callTool(new McpSchema.CallToolRequest("executeOsquery",
+                            Map.of("sql", "SELECT days FROM uptime")));
+                    return StubOsqueryMcpServer.pid(client);
+                })));
+            }
+            for (Future<Long> call : calls) {
+                pids.add(call.get());
+            }
+        }
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+
+        System.out.printf("3 concurrent %d ms calls on 3 servers took %d ms%n", latency.toMillis(), elapsed.toMillis());
+        assertThat(pids).hasSize(3);
+        assertThat(elapsed).isLessThan(latency.multipliedBy(2));
+    }
+
+    @Test
+    void restartsACrashedServer() throws Exception {
+        pool = pool(2, Duration.ZERO);
+        pool.start();
+        McpSyncClient crashed = pool.client(0);
+        long crashedPid = StubOsqueryMcpServer.pid(crashed);
+
+        StubOsqueryMcpServer.text(crashed, "exit");
+        Thread.sleep(500);
+        pool.checkHealth();
+
+        awaitTrue(() -> pool.client(0) != null && pool.client(0) != crashed);
+        assertThat(StubOsqueryMcpServer.pid(pool.client(0))).isNotEqualTo(crashedPid);
+        assertThat(pool.restarts()).isEqualTo(1);
+    }
+
+    @Test
+    void callsKeepWorkingWhileAServerIsUnresponsive() throws Exception {
+        pool = pool(2, Duration.ZERO);
+        pool.start();
+        McpSyncClient frozen = pool.client(0);
+
+        StubOsqueryMcpServer.text(frozen, "freeze");
+        Thread.sleep(500);
+        pool.checkHealth();
+
+        // Server 0 is out of rotation until its replacement is up
+        for (int i = 0; i < 10; i++) {
+            assertThat(pool.call(client -> {
+                assertThat(client).isNotSameAs(frozen);
+                return StubOsqueryMcpServer.invocationCount(client);
+            })).isNotNegative();
+        }
+        awaitTrue(() -> pool.healthy() == 2);
+        assertThat(pool.restarts()).isEqualTo(1);
+    }
+
+    @Test
+    void retriesOnAnotherServerWhenACallBreaks() {
+        pool = pool(2, Duration.ZERO);
+        pool.start();
+        List<McpSyncClient> used = new ArrayList<>();
+        AtomicInteger attempts = new AtomicInteger();
+
+        String result = pool.call(client -> {
+            used.add(client);
+            if (attempts.getAndIncrement() == 0) {
+                throw new IllegalStateException("Broken pipe");
+            }
+            return "answered";
+        });
+
+        assertThat(result).isEqualTo("answered");
+        assertThat(used).hasSize(2).doesNotHaveDuplicates();
+        assertThat(pool.restarts()).isEqualTo(1);
+    }
+
+    @Test
+    void aCancelledCallLeavesItsServerRunning() throws Exception {
+        pool = pool(2, Duration.ofSeconds(2));
+        pool.start();
+        AtomicReference<RuntimeException> failure = new AtomicReference<>();
+
+        Thread caller = Thread.ofVirtual().start(() -> {
+            try {
+                pool.call(client -> client.callTool(new McpSchema.CallToolRequest("executeOsquery",
+                        Map.of("sql", "SELECT days FROM uptime"))));
+            } catch (RuntimeException e) {
+                failure.set(e);
+            }
+        });
+        Thread.sleep(300);
+        caller.interrupt();
+        caller.join(Duration.ofSeconds(5));
+
+        assertThat(caller.isAlive()).isFalse();
+        assertThat(failure.get()).isNotNull();
+        assertThat(pool.restarts()).isZero();
+        assertThat(pool.healthy()).isEqualTo(2);
+    }
+
+    @Test
+    void toolCallbacksKeepTheSpringAiNamesAndUseThePool() {
+        pool = pool(2, Duration.ZERO);
+        pool.start();
+
+        ToolCallback osquery = Arrays.stream(pool.toolCallbacks())
+                .filter(callback -> callback.getToolDefinition().name()
+                        .equals("spring_ai_mcp_client_osquery_executeOsquery"))
+                .findFirst()
+                .orElseThrow();
+
+        assertThat(osquery.call("{\"sql\": \"SELECT days, hours, minutes FROM uptime\"}"))
+                .contains("\\\"days\\\":\\\"3\\\"");
+    }
+
+    @Test
+    void aToolListChangeListsTheToolsAgain() throws Exception {
+        ToolListChanges changes = new ToolListChanges();
+        pool = pool(1, Duration.ZERO, changes);
+        pool.start();
+        assertThat(names(pool.toolCallbacks())).noneMatch(name -> name.endsWith("extra1"));
+
+        StubOsqueryMcpServer.text(pool.client(0), "addTool");
+        awaitTrue(() -> changes.version() > 0);
+
+        assertThat(names(pool.toolCallbacks())).anyMatch(name -> name.endsWith("extra1"));
+    }
+
+    private static McpServerPool pool(int size, Duration latency) {
+        return pool(size, latency, null);
+    }
+
+    private static McpServerPool pool(int size, Duration latency, ToolListChanges changes) {
+        return new McpServerPool("osquery", size,
+                (index, onToolsChanged) -> StubOsqueryMcpServer.start(latency, onToolsChanged), changes,
+                Duration.ofHours(1), HEALTH_CHECK_TIMEOUT, Duration.ofSeconds(10));
+    }
+
+    private static List<String> names(ToolCallback[] callbacks) {
+        return Arrays.stream(callbacks).map(callback -> callback.getToolDefinition().name()).toList();
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(20).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met in time").isLessThan(deadline);
+            Thread.sleep(50);
+        }
+    }
+}
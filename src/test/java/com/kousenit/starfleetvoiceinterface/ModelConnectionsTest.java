@@ -0,0 +1,323 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import com.kousenit.starfleetvoiceinterface.config.HttpProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.web.client.RestClient;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import javax.net.ssl.KeyManagerFactory;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLServerSocket;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.TrustManagerFactory;
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.security.KeyStore;
+import java.time.Duration;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ModelConnectionsTest {
+
+    private static final String PASSWORD = "changeit";
+
+    // Two round trips to a distant endpoint, spent before the TLS handshake
+    private static final Duration NETWORK_DELAY = Duration.ofMillis(150);
+
+    private static KeyStore keyStore;
+
+    private TlsStandIn server;
+    private ModelConnections connections;
+
+    @BeforeAll
+    static void createCertificate(@TempDir Path directory) throws Exception {
+        Path file = directory.resolve("localhost.p12");
+        Process keytool = new ProcessBuilder(
+                Path.of(System.getProperty("java.home"), "bin", "keytool").toString(),
+                "-genkeypair", "-alias", "localhost", "-keyalg", "EC", "-groupname", "secp256r1",
+                "-dname", "CN=localhost", "-ext", "SAN=dns:localhost,ip:127.0.0.1", "-validity", "2",
+                "-storetype", "PKCS12", "-keystore", file.toString(),
+                "-storepass", PASSWORD, "-keypass", PASSWORD)
+                .redirectErrorStream(true)
+                .start();
+        keytool.getInputStream().transferTo(OutputStream.nullOutputStream());
+        assertThat(keytool.waitFor(30, TimeUnit.SECONDS)).isTrue();
+        keyStore = KeyStore.getInstance(file.toFile(), PASSWORD.toCharArray());
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        if (connections != null) {
+            connections.shutdown();
+        }
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    @Test
+    void transcriptionChatAndStreamingShareOneConnection() throws Exception {
+        server = new TlsStandIn(Duration.ZERO);
+        connections = new ModelConnections(properties(), List.of(server.uri()), clientContext());
+        RestClient.Builder restBuilder = RestClient.builder();
+        connections.customize(restBuilder);
+        RestClient rest = restBuilder.baseUrl(server.uri().toString()).build();
+        WebClient.Builder webBuilder = WebClient.builder();
+        connections.customize(webBuilder);
+        WebClient web = webBuilder.baseUrl(server.uri().toString()).build();
+
+        for (int i = 0; i < 10; i++) {
+            rest.post().uri("/v1/audio/transcriptions").body("audio " + i).retrieve().body(String.class);
+            rest.post().uri("/v1/chat/completions").body("{\"n\":" + i + "}").retrieve().body(String.class);
+        }
+        String streamed = web.post().uri("/v1/chat/completions").bodyValue("{\"stream\":true}")
+                .retrieve().bodyToMono(String.class).block(Duration.ofSeconds(10));
+
+        System.out.printf(Locale.ROOT, "%d requests over %d connection(s): %d reused, handshake %.1f ms%n",
+                server.requests(), server.connections(), server.requests() - server.connections(),
+                server.handshakeMillis());
+        assertThat(streamed).isEqualTo("{\"ok\":true}");
+        assertThat(server.requests()).isEqualTo(21);
+        assertThat(server.connections()).isEqualTo(1);
+    }
+
+    @Test
+    void theFirstRequestAfterPrimingReusesThePrimedConnection() throws Exception {
+        server = new TlsStandIn(NETWORK_DELAY);
+        connections = new ModelConnections(properties(), List.of(server.uri()), clientContext());
+
+        connections.prime().get(10, TimeUnit.SECONDS);
+        int primedConnections = server.connections();
+        firstRequestMillis(connections);
+
+        assertThat(primedConnections).isEqualTo(1);
+        assertThat(server.connections()).isEqualTo(primedConnections);
+        assertThat(server.heads()).isEqualTo(1);
+        assertThat(server.requests()).isEqualTo(2);
+    }
+
+    /**
+     * The latency the prime saves, against a stand-in a network delay away.
+     * Wall-clock bounds, so it runs with {@code soakSmokeTest}.
+     */
+    @Tag("soak")
+    @Test
+    void primingTakesTheHandshakeOffTheFirstRequest() throws Exception {
+        server = new TlsStandIn(NETWORK_DELAY);
+
+        connections = new ModelConnections(properties(), List.of(server.uri()), clientContext());
+        long cold = firstRequestMillis(connections);
+        connections.shutdown();
+
+        connections = new ModelConnections(properties(), List.of(server.uri()), clientContext());
+        connections.prime().get(10, TimeUnit.SECONDS);
+        long primed = firstRequestMillis(connections);
+
+        System.out.printf(Locale.ROOT, "first request: cold %d ms, primed %d ms (handshake %.1f ms + %d ms network)%n",
+                cold, primed, server.handshakeMillis(), NETWORK_DELAY.toMillis());
+        assertThat(cold).isGreaterThanOrEqualTo(NETWORK_DELAY.toMillis());
+        assertThat(primed).isLessThan(NETWORK_DELAY.toMillis());
+    }
+
+    @Test
+    void primesOnceWhileAPrimeIsUnderWay() throws Exception {
+        server = new TlsStandIn(NETWORK_DELAY);
+        connections = new ModelConnections(properties(), List.of(server.uri()), clientContext());
+
+        CompletableFuture<Void> first = connections.prime();
+        CompletableFuture<Void> second = connections.prime();
+        first.get(10, TimeUnit.SECONDS);
+
+        assertThat(second).isSameAs(first);
+        assertThat(server.heads()).isEqualTo(1);
+        connections.prime().get(10, TimeUnit.SECONDS);
+        assertThat(server.heads()).isEqualTo(2);
+        assertThat(server.connections()).isEqualTo(1);
+    }
+
+    @Test
+    void primingCanBeTurnedOff() throws Exception {
+        server = new TlsStandIn(Duration.ZERO);
+        HttpProperties off = new HttpProperties(true, Duration.ofSeconds(5), Duration.ofMinutes(5), 8,
+                new HttpProperties.Prime(false, Duration.ofSeconds(10)));
+        connections = new ModelConnections(off, List.of(server.uri()), clientContext());
+
+        connections.prime().get(10, TimeUnit.SECONDS);
+
+        assertThat(server.connections()).isZero();
+    }
+
+    @Test
+    void primesEachModelHostOnce() {
+        MockEnvironment sameHost = new MockEnvironment()
+                .withProperty("spring.ai.openai.chat.base-url", "https://api.openai.com/v1beta");
+        MockEnvironment separateTranscription = new MockEnvironment()
+                .withProperty("spring.ai.openai.base-url", "https://gateway.example:8443/openai")
+                .withProperty("spring.ai.openai.audio.transcription.base-url", "http://whisper.local:9000");
+
+        assertThat(ModelConnections.endpoints(sameHost)).containsExactly(URI.create("https://api.openai.com/"));
+        assertThat(ModelConnections.endpoints(separateTranscription)).containsExactly(
+                URI.create("http://whisper.local:9000/"), URI.create("https://gateway.example:8443/"));
+    }
+
+    private long firstRequestMillis(ModelConnections modelConnections) {
+        RestClient.Builder builder = RestClient.builder();
+        modelConnections.customize(builder);
+        long start = System.nanoTime();
+        builder.build().post().uri(server.uri().resolve("/v1/chat/completions"))
+                .body("{}").retrieve().body(String.class);
+        return Duration.ofNanos(System.nanoTime() - start).toMillis();
+    }
+
+    private static HttpProperties properties() {
+        return new HttpProperties(true, Duration.ofSeconds(5), Duration.ofMinutes(5), 8,
+                new HttpProperties.Prime(true, Duration.ofSeconds(10)));
+    }
+
+    private static SSLContext clientContext() throws Exception {
+        TrustManagerFactory trust = TrustManagerFactory.getInstance(TrustManagerFactory.getDefaultAlgorithm());
+        trust.init(keyStore);
+        SSLContext context = SSLContext.getInstance("TLS");
+        context.init(null, trust.getTrustManagers(), null);
+        return context;
+    }
+
+    /**
+     * A minimal HTTPS/1.1 server with keep-alive that counts the connections
+     * it accepts and the requests on them, and answers every request with a
+     * small JSON body. Each new connection waits {@code networkDelay} before
+     * its handshake, like the round trips to a distant endpoint.
+     */
+    private static final class TlsStandIn implements AutoCloseable {
+
+        private final SSLServerSocket socket;
+        private final Duration networkDelay;
+        private final AtomicInteger connections = new AtomicInteger();
+        private final AtomicInteger requests = new AtomicInteger();
+        private final AtomicInteger heads = new AtomicInteger();
+        private final AtomicLong handshakeNanos = new AtomicLong();
+
+        TlsStandIn(Duration networkDelay) throws Exception {
+            KeyManagerFactory keys = KeyManagerFactory.getInstance(KeyManagerFactory.getDefaultAlgorithm());
+            keys.init(keyStore, PASSWORD.toCharArray());
+            SSLContext context = SSLContext.getInstance("TLS");
+            context.init(keys.getKeyManagers(), null, null);
+            this.socket = (SSLServerSocket) context.getServerSocketFactory()
+                    .createServerSocket(0, 50, InetAddress.getLoopbackAddress());
+            this.networkDelay = networkDelay;
+            Thread.ofPlatform().daemon().name("tls-stand-in").start(this::accept);
+        }
+
+        URI uri() {
+            return URI.create("https://localhost:" + socket.getLocalPort() + "/");
+        }
+
+        int connections() {
+            return connections.get();
+        }
+
+        int requests() {
+            return requests.get();
+        }
+
+        int heads() {
+            return heads.get();
+        }
+
+        /**
+         * Mean TLS handshake time per connection, as the server saw it.
+         */
+        double handshakeMillis() {
+            int count = connections.get();
+            return count == 0 ? 0 : handshakeNanos.get() / 1e6 / count;
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+
+        private void accept() {
+            while (!socket.isClosed()) {
+                try {
+                    SSLSocket client = (SSLSocket) socket.accept();
+                    client.setTcpNoDelay(true);
+                    Thread.ofVirtual().start(() -> serve(client));
+                } catch (IOException e) {
+                    return;
+                }
+            }
+        }
+
+        private void serve(SSLSocket client) {
+            try (client) {
+                Thread.sleep(networkDelay);
+                long start = System.nanoTime();
+                client.startHandshake();
+                handshakeNanos.addAndGet(System.nanoTime() - start);
+                connections.incrementAndGet();
+
+                InputStream in = new BufferedInputStream(client.getInputStream());
+                OutputStream out = client.getOutputStream();
+                String requestLine;
+                while ((requestLine = line(in)) != null && !requestLine.isEmpty()) {
+                    int contentLength = 0;
+                    for (String header = line(in); header != null && !header.isEmpty(); header = line(in)) {
+                        if (header.toLowerCase(Locale.ROOT).startsWith("content-length:")) {
+                            contentLength = Integer.parseInt(header.substring(15).trim());
+                        }
+                    }
+                    in.readNBytes(contentLength);
+                    requests.incrementAndGet();
+
+                    boolean head = requestLine.startsWith("HEAD ");
+                    if (head) {
+                        heads.incrementAndGet();
+                    }
+                    byte[] body = "{\"ok\":true}".getBytes(StandardCharsets.UTF_8);
+                    ByteArrayOutputStream response = new ByteArrayOutputStream();
+                    response.writeBytes(("HTTP/1.1 200 OK\r\nContent-Type: application/json\r\nContent-Length: "
+                            + body.length + "\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1));
+                    if (!head) {
+                        response.writeBytes(body);
+                    }
+                    // One write: headers and body in separate TLS records would wait on delayed ACKs
+                    response.writeTo(out);
+                    out.flush();
+                }
+            } catch (IOException | InterruptedException e) {
+                // The client closed the connection, or the test is over
+            }
+        }
+
+        private static String line(InputStream in) throws IOException {
+            ByteArrayOutputStream line = new ByteArrayOutputStream();
+            int b;
+            while ((b = in.read()) >= 0) {
+                if (b == '\n') {
+                    return line.toString(StandardCharsets.ISO_8859_1).stripTrailing();
+                }
+                line.write(b);
+            }
+            return line.size() == 0 ? null : line.toString(StandardCharsets.ISO_8859_1);
+        }
+    }
+}
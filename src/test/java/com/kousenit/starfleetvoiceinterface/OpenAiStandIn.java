@@ -0,0 +1,485 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.springframework.boot.convert.DurationStyle;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Stand-in for the two OpenAI endpoints the voice pipeline calls, on a local
+ * port: {@code /v1/audio/transcriptions} and {@code /v1/chat/completions},
+ * plain and streamed. Point the Spring AI clients' base URL at
+ * {@link #baseUrl()} and no key or network is needed.
+ * <p>
+ * A transcription answers with the text {@linkplain #transcript registered}
+ * for the uploaded audio, matched on the WAV's sample data, or the default.
+ * A chat completion follows a {@link ChatScript}: the first turn asks for
+ * the osquery tool with the script's queries, and once the tool results are
+ * in the conversation it answers from them. Every request takes a delay
+ * drawn from its endpoint's {@link Latency}.
+ */
+class OpenAiStandIn implements AutoCloseable {
+
+    private static final ObjectMapper mapper = new ObjectMapper();
+
+    private static final Pattern BOUNDARY = Pattern.compile("boundary=\"?([^\";]+)\"?");
+
+    private final HttpServer server;
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final Latency transcriptionLatency;
+    private final Latency chatLatency;
+    private final ChatScript script;
+    private final Map<String, String> transcripts = new ConcurrentHashMap<>();
+    private final AtomicInteger transcriptionRequests = new AtomicInteger();
+    private final AtomicInteger chatRequests = new AtomicInteger();
+    private final AtomicLong callIds = new AtomicLong();
+    private volatile String defaultTranscript = "Computer, status report.";
+
+    OpenAiStandIn(Latency transcriptionLatency, Latency chatLatency, ChatScript script) throws IOException {
+        this.transcriptionLatency = transcriptionLatency;
+        this.chatLatency = chatLatency;
+        this.script = script;
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.setExecutor(executor);
+        server.createContext("/v1/audio/transcriptions", this::transcription);
+        server.createContext("/v1/chat/completions", this::chatCompletion);
+        server.start();
+    }
+
+    /**
+     * A stand-in that answers at once, with the {@link ChatScript#OSQUERY} script.
+     */
+    static OpenAiStandIn start() throws IOException {
+        return new OpenAiStandIn(Latency.NONE, Latency.NONE, ChatScript.OSQUERY);
+    }
+
+    /**
+     * The base URL for the OpenAI clients, without the {@code /v1} path.
+     */
+    String baseUrl() {
+        return "http://localhost:" + server.getAddress().getPort();
+    }
+
+    /**
+     * Transcribes uploads of exactly these 16-bit samples as {@code text}.
+     */
+    void transcript(byte[] pcm, String text) {
+        transcripts.put(digest(pcm, 0, pcm.length), text);
+    }
+
+    /**
+     * The transcript of audio nothing was registered for.
+     */
+    void defaultTranscript(String text) {
+        this.defaultTranscript = text;
+    }
+
+    int transcriptionCount() {
+        return transcriptionRequests.get();
+    }
+
+    int chatCount() {
+        return chatRequests.get();
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+
+    private void transcription(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            transcriptionRequests.incrementAndGet();
+            Map<String, byte[]> form = multipart(exchange);
+            byte[] file = form.get("file");
+            if (file == null) {
+                send(exchange, 400, "application/json", "{\"error\":{\"message\":\"No file\"}}");
+                return;
+            }
+            transcriptionLatency.pause();
+            String text = transcripts.getOrDefault(audioDigest(file), defaultTranscript);
+            String format = form.containsKey("response_format")
+                    ? new String(form.get("response_format"), StandardCharsets.UTF_8).trim()
+                    : "json";
+            if (format.equals("text")) {
+                send(exchange, 200, "text/plain", text + "\n");
+            } else {
+                send(exchange, 200, "application/json",
+                        mapper.writeValueAsString(Map.of("text", text)));
+            }
+        }
+    }
+
+    private void chatCompletion(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            chatRequests.incrementAndGet();
+            JsonNode request = mapper.readTree(exchange.getRequestBody());
+            String command = "";
+            List<String> toolResults = new ArrayList<>();
+            for (JsonNode message : request.path("messages")) {
+                switch (message.path("role").asText()) {
+                    case "user" -> {
+                        command = text(message.path("content"));
+                        toolResults.clear();
+                    }
+                    case "tool" -> toolResults.add(text(message.path("content")));
+                    default -> {
+                    }
+                }
+            }
+            String tool = osqueryTool(request.path("tools"));
+            List<String> queries = toolResults.isEmpty() && tool != null ? script.queries(command) : List.of();
+            String answer = queries.isEmpty() ? script.answer(command, toolResults) : null;
+
+            chatLatency.pause();
+            String model = request.path("model").asText("gpt-4o-mini");
+            if (request.path("stream").asBoolean(false)) {
+                stream(exchange, model, tool, queries, answer);
+            } else {
+                send(exchange, 200, "application/json",
+                        mapper.writeValueAsString(completion(model, tool, queries, answer)));
+            }
+        }
+    }
+
+    private ObjectNode completion(String model, String tool, List<String> queries, String answer) {
+        ObjectNode message = mapper.createObjectNode().put("role", "assistant");
+        if (answer != null) {
+            message.put("content", answer);
+        } else {
+            message.putNull("content");
+            message.set("tool_calls", toolCalls(tool, queries));
+        }
+        ObjectNode choice = mapper.createObjectNode().put("index", 0);
+        choice.set("message", message);
+        choice.put("finish_reason", answer != null ? "stop" : "tool_calls");
+
+        ObjectNode completion = envelope(completionId(), "chat.completion", model);
+        completion.putArray("choices").add(choice);
+        int completionTokens = answer != null ? answer.length() / 4 + 1 : 20 * queries.size();
+        completion.putObject("usage")
+                .put("prompt_tokens", 100)
+                .put("completion_tokens", completionTokens)
+                .put("total_tokens", 100 + completionTokens);
+        return completion;
+    }
+
+    /**
+     * Server-sent chunks: the tool calls whole in one delta, or the answer
+     * a word at a time, then the finish reason and {@code [DONE]}.
+     */
+    private void stream(HttpExchange exchange, String model, String tool, List<String> queries, String answer)
+            throws IOException {
+        exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+        exchange.sendResponseHeaders(200, 0);
+        OutputStream body = exchange.getResponseBody();
+        String id = completionId();
+        if (answer == null) {
+            ObjectNode delta = mapper.createObjectNode().put("role", "assistant");
+            delta.set("tool_calls", toolCalls(tool, queries));
+            event(body, chunk(id, model, delta, null));
+        } else {
+            Matcher word = Pattern.compile("\\S+\\s*").matcher(answer);
+            boolean first = true;
+            while (word.find()) {
+                ObjectNode delta = mapper.createObjectNode();
+                if (first) {
+                    delta.put("role", "assistant");
+                    first = false;
+                }
+                delta.put("content", word.group());
+                event(body, chunk(id, model, delta, null));
+            }
+        }
+        event(body, chunk(id, model, mapper.createObjectNode(), answer != null ? "stop" : "tool_calls"));
+        body.write("data: [DONE]\n\n".getBytes(StandardCharsets.UTF_8));
+        body.flush();
+    }
+
+    private ObjectNode chunk(String id, String model, ObjectNode delta, String finishReason) {
+        ObjectNode choice = mapper.createObjectNode().put("index", 0);
+        choice.set("delta", delta);
+        if (finishReason != null) {
+            choice.put("finish_reason", finishReason);
+        } else {
+            choice.putNull("finish_reason");
+        }
+        ObjectNode chunk = envelope(id, "chat.completion.chunk", model);
+        chunk.putArray("choices").add(choice);
+        return chunk;
+    }
+
+    private ArrayNode toolCalls(String tool, List<String> queries) {
+        ArrayNode calls = mapper.createArrayNode();
+        for (int i = 0; i < queries.size(); i++) {
+            ObjectNode call = calls.addObject()
+                    .put("index", i)
+                    .put("id", "call_" + callIds.incrementAndGet())
+                    .put("type", "function");
+            call.putObject("function")
+                    .put("name", tool)
+                    .put("arguments", mapper.createObjectNode().put("sql", queries.get(i)).toString());
+        }
+        return calls;
+    }
+
+    private String completionId() {
+        return "chatcmpl-" + callIds.incrementAndGet();
+    }
+
+    private ObjectNode envelope(String id, String object, String model) {
+        return mapper.createObjectNode()
+                .put("id", id)
+                .put("object", object)
+                .put("created", System.currentTimeMillis() / 1000)
+                .put("model", model);
+    }
+
+    private static void event(OutputStream body, ObjectNode data) throws IOException {
+        body.write(("data: " + data + "\n\n").getBytes(StandardCharsets.UTF_8));
+        body.flush();
+    }
+
+    private static String osqueryTool(JsonNode tools) {
+        for (JsonNode tool : tools) {
+            String name = tool.path("function").path("name").asText();
+            if (name.endsWith("executeOsquery")) {
+                return name;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Message content as text, whether a string or an array of text parts.
+     */
+    private static String text(JsonNode content) {
+        if (!content.isArray()) {
+            return content.asText();
+        }
+        StringBuilder text = new StringBuilder();
+        content.forEach(part -> text.append(part.path("text").asText()));
+        return text.toString();
+    }
+
+    private static void send(HttpExchange exchange, int status, String contentType, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", contentType);
+        exchange.sendResponseHeaders(status, bytes.length);
+        exchange.getResponseBody().write(bytes);
+    }
+
+    /**
+     * The parts of a {@code multipart/form-data} body by field name.
+     */
+    private static Map<String, byte[]> multipart(HttpExchange exchange) throws IOException {
+        String contentType = exchange.getRequestHeaders().getFirst("Content-Type");
+        Matcher boundary = BOUNDARY.matcher(contentType == null ? "" : contentType);
+        byte[] body = exchange.getRequestBody().readAllBytes();
+        Map<String, byte[]> parts = new HashMap<>();
+        if (!boundary.find()) {
+            return parts;
+        }
+        byte[] delimiter = ("--" + boundary.group(1)).getBytes(StandardCharsets.ISO_8859_1);
+        byte[] headerEnd = "\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+        int start = indexOf(body, delimiter, 0);
+        while (start >= 0) {
+            int headersStart = start + delimiter.length + 2;
+            int contentStart = indexOf(body, headerEnd, headersStart);
+            int next = indexOf(body, delimiter, headersStart);
+            if (contentStart < 0 || next < 0) {
+                break;
+            }
+            String headers = new String(body, headersStart, contentStart - headersStart, StandardCharsets.ISO_8859_1);
+            Matcher name = Pattern.compile("name=\"([^\"]*)\"").matcher(headers);
+            if (name.find()) {
+                int from = contentStart + headerEnd.length;
+                // The CRLF in front of the next delimiter belongs to it
+                parts.put(name.group(1), Arrays.copyOfRange(body, from, Math.max(from, next - 2)));
+            }
+            start = next;
+        }
+        return parts;
+    }
+
+    private static int indexOf(byte[] haystack, byte[] needle, int from) {
+        outer:
+        for (int i = Math.max(0, from); i <= haystack.length - needle.length; i++) {
+            for (int j = 0; j < needle.length; j++) {
+                if (haystack[i + j] != needle[j]) {
+                    continue outer;
+                }
+            }
+            return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Digest of a WAV upload's sample data, or of the whole file if it has
+     * no {@code data} chunk.
+     */
+    private static String audioDigest(byte[] file) {
+        if (file.length >= 12 && new String(file, 0, 4, StandardCharsets.ISO_8859_1).equals("RIFF")) {
+            int offset = 12;
+            while (offset + 8 <= file.length) {
+                String id = new String(file, offset, 4, StandardCharsets.ISO_8859_1);
+                int size = file[offset + 4] & 0xFF | (file[offset + 5] & 0xFF) << 8
+                        | (file[offset + 6] & 0xFF) << 16 | (file[offset + 7] & 0xFF) << 24;
+                if (id.equals("data")) {
+                    int length = size < 0 ? file.length - offset - 8 : Math.min(size, file.length - offset - 8);
+                    return digest(file, offset + 8, length);
+                }
+                offset += 8 + size + (size & 1);
+            }
+        }
+        return digest(file, 0, file.length);
+    }
+
+    private static String digest(byte[] data, int offset, int length) {
+        try {
+            MessageDigest sha256 = MessageDigest.getInstance("SHA-256");
+            sha256.update(data, offset, length);
+            return HexFormat.of().formatHex(sha256.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * A request's delay: log-normal with the given median and 99th
+     * percentile, or fixed when the two are equal.
+     */
+    record Latency(Duration median, Duration p99) {
+
+        static final Latency NONE = fixed(Duration.ZERO);
+
+        // The standard normal's 99th percentile
+        private static final double Z99 = 2.3263;
+
+        Latency {
+            if (p99.compareTo(median) < 0) {
+                throw new IllegalArgumentException("p99 " + p99 + " is below the median " + median);
+            }
+        }
+
+        static Latency fixed(Duration latency) {
+            return new Latency(latency, latency);
+        }
+
+        /**
+         * Parses {@code 300ms} (fixed) or {@code 300ms..1200ms} (median..p99).
+         */
+        static Latency parse(String text) {
+            String[] bounds = text.trim().split("\\.\\.");
+            Duration median = DurationStyle.detectAndParse(bounds[0].trim());
+            return bounds.length == 1
+                    ? fixed(median)
+                    : new Latency(median, DurationStyle.detectAndParse(bounds[1].trim()));
+        }
+
+        Duration sample() {
+            if (median.equals(p99)) {
+                return median;
+            }
+            double sigma = Math.log((double) p99.toNanos() / median.toNanos()) / Z99;
+            double nanos = median.toNanos() * Math.exp(sigma * ThreadLocalRandom.current().nextGaussian());
+            return Duration.ofNanos((long) nanos);
+        }
+
+        void pause() {
+            Duration delay = sample();
+            if (delay.isZero()) {
+                return;
+            }
+            try {
+                Thread.sleep(delay);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        @Override
+        public String toString() {
+            return median.equals(p99)
+                    ? median.toMillis() + "ms"
+                    : median.toMillis() + "ms.." + p99.toMillis() + "ms";
+        }
+    }
+
+    /**
+     * What the stand-in model does with a command: the queries it asks the
+     * osquery tool for (none to answer straight away), then its answer from
+     * the results.
+     */
+    interface ChatScript {
+
+        /**
+         * Picks queries from keywords in the command, the way the real model
+         * mostly does, and answers by quoting the rows. A status report asks
+         * for two queries in one turn.
+         */
+        ChatScript OSQUERY = new ChatScript() {
+            @Override
+            public List<String> queries(String command) {
+                String lower = command.toLowerCase(Locale.ROOT);
+                if (lower.contains("status")) {
+                    return List.of("SELECT hostname, cpu_brand, physical_memory FROM system_info",
+                            "SELECT days, hours, minutes FROM uptime");
+                }
+                if (lower.contains("uptime")) {
+                    return List.of("SELECT days, hours, minutes FROM uptime");
+                }
+                if (lower.contains("ports")) {
+                    return List.of("SELECT DISTINCT p.name, l.port FROM listening_ports l "
+                            + "JOIN processes p USING (pid) WHERE l.port > 0");
+                }
+                if (lower.contains("process") || lower.contains("memory")) {
+                    return List.of("SELECT name, pid, resident_size FROM processes "
+                            + "ORDER BY resident_size DESC LIMIT 10");
+                }
+                return List.of("SELECT hostname, cpu_brand, physical_memory FROM system_info");
+            }
+
+            @Override
+            public String answer(String command, List<String> results) {
+                if (results.isEmpty()) {
+                    return "Aye, captain. Standing by.";
+                }
+                return "Aye, captain. Sensors report: " + String.join("; ", results);
+            }
+        };
+
+        List<String> queries(String command);
+
+        String answer(String command, List<String> results);
+    }
+}
@@ -0,0 +1,169 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import io.modelcontextprotocol.client.McpSyncClient;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.messages.AssistantMessage;
+import org.springframework.ai.chat.messages.Message;
+import org.springframework.ai.chat.messages.ToolResponseMessage;
+import org.springframework.ai.chat.messages.UserMessage;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.model.Generation;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.mcp.SyncMcpToolCallbackProvider;
+import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.model.tool.ToolCallingManager;
+import org.springframework.ai.model.tool.ToolExecutionResult;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+class ParallelToolCallingManagerTest {
+
+    private static final Duration LATENCY = Duration.ofMillis(300);
+
+    private static final List<String> QUERIES = List.of(
+            "SELECT name, pid, resident_size FROM processes ORDER BY resident_size DESC LIMIT 10",
+            "SELECT name, port FROM listening_ports",
+            "SELECT days, hours, minutes FROM uptime",
+            "SELECT hostname, cpu_brand, physical_memory FROM system_info");
+
+    private static McpSyncClient client;
+
+    private final ToolCallingManager sequential = ToolCallingManager.builder().build();
+    private final ParallelToolCallingManager parallel = new ParallelToolCallingManager(sequential, 4);
+
+    @BeforeAll
+    static void startServer() {
+        client = StubOsqueryMcpServer.start(LATENCY);
+    }
+
+    @AfterAll
+    static void stopServer() {
+        client.closeGracefully();
+    }
+
+    @AfterEach
+    void shutdown() {
+        parallel.shutdown();
+    }
+
+    @Test
+    void parallelCallsTakeAboutAsLongAsTheSlowest() {
+        ToolCallback osquery = Arrays.stream(new SyncMcpToolCallbackProvider(client).getToolCallbacks())
+                .filter(callback -> callback.getToolDefinition().name().endsWith("executeOsquery"))
+                .findFirst()
+                .orElseThrow();
+        Prompt prompt = prompt(osquery);
+        ChatResponse toolCalls = toolCalls(osquery.getToolDefinition().name(), QUERIES.stream()
+                .map(sql -> "{\"sql\": \"" + sql + "\"}")
+                .toList());
+        // Warm up the connection and both code paths
+        sequential.executeToolCalls(prompt, toolCalls);
+        parallel.executeToolCalls(prompt, toolCalls);
+
+        long start = System.nanoTime();
+        ToolExecutionResult one = sequential.executeToolCalls(prompt, toolCalls);
+        Duration sequentialTime = Duration.ofNanos(System.nanoTime() - start);
+
+        start = System.nanoTime();
+        ToolExecutionResult all = parallel.executeToolCalls(prompt, toolCalls);
+        Duration parallelTime = Duration.ofNanos(System.nanoTime() - start);
+
+        System.out.printf("%d osquery calls at %d ms each: sequential %d ms, parallel %d ms%n",
+                QUERIES.size(), LATENCY.toMillis(), sequentialTime.toMillis(), parallelTime.toMillis());
+
+        assertThat(responses(all)).isEqualTo(responses(one));
+        assertThat(all.conversationHistory()).hasSize(3);
+        assertThat(sequentialTime).isGreaterThanOrEqualTo(LATENCY.multipliedBy(QUERIES.size()));
+        assertThat(parallelTime).isGreaterThanOrEqualTo(LATENCY).isLessThan(LATENCY.multipliedBy(2));
+    }
+
+    @Test
+    void responsesKeepTheModelsOrder() {
+        // The first call is the slowest, so it finishes last
+        ToolCallback slow = sleepingTool("slow", Duration.ofMillis(200));
+        ToolCallback medium = sleepingTool("medium", Duration.ofMillis(100));
+        ToolCallback fast = sleepingTool("fast", Duration.ZERO);
+        ChatResponse toolCalls = new ChatResponse(List.of(new Generation(new AssistantMessage("", Map.of(), List.of(
+                new AssistantMessage.ToolCall("call-1", "function", "slow", "{}"),
+                new AssistantMessage.ToolCall("call-2", "function", "medium", "{}"),
+                new AssistantMessage.ToolCall("call-3", "function", "fast", "{}"))))));
+
+        ToolExecutionResult result = parallel.executeToolCalls(prompt(slow, medium, fast), toolCalls);
+
+        assertThat(responses(result))
+                .extracting(ToolResponseMessage.ToolResponse::id, ToolResponseMessage.ToolResponse::responseData)
+                .containsExactly(
+                        tuple("call-1", "slow"),
+                        tuple("call-2", "medium"),
+                        tuple("call-3", "fast"));
+    }
+
+    @Test
+    void singleCallIsLeftToTheDefaultManager() {
+        ToolCallback fast = sleepingTool("fast", Duration.ZERO);
+        ChatResponse toolCalls = new ChatResponse(List.of(new Generation(new AssistantMessage("", Map.of(),
+                List.of(new AssistantMessage.ToolCall("call-1", "function", "fast", "{}"))))));
+
+        ToolExecutionResult result = parallel.executeToolCalls(prompt(fast), toolCalls);
+
+        assertThat(responses(result)).extracting(ToolResponseMessage.ToolResponse::responseData)
+                .containsExactly("fast");
+    }
+
+    private static Prompt prompt(ToolCallback... callbacks) {
+        return new Prompt(List.of(new UserMessage("what's using memory and which ports are open")),
+                ToolCallingChatOptions.builder().toolCallbacks(callbacks).build());
+    }
+
+    private static ChatResponse toolCalls(String toolName, List<String> arguments) {
+        List<AssistantMessage.ToolCall> calls = IntStream.range(0, arguments.size())
+                .mapToObj(i -> new AssistantMessage.ToolCall("call-" + i, "function", toolName, arguments.get(i)))
+                .toList();
+        return new ChatResponse(List.of(new Generation(new AssistantMessage("", Map.of(), calls))));
+    }
+
+    private static List<ToolResponseMessage.ToolResponse> responses(ToolExecutionResult result) {
+        List<Message> history = result.conversationHistory();
+        return new ArrayList<>(((ToolResponseMessage) history.getLast()).getResponses());
+    }
+
+    /**
+     * A tool that answers with its own name after {@code delay}.
+     */
+    private static ToolCallback sleepingTool(String name, Duration delay) {
+        ToolDefinition definition = ToolDefinition.builder()
+                .name(name)
+                .description("Answers with its name")
+                .inputSchema("{\"type\": \"object\"}")
+                .build();
+        return new ToolCallback() {
+            @Override
+            public ToolDefinition getToolDefinition() {
+                return definition;
+            }
+
+            @Override
+            public String call(String toolInput) {
+                try {
+                    Thread.sleep(delay);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return name;
+            }
+        };
+    }
+}
@@ -0,0 +1,94 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.Optional;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+import static org.assertj.core.api.Assertions.within;
+
+class PcmConverterTest {
+
+    private static final AudioFormat CAPTURE = new AudioFormat(16000.0f, 16, 1, true, false);
+    private static final AudioFormat STEREO_48K = new AudioFormat(48000.0f, 16, 2, true, false);
+
+    @Test
+    void convertsAStereoDeviceToCaptureFormat() {
+        // Left and right out of phase on top of a shared tone: the downmix keeps only the tone
+        byte[] line = new byte[48000 * 4];
+        for (int i = 0; i < 48000; i++) {
+            double tone = 8000 * Math.sin(2 * Math.PI * 440 * i / 48000.0);
+            double difference = 4000 * Math.sin(2 * Math.PI * 1000 * i / 48000.0);
+            putSample(line, 4 * i, (int) Math.round(tone + difference));
+            putSample(line, 4 * i + 2, (int) Math.round(tone - difference));
+        }
+
+        PcmConverter converter = new PcmConverter(STEREO_48K, CAPTURE);
+        ByteArrayOutputStream captured = new ByteArrayOutputStream();
+        // Odd chunk sizes split frames across reads
+        byte[] out = new byte[converter.maxOutputBytes(4095)];
+        for (int offset = 0; offset < line.length; offset += 4095) {
+            int written = converter.convert(line, offset, Math.min(4095, line.length - offset), out);
+            captured.write(out, 0, written);
+        }
+
+        byte[] pcm = captured.toByteArray();
+        assertThat(pcm).hasSize(16000 * 2);
+        short[] samples = new short[16000];
+        PcmDsp dsp = PcmDsp.get();
+        dsp.decode(pcm, 0, pcm.length, samples);
+        // Past the filter's start-up: the 440 Hz tone alone, at its level
+        short[] settled = Arrays.copyOfRange(samples, 1600, samples.length);
+        assertThat(dsp.rms(settled, settled.length)).isCloseTo(8000 / Math.sqrt(2), within(20.0));
+        assertThat(dsp.zeroCrossingRate(settled, settled.length)).isBetween(0.054, 0.056);
+    }
+
+    @Test
+    void onlyDownmixesAtTheSameRate() {
+        AudioFormat stereo = new AudioFormat(16000.0f, 16, 2, true, false);
+        PcmConverter converter = new PcmConverter(stereo, CAPTURE);
+        byte[] line = new byte[8];
+        putSample(line, 0, 1000);
+        putSample(line, 2, 3000);
+        putSample(line, 4, -100);
+        putSample(line, 6, -300);
+        byte[] out = new byte[converter.maxOutputBytes(line.length)];
+
+        assertThat(converter.convert(line, 0, 3, out)).isZero();
+        assertThat(converter.convert(line, 3, 5, out)).isEqualTo(4);
+        assertThat(out[0] & 0xFF | out[1] << 8).isEqualTo(2000);
+        assertThat((short) (out[2] & 0xFF | out[3] << 8)).isEqualTo((short) -200);
+    }
+
+    @Test
+    void choosesTheCaptureFormatWhenTheDeviceHasIt() {
+        assertThat(PcmConverter.lineFormat(CAPTURE, format -> true)).contains(CAPTURE);
+    }
+
+    @Test
+    void fallsBackToACommonDeviceFormat() {
+        Optional<AudioFormat> format = PcmConverter.lineFormat(CAPTURE,
+                candidate -> candidate.getSampleRate() == 44100.0f && candidate.getChannels() == 2);
+
+        assertThat(format).hasValueSatisfying(chosen -> assertThat(chosen.matches(
+                new AudioFormat(44100.0f, 16, 2, true, false))).isTrue());
+        assertThat(PcmConverter.lineFormat(CAPTURE, candidate -> false)).isEmpty();
+    }
+
+    @Test
+    void rejectsFormatsItCannotDecode() {
+        AudioFormat bigEndian = new AudioFormat(48000.0f, 16, 1, true, true);
+
+        assertThatIllegalArgumentException().isThrownBy(() -> new PcmConverter(bigEndian, CAPTURE));
+        assertThatIllegalArgumentException().isThrownBy(() -> new PcmConverter(STEREO_48K, STEREO_48K));
+    }
+
+    private static void putSample(byte[] pcm, int offset, int sample) {
+        pcm[offset] = (byte) sample;
+        pcm[offset + 1] = (byte) (sample >> 8);
+    }
+}
@@ -0,0 +1,123 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class PcmDspTest {
+
+    private final PcmDsp dsp = new PcmDsp(new ScalarPcmKernels());
+
+    /**
+     * Lengths around the vector width, so both the vector loop and the
+     * scalar tail are exercised, at an odd byte offset.
+     */
+    @ParameterizedTest
+    @ValueSource(ints = {0, 1, 3, 15, 16, 17, 31, 33, 320, 2048, 4099})
+    void vectorKernelsMatchScalar(int count) {
+        assumeTrue(ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent(),
+                "needs --add-modules jdk.incubator.vector");
+        PcmKernels scalar = new ScalarPcmKernels();
+        PcmKernels vector = new VectorPcmKernels();
+        Random random = new Random(count);
+        byte[] pcm = new byte[2 * count + 3];
+        random.nextBytes(pcm);
+
+        short[] expected = new short[count];
+        short[] actual = new short[count];
+        scalar.decode(pcm, 3, expected, count);
+        vector.decode(pcm, 3, actual, count);
+        assertThat(actual).isEqualTo(expected);
+
+        float[] floats = new float[count];
+        float[] vectorFloats = new float[count];
+        scalar.toFloat(expected, floats, count);
+        vector.toFloat(expected, vectorFloats, count);
+        assertThat(vectorFloats).isEqualTo(floats);
+
+        float[] loud = new float[count];
+        for (int i = 0; i < count; i++) {
+            loud[i] = (float) (random.nextGaussian() * 0.7);
+        }
+        byte[] encoded = new byte[2 * count];
+        byte[] vectorEncoded = new byte[2 * count];
+        scalar.encode(loud, count, encoded, 0);
+        vector.encode(loud, count, vectorEncoded, 0);
+        assertThat(vectorEncoded).isEqualTo(encoded);
+
+        double sumOfSquares = scalar.sumOfSquares(expected, count);
+        assertThat(vector.sumOfSquares(expected, count)).isCloseTo(sumOfSquares, within(1e-5 * Math.max(1, sumOfSquares)));
+        assertThat(vector.zeroCrossings(expected, count)).isEqualTo(scalar.zeroCrossings(expected, count));
+        assertThat(vector.peak(expected, count)).isEqualTo(scalar.peak(expected, count));
+        assertThat(vector.peak(loud, 0, count)).isEqualTo(scalar.peak(loud, 0, count));
+        assertThat(vector.sum(loud, 0, count)).isCloseTo(scalar.sum(loud, 0, count), within(1e-3f));
+        if (count > 1) {
+            assertThat(vector.dot(loud, 1, floats, 0, count - 1))
+                    .isCloseTo(scalar.dot(loud, 1, floats, 0, count - 1), within(1e-3f));
+        }
+    }
+
+    @Test
+    void metersATone() {
+        // 1 kHz at 16 kHz: 2,000 sign changes a second
+        short[] samples = new short[16000];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) Math.round(10000 * Math.sin(2 * Math.PI * 1000 * i / 16000));
+        }
+
+        assertThat(dsp.rms(samples, samples.length)).isCloseTo(10000 / Math.sqrt(2), within(5.0));
+        assertThat(dsp.peak(samples, samples.length)).isEqualTo(10000);
+        assertThat(dsp.zeroCrossingRate(samples, samples.length)).isCloseTo(2000.0 / 16000, within(0.001));
+        assertThat(dsp.rms(samples, 0)).isZero();
+    }
+
+    @Test
+    void roundTripsSamplesAndClipsOverload() {
+        byte[] pcm = {0, (byte) 0x80, (byte) 0xFF, 0x7F, 1, 0, (byte) 0xFF, (byte) 0xFF};
+        short[] samples = new short[4];
+        float[] floats = new float[6];
+
+        assertThat(dsp.decode(pcm, 0, pcm.length, samples)).isEqualTo(4);
+        assertThat(samples).containsExactly((short) -32768, (short) 32767, (short) 1, (short) -1);
+        assertThat(dsp.peak(samples, 4)).isEqualTo(32768);
+
+        dsp.toFloat(samples, 4, floats);
+        floats[4] = 1.5f;
+        floats[5] = -1.5f;
+        byte[] encoded = new byte[12];
+        assertThat(dsp.encode(floats, 6, encoded, 0)).isEqualTo(12);
+        short[] back = new short[6];
+        dsp.decode(encoded, 0, 12, back);
+        assertThat(back).containsExactly((short) -32768, (short) 32767, (short) 1, (short) -1,
+                (short) 32767, (short) -32768);
+    }
+
+    @Test
+    void removesDcOffset() {
+        float[] samples = new float[100];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = 0.25f + (i % 2 == 0 ? 0.1f : -0.1f);
+        }
+
+        assertThat(dsp.removeDcOffset(samples, 0, samples.length)).isCloseTo(0.25f, within(1e-6f));
+        assertThat(samples[0]).isCloseTo(0.1f, within(1e-6f));
+        assertThat(samples[1]).isCloseTo(-0.1f, within(1e-6f));
+    }
+
+    @Test
+    void normalizesToTheTargetPeakWithinTheGainLimit() {
+        float[] speech = {0.1f, -0.2f, 0.05f};
+        float[] nearSilence = {0.001f, -0.001f};
+
+        assertThat(dsp.normalize(speech, 0, speech.length, 0.9f, 10f)).isCloseTo(4.5f, within(1e-5f));
+        assertThat(speech[1]).isCloseTo(-0.9f, within(1e-5f));
+        assertThat(dsp.normalize(nearSilence, 0, nearSilence.length, 0.9f, 10f)).isEqualTo(10f);
+        assertThat(dsp.normalize(new float[4], 0, 4, 0.9f, 10f)).isEqualTo(1f);
+    }
+}
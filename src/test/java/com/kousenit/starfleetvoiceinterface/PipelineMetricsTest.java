@@ -0,0 +1,144 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import com.kousenit.starfleetvoiceinterface.config.MetricsProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PipelineMetricsTest {
+
+    private static final String EVENT = "com.kousenit.starfleet.PipelineStage";
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void timesEachStageWithPercentiles() {
+        PipelineMetrics metrics = PipelineMetrics.local();
+
+        for (int i = 1; i <= 20; i++) {
+            long millis = i;
+            metrics.time(PipelineMetrics.Stage.TRANSCRIPTION, () -> pause(millis));
+        }
+        metrics.time(PipelineMetrics.Stage.CHAT, () -> pause(5));
+
+        assertThat(metrics.timer(PipelineMetrics.Stage.TRANSCRIPTION).count()).isEqualTo(20);
+        assertThat(metrics.timer(PipelineMetrics.Stage.CHAT).count()).isEqualTo(1);
+        assertThat(metrics.timer(PipelineMetrics.Stage.TOOL_CALL).count()).isZero();
+
+        String summary = metrics.summary();
+        System.out.println(summary);
+        assertThat(summary).contains("p50", "p95", "p99")
+                .containsPattern("transcription\\s+20\\s")
+                .contains("chat")
+                .doesNotContain("tool-call");
+    }
+
+    @Test
+    void aTimingStopsOnceEvenAcrossThreads() {
+        PipelineMetrics metrics = PipelineMetrics.local();
+        PipelineMetrics.Timing render = metrics.start(PipelineMetrics.Stage.RENDER);
+
+        Duration elapsed = CompletableFuture.supplyAsync(render::stop).join();
+
+        assertThat(render.stop()).isEqualTo(elapsed);
+        assertThat(metrics.timer(PipelineMetrics.Stage.RENDER).count()).isEqualTo(1);
+    }
+
+    @Test
+    void jfrEventsCarryTheCommandId() throws IOException {
+        PipelineMetrics metrics = PipelineMetrics.local();
+        Path file = directory.resolve("events.jfr");
+
+        try (Recording recording = new Recording()) {
+            recording.enable(EVENT);
+            recording.start();
+
+            long first = metrics.beginCommand();
+            metrics.time(PipelineMetrics.Stage.TRANSCRIPTION, () -> pause(2));
+            long second = metrics.beginCommand();
+            PipelineMetrics.Timing tool = metrics.start(PipelineMetrics.Stage.TOOL_CALL, "executeOsquery {}");
+            tool.stop();
+
+            recording.stop();
+            recording.dump(file);
+
+            List<RecordedEvent> events = stageEvents(file);
+            assertThat(events).extracting(event -> event.getLong("commandId")).containsExactly(first, second);
+            assertThat(events).extracting(event -> event.getString("stage"))
+                    .containsExactly("transcription", "tool-call");
+            assertThat(events.get(1).getString("detail")).isEqualTo("executeOsquery {}");
+            assertThat(events.get(0).getDuration()).isGreaterThanOrEqualTo(Duration.ofMillis(2));
+        }
+    }
+
+    @Test
+    void commandsRunningAlongsideTheCurrentOneKeepTheirOwnIds() throws IOException {
+        PipelineMetrics metrics = PipelineMetrics.local();
+        Path file = directory.resolve("concurrent.jfr");
+
+        try (Recording recording = new Recording()) {
+            recording.enable(EVENT);
+            recording.start();
+
+            long current = metrics.beginCommand();
+            long first = metrics.newCommand();
+            long second = metrics.newCommand();
+            metrics.time(PipelineMetrics.Stage.TRANSCRIPTION, first, () -> pause(1));
+            metrics.time(PipelineMetrics.Stage.TRANSCRIPTION, second, () -> pause(1));
+            metrics.start(PipelineMetrics.Stage.TOOL_CALL, first, "executeOsquery {}").stop();
+            metrics.start(PipelineMetrics.Stage.RENDER).stop();
+
+            recording.stop();
+            recording.dump(file);
+
+            assertThat(metrics.currentCommand()).isEqualTo(current);
+            assertThat(List.of(current, first, second)).doesNotHaveDuplicates();
+            assertThat(stageEvents(file)).extracting(event -> event.getLong("commandId"))
+                    .containsExactly(first, second, first, current);
+        }
+    }
+
+    @Test
+    void writesTheFlightRecordingAtShutdown() throws IOException {
+        Path file = directory.resolve("pipeline.jfr");
+        PipelineMetrics metrics = new PipelineMetrics(new SimpleMeterRegistry(), Duration.ofMinutes(10), 0,
+                new MetricsProperties.Jfr(true, file, Duration.ofMinutes(30)));
+        metrics.startRecording();
+
+        metrics.beginCommand();
+        metrics.time(PipelineMetrics.Stage.COMMAND, () -> pause(1));
+        metrics.shutdown();
+
+        assertThat(file).exists();
+        assertThat(stageEvents(file)).extracting(event -> event.getString("stage")).contains("command");
+    }
+
+    private static List<RecordedEvent> stageEvents(Path file) throws IOException {
+        assertThat(Files.size(file)).isPositive();
+        return RecordingFile.readAllEvents(file).stream()
+                .filter(event -> event.getEventType().getName().equals(EVENT))
+                .toList();
+    }
+
+    private static Void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+}
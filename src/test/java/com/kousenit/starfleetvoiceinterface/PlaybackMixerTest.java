@@ -0,0 +1,136 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class PlaybackMixerTest {
+
+    private static final AudioFormat FORMAT = new AudioFormat(1000.0f, 16, 1, true, false);
+    private static final int BLOCK = 10;
+
+    private final ByteArrayOutputStream output = new ByteArrayOutputStream();
+    private final PlaybackMixer mixer = new PlaybackMixer(FORMAT, output::write);
+
+    @Test
+    void playsASoundThenCompletes() {
+        PlaybackMixer.Playback playback = mixer.play(constant(1000, 25), 1.0f);
+
+        assertThat(mixer.mixNext()).isEqualTo(1);
+        assertThat(mixer.mixNext()).isEqualTo(1);
+        assertThat(mixer.mixNext()).isZero();
+
+        assertThat(playback.done()).isCompleted();
+        short[] samples = samples();
+        assertThat(samples).hasSize(3 * BLOCK);
+        assertThat(Arrays.copyOfRange(samples, 0, 25)).containsOnly((short) 1000);
+        assertThat(Arrays.copyOfRange(samples, 25, 30)).containsOnly((short) 0);
+    }
+
+    @Test
+    void overlappingSoundsAreSummedAndClipped() {
+        mixer.play(constant(1000, BLOCK), 1.0f);
+        mixer.play(constant(2000, BLOCK), 0.5f);
+        mixer.play(constant(30000, BLOCK), 1.0f);
+        mixer.play(constant(30000, BLOCK), 1.0f);
+
+        mixer.mixNext();
+
+        assertThat(samples()).containsOnly(Short.MAX_VALUE);
+    }
+
+    @Test
+    void cancelFadesOutWithinOneBlock() {
+        PlaybackMixer.Playback playback = mixer.play(constant(1000, 100), 1.0f);
+        mixer.mixNext();
+
+        playback.cancel();
+        assertThat(mixer.mixNext()).isZero();
+        mixer.mixNext();
+
+        assertThat(playback.done()).isCompleted();
+        short[] samples = samples();
+        assertThat(samples[BLOCK]).isEqualTo((short) 1000);
+        assertThat(samples[2 * BLOCK - 1]).isBetween((short) 1, (short) 200);
+        assertThat(Arrays.copyOfRange(samples, 2 * BLOCK, 3 * BLOCK)).containsOnly((short) 0);
+    }
+
+    @Test
+    void cancelAllStopsEverythingAlreadyPlayed() {
+        PlaybackMixer.Playback first = mixer.play(constant(1000, 100), 1.0f);
+        PlaybackMixer.Playback second = mixer.play(constant(1000, 100), 1.0f);
+        mixer.cancelAll();
+        PlaybackMixer.Playback third = mixer.play(constant(1000, 100), 1.0f);
+
+        mixer.mixNext();
+
+        assertThat(first.isCancelled()).isTrue();
+        assertThat(second.isCancelled()).isTrue();
+        assertThat(third.isCancelled()).isFalse();
+        assertThat(third.done()).isNotCompleted();
+    }
+
+    @Test
+    void tooManyOverlappingSoundsCancelTheOldest() {
+        PlaybackMixer.Playback oldest = mixer.play(constant(100, 100), 1.0f);
+        for (int i = 0; i < PlaybackMixer.MAX_VOICES; i++) {
+            mixer.play(constant(100, 100), 1.0f);
+        }
+
+        assertThat(mixer.mixNext()).isEqualTo(PlaybackMixer.MAX_VOICES);
+        assertThat(oldest.isCancelled()).isTrue();
+    }
+
+    @Test
+    void duckingRampsToTheReducedLevel() {
+        mixer.play(constant(1000, 100), 1.0f);
+        mixer.duck(0.25f);
+
+        mixer.mixNext();
+        mixer.mixNext();
+
+        short[] samples = samples();
+        assertThat(samples[0]).isEqualTo((short) 1000);
+        assertThat(samples[BLOCK / 2]).isBetween((short) 300, (short) 900);
+        assertThat(Arrays.copyOfRange(samples, BLOCK, 2 * BLOCK)).containsOnly((short) 250);
+    }
+
+    @Test
+    void steadyStateMixingDoesNotAllocate() {
+        DecodedSound sound = constant(1000, 200_000);
+        PcmSink discard = (data, offset, length) -> { };
+        PlaybackMixer quiet = new PlaybackMixer(FORMAT, discard);
+        quiet.play(sound, 1.0f);
+        // Warm up
+        for (int i = 0; i < 5000; i++) {
+            quiet.mixNext();
+        }
+
+        long before = RecordingBufferTest.allocatedBytes();
+        for (int i = 0; i < 10000; i++) {
+            quiet.mixNext();
+        }
+        long allocated = RecordingBufferTest.allocatedBytes() - before;
+
+        assertThat(allocated).isLessThan(1024);
+    }
+
+    private short[] samples() {
+        byte[] bytes = output.toByteArray();
+        short[] samples = new short[bytes.length / 2];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = (short) ((bytes[2 * i] & 0xFF) | (bytes[2 * i + 1] << 8));
+        }
+        return samples;
+    }
+
+    private static DecodedSound constant(int value, int length) {
+        short[] samples = new short[length];
+        Arrays.fill(samples, (short) value);
+        return new DecodedSound("constant", samples, 1);
+    }
+}
@@ -0,0 +1,113 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import com.sun.management.ThreadMXBean;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.Resource;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+
+import static com.kousenit.starfleetvoiceinterface.StreamingTranscriberTest.tone;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RecordingBufferTest {
+
+    private static final AudioFormat FORMAT = new AudioFormat(16000.0f, 16, 1, true, false);
+
+    @Test
+    void producesWavMatchingTheLegacyEncoder() throws Exception {
+        byte[] pcm = tone(1.3);
+        RecordingBuffer buffer = new RecordingBuffer(FORMAT, Duration.ofSeconds(5), Duration.ofSeconds(10));
+        write(buffer, pcm);
+
+        Resource wav = buffer.toWavResource("recording.wav");
+
+        assertThat(wav.getFilename()).isEqualTo("recording.wav");
+        assertThat(wav.contentLength()).isEqualTo(RecordingBuffer.HEADER_SIZE + pcm.length);
+        assertThat(wav.getContentAsByteArray()).isEqualTo(WavEncoder.convertToWav(pcm, FORMAT));
+        assertThat(wav.getInputStream().readAllBytes()).isEqualTo(WavEncoder.convertToWav(pcm, FORMAT));
+        try (AudioInputStream in = AudioSystem.getAudioInputStream(new ByteArrayInputStream(wav.getContentAsByteArray()))) {
+            assertThat(in.getFormat().matches(FORMAT)).isTrue();
+            assertThat(in.readAllBytes()).isEqualTo(pcm);
+        }
+    }
+
+    @Test
+    void spillsToMappedFileBeyondInMemoryLimit() throws Exception {
+        byte[] pcm = tone(3.0);
+        RecordingBuffer buffer = new RecordingBuffer(FORMAT, Duration.ofSeconds(1), Duration.ofSeconds(10));
+        write(buffer, pcm);
+
+        assertThat(buffer.isSpilled()).isTrue();
+        assertThat(buffer.dataSize()).isEqualTo(pcm.length);
+        assertThat(buffer.toWavResource("recording.wav").getContentAsByteArray())
+                .isEqualTo(WavEncoder.convertToWav(pcm, FORMAT));
+
+        buffer.reset();
+        assertThat(buffer.isSpilled()).isFalse();
+        assertThat(buffer.dataSize()).isZero();
+    }
+
+    @Test
+    void dropsAudioBeyondMaximumDuration() {
+        RecordingBuffer buffer = new RecordingBuffer(FORMAT, Duration.ofSeconds(1), Duration.ofSeconds(2));
+        write(buffer, tone(2.5));
+
+        assertThat(buffer.dataSize()).isEqualTo(tone(2.0).length);
+        assertThat(buffer.droppedBytes()).isEqualTo(tone(0.5).length);
+    }
+
+    @Test
+    void reusedBufferRecordsWithoutHeapGarbage() throws Exception {
+        byte[] pcm = tone(60.0);
+        RecordingBuffer buffer = new RecordingBuffer(FORMAT, Duration.ofSeconds(60), Duration.ofMinutes(10));
+
+        // Warm up so class loading and JIT don't count against either path
+        for (int i = 0; i < 3; i++) {
+            write(buffer, pcm);
+            buffer.toWavResource("recording.wav");
+            buffer.reset();
+            WavEncoder.convertToWav(legacyCapture(pcm), FORMAT);
+        }
+
+        long before = allocatedBytes();
+        byte[] legacy = WavEncoder.convertToWav(legacyCapture(pcm), FORMAT);
+        long legacyBytes = allocatedBytes() - before;
+
+        before = allocatedBytes();
+        write(buffer, pcm);
+        Resource wav = buffer.toWavResource("recording.wav");
+        long bufferBytes = allocatedBytes() - before;
+
+        System.out.printf("60 s clip: legacy path allocated %,d bytes, recording buffer %,d bytes%n",
+                legacyBytes, bufferBytes);
+
+        assertThat(wav.contentLength()).isEqualTo(legacy.length);
+        assertThat(bufferBytes).isLessThan(64 * 1024);
+        assertThat(legacyBytes).isGreaterThan(3L * pcm.length);
+    }
+
+    private static byte[] legacyCapture(byte[] pcm) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        for (int offset = 0; offset < pcm.length; offset += 4096) {
+            out.write(pcm, offset, Math.min(4096, pcm.length - offset));
+        }
+        return out.toByteArray();
+    }
+
+    private static void write(RecordingBuffer buffer, byte[] pcm) {
+        for (int offset = 0; offset < pcm.length; offset += 4096) {
+            buffer.write(pcm, offset, Math.min(4096, pcm.length - offset));
+        }
+    }
+
+    static long allocatedBytes() {
+        var threads = (ThreadMXBean) ManagementFactory.getThreadMXBean();
+        return threads.getCurrentThreadAllocatedBytes();
+    }
+}
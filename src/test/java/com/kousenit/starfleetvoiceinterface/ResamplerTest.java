@@ -0,0 +1,101 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.within;
+
+class ResamplerTest {
+
+    private final PcmKernels kernels = PcmKernels.best();
+
+    @ParameterizedTest
+    @ValueSource(ints = {48000, 44100, 96000, 32000})
+    void keepsSpeechBandAndRejectsAliases(int rate) {
+        System.out.printf("%d Hz -> 16 kHz, %s kernels%n", rate, kernels.name());
+
+        assertThat(gainDb(rate, 1000)).isCloseTo(0.0, within(0.1));
+        assertThat(gainDb(rate, 6000)).isCloseTo(0.0, within(1.0));
+        // Above the 8 kHz Nyquist frequency: would fold back into the speech band
+        assertThat(gainDb(rate, 10000)).isLessThan(-80.0);
+    }
+
+    @Test
+    void upsamplesNarrowbandAudio() {
+        assertThat(gainDb(8000, 1000)).isCloseTo(0.0, within(0.1));
+    }
+
+    @Test
+    void chunkedInputGivesTheSameOutputAsOneCall() {
+        Random random = new Random(1701);
+        float[] input = new float[44100];
+        for (int i = 0; i < input.length; i++) {
+            input[i] = (float) (Math.sin(i * 0.01) * 0.5 + random.nextGaussian() * 0.1);
+        }
+
+        Resampler whole = new Resampler(44100, 16000, kernels);
+        float[] expected = new float[whole.maxOutput(input.length)];
+        int expectedCount = whole.process(input, input.length, expected);
+
+        Resampler chunked = new Resampler(44100, 16000, kernels);
+        float[] actual = new float[expectedCount];
+        int actualCount = 0;
+        for (int offset = 0; offset < input.length; ) {
+            int length = Math.min(1 + random.nextInt(900), input.length - offset);
+            float[] chunk = Arrays.copyOfRange(input, offset, offset + length);
+            float[] out = new float[chunked.maxOutput(length)];
+            int produced = chunked.process(chunk, length, out);
+            System.arraycopy(out, 0, actual, actualCount, produced);
+            actualCount += produced;
+            offset += length;
+        }
+
+        assertThat(expectedCount).isEqualTo(16000);
+        assertThat(actualCount).isEqualTo(expectedCount);
+        assertThat(actual).isEqualTo(Arrays.copyOf(expected, expectedCount));
+    }
+
+    @Test
+    void startsOverAfterReset() {
+        Resampler resampler = new Resampler(48000, 16000, kernels);
+        float[] input = new float[4800];
+        Arrays.fill(input, 0.5f);
+        float[] first = new float[resampler.maxOutput(input.length)];
+        float[] second = new float[resampler.maxOutput(input.length)];
+
+        int firstCount = resampler.process(input, input.length, first);
+        resampler.reset();
+        int secondCount = resampler.process(input, input.length, second);
+
+        assertThat(secondCount).isEqualTo(firstCount).isEqualTo(1600);
+        assertThat(second).isEqualTo(first);
+        // Unity gain at DC once the filter has filled
+        assertThat(first[firstCount - 1]).isCloseTo(0.5f, within(1e-4f));
+    }
+
+    /**
+     * Gain of one second of a tone at {@code frequency}, past the filter's
+     * start-up.
+     */
+    private double gainDb(int rate, double frequency) {
+        float[] tone = new float[rate];
+        for (int i = 0; i < tone.length; i++) {
+            tone[i] = (float) (0.5 * Math.sin(2 * Math.PI * frequency * i / rate));
+        }
+        Resampler resampler = new Resampler(rate, 16000, kernels);
+        float[] out = new float[resampler.maxOutput(tone.length)];
+        int count = resampler.process(tone, tone.length, out);
+
+        double sumOfSquares = 0;
+        for (int i = 1600; i < count; i++) {
+            sumOfSquares += out[i] * out[i];
+        }
+        double rms = Math.sqrt(sumOfSquares / (count - 1600));
+        return 20 * Math.log10(rms / (0.5 / Math.sqrt(2)));
+    }
+}
@@ -0,0 +1,133 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResultCompactorTest {
+
+    // Roughly how BPE tokenizers split JSON and tables: words, digit groups of up to three, punctuation
+    private static final Pattern TOKEN = Pattern.compile("[A-Za-z]+|\\d{1,3}|[^\\sA-Za-z\\d]");
+
+    private final ResultCompactor compactor = new ResultCompactor(25, 160, 1024);
+
+    /**
+     * Recorded osquery output against the compacted form checked in next to it.
+     * To update after an intended change, write {@code compact(raw)} over the
+     * {@code .compact.txt} file and review the diff.
+     */
+    @ParameterizedTest
+    @ValueSource(strings = {"processes", "listening_ports", "top_processes"})
+    void matchesGoldenFile(String recording) throws IOException {
+        String raw = resource("/osquery/" + recording + ".json");
+        String golden = resource("/osquery/" + recording + ".compact.txt");
+
+        String compacted = compactor.compact(raw);
+
+        System.out.printf("%-16s %7d -> %6d bytes (%4.1f%%), ~%6d -> %5d tokens%n", recording,
+                raw.getBytes(StandardCharsets.UTF_8).length, compacted.getBytes(StandardCharsets.UTF_8).length,
+                100.0 * compacted.length() / raw.length(), tokens(raw), tokens(compacted));
+        assertThat(compacted).isEqualTo(golden.stripTrailing());
+    }
+
+    @Test
+    void largeResultsShrinkSeveralTimesOver() throws IOException {
+        for (String recording : List.of("processes", "listening_ports")) {
+            String raw = resource("/osquery/" + recording + ".json");
+            String compacted = compactor.compact(raw);
+
+            assertThat(compacted.length()).as(recording).isLessThan(raw.length() / 3);
+            assertThat(tokens(compacted)).as(recording).isLessThan(tokens(raw) / 3);
+        }
+    }
+
+    @Test
+    void compactsRowsInsideMcpTextContent() throws IOException {
+        String rows = resource("/osquery/listening_ports.json");
+        String content = new ObjectMapper().writeValueAsString(List.of(Map.of("type", "text", "text", rows)));
+
+        assertThat(compactor.compact(content)).isEqualTo(compactor.compact(rows));
+    }
+
+    @Test
+    void pullsOutEmptyConstantAndCopiedColumns() {
+        String rows = """
+                [{"name": "sshd", "port": "22", "uid": "0", "euid": "0", "host": "enterprise", "path": ""},
+                 {"name": "postgres", "port": "5432", "uid": "501", "euid": "501", "host": "enterprise", "path": ""}]
+                """;
+
+        assertThat(new ResultCompactor(25, 160, 0).compact(rows)).isEqualTo("""
+                2 rows
+                same in every row: host=enterprise
+                copies of another column: euid=uid
+                empty: path
+                name|port|uid
+                sshd|22|0
+                postgres|5432|501""");
+    }
+
+    @Test
+    void capsRowsAndSummarizesTheRest() {
+        StringBuilder rows = new StringBuilder("[");
+        for (int i = 1; i <= 10; i++) {
+            rows.append(i > 1 ? "," : "").append("{\"name\": \"").append(i % 3 == 0 ? "java" : "zsh" + i)
+                    .append("\", \"threads\": \"").append(i).append("\"}");
+        }
+        String compacted = new ResultCompactor(2, 160, 0).compact(rows.append("]").toString());
+
+        assertThat(compacted).isEqualTo("""
+                10 rows, first 2 shown
+                name|threads
+                zsh1|1
+                zsh2|2
+                over all 10 rows:
+                name: 8 distinct, most common java (3), zsh1 (1), zsh2 (1)
+                threads: min 1, max 10, sum 55""");
+    }
+
+    @Test
+    void leavesSmallAndNonTabularResultsAlone() {
+        String small = "[{\"days\": \"3\", \"hours\": \"4\", \"minutes\": \"12\"}]";
+        String error = "x".repeat(2000);
+        String object = "{\"rows\": \"" + "y".repeat(2000) + "\"}";
+
+        assertThat(compactor.compact(small)).isSameAs(small);
+        assertThat(compactor.compact(error)).isSameAs(error);
+        assertThat(compactor.compact(object)).isSameAs(object);
+    }
+
+    @Test
+    void escapesSeparatorsAndTruncatesLongValues() {
+        String rows = "[{\"cmd\": \"a|b\\nc\"}, {\"cmd\": \"" + "z".repeat(20) + "\"}]";
+
+        assertThat(new ResultCompactor(25, 10, 0).compact(rows))
+                .isEqualTo("2 rows\ncmd\na\\|b c\n" + "z".repeat(10) + "…");
+    }
+
+    private static int tokens(String text) {
+        Matcher matcher = TOKEN.matcher(text);
+        int count = 0;
+        while (matcher.find()) {
+            count++;
+        }
+        return count;
+    }
+
+    private static String resource(String path) throws IOException {
+        try (InputStream in = ResultCompactorTest.class.getResourceAsStream(path)) {
+            assertThat(in).as(path).isNotNull();
+            return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ResultTableTest {
+
+    @Test
+    void readsEveryRowOfARecordedResult() throws IOException {
+        String raw;
+        try (InputStream in = getClass().getResourceAsStream("/osquery/processes.json")) {
+            raw = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+
+        ResultTable table = ResultTable.parse("SELECT * FROM processes", raw).orElseThrow();
+
+        assertThat(table.query()).isEqualTo("SELECT * FROM processes");
+        assertThat(table.columns()).startsWith("pid", "name", "path");
+        assertThat(table.rows()).hasSize(180).allSatisfy(row -> assertThat(row).hasSameSizeAs(table.columns()));
+        assertThat(table.rows().getFirst()).startsWith("61102", "mdworker_shared");
+    }
+
+    @Test
+    void readsRowsInsideMcpTextContent() {
+        String content = "[{\"type\":\"text\",\"text\":\"[{\\\"name\\\":\\\"sshd\\\",\\\"port\\\":\\\"22\\\"}]\"}]";
+
+        ResultTable table = ResultTable.parse("SELECT name, port FROM listening_ports", content).orElseThrow();
+
+        assertThat(table.columns()).containsExactly("name", "port");
+        assertThat(table.rows()).containsExactly(List.of("sshd", "22"));
+    }
+
+    @Test
+    void leavesMissingAndNullCellsEmpty() {
+        ResultTable table = ResultTable.parse("q",
+                "[{\"a\":\"1\",\"b\":null},{\"c\":3,\"a\":{\"nested\":true}}]").orElseThrow();
+
+        assertThat(table.columns()).containsExactly("a", "b", "c");
+        assertThat(table.rows()).containsExactly(
+                List.of("1", "", ""),
+                List.of("{\"nested\":true}", "", "3"));
+    }
+
+    @Test
+    void ignoresResultsThatAreNotRows() {
+        assertThat(ResultTable.parse("q", "The system has been up 3 days")).isEmpty();
+        assertThat(ResultTable.parse("q", "[]")).isEmpty();
+        assertThat(ResultTable.parse("q", "[1, 2, 3]")).isEmpty();
+        assertThat(ResultTable.parse("q", "{\"error\":\"no such table\"}")).isEmpty();
+        assertThat(ResultTable.parse("q", null)).isEmpty();
+    }
+
+    @Test
+    void buildsATableFromRowsAlreadyRead() {
+        Map<String, String> first = new LinkedHashMap<>();
+        first.put("name", "sshd");
+        first.put("port", "22");
+
+        ResultTable table = ResultTable.of("q", List.of(first, Map.of("pid", "1701")));
+
+        assertThat(table.columns()).containsExactly("name", "port", "pid");
+        assertThat(table.rows()).containsExactly(List.of("sshd", "22", ""), List.of("", "", "1701"));
+    }
+}
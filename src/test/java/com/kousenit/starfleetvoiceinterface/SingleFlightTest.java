@@ -0,0 +1,167 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SingleFlightTest {
+
+    private static final int CALLERS = 16;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+    private final SingleFlight<String, String> flights = new SingleFlight<>();
+    private final AtomicInteger backendCalls = new AtomicInteger();
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void concurrentCallersShareOneCall() throws Exception {
+        List<Future<String>> results = callAll(() -> flights.run("uptime", this::slowBackend));
+        awaitCoalesced(CALLERS - 1);
+        release.countDown();
+
+        for (Future<String> result : results) {
+            assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("answer 1");
+        }
+        assertThat(backendCalls).hasValue(1);
+        assertThat(flights.stats()).isEqualTo(new SingleFlight.Stats(1, CALLERS - 1));
+        assertThat(flights.inFlight()).isZero();
+    }
+
+    @Test
+    void differentKeysRunSeparately() throws Exception {
+        release.countDown();
+        Future<String> uptime = executor.submit(() -> flights.run("uptime", this::slowBackend));
+        Future<String> processes = executor.submit(() -> flights.run("processes", this::slowBackend));
+
+        assertThat(List.of(uptime.get(), processes.get())).containsExactlyInAnyOrder("answer 1", "answer 2");
+        assertThat(flights.stats().coalesced()).isZero();
+    }
+
+    @Test
+    void nothingIsKeptAfterTheCallCompletes() {
+        release.countDown();
+
+        assertThat(flights.run("uptime", this::slowBackend)).isEqualTo("answer 1");
+        assertThat(flights.run("uptime", this::slowBackend)).isEqualTo("answer 2");
+        assertThat(backendCalls).hasValue(2);
+    }
+
+    @Test
+    void waitingCallersGetTheFailure() throws Exception {
+        List<Future<String>> results = callAll(() -> flights.run("uptime", () -> {
+            slowBackend();
+            throw new IllegalStateException("osquery error: no such table");
+        }));
+        awaitCoalesced(CALLERS - 1);
+        release.countDown();
+
+        for (Future<String> result : results) {
+            assertThatThrownBy(() -> result.get(5, TimeUnit.SECONDS))
+                    .hasRootCauseInstanceOf(IllegalStateException.class)
+                    .hasRootCauseMessage("osquery error: no such table");
+        }
+        assertThat(backendCalls).hasValue(1);
+    }
+
+    @Test
+    void waitingCallersTakeOverFromACancelledCaller() throws Exception {
+        CountDownLatch leading = new CountDownLatch(1);
+        Future<String> cancelled = executor.submit(() -> flights.run("uptime", () -> {
+            leading.countDown();
+            return slowBackend();
+        }));
+        assertThat(leading.await(5, TimeUnit.SECONDS)).isTrue();
+        Future<String> waiting = executor.submit(() -> flights.run("uptime", this::slowBackend));
+        awaitCoalesced(1);
+
+        cancelled.cancel(true);
+        release.countDown();
+
+        assertThat(waiting.get(5, TimeUnit.SECONDS)).isEqualTo("answer 2");
+        assertThat(backendCalls).hasValue(2);
+    }
+
+    @Test
+    void identicalToolSqlInFlightReachesTheServerOnce() throws Exception {
+        ToolCallback osquery = new ToolCallback() {
+            @Override
+            public ToolDefinition getToolDefinition() {
+                return ToolDefinition.builder().name("executeOsquery").inputSchema("{}").build();
+            }
+
+            @Override
+            public String call(String toolInput) {
+                return slowBackend();
+            }
+
+            @Override
+            public String call(String toolInput, ToolContext toolContext) {
+                return call(toolInput);
+            }
+        };
+        ToolCallback coalescing = new CoalescingToolCallback(osquery, flights);
+
+        // The same query, spelled two ways
+        List<String> inputs = List.of(
+                "{\"sql\": \"SELECT days, hours FROM uptime\"}",
+                "{\"sql\": \"select days,  hours from uptime;\"}");
+        List<Future<String>> results = IntStream.range(0, CALLERS)
+                .mapToObj(i -> inputs.get(i % 2))
+                .map(input -> executor.submit(() -> coalescing.call(input)))
+                .toList();
+        awaitCoalesced(CALLERS - 1);
+        release.countDown();
+
+        for (Future<String> result : results) {
+            assertThat(result.get(5, TimeUnit.SECONDS)).isEqualTo("answer 1");
+        }
+        assertThat(backendCalls).hasValue(1);
+        assertThat(coalescing.call("{\"note\": \"no sql\"}")).isEqualTo("answer 2");
+    }
+
+    private List<Future<String>> callAll(Callable<String> call) {
+        return IntStream.range(0, CALLERS).mapToObj(i -> executor.submit(call)).toList();
+    }
+
+    private String slowBackend() {
+        int call = backendCalls.incrementAndGet();
+        try {
+            if (!release.await(5, TimeUnit.SECONDS)) {
+                throw new IllegalStateException("never released");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("interrupted", e);
+        }
+        return "answer " + call;
+    }
+
+    private void awaitCoalesced(long callers) throws InterruptedException {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (flights.stats().coalesced() < callers && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertThat(flights.stats().coalesced()).isEqualTo(callers);
+    }
+}
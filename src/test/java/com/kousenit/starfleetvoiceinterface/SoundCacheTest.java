@@ -0,0 +1,161 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import javazoom.jl.decoder.Bitstream;
+import javazoom.jl.decoder.Decoder;
+import javazoom.jl.decoder.Header;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class SoundCacheTest {
+
+    @Test
+    void decodesEffectsToTheMixerFormat() throws Exception {
+        for (String effect : AudioPlayerService.EFFECTS) {
+            DecodedSound sound = Mp3Decoder.decode(effect, AudioPlayerService.MIXER_FORMAT);
+
+            assertThat(sound.channels()).isEqualTo(2);
+            assertThat(sound.frames()).isGreaterThan(44100 / 2);
+            int peak = 0;
+            for (short sample : sound.samples()) {
+                peak = Math.max(peak, Math.abs(sample));
+            }
+            assertThat(peak).isGreaterThan(1000);
+        }
+    }
+
+    @Test
+    void missingResourceIsReported() {
+        assertThatThrownBy(() -> Mp3Decoder.decode("/sounds/missing.mp3", AudioPlayerService.MIXER_FORMAT))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("missing.mp3");
+    }
+
+    @Test
+    void resamplesAndMapsChannels() {
+        short[] mono = {0, 100, 200, 300};
+
+        short[] stereo = Mp3Decoder.convert(mono, mono.length, 2, 1, 4, 2);
+
+        assertThat(stereo).containsExactly(0, 0, 50, 50, 100, 100, 150, 150, 200, 200, 250, 250, 300, 300, 300, 300);
+        assertThat(Mp3Decoder.convert(new short[]{100, 300, -100, -300}, 4, 8, 2, 8, 1))
+                .containsExactly(200, -200);
+    }
+
+    @Test
+    void decodesEachSoundOnce() {
+        AtomicInteger loads = new AtomicInteger();
+        SoundCache cache = new SoundCache(1000, path -> {
+            loads.incrementAndGet();
+            return sound(path, 100);
+        });
+
+        DecodedSound first = cache.get("a");
+        DecodedSound second = cache.get("a");
+
+        assertThat(second).isSameAs(first);
+        assertThat(loads).hasValue(1);
+        assertThat(cache.hits()).isEqualTo(1);
+        assertThat(cache.misses()).isEqualTo(1);
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedOverBudget() {
+        SoundCache cache = new SoundCache(500, path -> sound(path, 100));
+
+        cache.get("a");
+        cache.get("b");
+        cache.get("a");
+        cache.get("c");
+
+        assertThat(cache.contains("a")).isTrue();
+        assertThat(cache.contains("b")).isFalse();
+        assertThat(cache.contains("c")).isTrue();
+        assertThat(cache.cachedBytes()).isEqualTo(400);
+        assertThat(cache.evictions()).isEqualTo(1);
+    }
+
+    @Test
+    void soundsLargerThanTheBudgetAreNotKept() {
+        SoundCache cache = new SoundCache(100, path -> sound(path, 1000));
+
+        assertThat(cache.get("big").samples()).hasSize(1000);
+        assertThat(cache.contains("big")).isFalse();
+        assertThat(cache.cachedBytes()).isZero();
+    }
+
+    @Test
+    void reportsCostPerCommand() throws Exception {
+        SoundCache cache = new SoundCache(16L * 1024 * 1024, path -> {
+            try {
+                return Mp3Decoder.decode(path, AudioPlayerService.MIXER_FORMAT);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+        PlaybackMixer mixer = new PlaybackMixer(AudioPlayerService.MIXER_FORMAT, (data, offset, length) -> { });
+
+        // Warm up both paths
+        for (int i = 0; i < 3; i++) {
+            legacyDecode(AudioPlayerService.WORKING_SOUND);
+            play(mixer, cache.get(AudioPlayerService.WORKING_SOUND));
+        }
+
+        long cpu = cpuNanos();
+        long allocated = RecordingBufferTest.allocatedBytes();
+        legacyDecode(AudioPlayerService.WORKING_SOUND);
+        long legacyCpu = cpuNanos() - cpu;
+        long legacyAllocated = RecordingBufferTest.allocatedBytes() - allocated;
+
+        cpu = cpuNanos();
+        allocated = RecordingBufferTest.allocatedBytes();
+        play(mixer, cache.get(AudioPlayerService.WORKING_SOUND));
+        long cachedCpu = cpuNanos() - cpu;
+        long cachedAllocated = RecordingBufferTest.allocatedBytes() - allocated;
+
+        System.out.printf("Working sound per command: decode on play %.1f ms CPU / %,d bytes allocated, "
+                        + "cached + mixer %.1f ms CPU / %,d bytes allocated%n",
+                legacyCpu / 1e6, legacyAllocated, cachedCpu / 1e6, cachedAllocated);
+
+        assertThat(cachedAllocated).isLessThan(legacyAllocated / 10);
+        assertThat(cachedCpu).isLessThan(legacyCpu);
+    }
+
+    /**
+     * What JLayer's Player did on every command, minus the audio device.
+     */
+    private static void legacyDecode(String resourcePath) throws Exception {
+        try (InputStream in = SoundCacheTest.class.getResourceAsStream(resourcePath)) {
+            Bitstream bitstream = new Bitstream(in);
+            Decoder decoder = new Decoder();
+            Header header;
+            while ((header = bitstream.readFrame()) != null) {
+                decoder.decodeFrame(header, bitstream);
+                bitstream.closeFrame();
+            }
+            bitstream.close();
+        }
+    }
+
+    private static void play(PlaybackMixer mixer, DecodedSound sound) {
+        mixer.play(sound, 1.0f);
+        while (mixer.mixNext() > 0) {
+            // Rendered blocks go straight to the discarding sink
+        }
+    }
+
+    private static long cpuNanos() {
+        return ManagementFactory.getThreadMXBean().getCurrentThreadCpuTime();
+    }
+
+    private static DecodedSound sound(String name, int samples) {
+        return new DecodedSound(name, new short[samples], 1);
+    }
+}
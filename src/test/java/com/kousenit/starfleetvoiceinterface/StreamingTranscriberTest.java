@@ -0,0 +1,220 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.Resource;
+
+import javax.sound.sampled.AudioFormat;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class StreamingTranscriberTest {
+
+    private static final AudioFormat FORMAT = new AudioFormat(16000.0f, 16, 1, true, false);
+    private static final int BYTES_PER_SECOND = 32000;
+
+    private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+    @AfterEach
+    void tearDown() {
+        executor.shutdownNow();
+    }
+
+    @Test
+    void stitchesPartialTranscriptsInCaptureOrder() {
+        // Earlier segments answer more slowly, so completion order is reversed
+        AtomicInteger calls = new AtomicInteger();
+        TranscriptionBackend backend = audio -> {
+            int n = calls.incrementAndGet();
+            sleep(Duration.ofMillis(200 - 50L * n));
+            return "part" + n;
+        };
+
+        StreamingTranscriber transcriber = newTranscriber(backend);
+        byte[] utterance = concat(tone(1.6), silence(0.5), tone(1.6), silence(0.5), tone(1.0));
+        feed(transcriber, utterance, 0);
+
+        assertThat(transcriber.finish()).isEqualTo("part1 part2 part3");
+        assertThat(transcriber.segmentCount()).isEqualTo(3);
+    }
+
+    @Test
+    void publishesThePartialTranscriptAsSegmentsComeBack() {
+        List<String> partials = new CopyOnWriteArrayList<>();
+        StreamingTranscriber transcriber = new StreamingTranscriber(StreamingTranscriberTest::segmentName,
+                FORMAT, executor, Duration.ofSeconds(5), Duration.ofMillis(1500), Duration.ofMillis(400), 500,
+                partials::add);
+
+        feed(transcriber, concat(tone(1.6), silence(0.5), tone(1.6), silence(0.5), tone(1.0)), 10);
+        transcriber.finish();
+        awaitSize(partials, 3);
+
+        assertThat(partials).containsExactly("part1", "part1 part2", "part1 part2 part3");
+    }
+
+    @Test
+    void partialTranscriptWaitsForEarlierSegments() {
+        // Earlier segments answer more slowly; nothing is published until the first one is back
+        TranscriptionBackend backend = audio -> {
+            String text = segmentName(audio);
+            sleep(Duration.ofMillis(250 - 50L * Integer.parseInt(text.substring(4))));
+            return text;
+        };
+        List<String> partials = new CopyOnWriteArrayList<>();
+        StreamingTranscriber transcriber = new StreamingTranscriber(backend, FORMAT, executor,
+                Duration.ofSeconds(5), Duration.ofMillis(1500), Duration.ofMillis(400), 500, partials::add);
+
+        feed(transcriber, concat(tone(1.6), silence(0.5), tone(1.6), silence(0.5), tone(1.0)), 0);
+        transcriber.finish();
+        awaitSize(partials, 1);
+
+        assertThat(partials).containsExactly("part1 part2 part3");
+    }
+
+    @Test
+    void dropsSegmentsThatContainOnlySilence() {
+        AtomicInteger calls = new AtomicInteger();
+        TranscriptionBackend backend = audio -> "part" + calls.incrementAndGet();
+
+        StreamingTranscriber transcriber = newTranscriber(backend);
+        feed(transcriber, concat(silence(6.0), tone(1.0)), 0);
+
+        assertThat(transcriber.finish()).isEqualTo("part1");
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void releaseToTranscriptLatencyOnlyCoversTheLastSegment() {
+        TranscriptionBackend backend = new LatencyStub(Duration.ofMillis(40), Duration.ofMillis(60));
+        byte[] utterance = concat(
+                tone(1.8), silence(0.5), tone(1.8), silence(0.5),
+                tone(1.8), silence(0.5), tone(1.8), silence(0.5), tone(1.0));
+
+        // Batch: the whole clip is uploaded after release
+        long start = System.nanoTime();
+        String batch = backend.transcribe(toResource(utterance));
+        Duration batchLatency = Duration.ofNanos(System.nanoTime() - start);
+
+        // Streaming: audio arrives at 10x real time, segments upload while "talking"
+        StreamingTranscriber transcriber = newTranscriber(backend);
+        feed(transcriber, utterance, 10);
+        start = System.nanoTime();
+        String streamed = transcriber.finish();
+        Duration streamingLatency = Duration.ofNanos(System.nanoTime() - start);
+
+        System.out.printf("Release-to-transcript: batch=%d ms, streaming=%d ms (%d segments)%n",
+                batchLatency.toMillis(), streamingLatency.toMillis(), transcriber.segmentCount());
+
+        assertThat(batch).isNotBlank();
+        assertThat(streamed).isNotBlank();
+        assertThat(transcriber.segmentCount()).isGreaterThan(1);
+        assertThat(streamingLatency).isLessThan(batchLatency);
+    }
+
+    /**
+     * The last partial is published by the thread that finished the segment,
+     * possibly just after {@code finish()} has returned.
+     */
+    private static void awaitSize(List<String> partials, int size) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (partials.size() < size && System.nanoTime() < deadline) {
+            sleep(Duration.ofMillis(10));
+        }
+    }
+
+    /**
+     * Names a segment after its position, "part1" for the first.
+     */
+    private static String segmentName(Resource segment) {
+        String filename = segment.getFilename();
+        return "part" + (Integer.parseInt(filename.replaceAll("\\D", "")) + 1);
+    }
+
+    private StreamingTranscriber newTranscriber(TranscriptionBackend backend) {
+        return new StreamingTranscriber(backend, FORMAT, executor,
+                Duration.ofSeconds(5), Duration.ofMillis(1500), Duration.ofMillis(400), 500);
+    }
+
+    /**
+     * Feeds the clip in 100 ms chunks, pausing {@code 100 / speedup} ms between chunks.
+     */
+    private static void feed(StreamingTranscriber transcriber, byte[] pcm, int speedup) {
+        int chunk = BYTES_PER_SECOND / 10;
+        for (int offset = 0; offset < pcm.length; offset += chunk) {
+            transcriber.write(pcm, offset, Math.min(chunk, pcm.length - offset));
+            if (speedup > 0) {
+                sleep(Duration.ofMillis(100 / speedup));
+            }
+        }
+    }
+
+    private static Resource toResource(byte[] pcm) {
+        try {
+            return WavEncoder.toResource(WavEncoder.convertToWav(pcm, FORMAT), "recording.wav");
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    static byte[] tone(double seconds) {
+        int samples = (int) (seconds * 16000);
+        byte[] pcm = new byte[samples * 2];
+        for (int i = 0; i < samples; i++) {
+            short sample = (short) (8000 * Math.sin(2 * Math.PI * 440 * i / 16000.0));
+            pcm[2 * i] = (byte) sample;
+            pcm[2 * i + 1] = (byte) (sample >> 8);
+        }
+        return pcm;
+    }
+
+    static byte[] silence(double seconds) {
+        return new byte[(int) (seconds * 16000) * 2];
+    }
+
+    static byte[] concat(byte[]... parts) {
+        int length = 0;
+        for (byte[] part : parts) {
+            length += part.length;
+        }
+        byte[] result = new byte[length];
+        int offset = 0;
+        for (byte[] part : parts) {
+            System.arraycopy(part, 0, result, offset, part.length);
+            offset += part.length;
+        }
+        return result;
+    }
+
+    private static void sleep(Duration duration) {
+        try {
+            Thread.sleep(duration);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stub backend whose latency grows with clip length, like a real upload + inference.
+     */
+    record LatencyStub(Duration base, Duration perAudioSecond) implements TranscriptionBackend {
+
+        @Override
+        public String transcribe(Resource audio) {
+            try {
+                long audioMillis = (audio.contentLength() - 44) * 1000 / BYTES_PER_SECOND;
+                sleep(base.plus(perAudioSecond.multipliedBy(audioMillis).dividedBy(1000)));
+                return "segment of " + audioMillis + " ms";
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
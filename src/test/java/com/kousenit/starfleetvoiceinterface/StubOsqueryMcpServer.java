@@ -0,0 +1,229 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import ch.qos.logback.classic.Level;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.modelcontextprotocol.client.McpClient;
+import io.modelcontextprotocol.client.McpSyncClient;
+import io.modelcontextprotocol.client.transport.ServerParameters;
+import io.modelcontextprotocol.client.transport.StdioClientTransport;
+import io.modelcontextprotocol.server.McpServer;
+import io.modelcontextprotocol.server.McpServerFeatures;
+import io.modelcontextprotocol.server.McpSyncServer;
+import io.modelcontextprotocol.server.transport.StdioServerTransportProvider;
+import io.modelcontextprotocol.spec.McpSchema;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Stand-in for the osquery MCP server, run as a child process over stdio.
+ * {@code executeOsquery} answers with canned rows and counts its calls;
+ * {@code invocationCount} reports that count so tests can see exactly how
+ * many queries reached the server. Started with a latency, every query takes
+ * at least that long, like a real osquery round trip. {@code pid}, {@code exit}
+ * and {@code freeze} let pool tests tell processes apart, crash one, or leave
+ * one running but silent. {@code toolsListCount} reports how many
+ * {@code tools/list} requests arrived, and {@code addTool} registers another
+ * tool, which announces {@code notifications/tools/list_changed}.
+ */
+public class StubOsqueryMcpServer {
+
+    private static final AtomicInteger invocations = new AtomicInteger();
+
+    private static final AtomicInteger toolsListRequests = new AtomicInteger();
+
+    private static final AtomicInteger addedTools = new AtomicInteger();
+
+    private static McpSyncServer server;
+
+    private static final String SQL_SCHEMA = """
+            {"type": "object", "properties": {"sql": {"type": "string"}}, "required": ["sql"]}
+            """;
+
+    private static final String LATENCY_PROPERTY = "stub.osquery.latency-ms";
+
+    public static void main(String[] args) throws InterruptedException {
+        long latencyMillis = Long.getLong(LATENCY_PROPERTY, 0);
+        // stdout carries the protocol, so nothing else may write to it
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(Logger.ROOT_LOGGER_NAME)).setLevel(Level.OFF);
+
+        InputStream in = new RequestCountingInputStream(System.in, "\"method\":\"tools/list\"", toolsListRequests);
+        server = McpServer.sync(new StdioServerTransportProvider(new ObjectMapper(), in, System.out))
+                .serverInfo("osquery", "stub")
+                .capabilities(McpSchema.ServerCapabilities.builder().tools(true).build())
+                .tools(
+                        tool("executeOsquery", "Run an osquery SQL query", SQL_SCHEMA,
+                                arguments -> {
+                                    pause(latencyMillis);
+                                    return rowsFor(String.valueOf(arguments.get("sql")), invocations.incrementAndGet());
+                                }),
+                        tool("invocationCount", "Number of executeOsquery calls so far", "{\"type\": \"object\"}",
+                                arguments -> String.valueOf(invocations.get())),
+                        tool("pid", "Process id of this server", "{\"type\": \"object\"}",
+                                arguments -> String.valueOf(ProcessHandle.current().pid())),
+                        tool("exit", "Crash shortly after answering", "{\"type\": \"object\"}",
+                                arguments -> afterAnswering(() -> Runtime.getRuntime().halt(1))),
+                        tool("freeze", "Stop answering anything, but keep running", "{\"type\": \"object\"}",
+                                arguments -> afterAnswering(System.out::close)),
+                        tool("toolsListCount", "Number of tools/list requests so far", "{\"type\": \"object\"}",
+                                arguments -> String.valueOf(toolsListRequests.get())),
+                        tool("addTool", "Register another tool", "{\"type\": \"object\"}",
+                                arguments -> {
+                                    String name = "extra" + addedTools.incrementAndGet();
+                                    server.addTool(tool(name, "Added at runtime", "{\"type\": \"object\"}",
+                                            extra -> name));
+                                    return name;
+                                }))
+                .build();
+
+        Thread.currentThread().join();
+    }
+
+    /**
+     * Starts the stub in a child JVM and returns a connected client.
+     */
+    static McpSyncClient start() {
+        return start(Duration.ZERO);
+    }
+
+    /**
+     * Starts a stub whose queries each take {@code latency} to answer.
+     */
+    static McpSyncClient start(Duration latency) {
+        return start(latency, tools -> { });
+    }
+
+    /**
+     * Starts a stub and hands every tool list it announces to {@code onToolsChanged}.
+     */
+    static McpSyncClient start(Duration latency, Consumer<List<McpSchema.Tool>> onToolsChanged) {
+        String java = Path.of(System.getProperty("java.home"), "bin", "java").toString();
+        ServerParameters parameters = ServerParameters.builder(java)
+                .args("-D" + LATENCY_PROPERTY + "=" + latency.toMillis(),
+                        "-cp", System.getProperty("java.class.path"), StubOsqueryMcpServer.class.getName())
+                .build();
+        McpSyncClient client = McpClient.sync(new StdioClientTransport(parameters))
+                .requestTimeout(Duration.ofSeconds(20))
+                .toolsChangeConsumer(onToolsChanged)
+                .build();
+        client.initialize();
+        return client;
+    }
+
+    static int invocationCount(McpSyncClient client) {
+        return Integer.parseInt(text(client, "invocationCount"));
+    }
+
+    static int toolsListCount(McpSyncClient client) {
+        return Integer.parseInt(text(client, "toolsListCount"));
+    }
+
+    static long pid(McpSyncClient client) {
+        return Long.parseLong(text(client, "pid"));
+    }
+
+    static String text(McpSyncClient client, String tool) {
+        McpSchema.CallToolResult result = client.callTool(new McpSchema.CallToolRequest(tool, Map.of()));
+        return ((McpSchema.TextContent) result.content().getFirst()).text();
+    }
+
+    private static String afterAnswering(Runnable action) {
+        Thread.ofPlatform().start(() -> {
+            pause(200);
+            action.run();
+        });
+        return "ok";
+    }
+
+    private static McpServerFeatures.SyncToolSpecification tool(
+            String name, String description, String schema,
+            Function<Map<String, Object>, String> handler) {
+        return new McpServerFeatures.SyncToolSpecification(
+                new McpSchema.Tool(name, description, schema),
+                (exchange, arguments) -> new McpSchema.CallToolResult(
+                        List.of(new McpSchema.TextContent(handler.apply(arguments))), false));
+    }
+
+    private static void pause(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String rowsFor(String sql, int call) {
+        String lower = sql.toLowerCase();
+        if (lower.contains("system_info")) {
+            return "[{\"hostname\":\"enterprise\",\"cpu_brand\":\"Duotronic\",\"physical_memory\":\"68719476736\",\"call\":\"" + call + "\"}]";
+        }
+        if (lower.contains("uptime")) {
+            return "[{\"days\":\"3\",\"hours\":\"4\",\"minutes\":\"" + call + "\"}]";
+        }
+        if (lower.contains("listening_ports")) {
+            return "[{\"name\":\"sshd\",\"port\":\"22\"},{\"name\":\"postgres\",\"port\":\"5432\"}]";
+        }
+        if (lower.contains("processes")) {
+            return "[{\"name\":\"warp_core\",\"pid\":\"1701\",\"resident_size\":\"2147483648\"},"
+                    + "{\"name\":\"sensors\",\"pid\":\"74656\",\"resident_size\":\"536870912\"}]";
+        }
+        return "[{\"call\":\"" + call + "\"}]";
+    }
+
+    /**
+     * Counts the protocol lines that contain {@code marker} as they are read.
+     */
+    private static final class RequestCountingInputStream extends FilterInputStream {
+
+        private final String marker;
+        private final AtomicInteger count;
+        private final ByteArrayOutputStream line = new ByteArrayOutputStream();
+
+        RequestCountingInputStream(InputStream in, String marker, AtomicInteger count) {
+            super(in);
+            this.marker = marker;
+            this.count = count;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                scan((byte) b);
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int n = super.read(buffer, offset, length);
+            for (int i = 0; i < n; i++) {
+                scan(buffer[offset + i]);
+            }
+            return n;
+        }
+
+        private void scan(byte b) {
+            if (b != '\n') {
+                line.write(b);
+                return;
+            }
+            if (line.toString(StandardCharsets.UTF_8).contains(marker)) {
+                count.incrementAndGet();
+            }
+            line.reset();
+        }
+    }
+}
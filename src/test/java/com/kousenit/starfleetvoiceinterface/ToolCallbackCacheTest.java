@@ -0,0 +1,138 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import com.kousenit.starfleetvoiceinterface.config.ToolProperties;
+import io.modelcontextprotocol.client.McpSyncClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.chat.model.ChatModel;
+import org.springframework.ai.chat.model.ChatResponse;
+import org.springframework.ai.chat.prompt.Prompt;
+import org.springframework.ai.mcp.SyncMcpToolCallbackProvider;
+import org.springframework.ai.tool.ToolCallback;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ToolCallbackCacheTest {
+
+    private static final int COMMANDS = 50;
+
+    private final ToolListChanges toolListChanges = new ToolListChanges();
+
+    private McpSyncClient client;
+
+    @BeforeEach
+    void startServer() {
+        client = StubOsqueryMcpServer.start(Duration.ZERO, tools -> toolListChanges.toolsChanged("osquery", tools));
+    }
+
+    @AfterEach
+    void stopServer() {
+        client.closeGracefully();
+    }
+
+    @Test
+    void comparesPerCommandOverheadWithAndWithoutTheCache() {
+        SyncMcpToolCallbackProvider provider = new SyncMcpToolCallbackProvider(client);
+        ToolCallbackCache cache = new ToolCallbackCache(provider::getToolCallbacks, toolListChanges::version);
+        // Warm up both paths
+        offerTools(() -> Arrays.asList(provider.getToolCallbacks()));
+        cache.get();
+
+        int before = StubOsqueryMcpServer.toolsListCount(client);
+        Duration uncached = offerTools(() -> Arrays.asList(provider.getToolCallbacks()));
+        int uncachedLists = StubOsqueryMcpServer.toolsListCount(client) - before;
+
+        before = StubOsqueryMcpServer.toolsListCount(client);
+        Duration cached = offerTools(cache::get);
+        int cachedLists = StubOsqueryMcpServer.toolsListCount(client) - before;
+
+        System.out.printf("Tools per command over %d commands: uncached %.3f ms (%d tools/list), cached %.3f ms (%d tools/list)%n",
+                COMMANDS, uncached.toNanos() / 1e6 / COMMANDS, uncachedLists,
+                cached.toNanos() / 1e6 / COMMANDS, cachedLists);
+        assertThat(uncachedLists).isEqualTo(COMMANDS);
+        assertThat(cachedLists).isZero();
+        assertThat(cached).isLessThan(uncached);
+    }
+
+    @Test
+    void commandsShareOneToolListing() {
+        McpClientService service = service();
+
+        int before = StubOsqueryMcpServer.toolsListCount(client);
+        for (int i = 0; i < COMMANDS; i++) {
+            service.toolCallbacks();
+        }
+
+        assertThat(StubOsqueryMcpServer.toolsListCount(client) - before).isEqualTo(1);
+    }
+
+    @Test
+    void toolListChangeRebuildsTheCallbacks() throws Exception {
+        ToolCallbackCache cache = new ToolCallbackCache(
+                new SyncMcpToolCallbackProvider(client)::getToolCallbacks, toolListChanges::version);
+        assertThat(names(cache.get())).noneMatch(name -> name.endsWith("extra1"));
+
+        StubOsqueryMcpServer.text(client, "addTool");
+        long deadline = System.nanoTime() + Duration.ofSeconds(10).toNanos();
+        while (toolListChanges.version() == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(20);
+        }
+
+        assertThat(names(cache.get())).anyMatch(name -> name.endsWith("extra1"));
+        assertThat(cache.builds()).isEqualTo(2);
+    }
+
+    @Test
+    void refreshListsTheToolsAgain() {
+        McpClientService service = service();
+        service.toolCallbacks();
+
+        int before = StubOsqueryMcpServer.toolsListCount(client);
+        service.refreshTools();
+        service.toolCallbacks();
+        service.toolCallbacks();
+
+        assertThat(StubOsqueryMcpServer.toolsListCount(client) - before).isEqualTo(1);
+    }
+
+    /**
+     * What the chat model needs per command: the callbacks and each one's definition.
+     */
+    private static Duration offerTools(Supplier<List<ToolCallback>> tools) {
+        long start = System.nanoTime();
+        for (int i = 0; i < COMMANDS; i++) {
+            for (ToolCallback callback : tools.get()) {
+                assertThat(callback.getToolDefinition().inputSchema()).isNotBlank();
+            }
+        }
+        return Duration.ofNanos(System.nanoTime() - start);
+    }
+
+    private static List<String> names(List<ToolCallback> callbacks) {
+        return callbacks.stream().map(callback -> callback.getToolDefinition().name()).toList();
+    }
+
+    private McpClientService service() {
+        ChatModel unused = new ChatModel() {
+            @Override
+            public ChatResponse call(Prompt prompt) {
+                throw new UnsupportedOperationException();
+            }
+        };
+        ToolProperties properties = new ToolProperties(
+                new ToolProperties.Cache(true, 256, Duration.ZERO, Map.of()),
+                new ToolProperties.FastPath(true, 0.6, 0.2),
+                new ToolProperties.Parallel(true, 4),
+                new ToolProperties.Compaction(true, 25, 160, 1024),
+                new ToolProperties.Coalescing(true));
+        return new McpClientService(unused, new SyncMcpToolCallbackProvider(client), List.of(client), properties,
+                null, toolListChanges, null, PipelineMetrics.local());
+    }
+}
@@ -0,0 +1,158 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import io.modelcontextprotocol.client.McpSyncClient;
+import org.junit.jupiter.api.Test;
+import org.springframework.ai.mcp.SyncMcpToolCallbackProvider;
+import org.springframework.ai.tool.ToolCallback;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ToolResultCacheTest {
+
+    private static final Map<String, Duration> TTLS = Map.of(
+            "system_info", Duration.ofHours(6),
+            "uptime", Duration.ofSeconds(5),
+            "processes", Duration.ofSeconds(1));
+
+    private final AtomicLong now = new AtomicLong();
+    private final AtomicInteger calls = new AtomicInteger();
+    private final ToolResultCache cache = new ToolResultCache(3, TTLS, Duration.ZERO, now::get);
+
+    @Test
+    void normalizesWhitespaceCaseAndSemicolons() {
+        assertThat(OsquerySql.normalize("  SELECT hostname,\n   cpu_brand FROM  system_info; "))
+                .isEqualTo("select hostname, cpu_brand from system_info");
+        assertThat(OsquerySql.normalize("SELECT * FROM processes WHERE name = 'Safari'"))
+                .isEqualTo("select * from processes where name = 'Safari'");
+    }
+
+    @Test
+    void findsTablesInJoinsAndCommaLists() {
+        assertThat(OsquerySql.tables(OsquerySql.normalize("""
+                SELECT DISTINCT process.name, listening.port FROM listening_ports listening
+                JOIN processes process ON listening.pid = process.pid WHERE listening.port != 0""")))
+                .containsExactly("listening_ports", "processes");
+        assertThat(OsquerySql.tables("select * from uptime u, system_info as s"))
+                .containsExactly("uptime", "system_info");
+        assertThat(OsquerySql.tables("select name from processes where name = 'from x'"))
+                .containsExactly("processes");
+    }
+
+    @Test
+    void equivalentQueriesShareAnEntry() {
+        query("SELECT hostname, cpu_brand, physical_memory FROM system_info");
+        query("select hostname, cpu_brand, physical_memory\n  from system_info;");
+
+        assertThat(calls).hasValue(1);
+        assertThat(cache.stats().hits()).isEqualTo(1);
+        assertThat(cache.stats().misses()).isEqualTo(1);
+    }
+
+    @Test
+    void expiresPerTable() {
+        query("SELECT * FROM system_info");
+        query("SELECT days, hours, minutes FROM uptime");
+        query("SELECT name FROM processes");
+
+        now.addAndGet(Duration.ofMillis(1500).toNanos());
+        query("SELECT * FROM system_info");
+        query("SELECT days, hours, minutes FROM uptime");
+        query("SELECT name FROM processes");
+        assertThat(calls).hasValue(4);
+
+        now.addAndGet(Duration.ofSeconds(5).toNanos());
+        query("SELECT * FROM system_info");
+        query("SELECT days, hours, minutes FROM uptime");
+        assertThat(calls).hasValue(5);
+        assertThat(cache.stats().expirations()).isEqualTo(2);
+    }
+
+    @Test
+    void joinsUseTheShortestTtl() {
+        assertThat(cache.ttlFor(OsquerySql.normalize("SELECT * FROM system_info JOIN processes")))
+                .isEqualTo(Duration.ofSeconds(1));
+    }
+
+    @Test
+    void tablesWithoutAPolicyAreNotCached() {
+        query("SELECT * FROM listening_ports");
+        query("SELECT * FROM listening_ports");
+        query("SELECT * FROM system_info JOIN listening_ports");
+
+        assertThat(calls).hasValue(3);
+        assertThat(cache.stats().uncacheable()).isEqualTo(3);
+        assertThat(cache.stats().size()).isZero();
+    }
+
+    @Test
+    void evictsLeastRecentlyUsed() {
+        query("SELECT a FROM system_info");
+        query("SELECT b FROM system_info");
+        query("SELECT c FROM system_info");
+        query("SELECT a FROM system_info");
+        query("SELECT d FROM system_info");
+        assertThat(calls).hasValue(4);
+
+        query("SELECT b FROM system_info");
+        assertThat(calls).hasValue(5);
+        assertThat(cache.stats().evictions()).isEqualTo(2);
+        assertThat(cache.stats().size()).isEqualTo(3);
+    }
+
+    @Test
+    void failuresAreNotCached() {
+        assertThatThrownBy(() -> cache.get("executeOsquery", "SELECT * FROM uptime", () -> {
+            throw new IllegalStateException("osquery unavailable");
+        })).hasMessage("osquery unavailable");
+
+        query("SELECT * FROM uptime");
+        assertThat(calls).hasValue(1);
+    }
+
+    @Test
+    void cachesCallsToStubMcpServer() {
+        McpSyncClient client = StubOsqueryMcpServer.start();
+        try {
+            ToolCallback executeOsquery = null;
+            for (ToolCallback callback : new SyncMcpToolCallbackProvider(client).getToolCallbacks()) {
+                if (callback.getToolDefinition().name().endsWith("executeOsquery")) {
+                    executeOsquery = callback;
+                }
+            }
+            assertThat(executeOsquery).isNotNull();
+
+            ToolResultCache realTimeCache = new ToolResultCache(256, TTLS, Duration.ZERO, System::nanoTime);
+            ToolCallback cached = new CachingToolCallback(executeOsquery, realTimeCache);
+            String systemInfo = "{\"sql\": \"SELECT hostname, cpu_brand, physical_memory FROM system_info\"}";
+
+            long start = System.nanoTime();
+            String first = cached.call(systemInfo);
+            Duration miss = Duration.ofNanos(System.nanoTime() - start);
+
+            start = System.nanoTime();
+            String second = cached.call("{\"sql\": \"select hostname, cpu_brand, physical_memory from system_info;\"}");
+            Duration hit = Duration.ofNanos(System.nanoTime() - start);
+
+            cached.call("{\"sql\": \"SELECT * FROM listening_ports\"}");
+            cached.call("{\"sql\": \"SELECT * FROM listening_ports\"}");
+
+            System.out.printf("Stub MCP server: miss %.2f ms, hit %.3f ms, stats %s%n",
+                    miss.toNanos() / 1e6, hit.toNanos() / 1e6, realTimeCache.stats());
+
+            assertThat(second).isEqualTo(first).contains("enterprise");
+            assertThat(StubOsqueryMcpServer.invocationCount(client)).isEqualTo(3);
+        } finally {
+            client.closeGracefully();
+        }
+    }
+
+    private String query(String sql) {
+        return cache.get("executeOsquery", sql, () -> "rows " + calls.incrementAndGet());
+    }
+}
@@ -0,0 +1,173 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import com.kousenit.starfleetvoiceinterface.config.TranscriptionProperties;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.Resource;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.TargetDataLine;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static com.kousenit.starfleetvoiceinterface.StreamingTranscriberTest.concat;
+import static com.kousenit.starfleetvoiceinterface.StreamingTranscriberTest.silence;
+import static com.kousenit.starfleetvoiceinterface.StreamingTranscriberTest.tone;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class TranscriptionServiceTest {
+
+    private static final int CHUNK = 3200;
+
+    private TranscriptionService service;
+
+    @AfterEach
+    void shutdown() {
+        if (service != null) {
+            service.shutdown();
+        }
+    }
+
+    /**
+     * VAD drops the pauses before streaming sees them: with 30 ms frames it
+     * keeps 300 ms of hangover and 90 ms of leading pad, never the 400 ms
+     * pause the written audio would need. Segments are still cut in the
+     * pauses, so partial transcripts arrive while the user is talking.
+     */
+    @Test
+    void streamingCutsSegmentsAtPausesThatVadDrops() {
+        service = new TranscriptionService(TranscriptionServiceTest::segmentName,
+                properties(true, Duration.ofMillis(30)), null, PipelineMetrics.local());
+        List<String> partials = new CopyOnWriteArrayList<>();
+        TranscriptionService.Capture capture = service.newCapture(partials::add);
+
+        byte[] utterance = concat(tone(1.6), silence(0.5), tone(1.6), silence(0.5), tone(1.0));
+        for (int offset = 0; offset < utterance.length; offset += CHUNK) {
+            capture.write(utterance, offset, Math.min(CHUNK, utterance.length - offset));
+        }
+        awaitTrue(() -> partials.contains("part1 part2"));
+        capture.finish();
+
+        assertThat(capture.transcribe()).isEqualTo("part1 part2 part3");
+        capture.release();
+    }
+
+    /**
+     * The upload of a WAV recording reads the recording buffer itself, so a
+     * press that recorded into a buffer still being uploaded would change
+     * the audio under it. Each line's ramp starts somewhere else, so the
+     * upload shows whose audio it holds.
+     */
+    @Test
+    void aPressDuringThePreviousUploadRecordsIntoItsOwnBuffer() throws Exception {
+        AtomicInteger lines = new AtomicInteger();
+        TranscriptionService.Microphones microphones = new TranscriptionService.Microphones() {
+            @Override
+            public boolean supports(AudioFormat format) {
+                return true;
+            }
+
+            @Override
+            public TargetDataLine line(AudioFormat format) {
+                return new FakeTargetDataLine(format, Duration.ZERO, 10_000 * lines.incrementAndGet());
+            }
+        };
+        AtomicInteger uploads = new AtomicInteger();
+        CountDownLatch nextPressRecorded = new CountDownLatch(1);
+        TranscriptionBackend backend = audio -> {
+            if (uploads.incrementAndGet() == 1) {
+                await(nextPressRecorded);
+            }
+            try {
+                return describe(audio.getContentAsByteArray());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        };
+        service = new TranscriptionService(backend, properties(false, null), null, PipelineMetrics.local(),
+                microphones);
+
+        service.startRecording();
+        Thread.sleep(200);
+        CompletableFuture<String> first = CompletableFuture.supplyAsync(service::stopAndTranscribe);
+        awaitTrue(() -> uploads.get() == 1);
+
+        // Press again while the first recording is still uploading
+        service.startRecording();
+        Thread.sleep(300);
+        nextPressRecorded.countDown();
+
+        assertThat(first.get(5, TimeUnit.SECONDS)).isEqualTo("ramp from 10000");
+        assertThat(service.stopAndTranscribe()).isEqualTo("ramp from 20000");
+    }
+
+    /**
+     * Where the ramp in a WAV upload starts, or where it breaks.
+     */
+    private static String describe(byte[] wav) {
+        int samples = (wav.length - 44) / 2;
+        if (samples == 0) {
+            return "no audio";
+        }
+        short first = sample(wav, 0);
+        for (int i = 1; i < samples; i++) {
+            if (sample(wav, i) != (short) (first + i)) {
+                return "ramp from " + first + " broken at sample " + i;
+            }
+        }
+        return "ramp from " + first;
+    }
+
+    private static short sample(byte[] wav, int index) {
+        int at = 44 + 2 * index;
+        return (short) ((wav[at] & 0xff) | (wav[at + 1] << 8));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static TranscriptionProperties properties(boolean streaming, Duration vadFrame) {
+        return new TranscriptionProperties(
+                TranscriptionProperties.UploadFormat.WAV,
+                new TranscriptionProperties.Streaming(streaming, Duration.ofSeconds(5), Duration.ofMillis(1500),
+                        Duration.ofMillis(400), 500),
+                new TranscriptionProperties.Vad(vadFrame != null, vadFrame == null ? Duration.ofMillis(20) : vadFrame,
+                        300, 0.3, Duration.ofMillis(300), Duration.ofMillis(100), Duration.ZERO),
+                new TranscriptionProperties.Buffer(Duration.ofSeconds(60), Duration.ofMinutes(10), 8),
+                new TranscriptionProperties.HotMic(false, Duration.ofMillis(300), Duration.ofSeconds(10)),
+                new TranscriptionProperties.Speculation(false, Duration.ofMillis(300), 0.1));
+    }
+
+    /**
+     * Names a segment after its position, "part1" for the first.
+     */
+    private static String segmentName(Resource segment) {
+        return "part" + (Integer.parseInt(segment.getFilename().replaceAll("\\D", "")) + 1);
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) {
+        long deadline = System.nanoTime() + Duration.ofSeconds(5).toNanos();
+        while (!condition.getAsBoolean()) {
+            assertThat(System.nanoTime()).as("condition not met in time").isLessThan(deadline);
+            try {
+                Thread.sleep(10);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new AssertionError(e);
+            }
+        }
+    }
+}
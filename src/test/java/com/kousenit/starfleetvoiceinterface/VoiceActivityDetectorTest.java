@@ -0,0 +1,160 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import org.junit.jupiter.api.Test;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static com.kousenit.starfleetvoiceinterface.StreamingTranscriberTest.concat;
+import static com.kousenit.starfleetvoiceinterface.StreamingTranscriberTest.silence;
+import static com.kousenit.starfleetvoiceinterface.StreamingTranscriberTest.tone;
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VoiceActivityDetectorTest {
+
+    private static final AudioFormat FORMAT = new AudioFormat(16000.0f, 16, 1, true, false);
+    private static final int BYTES_PER_SECOND = 32000;
+
+    @Test
+    void trimsLeadingAndTrailingSilence() {
+        byte[] clip = concat(noise(1.5, 40), tone(1.2), noise(2.0, 40));
+
+        ByteArrayOutputStream kept = new ByteArrayOutputStream();
+        VoiceActivityDetector vad = newDetector(Duration.ZERO);
+        feed(vad, clip, kept);
+
+        // 1.2 s of speech plus at most the leading pad and the hangover
+        assertThat(kept.size()).isBetween(tone(1.2).length, tone(1.2 + 0.1 + 0.3).length);
+        assertThat(vad.bytesIn()).isEqualTo(clip.length);
+        assertThat(vad.bytesKept()).isEqualTo(kept.size());
+    }
+
+    @Test
+    void keepsQuietFricativesByZeroCrossingRate() {
+        // Hiss well below the energy threshold, but with a high zero-crossing rate
+        byte[] clip = concat(silence(0.5), noise(0.3, 200), tone(0.5), silence(1.0));
+
+        ByteArrayOutputStream kept = new ByteArrayOutputStream();
+        feed(newDetector(Duration.ZERO), clip, kept);
+
+        assertThat(kept.size()).isGreaterThanOrEqualTo(noise(0.3, 200).length + tone(0.5).length);
+    }
+
+    @Test
+    void bridgesShortGapsWithHangover() {
+        byte[] clip = concat(tone(0.5), silence(0.2), tone(0.5));
+
+        ByteArrayOutputStream kept = new ByteArrayOutputStream();
+        feed(newDetector(Duration.ZERO), clip, kept);
+
+        assertThat(kept.size()).isEqualTo(clip.length);
+    }
+
+    @Test
+    void signalsAutoStopAfterTrailingSilence() {
+        VoiceActivityDetector vad = newDetector(Duration.ofMillis(800));
+        ByteArrayOutputStream kept = new ByteArrayOutputStream();
+
+        feed(vad, concat(silence(2.0), tone(0.5)), kept);
+        assertThat(vad.shouldAutoStop()).isFalse();
+
+        feed(vad, silence(0.5), kept);
+        assertThat(vad.shouldAutoStop()).isFalse();
+
+        feed(vad, silence(0.4), kept);
+        assertThat(vad.shouldAutoStop()).isTrue();
+    }
+
+    @Test
+    void reportsUploadSizeAndLatencyAcrossCorpus() throws Exception {
+        TranscriptionBackend backend = new StreamingTranscriberTest.LatencyStub(
+                Duration.ofMillis(20), Duration.ofMillis(15));
+
+        long totalBefore = 0;
+        long totalAfter = 0;
+        for (Map.Entry<String, byte[]> fixture : corpus().entrySet()) {
+            byte[] pcm = readWav(fixture.getValue());
+
+            ByteArrayOutputStream kept = new ByteArrayOutputStream();
+            VoiceActivityDetector vad = newDetector(Duration.ZERO);
+            feed(vad, pcm, kept);
+            vad.flush(kept::write);
+
+            long before = transcribeMillis(backend, pcm);
+            long after = transcribeMillis(backend, kept.toByteArray());
+            System.out.printf("%-18s upload %7d -> %7d bytes, transcription %4d -> %4d ms%n",
+                    fixture.getKey(), pcm.length + 44, kept.size() + 44, before, after);
+
+            totalBefore += pcm.length;
+            totalAfter += kept.size();
+        }
+
+        System.out.printf("Corpus upload reduced by %.0f%%%n", 100.0 * (totalBefore - totalAfter) / totalBefore);
+        assertThat(totalAfter).isLessThan(totalBefore / 2);
+    }
+
+    private static VoiceActivityDetector newDetector(Duration autoStopAfter) {
+        return new VoiceActivityDetector(FORMAT, Duration.ofMillis(20), 300, 0.3,
+                Duration.ofMillis(300), Duration.ofMillis(100), autoStopAfter);
+    }
+
+    private static void feed(VoiceActivityDetector vad, byte[] pcm, ByteArrayOutputStream out) {
+        // Same read size as TranscriptionService.recordAudio()
+        for (int offset = 0; offset < pcm.length; offset += 4096) {
+            vad.process(pcm, offset, Math.min(4096, pcm.length - offset), out::write);
+        }
+    }
+
+    private static long transcribeMillis(TranscriptionBackend backend, byte[] pcm) throws Exception {
+        long start = System.nanoTime();
+        backend.transcribe(WavEncoder.toResource(WavEncoder.convertToWav(pcm, FORMAT), "recording.wav"));
+        return Duration.ofNanos(System.nanoTime() - start).toMillis();
+    }
+
+    /**
+     * Push-to-talk shaped fixtures: room noise while the button goes down,
+     * a short command, then noise until the operator lets go.
+     */
+    private static Map<String, byte[]> corpus() throws Exception {
+        Map<String, byte[]> corpus = new LinkedHashMap<>();
+        corpus.put("short-command", WavEncoder.convertToWav(
+                concat(noise(0.8, 40), tone(1.0), noise(1.5, 40)), FORMAT));
+        corpus.put("two-phrases", WavEncoder.convertToWav(
+                concat(noise(1.0, 40), tone(1.2), noise(0.9, 40), tone(1.4), noise(2.0, 40)), FORMAT));
+        corpus.put("fricative-onset", WavEncoder.convertToWav(
+                concat(noise(1.2, 30), noise(0.25, 200), tone(0.9), noise(1.8, 30)), FORMAT));
+        corpus.put("long-hold", WavEncoder.convertToWav(
+                concat(noise(3.0, 50), tone(2.0), noise(4.0, 50)), FORMAT));
+        return corpus;
+    }
+
+    private static byte[] readWav(byte[] wav) throws Exception {
+        try (AudioInputStream in = AudioSystem.getAudioInputStream(new ByteArrayInputStream(wav))) {
+            assertThat(in.getFormat().matches(FORMAT)).isTrue();
+            return in.readAllBytes();
+        }
+    }
+
+    /**
+     * Uniform white noise with the given RMS amplitude.
+     */
+    private static byte[] noise(double seconds, int rms) {
+        Random random = new Random(42);
+        int samples = (int) (seconds * BYTES_PER_SECOND / 2);
+        double peak = rms * Math.sqrt(3);
+        byte[] pcm = new byte[samples * 2];
+        for (int i = 0; i < samples; i++) {
+            short sample = (short) ((random.nextDouble() * 2 - 1) * peak);
+            pcm[2 * i] = (byte) sample;
+            pcm[2 * i + 1] = (byte) (sample >> 8);
+        }
+        return pcm;
+    }
+}
@@ -0,0 +1,156 @@
+package com.kousenit.starfleetvoiceinterface;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class VoicePipelineTest {
+
+    private final CountDownLatch stall = new CountDownLatch(1);
+
+    private final VoicePipeline pipeline = new VoicePipeline(Map.of(
+            VoicePipeline.Stage.TRANSCRIPTION, new VoicePipeline.Limits(2, Duration.ofSeconds(5)),
+            VoicePipeline.Stage.COMMAND, new VoicePipeline.Limits(2, Duration.ofSeconds(5))));
+
+    @AfterEach
+    void release() {
+        stall.countDown();
+        pipeline.shutdown();
+    }
+
+    @Test
+    void stalledTasksStarveASharedPool() throws Exception {
+        // How it used to be: every stage on one small shared pool
+        ForkJoinPool shared = new ForkJoinPool(2);
+        try {
+            CompletableFuture.runAsync(this::stalledWork, shared);
+            CompletableFuture.runAsync(this::stalledWork, shared);
+
+            CompletableFuture<String> transcription = CompletableFuture.supplyAsync(() -> "transcript", shared);
+
+            assertThatThrownBy(() -> transcription.get(200, TimeUnit.MILLISECONDS))
+                    .isInstanceOf(TimeoutException.class);
+        } finally {
+            stall.countDown();
+            shared.shutdownNow();
+        }
+    }
+
+    @Test
+    void stalledCommandsDoNotStarveTranscription() throws Exception {
+        VoicePipeline.Run run = pipeline.begin();
+        for (int i = 0; i < 10; i++) {
+            run.submit(VoicePipeline.Stage.COMMAND, this::stalledCall);
+        }
+
+        long start = System.nanoTime();
+        String transcript = run.submit(VoicePipeline.Stage.TRANSCRIPTION, () -> "transcript")
+                .get(200, TimeUnit.MILLISECONDS);
+
+        System.out.printf("Transcription finished in %.2f ms behind 10 stalled commands%n",
+                (System.nanoTime() - start) / 1e6);
+        assertThat(transcript).isEqualTo("transcript");
+    }
+
+    @Test
+    void stageDeadlineFailsAndInterruptsTheTask() throws Exception {
+        VoicePipeline quick = new VoicePipeline(Map.of(
+                VoicePipeline.Stage.COMMAND, new VoicePipeline.Limits(1, Duration.ofMillis(100))));
+        CountDownLatch interrupted = new CountDownLatch(1);
+        try {
+            CompletableFuture<String> command = quick.begin().submit(VoicePipeline.Stage.COMMAND, () -> {
+                try {
+                    return stalledCall();
+                } catch (InterruptedException e) {
+                    interrupted.countDown();
+                    throw e;
+                }
+            });
+
+            assertThatThrownBy(() -> command.get(1, TimeUnit.SECONDS))
+                    .isInstanceOf(ExecutionException.class)
+                    .hasCauseInstanceOf(TimeoutException.class)
+                    .hasMessageContaining("command stage timed out after 100 ms");
+            assertThat(interrupted.await(1, TimeUnit.SECONDS)).isTrue();
+        } finally {
+            quick.shutdown();
+        }
+    }
+
+    @Test
+    void newRunCancelsThePreviousChain() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        AtomicInteger commandsStarted = new AtomicInteger();
+        VoicePipeline.Run first = pipeline.begin();
+        CompletableFuture<String> chain = first
+                .submit(VoicePipeline.Stage.TRANSCRIPTION, () -> {
+                    try {
+                        return stalledCall();
+                    } catch (InterruptedException e) {
+                        interrupted.countDown();
+                        throw e;
+                    }
+                })
+                .thenCompose(transcript -> first.submit(VoicePipeline.Stage.COMMAND, () -> {
+                    commandsStarted.incrementAndGet();
+                    return transcript;
+                }));
+        Thread.sleep(50);
+
+        VoicePipeline.Run second = pipeline.begin();
+
+        assertThat(first.isCancelled()).isTrue();
+        assertThat(interrupted.await(1, TimeUnit.SECONDS)).isTrue();
+        assertThatThrownBy(() -> chain.get(1, TimeUnit.SECONDS)).hasCauseInstanceOf(CancellationException.class);
+        assertThat(commandsStarted).hasValue(0);
+        assertThat(second.submit(VoicePipeline.Stage.COMMAND, () -> "next").get(1, TimeUnit.SECONDS))
+                .isEqualTo("next");
+    }
+
+    @Test
+    void stageRunsAtMostItsConcurrencyAtOnce() throws Exception {
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger peak = new AtomicInteger();
+        VoicePipeline.Run run = pipeline.begin();
+
+        List<CompletableFuture<Integer>> tasks = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            tasks.add(run.submit(VoicePipeline.Stage.COMMAND, () -> {
+                peak.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(20);
+                return running.decrementAndGet();
+            }));
+        }
+        CompletableFuture.allOf(tasks.toArray(CompletableFuture[]::new)).get(2, TimeUnit.SECONDS);
+
+        assertThat(peak).hasValue(2);
+    }
+
+    private void stalledWork() {
+        try {
+            stalledCall();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private String stalledCall() throws InterruptedException {
+        stall.await();
+        return "too late";
+    }
+}